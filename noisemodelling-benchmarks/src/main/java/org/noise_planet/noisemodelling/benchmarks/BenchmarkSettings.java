@@ -0,0 +1,24 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+/**
+ * Parameters shared by the benchmarks
+ */
+final class BenchmarkSettings {
+    /** Seed of the synthetic cities and of the source receiver draws */
+    static final long SEED = 42;
+    static final double RECEIVER_SPACING = 20;
+    /** Number of source receiver couples evaluated in turn by the benchmarks */
+    static final int PAIR_COUNT = 1024;
+
+    private BenchmarkSettings() {
+    }
+}
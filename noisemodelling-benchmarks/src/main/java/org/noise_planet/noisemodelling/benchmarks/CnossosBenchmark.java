@@ -0,0 +1,111 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
+import org.noise_planet.noisemodelling.propagation.SceneWithAttenuation;
+import org.noise_planet.noisemodelling.propagation.cnossos.AttenuationCnossos;
+import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
+import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPathBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CNOSSOS-EU computation of the direct paths between sources and receivers: from the vertical cut profile to the
+ * propagation path, then from the propagation path to the attenuation of each frequency band
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CnossosBenchmark {
+    @Param({"1000"})
+    public double width;
+    @Param({"0.6"})
+    public double buildingDensity;
+    @Param({"20"})
+    public double terrainRoughness;
+    @Param({"500"})
+    public double maximumDistance;
+
+    private ProfileBuilder profileBuilder;
+    private SceneWithAttenuation scene;
+    private final AttenuationParameters attenuationParameters = new AttenuationParameters();
+    private final AttenuationCnossos attenuationCnossos = new AttenuationCnossos();
+    private CutProfile[] cutProfiles;
+    private CnossosPath[] cnossosPaths;
+    private int profileIndex = 0;
+    private int pathIndex = 0;
+
+    @Setup
+    public void setup() {
+        SyntheticCity city = new SyntheticCity(BenchmarkSettings.SEED, width, buildingDensity, terrainRoughness,
+                BenchmarkSettings.RECEIVER_SPACING);
+        profileBuilder = city.createProfileBuilder();
+        scene = new SceneWithAttenuation(profileBuilder);
+        List<CutProfile> profiles = new ArrayList<>();
+        List<CnossosPath> paths = new ArrayList<>();
+        for (Coordinate[] pair : city.createSourceReceiverPairs(BenchmarkSettings.PAIR_COUNT, maximumDistance,
+                BenchmarkSettings.SEED)) {
+            CutProfile cutProfile = profileBuilder.getProfile(pair[0], pair[1], 0, false);
+            profiles.add(cutProfile);
+            CnossosPath path = CnossosPathBuilder.computeCnossosPathFromCutProfile(cutProfile, false,
+                    profileBuilder.exactFrequencyArray, 0);
+            if(path != null) {
+                paths.add(path);
+            }
+        }
+        cutProfiles = profiles.toArray(new CutProfile[0]);
+        cnossosPaths = paths.toArray(new CnossosPath[0]);
+    }
+
+    @Benchmark
+    public CnossosPath computeCnossosPathFromCutProfile() {
+        CutProfile cutProfile = cutProfiles[profileIndex];
+        profileIndex = (profileIndex + 1) % cutProfiles.length;
+        return CnossosPathBuilder.computeCnossosPathFromCutProfile(cutProfile, false,
+                profileBuilder.exactFrequencyArray, 0);
+    }
+
+    @Benchmark
+    public double[] computeCnossosAttenuation() {
+        CnossosPath path = cnossosPaths[pathIndex];
+        pathIndex = (pathIndex + 1) % cnossosPaths.length;
+        return AttenuationCnossos.computeCnossosAttenuation(attenuationParameters, path, scene, false);
+    }
+
+    /**
+     * Same as {@link #computeCnossosAttenuation()} with the engine kept by the computation thread
+     */
+    @Benchmark
+    public double[] computeAttenuationThreadEngine() {
+        CnossosPath path = cnossosPaths[pathIndex];
+        pathIndex = (pathIndex + 1) % cnossosPaths.length;
+        return attenuationCnossos.computeAttenuation(attenuationParameters, path, scene, false);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.path.MirrorReceiver;
+import org.noise_planet.noisemodelling.pathfinder.path.MirrorReceiversCompute;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Wall;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image receivers of the reflections on the building walls, construction then search of the image receivers visible
+ * from a source
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MirrorReceiversBenchmark {
+    /** Number of receivers of the benchmark, each one has its own walls and image receivers */
+    private static final int RECEIVER_COUNT = 64;
+    private static final double MAXIMUM_DISTANCE_FROM_WALL = 50;
+    @Param({"1000"})
+    public double width;
+    @Param({"0.6"})
+    public double buildingDensity;
+    @Param({"1", "2"})
+    public int reflectionOrder;
+    @Param({"250"})
+    public double maximumDistance;
+
+    private Coordinate[][] pairs;
+    private List<Wall>[] receiverWalls;
+    private MirrorReceiversCompute[] mirrorReceivers;
+    private int index = 0;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        SyntheticCity city = new SyntheticCity(BenchmarkSettings.SEED, width, buildingDensity, 0,
+                BenchmarkSettings.RECEIVER_SPACING);
+        ProfileBuilder profileBuilder = city.createProfileBuilder();
+        pairs = city.createSourceReceiverPairs(RECEIVER_COUNT, maximumDistance, BenchmarkSettings.SEED)
+                .toArray(new Coordinate[0][]);
+        receiverWalls = new List[pairs.length];
+        mirrorReceivers = new MirrorReceiversCompute[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            Envelope envelope = new Envelope(pairs[i][1]);
+            envelope.expandBy(maximumDistance);
+            receiverWalls[i] = profileBuilder.getWallsIn(envelope);
+            mirrorReceivers[i] = new MirrorReceiversCompute(receiverWalls[i], pairs[i][1], reflectionOrder,
+                    maximumDistance, MAXIMUM_DISTANCE_FROM_WALL);
+        }
+    }
+
+    private int nextIndex() {
+        int current = index;
+        index = (index + 1) % pairs.length;
+        return current;
+    }
+
+    @Benchmark
+    public MirrorReceiversCompute construct() {
+        int i = nextIndex();
+        return new MirrorReceiversCompute(receiverWalls[i], pairs[i][1], reflectionOrder, maximumDistance,
+                MAXIMUM_DISTANCE_FROM_WALL);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<MirrorReceiver> findCloseMirrorReceivers() {
+        int i = nextIndex();
+        return mirrorReceivers[i].findCloseMirrorReceivers(pairs[i][0]);
+    }
+}
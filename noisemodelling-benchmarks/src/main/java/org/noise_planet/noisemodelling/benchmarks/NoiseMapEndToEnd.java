@@ -0,0 +1,277 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
+import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.output.DefaultCutPlaneProcessing;
+import org.noise_planet.noisemodelling.jdbc.output.ResultsCache;
+import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitor;
+import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitorFactory;
+import org.noise_planet.noisemodelling.pathfinder.PathFinder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.RootProgressVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end yardstick of {@link NoiseMapByReceiverMaker}. A {@link SyntheticCity} of the requested area is written
+ * into an H2GIS database with {@link SyntheticCityDatabase}, then the noise map of the receivers is computed with
+ * the fixed settings of this class. The report gives the receivers per second, the propagation paths per
+ * second, the peak heap and the lag of the database writer. The standard areas are 1 km², 10 km² and 100 km², with
+ * the same seed the input tables are always the same so the reports can be compared between hardware and releases.
+ * <p>
+ * Usage: {@code java -cp noisemodelling-benchmarks-jar-with-dependencies.jar
+ * org.noise_planet.noisemodelling.benchmarks.NoiseMapEndToEnd [area_km2 ...]}, the standard areas are computed if no
+ * area is given. The databases are created in the target folder of the working directory.
+ */
+public class NoiseMapEndToEnd {
+    /** Areas of the standard yardstick in km² */
+    public static final double[] STANDARD_AREAS = new double[] {1, 10, 100};
+    public static final double BUILDING_DENSITY = 0.6;
+    /** Amplitude of the terrain elevation in meters */
+    public static final double TERRAIN_ROUGHNESS = 20;
+    public static final double MAXIMUM_PROPAGATION_DISTANCE = 500;
+    public static final int REFLECTION_ORDER = 1;
+
+    /**
+     * Measures of one end-to-end computation
+     */
+    public static final class Report {
+        /** Area of the city in km² */
+        public final double area;
+        public final long receiverCount;
+        /** Number of vertical cut profiles between the sources and the receivers, direct and reflected */
+        public final long pathCount;
+        /** Time of the computation, from the initialisation to the end of the database writing */
+        public final double seconds;
+        /** Sum of the peak usage of the heap memory pools, in bytes */
+        public final long peakHeap;
+        /** Highest number of results waiting for the database writers */
+        public final long writerPeakQueue;
+        /** Time spent writing the remaining results once all the receivers have been computed */
+        public final double writerDrainSeconds;
+
+        public Report(double area, long receiverCount, long pathCount, double seconds, long peakHeap,
+                      long writerPeakQueue, double writerDrainSeconds) {
+            this.area = area;
+            this.receiverCount = receiverCount;
+            this.pathCount = pathCount;
+            this.seconds = seconds;
+            this.peakHeap = peakHeap;
+            this.writerPeakQueue = writerPeakQueue;
+            this.writerDrainSeconds = writerDrainSeconds;
+        }
+
+        public double getReceiversPerSecond() {
+            return receiverCount / seconds;
+        }
+
+        public double getPathsPerSecond() {
+            return pathCount / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.2f km²: %d receivers %d paths in %.1f s, %.1f receivers/s," +
+                            " %.0f paths/s, peak heap %d MB, writer peak queue %d, writer drain %.2f s", area,
+                    receiverCount, pathCount, seconds, getReceiversPerSecond(), getPathsPerSecond(),
+                    peakHeap / 1048576L, writerPeakQueue, writerDrainSeconds);
+        }
+    }
+
+    /**
+     * Count the receivers and the paths given to the default output, and measure the time of its stop
+     */
+    private static final class CountingComputeRaysOutFactory implements NoiseMapByReceiverMaker.IComputeRaysOutFactory {
+        private final DefaultCutPlaneProcessing delegate;
+        private final AtomicLong receiverCount = new AtomicLong();
+        private final AtomicLong pathCount = new AtomicLong();
+        private long stopNanos = 0;
+
+        CountingComputeRaysOutFactory(DefaultCutPlaneProcessing delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void initialize(Connection connection, NoiseMapByReceiverMaker noiseMapByReceiverMaker)
+                throws SQLException {
+            delegate.initialize(connection, noiseMapByReceiverMaker);
+        }
+
+        @Override
+        public void start(ProgressVisitor progressLogger) throws SQLException {
+            delegate.start(progressLogger);
+        }
+
+        @Override
+        public void stop() throws SQLException {
+            long start = System.nanoTime();
+            delegate.stop();
+            stopNanos = System.nanoTime() - start;
+        }
+
+        @Override
+        public CutPlaneVisitorFactory create(SceneWithEmission cellData) {
+            CutPlaneVisitorFactory cutPlaneVisitorFactory = delegate.create(cellData);
+            return visitor -> new CountingCutPlaneVisitor(cutPlaneVisitorFactory.subProcess(visitor),
+                    receiverCount, pathCount);
+        }
+    }
+
+    private static final class CountingCutPlaneVisitor implements CutPlaneVisitor {
+        private final CutPlaneVisitor delegate;
+        private final AtomicLong receiverCount;
+        private final AtomicLong pathCount;
+        // merged into pathCount at the end of each receiver, to not share a counter between the threads
+        private long receiverPathCount = 0;
+
+        CountingCutPlaneVisitor(CutPlaneVisitor delegate, AtomicLong receiverCount, AtomicLong pathCount) {
+            this.delegate = delegate;
+            this.receiverCount = receiverCount;
+            this.pathCount = pathCount;
+        }
+
+        @Override
+        public PathSearchStrategy onNewCutPlane(CutProfile cutProfile) {
+            receiverPathCount++;
+            return delegate.onNewCutPlane(cutProfile);
+        }
+
+        @Override
+        public void startReceiver(PathFinder.ReceiverPointInfo receiver,
+                                  Collection<PathFinder.SourcePointInfo> sourceList,
+                                  AtomicInteger cutProfileCount) {
+            delegate.startReceiver(receiver, sourceList, cutProfileCount);
+        }
+
+        @Override
+        public void finalizeReceiver(PathFinder.ReceiverPointInfo receiver) {
+            delegate.finalizeReceiver(receiver);
+            receiverCount.incrementAndGet();
+            pathCount.addAndGet(receiverPathCount);
+            receiverPathCount = 0;
+        }
+    }
+
+    private NoiseMapEndToEnd() {
+    }
+
+    /**
+     * @param area Area in km²
+     * @return City of the yardstick covering the area
+     */
+    public static SyntheticCity createCity(double area) {
+        return new SyntheticCity(BenchmarkSettings.SEED, Math.sqrt(area * 1e6), BUILDING_DENSITY, TERRAIN_ROUGHNESS,
+                BenchmarkSettings.RECEIVER_SPACING);
+    }
+
+    /**
+     * Write the city and compute the noise map of its receivers
+     * @param dataSource Spatial database
+     * @param city Input data
+     * @param progressVisitor Progression
+     * @return Measures of the computation
+     * @throws SQLException Error while writing or computing the tables
+     */
+    public static Report run(DataSource dataSource, SyntheticCity city, ProgressVisitor progressVisitor)
+            throws SQLException {
+        try (Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            SyntheticCityDatabase.write(connection, city);
+        }
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker(
+                SyntheticCityDatabase.BUILDINGS_TABLE, SyntheticCityDatabase.ROADS_TABLE,
+                SyntheticCityDatabase.RECEIVERS_TABLE);
+        noiseMapByReceiverMaker.setDemTable(SyntheticCityDatabase.DEM_TABLE);
+        noiseMapByReceiverMaker.setSoilTableName(SyntheticCityDatabase.GROUND_TABLE);
+        noiseMapByReceiverMaker.setMaximumPropagationDistance(MAXIMUM_PROPAGATION_DISTANCE);
+        noiseMapByReceiverMaker.setSoundReflectionOrder(REFLECTION_ORDER);
+        noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+        noiseMapByReceiverMaker.setComputeVerticalDiffraction(true);
+        DefaultCutPlaneProcessing cutPlaneProcessing = new DefaultCutPlaneProcessing(
+                noiseMapByReceiverMaker.getNoiseMapDatabaseParameters(), noiseMapByReceiverMaker.exitWhenDone,
+                noiseMapByReceiverMaker.aborted);
+        CountingComputeRaysOutFactory countingFactory = new CountingComputeRaysOutFactory(cutPlaneProcessing);
+        noiseMapByReceiverMaker.setComputeRaysOutFactory(countingFactory);
+
+        System.gc();
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            memoryPool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        noiseMapByReceiverMaker.run(dataSource, progressVisitor);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                peakHeap += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        long writerPeakQueue = 0;
+        for (ResultsCache resultsCache : cutPlaneProcessing.getResultsCaches()) {
+            writerPeakQueue = Math.max(writerPeakQueue, Math.max(resultsCache.receiverLevels.getHighWaterMark(),
+                    resultsCache.cnossosPaths.getHighWaterMark()));
+        }
+        return new Report(city.getWidth() * city.getWidth() / 1e6, countingFactory.receiverCount.get(),
+                countingFactory.pathCount.get(), seconds, peakHeap, writerPeakQueue,
+                countingFactory.stopNanos / 1e9);
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Logger logger = LoggerFactory.getLogger(NoiseMapEndToEnd.class);
+        double[] areas = STANDARD_AREAS;
+        if (args.length > 0) {
+            areas = new double[args.length];
+            for (int i = 0; i < args.length; i++) {
+                areas[i] = Double.parseDouble(args[i]);
+            }
+        }
+        File workingDirectory = new File("target").getAbsoluteFile();
+        if (!workingDirectory.exists() && !workingDirectory.mkdirs()) {
+            logger.error("Cannot create working directory {}", workingDirectory);
+            return;
+        }
+        for (double area : areas) {
+            SyntheticCity city = createCity(area);
+            logger.info(String.format(Locale.ROOT, "City of %.1f km², %d buildings, %d roads, %d receivers", area,
+                    city.getBuildings().size(), city.getRoads().size(), city.getReceivers().size()));
+            File databaseFile = new File(workingDirectory, String.format(Locale.ROOT, "end_to_end_%s_km2",
+                    Double.toString(area).replace('.', '_')));
+            File databaseStorage = new File(databaseFile.getPath() + ".mv.db");
+            if (databaseStorage.exists() && !databaseStorage.delete()) {
+                logger.error("Cannot delete the previous database {}", databaseStorage);
+                return;
+            }
+            Properties properties = new Properties();
+            properties.setProperty(H2GISDBFactory.JDBC_URL, "jdbc:h2:" + databaseFile.getPath());
+            properties.setProperty(H2GISDBFactory.JDBC_USER, "sa");
+            properties.setProperty(H2GISDBFactory.JDBC_PASSWORD, "sa");
+            DataSource dataSource = H2GISDBFactory.createDataSource(properties, true);
+            Report report = run(dataSource, city, new RootProgressVisitor(1, true, 10));
+            logger.info(report.toString());
+        }
+    }
+}
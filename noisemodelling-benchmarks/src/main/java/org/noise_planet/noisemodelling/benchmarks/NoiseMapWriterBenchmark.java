@@ -0,0 +1,130 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
+import org.noise_planet.noisemodelling.jdbc.output.NoiseMapWriter;
+import org.noise_planet.noisemodelling.jdbc.output.ResultsCache;
+import org.noise_planet.noisemodelling.pathfinder.PathFinder;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throughput of the receivers levels written into an in-memory H2GIS database by {@link NoiseMapWriter}. The levels of
+ * a synthetic city are pushed in the results cache while the writer thread inserts them in the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NoiseMapWriterBenchmark {
+    /** Number of levels written by one benchmark invocation */
+    private static final int LEVEL_COUNT = 100_000;
+    private static final int SOURCES_PER_RECEIVER = 50;
+    private Connection connection;
+    private NoiseMapByReceiverMaker noiseMapByReceiverMaker;
+    private ReceiverNoiseLevel[] levels;
+    private ExecutorService executorService;
+    private int databaseIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        SyntheticCity city = new SyntheticCity(BenchmarkSettings.SEED, 1000, 0.6, 0,
+                BenchmarkSettings.RECEIVER_SPACING);
+        List<Coordinate> sources = city.getSources();
+        List<Coordinate> receivers = city.getReceivers();
+        levels = new ReceiverNoiseLevel[LEVEL_COUNT];
+        double[] attenuation = new double[] {-40, -42, -45, -47, -50, -55, -62, -75};
+        // each receiver has SOURCES_PER_RECEIVER consecutive levels, as produced by the computation threads
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            int receiver = (i / SOURCES_PER_RECEIVER) % receivers.size();
+            int source = (i * 7919) % sources.size();
+            levels[i] = new ReceiverNoiseLevel(
+                    new PathFinder.SourcePointInfo(source, source + 1, sources.get(source), 1.0, new Orientation()),
+                    new PathFinder.ReceiverPointInfo(receiver, receiver + 1, receivers.get(receiver)), "D",
+                    attenuation);
+        }
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                "mem:noiseMapWriterBenchmark" + (databaseIndex++), true, ""));
+        // the writer only needs the projection of the input tables
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON, 2154), HEIGHT REAL)");
+            st.execute("CREATE TABLE SOURCES(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, 2154))");
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, 2154))");
+            st.execute("INSERT INTO SOURCES(THE_GEOM) VALUES ('SRID=2154;POINTZ(0 0 0.05)')");
+            st.execute("INSERT INTO RECEIVERS(THE_GEOM) VALUES ('SRID=2154;POINTZ(1000 1000 4)')");
+        }
+        noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS", "SOURCES", "RECEIVERS");
+        noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws Exception {
+        connection.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LEVEL_COUNT)
+    public long writeReceiverLevels() throws Exception {
+        ResultsCache resultsCache = new ResultsCache();
+        AtomicBoolean exitWhenDone = new AtomicBoolean(false);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        NoiseMapWriter noiseMapWriter = new NoiseMapWriter(connection, noiseMapByReceiverMaker, resultsCache,
+                exitWhenDone, aborted);
+        noiseMapWriter.setCreateKeysOnExit(false);
+        noiseMapWriter.init();
+        Future<Boolean> writer = executorService.submit(noiseMapWriter);
+        for (ReceiverNoiseLevel level : levels) {
+            resultsCache.receiverLevels.put(level, aborted::get);
+        }
+        exitWhenDone.set(true);
+        resultsCache.signalWriter();
+        writer.get();
+        return resultsCache.totalRaysInserted.get();
+    }
+}
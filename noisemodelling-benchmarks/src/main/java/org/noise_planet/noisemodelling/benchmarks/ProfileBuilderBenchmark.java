@@ -0,0 +1,84 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vertical cut of the buildings, ground and topography between a source and a receiver
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBuilderBenchmark {
+    @Param({"1000"})
+    public double width;
+    @Param({"0.6"})
+    public double buildingDensity;
+    @Param({"0", "20"})
+    public double terrainRoughness;
+    @Param({"500"})
+    public double maximumDistance;
+
+    private ProfileBuilder profileBuilder;
+    private Coordinate[][] pairs;
+    private int pairIndex = 0;
+    private final List<Coordinate> topographicPoints = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        SyntheticCity city = new SyntheticCity(BenchmarkSettings.SEED, width, buildingDensity, terrainRoughness,
+                BenchmarkSettings.RECEIVER_SPACING);
+        profileBuilder = city.createProfileBuilder();
+        pairs = city.createSourceReceiverPairs(BenchmarkSettings.PAIR_COUNT, maximumDistance,
+                BenchmarkSettings.SEED).toArray(new Coordinate[0][]);
+    }
+
+    private Coordinate[] nextPair() {
+        Coordinate[] pair = pairs[pairIndex];
+        pairIndex = (pairIndex + 1) % pairs.length;
+        return pair;
+    }
+
+    @Benchmark
+    public CutProfile getProfile() {
+        Coordinate[] pair = nextPair();
+        return profileBuilder.getProfile(pair[0], pair[1], 0, false);
+    }
+
+    @Benchmark
+    public void fetchTopographicProfile(Blackhole blackhole) {
+        Coordinate[] pair = nextPair();
+        topographicPoints.clear();
+        blackhole.consume(profileBuilder.fetchTopographicProfile(topographicPoints, pair[0], pair[1], false));
+        blackhole.consume(topographicPoints);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossos;
+import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CNOSSOS-EU road emission of the roads of a synthetic city, one evaluation per road and octave band
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoadCnossosBenchmark {
+    private static final int[] FREQUENCIES = new int[] {63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    private RoadCnossosParameters[] parameters;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        SyntheticCity city = new SyntheticCity(BenchmarkSettings.SEED, 1000, 0.6, 20,
+                BenchmarkSettings.RECEIVER_SPACING);
+        List<RoadCnossosParameters> roadParameters = new ArrayList<>();
+        for (SyntheticCity.Road road : city.getRoads()) {
+            double length = road.geometry.getLength();
+            double slope = length > 0 ? 100 * (road.geometry.getCoordinateN(1).z -
+                    road.geometry.getCoordinateN(0).z) / length : 0;
+            for (int frequency : FREQUENCIES) {
+                RoadCnossosParameters parameter = new RoadCnossosParameters(road.speed, road.speed, road.speed,
+                        road.speed, road.speed, road.lightVehiclesPerHour, 0, road.heavyVehiclesPerHour, 0, 0,
+                        frequency, 15, "NL05", 0, 0, 200, 1);
+                parameter.setSlopePercentage(slope);
+                roadParameters.add(parameter);
+            }
+        }
+        parameters = roadParameters.toArray(new RoadCnossosParameters[0]);
+    }
+
+    @Benchmark
+    public double evaluate() throws IOException {
+        RoadCnossosParameters parameter = parameters[index];
+        index = (index + 1) % parameters.length;
+        return RoadCnossos.evaluate(parameter);
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic city generated from a seed, used as the input of the benchmarks. The city is a grid of square blocks
+ * separated by streets. Each block is split into lots that receive a building depending on the building density,
+ * some blocks are parks with an absorbing ground. The terrain is a procedural value noise whose amplitude is the
+ * terrain roughness. The roads follow the streets and the receivers are on a regular grid outside the buildings.
+ * The same parameters always produce the same city.
+ */
+public class SyntheticCity {
+    /** Distance between two streets in meters */
+    public static final double BLOCK_SIZE = 100;
+    public static final double STREET_WIDTH = 20;
+    /** Number of lots along one side of a block */
+    public static final int LOTS_PER_BLOCK_SIDE = 4;
+    /** One street on MAIN_ROAD_INTERVAL is a main road with a higher traffic */
+    public static final int MAIN_ROAD_INTERVAL = 4;
+    public static final double PARK_PROBABILITY = 0.1;
+    public static final double TOPOGRAPHY_SPACING = 25;
+    /** Distance between the point sources along the roads */
+    public static final double SOURCE_SPACING = 10;
+    public static final double SOURCE_HEIGHT = 0.05;
+    public static final double RECEIVER_HEIGHT = 4;
+    private static final double[] TERRAIN_WAVELENGTHS = new double[] {800, 200, 50};
+
+    private final long seed;
+    private final double width;
+    private final double buildingDensity;
+    private final double terrainRoughness;
+    private final double receiverSpacing;
+    private final GeometryFactory factory = new GeometryFactory();
+    private final List<Building> buildings = new ArrayList<>();
+    private final List<Road> roads = new ArrayList<>();
+    private final List<Polygon> parks = new ArrayList<>();
+    private final List<Coordinate> sources = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+
+    /**
+     * Building footprint and height
+     */
+    public static final class Building {
+        public final int id;
+        public final Polygon footprint;
+        public final double height;
+
+        public Building(int id, Polygon footprint, double height) {
+            this.id = id;
+            this.footprint = footprint;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Road section between two crossroads with its hourly traffic
+     */
+    public static final class Road {
+        public final int id;
+        public final LineString geometry;
+        public final double lightVehiclesPerHour;
+        public final double heavyVehiclesPerHour;
+        public final double speed;
+
+        public Road(int id, LineString geometry, double lightVehiclesPerHour, double heavyVehiclesPerHour,
+                    double speed) {
+            this.id = id;
+            this.geometry = geometry;
+            this.lightVehiclesPerHour = lightVehiclesPerHour;
+            this.heavyVehiclesPerHour = heavyVehiclesPerHour;
+            this.speed = speed;
+        }
+    }
+
+    /**
+     * @param seed Random seed, the same seed produces the same city
+     * @param width Side of the square city in meters
+     * @param buildingDensity Probability of a lot to have a building, between 0 and 1
+     * @param terrainRoughness Amplitude of the terrain elevation in meters, 0 for a flat city
+     * @param receiverSpacing Distance between the receivers of the grid in meters
+     */
+    public SyntheticCity(long seed, double width, double buildingDensity, double terrainRoughness,
+                         double receiverSpacing) {
+        if(width < BLOCK_SIZE) {
+            throw new IllegalArgumentException("The city width must be at least " + BLOCK_SIZE + " m");
+        }
+        if(buildingDensity < 0 || buildingDensity > 1) {
+            throw new IllegalArgumentException("The building density must be between 0 and 1");
+        }
+        if(!(receiverSpacing > 0)) {
+            throw new IllegalArgumentException("The receiver spacing must be greater than 0");
+        }
+        this.seed = seed;
+        this.width = width;
+        this.buildingDensity = buildingDensity;
+        this.terrainRoughness = terrainRoughness;
+        this.receiverSpacing = receiverSpacing;
+        Random random = new Random(seed);
+        generateBlocks(random);
+        generateRoads(random);
+        generateReceivers();
+    }
+
+    private void generateBlocks(Random random) {
+        int blockCount = (int) (width / BLOCK_SIZE);
+        double lotSize = (BLOCK_SIZE - STREET_WIDTH) / LOTS_PER_BLOCK_SIDE;
+        for (int blockY = 0; blockY < blockCount; blockY++) {
+            for (int blockX = 0; blockX < blockCount; blockX++) {
+                double minX = blockX * BLOCK_SIZE + STREET_WIDTH / 2;
+                double minY = blockY * BLOCK_SIZE + STREET_WIDTH / 2;
+                if(random.nextDouble() < PARK_PROBABILITY) {
+                    parks.add(rectangle(minX, minY, minX + BLOCK_SIZE - STREET_WIDTH,
+                            minY + BLOCK_SIZE - STREET_WIDTH));
+                    continue;
+                }
+                for (int lotY = 0; lotY < LOTS_PER_BLOCK_SIDE; lotY++) {
+                    for (int lotX = 0; lotX < LOTS_PER_BLOCK_SIDE; lotX++) {
+                        // always draw the random values so the density does not change the rest of the city
+                        boolean built = random.nextDouble() < buildingDensity;
+                        double[] margins = new double[] {1 + random.nextDouble() * 3, 1 + random.nextDouble() * 3,
+                                1 + random.nextDouble() * 3, 1 + random.nextDouble() * 3};
+                        int floors = 2 + random.nextInt(9);
+                        if(built) {
+                            double lotMinX = minX + lotX * lotSize;
+                            double lotMinY = minY + lotY * lotSize;
+                            buildings.add(new Building(buildings.size() + 1, rectangle(lotMinX + margins[0],
+                                    lotMinY + margins[1], lotMinX + lotSize - margins[2],
+                                    lotMinY + lotSize - margins[3]), floors * 3.0));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void generateRoads(Random random) {
+        int lineCount = (int) (width / BLOCK_SIZE);
+        for (int line = 0; line <= lineCount; line++) {
+            boolean mainRoad = line % MAIN_ROAD_INTERVAL == 0;
+            for (int section = 0; section < lineCount; section++) {
+                for (int direction = 0; direction < 2; direction++) {
+                    double factor = 0.5 + random.nextDouble();
+                    double lightVehicles = (mainRoad ? 1500 : 300) * factor;
+                    double heavyVehicles = (mainRoad ? 150 : 10) * factor;
+                    double speed = mainRoad ? 50 : 30;
+                    Coordinate start;
+                    Coordinate end;
+                    if(direction == 0) {
+                        start = new Coordinate(section * BLOCK_SIZE, line * BLOCK_SIZE);
+                        end = new Coordinate((section + 1) * BLOCK_SIZE, line * BLOCK_SIZE);
+                    } else {
+                        start = new Coordinate(line * BLOCK_SIZE, section * BLOCK_SIZE);
+                        end = new Coordinate(line * BLOCK_SIZE, (section + 1) * BLOCK_SIZE);
+                    }
+                    start.z = getGroundLevel(start.x, start.y);
+                    end.z = getGroundLevel(end.x, end.y);
+                    roads.add(new Road(roads.size() + 1, factory.createLineString(new Coordinate[] {start, end}),
+                            lightVehicles, heavyVehicles, speed));
+                    for (double distance = SOURCE_SPACING / 2; distance < BLOCK_SIZE; distance += SOURCE_SPACING) {
+                        double fraction = distance / BLOCK_SIZE;
+                        double x = start.x + (end.x - start.x) * fraction;
+                        double y = start.y + (end.y - start.y) * fraction;
+                        sources.add(new Coordinate(x, y, getGroundLevel(x, y) + SOURCE_HEIGHT));
+                    }
+                }
+            }
+        }
+    }
+
+    private void generateReceivers() {
+        STRtree buildingIndex = new STRtree();
+        for (Building building : buildings) {
+            buildingIndex.insert(building.footprint.getEnvelopeInternal(), building);
+        }
+        for (double y = receiverSpacing / 2; y < width; y += receiverSpacing) {
+            for (double x = receiverSpacing / 2; x < width; x += receiverSpacing) {
+                // the footprints are rectangles, the envelope test is enough
+                if(buildingIndex.query(new Envelope(x, x, y, y)).isEmpty()) {
+                    receivers.add(new Coordinate(x, y, getGroundLevel(x, y) + RECEIVER_HEIGHT));
+                }
+            }
+        }
+    }
+
+    private Polygon rectangle(double minX, double minY, double maxX, double maxY) {
+        return factory.createPolygon(new Coordinate[] {new Coordinate(minX, minY), new Coordinate(maxX, minY),
+                new Coordinate(maxX, maxY), new Coordinate(minX, maxY), new Coordinate(minX, minY)});
+    }
+
+    /**
+     * @return Pseudo random value between -1 and 1 of a lattice node
+     */
+    private double latticeValue(long ix, long iy, int octave) {
+        long hash = seed * 0x9E3779B97F4A7C15L + ix * 0xC2B2AE3D27D4EB4FL + iy * 0x165667B19E3779F9L + octave;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (hash >>> 11) * 0x1.0p-52 - 1;
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    /**
+     * Ground elevation, sum of value noise octaves
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Elevation in meters, between -terrainRoughness and terrainRoughness
+     */
+    public double getGroundLevel(double x, double y) {
+        if(terrainRoughness == 0) {
+            return 0;
+        }
+        double value = 0;
+        double amplitude = 1;
+        double amplitudeSum = 0;
+        for (int octave = 0; octave < TERRAIN_WAVELENGTHS.length; octave++) {
+            double u = x / TERRAIN_WAVELENGTHS[octave];
+            double v = y / TERRAIN_WAVELENGTHS[octave];
+            long ix = (long) Math.floor(u);
+            long iy = (long) Math.floor(v);
+            double fx = smooth(u - ix);
+            double fy = smooth(v - iy);
+            double bottom = latticeValue(ix, iy, octave) * (1 - fx) + latticeValue(ix + 1, iy, octave) * fx;
+            double top = latticeValue(ix, iy + 1, octave) * (1 - fx) + latticeValue(ix + 1, iy + 1, octave) * fx;
+            value += amplitude * (bottom * (1 - fy) + top * fy);
+            amplitudeSum += amplitude;
+            amplitude /= 2;
+        }
+        return terrainRoughness * value / amplitudeSum;
+    }
+
+    /**
+     * @return Digital elevation model, points of a regular grid of TOPOGRAPHY_SPACING meters covering the city
+     */
+    public List<Coordinate> getTopographicPoints() {
+        List<Coordinate> topographicPoints = new ArrayList<>();
+        for (double y = 0; y <= width + TOPOGRAPHY_SPACING / 2; y += TOPOGRAPHY_SPACING) {
+            for (double x = 0; x <= width + TOPOGRAPHY_SPACING / 2; x += TOPOGRAPHY_SPACING) {
+                topographicPoints.add(new Coordinate(x, y, getGroundLevel(x, y)));
+            }
+        }
+        return topographicPoints;
+    }
+
+    /**
+     * @return Feed a new profile builder with the buildings, the topography and the parks ground
+     */
+    public ProfileBuilder createProfileBuilder() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (Building building : buildings) {
+            profileBuilder.addBuilding(building.footprint, building.height, building.id);
+        }
+        if(terrainRoughness != 0) {
+            for (Coordinate topographicPoint : getTopographicPoints()) {
+                profileBuilder.addTopographicPoint(topographicPoint);
+            }
+        }
+        for (Polygon park : parks) {
+            profileBuilder.addGroundEffect(park, 1.0);
+        }
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    /**
+     * Draw source and receiver couples, the source is chosen near the receiver
+     * @param count Number of couples
+     * @param maximumDistance Maximum distance between the source and the receiver
+     * @param pairSeed Random seed of the draw
+     * @return Source and receiver coordinates of each couple
+     */
+    public List<Coordinate[]> createSourceReceiverPairs(int count, double maximumDistance, long pairSeed) {
+        Random random = new Random(pairSeed);
+        List<Coordinate[]> pairs = new ArrayList<>(count);
+        if(receivers.isEmpty()) {
+            return pairs;
+        }
+        STRtree sourceIndex = new STRtree();
+        for (Coordinate source : sources) {
+            sourceIndex.insert(new Envelope(source), source);
+        }
+        while (pairs.size() < count) {
+            Coordinate receiver = receivers.get(random.nextInt(receivers.size()));
+            Envelope envelope = new Envelope(receiver);
+            envelope.expandBy(maximumDistance);
+            List<?> candidates = sourceIndex.query(envelope);
+            if(candidates.isEmpty()) {
+                continue;
+            }
+            Coordinate source = (Coordinate) candidates.get(random.nextInt(candidates.size()));
+            if(source.distance(receiver) <= maximumDistance) {
+                pairs.add(new Coordinate[] {source, receiver});
+            }
+        }
+        return pairs;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getBuildingDensity() {
+        return buildingDensity;
+    }
+
+    public double getTerrainRoughness() {
+        return terrainRoughness;
+    }
+
+    public double getReceiverSpacing() {
+        return receiverSpacing;
+    }
+
+    public List<Building> getBuildings() {
+        return Collections.unmodifiableList(buildings);
+    }
+
+    public List<Road> getRoads() {
+        return Collections.unmodifiableList(roads);
+    }
+
+    /**
+     * @return Parks footprint, the ground factor of the parks is 1
+     */
+    public List<Polygon> getParks() {
+        return Collections.unmodifiableList(parks);
+    }
+
+    /**
+     * @return Point sources along the roads, the Z is the height above sea level
+     */
+    public List<Coordinate> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * @return Receivers outside the buildings, the Z is the height above sea level
+     */
+    public List<Coordinate> getReceivers() {
+        return Collections.unmodifiableList(receivers);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Write a {@link SyntheticCity} as a complete NoiseModelling input set, the tables follow the input tables
+ * documentation:
+ * <ul>
+ *     <li>BUILDINGS(PK, THE_GEOM POLYGON, HEIGHT)</li>
+ *     <li>DEM(PK, THE_GEOM POINTZ), altitude of the ground</li>
+ *     <li>GROUND(PK, THE_GEOM POLYGON, G), the parks, the remaining area has the default ground factor</li>
+ *     <li>ROADS(PK, THE_GEOM LINESTRING, LV_D, LV_E, LV_N, HGV_D, HGV_E, HGV_N, LV_SPD_D ... HGV_SPD_N, PVMT), the
+ *     day traffic of the city and a lower evening and night traffic</li>
+ *     <li>RECEIVERS(PK, THE_GEOM POINTZ), the Z is the height above the ground</li>
+ * </ul>
+ * The existing tables are replaced.
+ */
+public class SyntheticCityDatabase {
+    /** Lambert 93, the coordinates of the city are in meters */
+    public static final int SRID = 2154;
+    public static final String BUILDINGS_TABLE = "BUILDINGS";
+    public static final String DEM_TABLE = "DEM";
+    public static final String GROUND_TABLE = "GROUND";
+    public static final String ROADS_TABLE = "ROADS";
+    public static final String RECEIVERS_TABLE = "RECEIVERS";
+    /** Traffic of the evening relative to the traffic of the day */
+    public static final double EVENING_TRAFFIC_RATIO = 0.5;
+    /** Traffic of the night relative to the traffic of the day */
+    public static final double NIGHT_TRAFFIC_RATIO = 0.15;
+    /** CNOSSOS road pavement of all the roads */
+    public static final String PAVEMENT = "NL05";
+    private static final String[] PERIODS = new String[] {"D", "E", "N"};
+    private static final int BATCH_SIZE = 1000;
+    private static final GeometryFactory FACTORY = new GeometryFactory(new PrecisionModel(), SRID);
+
+    private SyntheticCityDatabase() {
+    }
+
+    /**
+     * Create the input tables of the city
+     * @param connection Connection to a spatial database
+     * @param city City to write
+     * @throws SQLException Error while creating the tables
+     */
+    public static void write(Connection connection, SyntheticCity city) throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            for (String tableName : new String[] {BUILDINGS_TABLE, DEM_TABLE, GROUND_TABLE, ROADS_TABLE,
+                    RECEIVERS_TABLE}) {
+                st.execute("DROP TABLE IF EXISTS " + tableName);
+            }
+            st.execute("CREATE TABLE " + BUILDINGS_TABLE + "(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON, " +
+                    SRID + "), HEIGHT REAL)");
+            st.execute("CREATE TABLE " + DEM_TABLE + "(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, " + SRID +
+                    "))");
+            st.execute("CREATE TABLE " + GROUND_TABLE + "(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON, " +
+                    SRID + "), G REAL)");
+            StringBuilder roadsQuery = new StringBuilder("CREATE TABLE " + ROADS_TABLE +
+                    "(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(LINESTRING, " + SRID + ")");
+            for (String field : new String[] {"LV_", "HGV_", "LV_SPD_", "HGV_SPD_"}) {
+                for (String period : PERIODS) {
+                    roadsQuery.append(", ").append(field).append(period).append(" REAL");
+                }
+            }
+            roadsQuery.append(", PVMT VARCHAR)");
+            st.execute(roadsQuery.toString());
+            st.execute("CREATE TABLE " + RECEIVERS_TABLE + "(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, " +
+                    SRID + "))");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + BUILDINGS_TABLE +
+                " VALUES (?, ?, ?)")) {
+            int batchRows = 0;
+            for (SyntheticCity.Building building : city.getBuildings()) {
+                ps.setInt(1, building.id);
+                ps.setObject(2, copy(building.footprint));
+                ps.setDouble(3, building.height);
+                ps.addBatch();
+                batchRows = executeBatch(ps, batchRows);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + DEM_TABLE + " VALUES (?, ?)")) {
+            int batchRows = 0;
+            List<Coordinate> topographicPoints = city.getTopographicPoints();
+            for (int i = 0; i < topographicPoints.size(); i++) {
+                ps.setInt(1, i + 1);
+                ps.setObject(2, FACTORY.createPoint(topographicPoints.get(i)));
+                ps.addBatch();
+                batchRows = executeBatch(ps, batchRows);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + GROUND_TABLE +
+                " VALUES (?, ?, 1)")) {
+            List<Polygon> parks = city.getParks();
+            for (int i = 0; i < parks.size(); i++) {
+                ps.setInt(1, i + 1);
+                ps.setObject(2, copy(parks.get(i)));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + ROADS_TABLE + " VALUES (?, ?" +
+                ", ?".repeat(PERIODS.length * 4) + ", ?)")) {
+            int batchRows = 0;
+            double[] ratios = new double[] {1, EVENING_TRAFFIC_RATIO, NIGHT_TRAFFIC_RATIO};
+            for (SyntheticCity.Road road : city.getRoads()) {
+                int parameterIndex = 1;
+                ps.setInt(parameterIndex++, road.id);
+                // the Z of the sources is relative to the ground, the altitude of the road comes from the DEM
+                Coordinate[] coordinates = road.geometry.getCoordinates();
+                Coordinate[] coordinates2D = new Coordinate[coordinates.length];
+                for (int i = 0; i < coordinates.length; i++) {
+                    coordinates2D[i] = new Coordinate(coordinates[i].x, coordinates[i].y);
+                }
+                ps.setObject(parameterIndex++, FACTORY.createLineString(coordinates2D));
+                for (double ratio : ratios) {
+                    ps.setDouble(parameterIndex++, road.lightVehiclesPerHour * ratio);
+                }
+                for (double ratio : ratios) {
+                    ps.setDouble(parameterIndex++, road.heavyVehiclesPerHour * ratio);
+                }
+                for (int speedField = 0; speedField < 2; speedField++) {
+                    for (int period = 0; period < PERIODS.length; period++) {
+                        ps.setDouble(parameterIndex++, road.speed);
+                    }
+                }
+                ps.setString(parameterIndex, PAVEMENT);
+                ps.addBatch();
+                batchRows = executeBatch(ps, batchRows);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + RECEIVERS_TABLE +
+                " VALUES (?, ?)")) {
+            int batchRows = 0;
+            List<Coordinate> receivers = city.getReceivers();
+            for (int i = 0; i < receivers.size(); i++) {
+                Coordinate receiver = receivers.get(i);
+                ps.setInt(1, i + 1);
+                ps.setObject(2, FACTORY.createPoint(new Coordinate(receiver.x, receiver.y,
+                        SyntheticCity.RECEIVER_HEIGHT)));
+                ps.addBatch();
+                batchRows = executeBatch(ps, batchRows);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * @return Copy of the geometry with the SRID of the tables
+     */
+    private static Geometry copy(Geometry geometry) {
+        return FACTORY.createGeometry(geometry);
+    }
+
+    private static int executeBatch(PreparedStatement ps, int batchRows) throws SQLException {
+        if(++batchRows >= BATCH_SIZE) {
+            ps.executeBatch();
+            return 0;
+        }
+        return batchRows;
+    }
+}
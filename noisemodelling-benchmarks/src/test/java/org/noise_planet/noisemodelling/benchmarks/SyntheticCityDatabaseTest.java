@@ -0,0 +1,77 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.Test;
+import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyntheticCityDatabaseTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        SyntheticCity city = new SyntheticCity(42, 300, 0.5, 10, 20);
+        try (Connection connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                SyntheticCityDatabaseTest.class.getSimpleName(), true, ""))) {
+            SyntheticCityDatabase.write(connection, city);
+            assertEquals(city.getBuildings().size(), JDBCUtilities.getRowCount(connection, "BUILDINGS"));
+            assertEquals(city.getTopographicPoints().size(), JDBCUtilities.getRowCount(connection, "DEM"));
+            assertEquals(city.getParks().size(), JDBCUtilities.getRowCount(connection, "GROUND"));
+            assertEquals(city.getRoads().size(), JDBCUtilities.getRowCount(connection, "ROADS"));
+            assertEquals(city.getReceivers().size(), JDBCUtilities.getRowCount(connection, "RECEIVERS"));
+            assertEquals(SyntheticCityDatabase.SRID, GeometryTableUtilities.getSRID(connection, "BUILDINGS"));
+            try (Statement st = connection.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT MIN(ST_Z(THE_GEOM)), MAX(ST_Z(THE_GEOM))" +
+                        " FROM RECEIVERS")) {
+                    assertTrue(rs.next());
+                    assertEquals(SyntheticCity.RECEIVER_HEIGHT, rs.getDouble(1), 1e-6);
+                    assertEquals(SyntheticCity.RECEIVER_HEIGHT, rs.getDouble(2), 1e-6);
+                }
+                try (ResultSet rs = st.executeQuery("SELECT LV_D, LV_E, HGV_N, LV_SPD_D FROM ROADS WHERE PK = 1")) {
+                    assertTrue(rs.next());
+                    SyntheticCity.Road road = city.getRoads().get(0);
+                    assertEquals(road.lightVehiclesPerHour, rs.getDouble(1), 1e-3);
+                    assertEquals(road.lightVehiclesPerHour * SyntheticCityDatabase.EVENING_TRAFFIC_RATIO,
+                            rs.getDouble(2), 1e-3);
+                    assertEquals(road.heavyVehiclesPerHour * SyntheticCityDatabase.NIGHT_TRAFFIC_RATIO,
+                            rs.getDouble(3), 1e-3);
+                    assertEquals(road.speed, rs.getDouble(4), 1e-3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEndToEnd() throws Exception {
+        SyntheticCity city = new SyntheticCity(42, 200, 0.5, 5, 50);
+        DataSource dataSource = H2GISDBFactory.createDataSource(
+                SyntheticCityDatabaseTest.class.getSimpleName() + "EndToEnd", true);
+        NoiseMapEndToEnd.Report report = NoiseMapEndToEnd.run(dataSource, city, new EmptyProgressVisitor());
+        assertEquals(city.getReceivers().size(), report.receiverCount);
+        assertTrue(report.pathCount >= report.receiverCount);
+        assertTrue(report.peakHeap > 0);
+        assertTrue(report.writerPeakQueue > 0);
+        try (Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            assertTrue(JDBCUtilities.getRowCount(connection,
+                    NoiseMapDatabaseParameters.DEFAULT_RECEIVERS_LEVEL_TABLE_NAME) >= report.receiverCount);
+        }
+    }
+}
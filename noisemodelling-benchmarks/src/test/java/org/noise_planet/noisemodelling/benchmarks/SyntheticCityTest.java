@@ -0,0 +1,65 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyntheticCityTest {
+
+    @Test
+    public void testDeterministic() {
+        SyntheticCity city = new SyntheticCity(42, 500, 0.5, 10, 20);
+        SyntheticCity sameCity = new SyntheticCity(42, 500, 0.5, 10, 20);
+        assertEquals(city.getBuildings().size(), sameCity.getBuildings().size());
+        for (int i = 0; i < city.getBuildings().size(); i++) {
+            assertTrue(city.getBuildings().get(i).footprint.equalsExact(sameCity.getBuildings().get(i).footprint));
+            assertEquals(city.getBuildings().get(i).height, sameCity.getBuildings().get(i).height, 0);
+        }
+        assertEquals(city.getReceivers(), sameCity.getReceivers());
+        assertEquals(city.getGroundLevel(123, 321), sameCity.getGroundLevel(123, 321), 0);
+        List<Coordinate[]> pairs = city.createSourceReceiverPairs(10, 200, 1);
+        List<Coordinate[]> samePairs = sameCity.createSourceReceiverPairs(10, 200, 1);
+        for (int i = 0; i < pairs.size(); i++) {
+            assertEquals(pairs.get(i)[0], samePairs.get(i)[0]);
+            assertEquals(pairs.get(i)[1], samePairs.get(i)[1]);
+            assertTrue(pairs.get(i)[0].distance(pairs.get(i)[1]) <= 200);
+        }
+        SyntheticCity otherCity = new SyntheticCity(43, 500, 0.5, 10, 20);
+        assertNotEquals(city.getGroundLevel(123, 321), otherCity.getGroundLevel(123, 321));
+    }
+
+    @Test
+    public void testParameters() {
+        SyntheticCity sparse = new SyntheticCity(42, 1000, 0.2, 0, 10);
+        SyntheticCity dense = new SyntheticCity(42, 1000, 0.8, 30, 10);
+        assertTrue(dense.getBuildings().size() > 3 * sparse.getBuildings().size());
+        assertTrue(dense.getReceivers().size() < sparse.getReceivers().size());
+        // 11 lines of 10 sections in both directions
+        assertEquals(220, sparse.getRoads().size());
+        assertEquals(sparse.getRoads().size() * (int) (SyntheticCity.BLOCK_SIZE / SyntheticCity.SOURCE_SPACING),
+                sparse.getSources().size());
+        assertEquals(0, sparse.getGroundLevel(500, 500), 0);
+        for (Coordinate receiver : dense.getReceivers()) {
+            double groundLevel = dense.getGroundLevel(receiver.x, receiver.y);
+            assertTrue(Math.abs(groundLevel) <= 30);
+            assertEquals(groundLevel + SyntheticCity.RECEIVER_HEIGHT, receiver.z, 1e-9);
+        }
+        ProfileBuilder profileBuilder = dense.createProfileBuilder();
+        assertEquals(dense.getBuildings().size(), profileBuilder.getBuildings().size());
+    }
+}
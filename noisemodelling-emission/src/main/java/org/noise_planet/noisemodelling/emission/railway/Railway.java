@@ -16,6 +16,8 @@ import com.fasterxml.jackson.databind.node.NullNode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -36,6 +38,8 @@ public class Railway {
     private JsonNode railWayData;
     private JsonNode vehicleData;
     private JsonNode trainsetData;
+    /** Vehicles of the trainsets already read from the trainset data */
+    private final Map<String, Map<String, Integer>> trainsetVehicles = new HashMap<>();
 
     private static JsonNode parse(InputStream inputStream) {
         try {
@@ -55,6 +59,7 @@ public class Railway {
     }
     public void setTrainSetDataFile(String TrainsetData) {
         this.trainsetData = parse(Railway.class.getResourceAsStream(TrainsetData));
+        trainsetVehicles.clear();
     }
     public void setRailwayDataFile(String RailWayData) {
         this.railWayData = parse(Railway.class.getResourceAsStream(RailWayData));
@@ -97,20 +102,24 @@ public class Railway {
     /**
      * Get vehicle from a trainset
      * @param trainName Name of a Trainset
-     * @return a map of  vehicles , number of vehicles
+     * @return a read-only map of  vehicles , number of vehicles
      */
     public Map<String, Integer> getVehicleFromTrainset(String trainName) {
+        if (trainsetVehicles.containsKey(trainName)) {
+            return trainsetVehicles.get(trainName);
+        }
         Map<String, Integer> vehicles = null;
         for (Iterator<Map.Entry<String, JsonNode>> it = getTrainsetData().fields(); it.hasNext(); ) {
             Map.Entry<String, JsonNode> elt = it.next();
             if (trainName.equals(elt.getKey())) {
 
                 ObjectMapper mapper = new ObjectMapper();
-                vehicles = mapper.convertValue(elt.getValue(), new TypeReference<Map<String, Integer>>() {
-                });
+                vehicles = Collections.unmodifiableMap(mapper.convertValue(elt.getValue(), new TypeReference<Map<String, Integer>>() {
+                }));
                 break;
             }
         }
+        trainsetVehicles.put(trainName, vehicles);
         return vehicles;
     }
 
@@ -16,8 +16,13 @@ import org.noise_planet.noisemodelling.emission.LineSource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 import static java.lang.Math.min;
 import static org.noise_planet.noisemodelling.emission.utils.interpLinear.interpLinear;
@@ -34,11 +39,47 @@ import static org.noise_planet.noisemodelling.emission.utils.interpLinear.interp
  * part 2.3. Railway noise
  *
  * Return the dB value corresponding to the parameters
+ *
+ * The coefficients read in the data files and the source spectra of the evaluated vehicle and track combinations are
+ * kept by the instance, so an instance must not be shared between threads.
  * @author Adrien Le Bellec, Université Gustave Eiffel
  * @author Olivier Chiello, Université Gustave Eiffel
  */
 
 public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.railway.Railway {
+    /** Memory in bytes kept by the source spectra cache, the least recently used spectra are evicted above it */
+    private static final long MAXIMUM_CACHED_SPECTRA_BYTES = 4L * 1024 * 1024;
+    /** Approximate memory of a cached entry: key, map entry and the 6 spectra of 24 values */
+    private static final long CACHED_SPECTRA_ENTRY_BYTES = 96 + 48 + 16 + 6 * 8 + 6 * (16 + 24 * 8);
+    private static final int MAXIMUM_CACHED_SPECTRA = (int) (MAXIMUM_CACHED_SPECTRA_BYTES / CACHED_SPECTRA_ENTRY_BYTES);
+    /** Height of the sources in the order of {@link RailWayCnossosParameters#sourceType} */
+    private static final double[] SOURCE_HEIGHTS = new double[]{4, 0.05, 4, 0.05, 4, 4};
+    /** Wavelength of the roughness values, from 2000 mm to 0.8 mm */
+    private static final double[] LAMBDA = new double[35];
+    /** log10 of the frequencies of the emission third octave bands */
+    private static final double[] FREQ_MED_LOG = new double[24];
+    static {
+        double m = 33;
+        for (int idLambda = 0; idLambda < LAMBDA.length; idLambda++) {
+            LAMBDA[idLambda] = Math.pow(10, m / 10);
+            m--;
+        }
+        for (int idFreqMed = 0; idFreqMed < FREQ_MED_LOG.length; idFreqMed++) {
+            FREQ_MED_LOG[idFreqMed] = Math.log10(Math.pow(10, (17 + Double.valueOf(idFreqMed)) / 10));
+        }
+    }
+    // Coefficients of the data files and source spectra already computed with them
+    private final Map<String, VehicleTables> vehicleTables = new HashMap<>();
+    private final Map<Integer, double[]> railRoughnessTables = new HashMap<>();
+    private final Map<Integer, double[]> trackTransferTables = new HashMap<>();
+    private final Map<Integer, double[]> impactNoiseTables = new HashMap<>();
+    private final Map<Integer, double[]> bridgeTables = new HashMap<>();
+    private final Map<SpectrumKey, double[][]> sourceSpectra = new LinkedHashMap<SpectrumKey, double[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SpectrumKey, double[][]> eldest) {
+            return size() > MAXIMUM_CACHED_SPECTRA;
+        }
+    };
 
     public RailwayCnossos() {
     }
@@ -246,7 +287,7 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
      * @param roughnessLtot
      * @return
      */
-    private double[] checkNanValue(double[] roughnessLtot) {
+    private static double[] checkNanValue(double[] roughnessLtot) {
         int indice_NaN = 0;
         for (int i = 0; i < roughnessLtot.length-2; i++) {
             if (Double.isNaN(roughnessLtot[i])) {
@@ -259,6 +300,30 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
         return roughnessLtot;
     }
 
+    @Override
+    public void setVehicleDataFile(String VehicleData) {
+        super.setVehicleDataFile(VehicleData);
+        clearCache();
+    }
+
+    @Override
+    public void setRailwayDataFile(String RailWayData) {
+        super.setRailwayDataFile(RailWayData);
+        clearCache();
+    }
+
+    /**
+     * Forget the coefficients tables and the source spectra computed with the current data files
+     */
+    public void clearCache() {
+        vehicleTables.clear();
+        railRoughnessTables.clear();
+        trackTransferTables.clear();
+        impactNoiseTables.clear();
+        bridgeTables.clear();
+        sourceSpectra.clear();
+    }
+
     /**
      * Evaluate the sound level for one Vehicle
      * @param vehicleParameters Vehicle Noise emission parameters
@@ -268,135 +333,147 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
      * @return LWRoll / LWTraction A and B / LWAerodynamic A and B / LWBridge level in dB
      **/
     public RailWayCnossosParameters evaluate(RailwayVehicleCnossosParameters vehicleParameters, RailwayTrackCnossosParameters trackParameters) throws IOException {
+        return evaluate(vehicleParameters, trackParameters, new double[]{vehicleParameters.getNumberVehicle()})[0];
+    }
 
+    /**
+     * Evaluate the sound level for one Vehicle with several traffic flows (ex. day, evening and night).
+     * The source spectra are computed once, the number of vehicles of the vehicle parameters is ignored.
+     * @param vehicleParameters Vehicle Noise emission parameters
+     * @param trackParameters Track Noise emission parameters
+     * @param vehiclesPerHour Number of vehicles per hour of each traffic flow
+     * @return LWRoll / LWTraction A and B / LWAerodynamic A and B / LWBridge level in dB of each traffic flow
+     **/
+    public RailWayCnossosParameters[] evaluate(RailwayVehicleCnossosParameters vehicleParameters, RailwayTrackCnossosParameters trackParameters,
+                                               double[] vehiclesPerHour) throws IOException {
+        VehicleTables vehicle = getVehicleTables(vehicleParameters.getTypeVehicle());
+        // get speed of the vehicle
+        double speed = min(vehicleParameters.getSpeedVehicle(), min(trackParameters.getSpeedTrack(), trackParameters.getSpeedCommercial()));
+
+        RailWayCnossosParameters[] railWayParameters = new RailWayCnossosParameters[vehiclesPerHour.length];
+        double[][] spectra = null;
+        if (!trackParameters.getIsTunnel()) {
+            SpectrumKey key = new SpectrumKey(vehicleParameters, trackParameters, speed);
+            spectra = sourceSpectra.get(key);
+            if (spectra == null) {
+                spectra = computeSourceSpectra(vehicle, vehicleParameters, trackParameters, speed);
+                sourceSpectra.put(key, spectra);
+            }
+        }
+        for (int idFlow = 0; idFlow < vehiclesPerHour.length; idFlow++) {
+            railWayParameters[idFlow] = new RailWayCnossosParameters();
+            if (spectra != null) {
+                for (int idSource = 0; idSource < SOURCE_HEIGHTS.length; idSource++) {
+                    String sourceType = RailWayCnossosParameters.sourceType[idSource];
+                    railWayParameters[idFlow].addRailwaySource(sourceType, new LineSource(spectra[idSource].clone(),
+                            SOURCE_HEIGHTS[idSource], sourceType));
+                }
+                // %% Take into account the number of coach and the number of units
+                railWayParameters[idFlow].appendVperHour(vehiclesPerHour[idFlow] * vehicle.nbCoach, speed);
+            }
+        }
+        return railWayParameters;
+    }
+
+    /**
+     * @return Source spectra in the order of {@link RailWayCnossosParameters#sourceType}, without the traffic flow
+     */
+    private double[][] computeSourceSpectra(VehicleTables vehicle, RailwayVehicleCnossosParameters vehicleParameters,
+                                            RailwayTrackCnossosParameters trackParameters, double speed) {
         String vehicleFileVersion = vehicleParameters.getFileVersion();
         String trackFileVersion = trackParameters.getFileVersion();
-        String typeVehicle = vehicleParameters.getTypeVehicle();
-
-        double speedVehicle = vehicleParameters.getSpeedVehicle();
-        double vehPerHour = vehicleParameters.getNumberVehicle();
-        double axlesPerVeh = getAxlesPerVeh(typeVehicle);
         int runningCondition = vehicleParameters.getRunningCondition();
-
-        double speedTrack = trackParameters.getSpeedTrack();
-        double speedCommercial = trackParameters.getSpeedCommercial();
         int trackRoughnessId = trackParameters.getRailRoughness();
-        int trackTransferId = trackParameters.getTrackTransfer();
         int impactId = trackParameters.getImpactNoise();
-        int bridgeId = trackParameters.getBridgeTransfert();
-        int curvature = trackParameters.getCurvature();
-
-        // get speed of the vehicle
-        double speed = min(speedVehicle, min(speedTrack, speedCommercial));
-
-        boolean isTunnel = trackParameters.getIsTunnel();
-        // %% Take into account the number of coach and the number of units
-        // 10*log10(NbUnit*NbCoach);
-
-        RailWayCnossosParameters railWayParameters = new RailWayCnossosParameters();
+        // roughnessLtot = CNOSSOS p.19 (2.3.7)
+        double[] roughnessLtot = checkNanValue(getLWRoughness(vehicle, trackRoughnessId, impactId, speed));
+        double[][] spectra = new double[SOURCE_HEIGHTS.length][];
+        spectra[0] = getLWRolling(vehicle, roughnessLtot, trackParameters.getCurvature(), trackParameters.getTrackTransfer());
+        spectra[1] = vehicle.getTraction(runningCondition, "A", vehicleFileVersion);
+        spectra[2] = vehicle.getTraction(runningCondition, "B", vehicleFileVersion);
+        spectra[3] = getLWAero(vehicle, speed, "A", vehicleFileVersion);
+        spectra[4] = getLWAero(vehicle, speed, "B", vehicleFileVersion);
+        spectra[5] = getLWBridge(vehicle, roughnessLtot, trackParameters.getBridgeTransfert(), trackFileVersion);
+        return spectra;
+    }
 
-        if (isTunnel) {
-            return railWayParameters;
-        } else {
-            //  Rolling noise calcul
-            double[] lW = getLWRolling(typeVehicle, trackRoughnessId, impactId,  curvature, speed, trackTransferId, trackFileVersion, axlesPerVeh);
-            railWayParameters.addRailwaySource("ROLLING", new LineSource(lW,4, "ROLLING"));
-            lW = getLWTraction(typeVehicle,  runningCondition,  "A", vehicleFileVersion);
-            railWayParameters.addRailwaySource("TRACTIONA", new LineSource(lW,0.05, "TRACTIONA"));
-            lW =  getLWTraction(typeVehicle,  runningCondition,  "B", vehicleFileVersion);
-            railWayParameters.addRailwaySource("TRACTIONB", new LineSource(lW,4, "TRACTIONB"));
-            lW = getLWAero(typeVehicle,   speed, "A", vehicleFileVersion);
-            railWayParameters.addRailwaySource("AERODYNAMICA", new LineSource(lW,0.05, "AERODYNAMICA"));
-            lW = getLWAero(typeVehicle,   speed, "B", vehicleFileVersion);
-            railWayParameters.addRailwaySource("AERODYNAMICB", new LineSource(lW,4, "AERODYNAMICB"));
-            lW =  getLWBridge(typeVehicle, trackRoughnessId, impactId, bridgeId, speed, trackFileVersion,axlesPerVeh);
-            railWayParameters.addRailwaySource("BRIDGE", new LineSource(lW,4, "BRIDGE"));
-
-            railWayParameters.appendVperHour(vehPerHour*getNbCoach(typeVehicle), speed);
-            return railWayParameters;
+    private VehicleTables getVehicleTables(String typeVehicle) {
+        VehicleTables vehicle = vehicleTables.get(typeVehicle);
+        if (vehicle == null) {
+            vehicle = new VehicleTables(typeVehicle);
+            vehicleTables.put(typeVehicle, vehicle);
         }
+        return vehicle;
     }
 
     /**
-     * traction or Aerodynamic Level.
-     * @param typeVehicle vehicle data base
-     * @param height height source
-     * @return lWSpectre(freq) (Traction or Aerodynamic)
-     **/
-    private double[] getLWTraction(String typeVehicle, int runningCondition, String height, String fileVersion) {
-        double[] lWSpectre = new double[24];
-        for (int idFreq = 0; idFreq < 24; idFreq++) {
-            lWSpectre[idFreq] = getTractionNoise(typeVehicle, runningCondition, height, fileVersion, idFreq);
+     * Copy values of the railway data in an array
+     * @param cache Arrays already read
+     * @param id Coefficient identifier
+     * @param length Array length
+     * @param valueReader Read the value of the coefficient id at the array index
+     * @return Values of the coefficient id
+     */
+    private static double[] getTable(Map<Integer, double[]> cache, int id, int length, CoefficientReader valueReader) {
+        double[] values = cache.get(id);
+        if (values == null) {
+            values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = valueReader.apply(id, i);
+            }
+            cache.put(id, values);
         }
-        return lWSpectre;
+        return values;
     }
 
     /**
      * traction or Aerodynamic Level.
-     * @param typeVehicle vehicle data base
+     * @param vehicle vehicle data base
      * @param speed min speed between vehicle and track
      * @param height height source
      * @return lWSpectre(freq) (Traction or Aerodynamic)
      **/
-    private double[] getLWAero(String typeVehicle, double speed, String height, String fileVersion) {
+    private double[] getLWAero(VehicleTables vehicle, double speed, String height, String fileVersion) {
         double[] lWSpectre = new double[24];
-
-        for (int idFreq = 0; idFreq < 24; idFreq++) {
-
-            int refId = getVehicleNode(typeVehicle).get("RefAerodynamic").intValue();
-            if (speed < 200 || refId == 0) {
-                lWSpectre[idFreq] = -99;
-            } else {
-                lWSpectre[idFreq] = getAerodynamicNoise(typeVehicle,  height, fileVersion, idFreq);
-                double v0Aero = Double.parseDouble(getRailWayData().get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get("V0").asText());
-                double alphaAero = Double.parseDouble(getRailWayData().get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get("Alpha").asText());
-                lWSpectre[idFreq] = lWSpectre[idFreq] + alphaAero * Math.log10(speed / v0Aero);
+        int refId = getVehicleNode(vehicle.typeVehicle).get("RefAerodynamic").intValue();
+        if (speed < 200 || refId == 0) {
+            Arrays.fill(lWSpectre, -99);
+        } else {
+            double[] aerodynamicNoise = vehicle.getAerodynamicNoise(height, fileVersion);
+            double v0Aero = Double.parseDouble(getRailWayData().get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get("V0").asText());
+            double alphaAero = Double.parseDouble(getRailWayData().get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get("Alpha").asText());
+            for (int idFreq = 0; idFreq < 24; idFreq++) {
+                lWSpectre[idFreq] = aerodynamicNoise[idFreq] + alphaAero * Math.log10(speed / v0Aero);
             }
         }
-
         return lWSpectre;
     }
 
 
     /**
      * Rolling Level.
-     * @param typeVehicle vehicle data base
-     * @param trackRoughnessId track Roughness reference
-     * @param impactId  impact reference
-     * @param speed  min speed between vehicle and track
+     * @param vehicle vehicle data base
+     * @param roughnessLtot total roughness by frequency
+     * @param curvature curvature of the track
+     * @param trackTransferId track transfer reference
      *
-     *               Step 1
-     * wavelength to frequecy (evaluateRoughnessLtotFreq)
-     *               Step 2
      * calcul sound power of wheel and bogie emission
      * calcul sound power of rail sleeper and ballast/slab emission
      * todo add sound power of superstructure emission ?
      *
      * @return lWRoll(freq)
      **/
-
-
-    private double[] getLWRolling(String typeVehicle, int trackRoughnessId, int impactId, int curvature, double speed, int trackTransferId, String trackFileVersion, double axlesPerVeh) {
-
-        double[] trackTransfer = new double[24];
-        double[] lWTr = new double[24];
-        double[] vehTransfer = new double[24];
-        double[] lWVeh = new double[24];
+    private double[] getLWRolling(VehicleTables vehicle, double[] roughnessLtot, int curvature, int trackTransferId) {
+        double[] trackTransfer = getTable(trackTransferTables, trackTransferId, 24, this::getTrackTransfer);
+        double[] vehTransfer = vehicle.getTransfer();
         double[] lW = new double[24];
-
-        // roughnessLtot = CNOSSOS p.19 (2.3.7)
-        double[] roughnessLtot = checkNanValue(getLWRoughness(typeVehicle, trackRoughnessId, impactId, speed, trackFileVersion));
-
         for (int idFreq = 0; idFreq < 24; idFreq++) {
             // lWTr = CNOSSOS p.20 (2.3.8)
-            trackTransfer[idFreq] = getTrackTransfer(trackTransferId,  idFreq);
-            lWTr[idFreq] = roughnessLtot[idFreq] + trackTransfer[idFreq] + 10 * Math.log10(axlesPerVeh);
-
+            double lWTr = roughnessLtot[idFreq] + trackTransfer[idFreq] + 10 * Math.log10(vehicle.axlesPerVeh);
             // lWVeh = CNOSSOS p.20 (2.3.9)
-            vehTransfer[idFreq] = getVehTransfer(typeVehicle,  idFreq);
-            lWVeh[idFreq] = roughnessLtot[idFreq] + vehTransfer[idFreq] + 10 * Math.log10(axlesPerVeh);
+            double lWVeh = roughnessLtot[idFreq] + vehTransfer[idFreq] + 10 * Math.log10(vehicle.axlesPerVeh);
             // lWRoll = CNOSSOS p.19 (2.3.7)
-            lW[idFreq] = 10 * Math.log10(Math.pow(10, lWTr[idFreq] / 10) + Math.pow(10, lWVeh[idFreq] / 10));
+            lW[idFreq] = 10 * Math.log10(Math.pow(10, lWTr / 10) + Math.pow(10, lWVeh / 10));
             if (curvature == 1) {
                 lW[idFreq] = lW[idFreq] + 5;
             } else if (curvature == 2) {
@@ -405,43 +482,29 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
                 lW[idFreq] = lW[idFreq] + 8;
             }
         }
-
         return lW;
     }
 
 
     /**
-     * method calculates the overall sound power level for a specific type of vehicle, track roughness,
-     * impact ID, bridge ID, speed, track file version, and number of axles per vehicle
-     * @param typeVehicle
-     * @param trackRoughnessId
-     * @param impactId
-     * @param bridgeId
-     * @param speed
-     * @param trackFileVersion
-     * @param axlesPerVeh
-     * @return
+     * method calculates the overall sound power level of the bridge for a specific type of vehicle
+     * @param vehicle vehicle data base
+     * @param roughnessLtot total roughness by frequency
+     * @param bridgeId bridge reference
+     * @param trackFileVersion track coefficients version
+     * @return lWBridge(freq)
      */
-    private double[] getLWBridge(String typeVehicle, int trackRoughnessId, int impactId, int bridgeId, double speed, String trackFileVersion, double axlesPerVeh) {
-
+    private double[] getLWBridge(VehicleTables vehicle, double[] roughnessLtot, int bridgeId, String trackFileVersion) {
         double[] lW = new double[24];
-
-        // roughnessLtot = CNOSSOS p.19 (2.3.7)
-        double[] roughnessLtot = checkNanValue(getLWRoughness(typeVehicle, trackRoughnessId, impactId, speed, trackFileVersion));
-
-        double[] lWBridge = new double[24];
-        for (int idFreq = 0; idFreq < 24; idFreq++) {
-            lW[idFreq] = -99;
-        }
+        Arrays.fill(lW, -99);
         if (trackFileVersion == "EU") {
             if (bridgeId == 3 || bridgeId == 4) {
+                double[] lWBridge = getTable(bridgeTables, bridgeId, 24, this::getBridgeStructural);
                 for (int idFreq = 0; idFreq < 24; idFreq++) {
-                    lWBridge[idFreq] = getBridgeStructural(bridgeId, idFreq);
-                    lW[idFreq] = roughnessLtot[idFreq] + lWBridge[idFreq] + 10 * Math.log10(axlesPerVeh);
+                    lW[idFreq] = roughnessLtot[idFreq] + lWBridge[idFreq] + 10 * Math.log10(vehicle.axlesPerVeh);
                 }
             }
         }
-
         return lW;
     }
 
@@ -450,41 +513,31 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
     /**
      * Roughness Level.
      * linear interpolation wavelength to frequency
-     * @param typeVehicle vehicle data base
+     * @param vehicle vehicle data base
      * @param trackRoughnessId track Roughness reference
      * @param impactId  impact reference
      * @param speed  impact reference
      * @return Lroughness(freq)
      **/
-    private double[] getLWRoughness(String typeVehicle, int trackRoughnessId, int impactId, double speed, String trackFileVersion) {
-
-        double[] roughnessTotLambda = new double[35];
+    private double[] getLWRoughness(VehicleTables vehicle, int trackRoughnessId, int impactId, double speed) {
         double[] roughnessLtot = new double[35];
-        double[] contactFilter = new double[35];
         double[] lambdaToFreqLog = new double[35];
-        double[] freqMedLog = new double[24];
-        double[] Lambda = new double[35];
-
-        double m = 33;
+        double[] wheelRoughness = vehicle.getWheelRoughness();
+        double[] contactFilter = vehicle.getContactFilter();
+        double[] trackRoughness = getTable(railRoughnessTables, trackRoughnessId, 35, this::getTrackRoughness);
+        double[] impactNoise = impactId != 0 ? getTable(impactNoiseTables, impactId, 35, this::getImpactNoise) : null;
         for (int idLambda = 0; idLambda < 35; idLambda++) {
-            Lambda[idLambda] = Math.pow(10, m / 10);
-            lambdaToFreqLog[idLambda] = Math.log10(speed / Lambda[idLambda] * 1000 / 3.6);
-
-            roughnessTotLambda[idLambda] = Math.pow(10, getLRoughness(typeVehicle, trackRoughnessId,  trackFileVersion, idLambda) / 10);
-
-            contactFilter[idLambda] = getContactFilter(typeVehicle,  idLambda);
-            roughnessLtot[idLambda] = 10 * Math.log10(roughnessTotLambda[idLambda]) + contactFilter[idLambda];
-            if (impactId != 0) {
-                roughnessLtot[idLambda] =  10 * Math.log10(Math.pow(10,roughnessLtot[idLambda]/ 10) + Math.pow(10, getImpactNoise(impactId,  idLambda) / 10));
+            lambdaToFreqLog[idLambda] = Math.log10(speed / LAMBDA[idLambda] * 1000 / 3.6);
+            double lRoughness = 10 * Math.log10(Math.pow(10, wheelRoughness[idLambda] / 10) + Math.pow(10, trackRoughness[idLambda] / 10));
+            double roughnessTotLambda = Math.pow(10, lRoughness / 10);
+            roughnessLtot[idLambda] = 10 * Math.log10(roughnessTotLambda) + contactFilter[idLambda];
+            if (impactNoise != null) {
+                roughnessLtot[idLambda] =  10 * Math.log10(Math.pow(10,roughnessLtot[idLambda]/ 10) + Math.pow(10, impactNoise[idLambda] / 10));
             }
             roughnessLtot[idLambda] = Math.pow(10, roughnessLtot[idLambda] / 10);
-            m--;
-        }
-        for (int idFreqMed = 0; idFreqMed < 24; idFreqMed++) {
-            freqMedLog[idFreqMed] = Math.log10(Math.pow(10, (17 + Double.valueOf(idFreqMed)) / 10));
         }
 
-        double[] roughnessLtotFreq = interpLinear(lambdaToFreqLog, roughnessLtot, freqMedLog);
+        double[] roughnessLtotFreq = interpLinear(lambdaToFreqLog, roughnessLtot, FREQ_MED_LOG);
 
         for (int idRoughnessLtotFreq = 0; idRoughnessLtotFreq < 24; idRoughnessLtotFreq++) {
             roughnessLtotFreq[idRoughnessLtotFreq] = 10 * Math.log10(roughnessLtotFreq[idRoughnessLtotFreq]);
@@ -492,5 +545,139 @@ public class RailwayCnossos extends org.noise_planet.noisemodelling.emission.rai
         return roughnessLtotFreq;
     }
 
-}
+    /**
+     * Read a coefficient value of the railway data
+     */
+    @FunctionalInterface
+    private interface CoefficientReader {
+        double apply(int id, int index);
+    }
 
+    /**
+     * Coefficients of a vehicle type copied from the railway data when they are used for the first time
+     */
+    private final class VehicleTables {
+        final String typeVehicle;
+        final double axlesPerVeh;
+        final int nbCoach;
+        private double[] wheelRoughness;
+        private double[] contactFilter;
+        private double[] transfer;
+        /** Traction spectra by running condition and source height */
+        private final Map<String, double[]> traction = new HashMap<>();
+        /** Aerodynamic spectra by source height */
+        private final Map<String, double[]> aerodynamicNoise = new HashMap<>();
+
+        VehicleTables(String typeVehicle) {
+            this.typeVehicle = typeVehicle;
+            axlesPerVeh = getAxlesPerVeh(typeVehicle);
+            nbCoach = getNbCoach(typeVehicle);
+        }
+
+        double[] getWheelRoughness() {
+            if (wheelRoughness == null) {
+                wheelRoughness = new double[35];
+                for (int idLambda = 0; idLambda < 35; idLambda++) {
+                    wheelRoughness[idLambda] = RailwayCnossos.this.getWheelRoughness(typeVehicle, "", idLambda);
+                }
+            }
+            return wheelRoughness;
+        }
+
+        double[] getContactFilter() {
+            if (contactFilter == null) {
+                contactFilter = new double[35];
+                for (int idLambda = 0; idLambda < 35; idLambda++) {
+                    contactFilter[idLambda] = RailwayCnossos.this.getContactFilter(typeVehicle, idLambda);
+                }
+            }
+            return contactFilter;
+        }
+
+        double[] getTransfer() {
+            if (transfer == null) {
+                transfer = new double[24];
+                for (int idFreq = 0; idFreq < 24; idFreq++) {
+                    transfer[idFreq] = getVehTransfer(typeVehicle, idFreq);
+                }
+            }
+            return transfer;
+        }
+
+        double[] getTraction(int runningCondition, String height, String fileVersion) {
+            String key = runningCondition + height;
+            double[] lWSpectre = traction.get(key);
+            if (lWSpectre == null) {
+                lWSpectre = new double[24];
+                for (int idFreq = 0; idFreq < 24; idFreq++) {
+                    lWSpectre[idFreq] = getTractionNoise(typeVehicle, runningCondition, height, fileVersion, idFreq);
+                }
+                traction.put(key, lWSpectre);
+            }
+            return lWSpectre;
+        }
+
+        double[] getAerodynamicNoise(String height, String fileVersion) {
+            double[] lWSpectre = aerodynamicNoise.get(height);
+            if (lWSpectre == null) {
+                lWSpectre = new double[24];
+                for (int idFreq = 0; idFreq < 24; idFreq++) {
+                    lWSpectre[idFreq] = RailwayCnossos.this.getAerodynamicNoise(typeVehicle, height, fileVersion, idFreq);
+                }
+                aerodynamicNoise.put(height, lWSpectre);
+            }
+            return lWSpectre;
+        }
+    }
+
+    /**
+     * Parameters that define the source spectra of a vehicle on a track, the traffic flow excepted
+     */
+    private static final class SpectrumKey {
+        private final String typeVehicle;
+        private final String vehicleFileVersion;
+        private final String trackFileVersion;
+        /** Same test as {@link #getLWBridge}, the track file version string is compared by reference */
+        private final boolean bridgeVersion;
+        private final int runningCondition;
+        private final double speed;
+        private final int trackTransfer;
+        private final int railRoughness;
+        private final int impactNoise;
+        private final int bridgeTransfert;
+        private final int curvature;
+
+        SpectrumKey(RailwayVehicleCnossosParameters vehicleParameters, RailwayTrackCnossosParameters trackParameters, double speed) {
+            typeVehicle = vehicleParameters.getTypeVehicle();
+            vehicleFileVersion = vehicleParameters.getFileVersion();
+            trackFileVersion = trackParameters.getFileVersion();
+            bridgeVersion = trackFileVersion == "EU";
+            runningCondition = vehicleParameters.getRunningCondition();
+            this.speed = speed;
+            trackTransfer = trackParameters.getTrackTransfer();
+            railRoughness = trackParameters.getRailRoughness();
+            impactNoise = trackParameters.getImpactNoise();
+            bridgeTransfert = trackParameters.getBridgeTransfert();
+            curvature = trackParameters.getCurvature();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SpectrumKey that = (SpectrumKey) o;
+            return runningCondition == that.runningCondition && bridgeVersion == that.bridgeVersion && Double.compare(that.speed, speed) == 0 &&
+                    trackTransfer == that.trackTransfer && railRoughness == that.railRoughness &&
+                    impactNoise == that.impactNoise && bridgeTransfert == that.bridgeTransfert &&
+                    curvature == that.curvature && Objects.equals(typeVehicle, that.typeVehicle) &&
+                    Objects.equals(vehicleFileVersion, that.vehicleFileVersion) &&
+                    Objects.equals(trackFileVersion, that.trackFileVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeVehicle, vehicleFileVersion, trackFileVersion, runningCondition, speed,
+                    trackTransfer, railRoughness, impactNoise, bridgeTransfert, curvature);
+        }
+    }
+}
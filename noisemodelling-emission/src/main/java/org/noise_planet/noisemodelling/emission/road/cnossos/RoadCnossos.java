@@ -29,6 +29,8 @@ import static org.noise_planet.noisemodelling.emission.utils.Utils.*;
  */
 
 public class RoadCnossos {
+    /** Octave bands in Hz of the road coefficients */
+    public static final int[] OCTAVE_BANDS = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
     private static JsonNode RoadCnossos_2015 = parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2015.json")); // old coefficients in 2015 amendments
     private static JsonNode cnossosData2020 =parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2020.json")); // new coefficients in 2020 amendments
 
@@ -54,6 +56,20 @@ public class RoadCnossos {
         }
     }
 
+    /**
+     * Get the index of an octave band in the coefficients arrays
+     * @param freq Frequency in Hz (octave band)
+     * @return Index in {@link #OCTAVE_BANDS}, 0 if the frequency is not an octave band
+     */
+    public static int getFrequencyIndex(int freq) {
+        for (int i = 0; i < OCTAVE_BANDS.length; i++) {
+            if (OCTAVE_BANDS[i] == freq) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Get "a" road surface coefficient (also called spectrum) for a frequency value
      * @param Freq Frequency in Hz (octave band)
@@ -64,35 +80,7 @@ public class RoadCnossos {
      * @return a Road Coeff
      */
     public static Double getA_RoadSurfaceCoeff(int Freq, String vehCat, String roadSurface, int fileVersion) throws IOException {
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
+        int Freq_ind = getFrequencyIndex(Freq);
         if (getCnossosData(fileVersion).get("roads").get(roadSurface)==null)  throw new IOException("Error : the pavement "+roadSurface + " doesn't exist in the database.");
         return getCnossosData(fileVersion).get("roads").get(roadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
     }
@@ -139,35 +127,7 @@ public class RoadCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
+        int Freq_ind = getFrequencyIndex(freq);
         return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
     }
 
@@ -184,28 +144,6 @@ public class RoadCnossos {
         return base + adj * Math.log10(speed / speedBase);
     }
 
-    /**
-     * Correction for studded tyres - Eq. 2.2.6
-     * only for light vehicles
-     * if speed is over 50 km/h or below 90 km/h the correction is limited.
-     * @param roadCnossosParameters every others parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
-     * @param Pm_stud proportion of vehicle equipped of studded tyres
-     * @param Ts_stud number of months they are equipped with studded tires
-     * @param freq Frequency in Hz (octave band)
-     * @param fileVersion
-     * @return
-     */
-    private static Double getDeltaStuddedTyres(RoadCnossosParameters roadCnossosParameters, double Pm_stud, double Ts_stud,
-                                               int freq, int fileVersion, double vRef) throws IOException {
-        double speed = roadCnossosParameters.getSpeedLv();
-        double ps = Pm_stud * Ts_stud / 12;  // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
-        speed = (speed >= 90) ? 90 : speed;
-        speed = (speed <= 50) ? 50 : speed;
-        double deltastud = getNoiseLvl(getCoeff("a", freq, "1", fileVersion), getCoeff("b", freq, "1", fileVersion), speed, vRef);
-        return 10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
-        // Only for light vehicles (Eq.2.2.9)
-    }
-
     /**
      * Get the correction due to the air temperature
      * @param Temperature temperature in °C
@@ -284,127 +222,158 @@ public class RoadCnossos {
      * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
      * @return Noise level in dB
      */
-
     public static double evaluate(RoadCnossosParameters roadCnossosParameters) throws IOException {
-        final int freqParam = roadCnossosParameters.getFrequency();
-        final double Temperature = roadCnossosParameters.getTemperature();
-        final double Ts_stud = roadCnossosParameters.getTsStud();
-        final double Pm_stud = roadCnossosParameters.getqStudRatio();
-        final double Junc_dist = roadCnossosParameters.getJunc_dist();
-        final int Junc_type = roadCnossosParameters.getJunc_type();
-        final String roadSurface = roadCnossosParameters.getRoadSurface();
-        final int coeffVer = roadCnossosParameters.getFileVersion();
-        double vRef = 70.;
-
-        /**
-         * Rolling Noise
-         */
-        // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), roadCnossosParameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), roadCnossosParameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), roadCnossosParameters.getSpeedHgv(), vRef);
-        // Rolling noise is only for categories 1, 2 and 3
+        return new SegmentTerms(roadCnossosParameters).evaluate(getFrequencyIndex(roadCnossosParameters.getFrequency()));
+    }
 
-        // Correction for studded tyres - Eq. 2.2.6
-        if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(roadCnossosParameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
+    /**
+     * Return the noise emission level of a road segment in dB/m for all octave bands of {@link #OCTAVE_BANDS}.
+     * The frequency of the parameters is ignored. The terms that does not depend on the frequency are computed once,
+     * the result is the same as calling {@link #evaluate(RoadCnossosParameters)} for each band.
+     * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
+     * @return Noise level in dB for each octave band
+     */
+    public static double[] evaluateSpectrum(RoadCnossosParameters roadCnossosParameters) throws IOException {
+        SegmentTerms segmentTerms = new SegmentTerms(roadCnossosParameters);
+        double[] levels = new double[OCTAVE_BANDS.length];
+        for (int band = 0; band < levels.length; band++) {
+            levels[band] = segmentTerms.evaluate(band);
         }
+        return levels;
+    }
 
-        // Effect of air temperature on rolling noise correction Eq 2.2.10
-        lvRoadLvl = lvRoadLvl + getDeltaTemperature(Temperature, "1"); // K = 0.08
-        medRoadLvl = medRoadLvl + getDeltaTemperature(Temperature, "2"); // K = 0.04
-        hgvRoadLvl = hgvRoadLvl + getDeltaTemperature(Temperature, "3"); // K = 0.04
-
-        /**
-         * Propulsion Noise
-         */
-        // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (roadCnossosParameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (roadCnossosParameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (roadCnossosParameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (roadCnossosParameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (roadCnossosParameters.getSpeedWbv() - vRef) / vRef;
-
-        // Effect of road gradients
-        // This correction implicitly includes the effect of slope on speed.
-        // Light vehicles (cat 1) - Eq 2.2.13
-        double sign = 1;
-        boolean twoWay = false;
-        switch ((int) roadCnossosParameters.getWay()) {
-            case 1:
-                sign = 1;
-                break;
-            case 2:
-                sign = -1;
-                break;
-            case 3:
-                twoWay = true;
+    /**
+     * Terms of the emission equations that does not depend on the frequency band, for the vehicle categories
+     * 1, 2, 3, 4a and 4b
+     */
+    private static final class SegmentTerms {
+        private static final double V_REF = 70.;
+        private final RoadCnossosCoefficients coefficients;
+        private final double[][] roadSurfaceSpectrum;
+        private final double[] roadSurfaceBeta;
+        /** log10(speed / vRef) */
+        private final double[] logSpeedRatio = new double[5];
+        /** speed - vRef */
+        private final double[] speedDifference = new double[5];
+        private final double[] deltaTemperature = new double[3];
+        private final double[] deltaSlope = new double[3];
+        private final double[] deltaSlopeInverse = new double[3];
+        /** 10 log10(Q / (1000 v)) */
+        private final double[] flowLevel = new double[5];
+        /** 10 log10(Q / 2 / (1000 v)) */
+        private final double[] halfFlowLevel = new double[3];
+        private final boolean studdedTyres;
+        private final double studdedRatio;
+        private final double studdedLogSpeedRatio;
+        private final int junctionIndex;
+        private final double coefficientJunctionDistance;
+        private final boolean twoWaySlope;
+
+        SegmentTerms(RoadCnossosParameters roadCnossosParameters) throws IOException {
+            final String roadSurface = roadCnossosParameters.getRoadSurface();
+            coefficients = RoadCnossosCoefficients.get(roadCnossosParameters.getFileVersion());
+            roadSurfaceSpectrum = coefficients.getRoadSurfaceSpectrum(roadSurface);
+            roadSurfaceBeta = coefficients.getRoadSurfaceBeta(roadSurface);
+            if (roadSurfaceSpectrum == null) {
+                throw new IOException("Error : the pavement " + roadSurface + " doesn't exist in the database.");
+            }
+            final double[] speeds = new double[]{roadCnossosParameters.getSpeedLv(), roadCnossosParameters.getSpeedMv(),
+                    roadCnossosParameters.getSpeedHgv(), roadCnossosParameters.getSpeedWav(),
+                    roadCnossosParameters.getSpeedWbv()};
+            final double[] flows = new double[]{roadCnossosParameters.getLvPerHour(),
+                    roadCnossosParameters.getMvPerHour(), roadCnossosParameters.getHgvPerHour(),
+                    roadCnossosParameters.getWavPerHour(), roadCnossosParameters.getWbvPerHour()};
+            for (int category = 0; category < speeds.length; category++) {
+                logSpeedRatio[category] = Math.log10(speeds[category] / V_REF);
+                speedDifference[category] = speeds[category] - V_REF;
+                // Eq 2.2.1 with a vehicle level of 0 dB
+                flowLevel[category] = Vperhour2NoiseLevel(0, flows[category], speeds[category]);
+            }
+            // Correction for studded tyres - Eq. 2.2.6, only for light vehicles
+            final double tsStud = roadCnossosParameters.getTsStud();
+            final double pmStud = roadCnossosParameters.getqStudRatio();
+            studdedTyres = pmStud > 0 && tsStud > 0;
+            studdedRatio = pmStud * tsStud / 12; // Eq. 2.2.7
+            // if speed is over 50 km/h or below 90 km/h the correction is limited.
+            studdedLogSpeedRatio = Math.log10(Math.max(50, Math.min(90, speeds[0])) / V_REF);
+            // Effect of road gradients
+            double sign = 1;
+            boolean twoWay = false;
+            switch ((int) roadCnossosParameters.getWay()) {
+                case 1:
+                    sign = 1;
+                    break;
+                case 2:
+                    sign = -1;
+                    break;
+                case 3:
+                    twoWay = true;
+            }
+            twoWaySlope = twoWay && roadCnossosParameters.getSlopePercentage() != 0;
+            for (int category = 0; category < deltaTemperature.length; category++) {
+                String vehicleCategory = RoadCnossosCoefficients.VEHICLE_CATEGORIES[category];
+                deltaTemperature[category] = getDeltaTemperature(roadCnossosParameters.getTemperature(), vehicleCategory);
+                deltaSlope[category] = getDeltaSlope(roadCnossosParameters, vehicleCategory, sign);
+                if (twoWaySlope) {
+                    deltaSlopeInverse[category] = getDeltaSlope(roadCnossosParameters, vehicleCategory, -sign);
+                    halfFlowLevel[category] = Vperhour2NoiseLevel(0, flows[category] / 2, speeds[category]);
+                }
+            }
+            // Effect of the acceleration and deceleration of vehicles
+            junctionIndex = roadCnossosParameters.getJunc_type() == 1 ? 0 : 1;
+            coefficientJunctionDistance = Math.max(1 - Math.abs(roadCnossosParameters.getJunc_dist()) / 100, 0);
         }
 
-        lvMotorLvl = lvMotorLvl + getDeltaSlope(roadCnossosParameters, "1", sign);
-        medMotorLvl = medMotorLvl + getDeltaSlope(roadCnossosParameters, "2", sign);
-        hgvMotorLvl = hgvMotorLvl + getDeltaSlope(roadCnossosParameters, "3", sign);
-
-        /**
-         * Mixed effects (Rolling & Propulsion)
-         */
-        // Effect of the acceleration and deceleration of vehicles
-        // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #524
-        double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
-        // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
-
-        // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "1", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("1", roadSurface, coeffVer), roadCnossosParameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "2", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("2", roadSurface, coeffVer), roadCnossosParameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "3", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("3", roadSurface, coeffVer), roadCnossosParameters.getSpeedHgv(), 70.);
-
-        // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
-
         /**
-         * Combine Propulsion and Rolling Noise - Eq. 2.2.2
+         * @param band Octave band index
+         * @return Noise emission level in dB/m
          */
-        final double lvCompound = sumDbValues(lvRoadLvl, lvMotorLvl);
-        final double medCompound = sumDbValues(medRoadLvl, medMotorLvl);
-        final double hgvCompound = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-        final double wheelaCompound = wheelaMotorLvl; // Eq. 2.2.3
-        final double wheelbCompound = wheelbMotorLvl; // Eq. 2.2.3
-        /**
-         * Compute Noise Level from flow_rate and speed - Eq 2.2.1
-         */
-        double lvLvl = Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour(), roadCnossosParameters.getSpeedLv());
-        double medLvl = Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour(), roadCnossosParameters.getSpeedMv());
-        double hgvLvl = Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour(), roadCnossosParameters.getSpeedHgv());
-        double wheelaLvl = Vperhour2NoiseLevel(wheelaCompound, roadCnossosParameters.getWavPerHour(), roadCnossosParameters.getSpeedWav());
-        double wheelbLvl = Vperhour2NoiseLevel(wheelbCompound, roadCnossosParameters.getWbvPerHour(), roadCnossosParameters.getSpeedWbv());
-
-        // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
-        if (twoWay && roadCnossosParameters.getSlopePercentage() != 0) {
-            lvRoadLvl = lvRoadLvl - getDeltaSlope(roadCnossosParameters, "1", sign) + getDeltaSlope(roadCnossosParameters, "1", -sign);
-            medRoadLvl = medRoadLvl - getDeltaSlope(roadCnossosParameters, "2", sign) + getDeltaSlope(roadCnossosParameters, "2", -sign);
-            hgvRoadLvl = hgvRoadLvl - getDeltaSlope(roadCnossosParameters, "3", sign) + getDeltaSlope(roadCnossosParameters, "3", -sign);
-            double lvCompound_InverseSlope = sumDbValues(lvRoadLvl, lvMotorLvl);
-            double medCompound_InverseSlope = sumDbValues(medRoadLvl, medMotorLvl);
-            double hgvCompound_InverseSlope = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-
-            lvLvl = sumDbValues(Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour() / 2, roadCnossosParameters.getSpeedLv()), Vperhour2NoiseLevel(lvCompound_InverseSlope, roadCnossosParameters.getLvPerHour() / 2, roadCnossosParameters.getSpeedLv()));
-            medLvl = sumDbValues(Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour() / 2, roadCnossosParameters.getSpeedMv()), Vperhour2NoiseLevel(medCompound_InverseSlope, roadCnossosParameters.getMvPerHour() / 2, roadCnossosParameters.getSpeedMv()));
-            hgvLvl = sumDbValues(Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour() / 2, roadCnossosParameters.getSpeedHgv()), Vperhour2NoiseLevel(hgvCompound_InverseSlope, roadCnossosParameters.getHgvPerHour() / 2, roadCnossosParameters.getSpeedHgv()));
+        double evaluate(int band) {
+            double sumW = 0;
+            for (int category = 0; category < RoadCnossosCoefficients.VEHICLE_CATEGORIES.length; category++) {
+                final double spectrum = roadSurfaceSpectrum[category][band];
+                // Propulsion noise - Eq. 2.2.11
+                double motorLvl = coefficients.ap[category][band] + coefficients.bp[category][band] *
+                        speedDifference[category] / V_REF;
+                if (category < 3) {
+                    // Rolling noise level Eq. 2.2.4, only for categories 1, 2 and 3
+                    double roadLvl = coefficients.ar[category][band] + coefficients.br[category][band] *
+                            logSpeedRatio[category];
+                    if (category == 0 && studdedTyres) {
+                        double deltaStud = coefficients.studdedA[band] + coefficients.studdedB[band] *
+                                studdedLogSpeedRatio;
+                        roadLvl = roadLvl + 10 * Math.log10((1 - studdedRatio) + studdedRatio *
+                                Math.pow(10, deltaStud / 10)); // Eq. 2.2.8
+                    }
+                    // Effect of air temperature on rolling noise correction Eq 2.2.10
+                    roadLvl = roadLvl + deltaTemperature[category];
+                    motorLvl = motorLvl + deltaSlope[category];
+                    // Effect of the acceleration and deceleration of vehicles - Eq 2.2.17 and 2.2.18
+                    roadLvl = roadLvl + coefficients.cr[junctionIndex][category] * coefficientJunctionDistance;
+                    motorLvl = motorLvl + coefficients.cp[junctionIndex][category] * coefficientJunctionDistance;
+                    // Effect of the type of road surface - Eq. 2.2.19 and 2.2.20
+                    roadLvl = roadLvl + (spectrum + roadSurfaceBeta[category] * logSpeedRatio[category]);
+                    motorLvl = motorLvl + Math.min(spectrum, 0.);
+                    // Combine Propulsion and Rolling Noise - Eq. 2.2.2
+                    final double compound = wToDb(dbToW(roadLvl) + dbToW(motorLvl));
+                    if (twoWaySlope) {
+                        // In the case of a bi-directional traffic flow, it is necessary to split the flow into two
+                        // components and correct half for uphill and half for downhill.
+                        roadLvl = roadLvl - deltaSlope[category] + deltaSlopeInverse[category];
+                        final double compoundInverseSlope = wToDb(dbToW(roadLvl) + dbToW(motorLvl));
+                        sumW += dbToW(wToDb(dbToW(compound + halfFlowLevel[category]) +
+                                dbToW(compoundInverseSlope + halfFlowLevel[category])));
+                    } else {
+                        sumW += dbToW(compound + flowLevel[category]);
+                    }
+                } else {
+                    // Eq. 2.2.3 and 2.2.18, 2.2.20
+                    motorLvl = motorLvl + coefficients.cp[junctionIndex][category] * coefficientJunctionDistance;
+                    motorLvl = motorLvl + Math.min(spectrum, 0.);
+                    sumW += dbToW(motorLvl + flowLevel[category]);
+                }
+            }
+            return wToDb(sumW);
         }
-
-        return sumDb5(lvLvl, medLvl, hgvLvl, wheelaLvl, wheelbLvl);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.emission.road.cnossos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * CNOSSOS road coefficients of one file version copied from the json tree into arrays indexed by
+ * [vehicle category][octave band]. Vehicle categories are in the order of {@link #VEHICLE_CATEGORIES}.
+ * Instances are immutable.
+ */
+final class RoadCnossosCoefficients {
+    static final String[] VEHICLE_CATEGORIES = new String[]{"1", "2", "3", "4a", "4b"};
+    static final int BAND_COUNT = RoadCnossos.OCTAVE_BANDS.length;
+    private static final RoadCnossosCoefficients COEFFICIENTS_2015 =
+            new RoadCnossosCoefficients(RoadCnossos.getCnossosData(1));
+    private static final RoadCnossosCoefficients COEFFICIENTS_2020 =
+            new RoadCnossosCoefficients(RoadCnossos.getCnossosData(2));
+    /** Rolling noise coefficients */
+    final double[][] ar = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] br = new double[VEHICLE_CATEGORIES.length][];
+    /** Propulsion noise coefficients */
+    final double[][] ap = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] bp = new double[VEHICLE_CATEGORIES.length][];
+    /** Studded tyres coefficients of light vehicles */
+    final double[] studdedA;
+    final double[] studdedB;
+    /** Acceleration and deceleration coefficients, index 0 for crossing lights and 1 for roundabout */
+    final double[][] cr = new double[2][VEHICLE_CATEGORIES.length];
+    final double[][] cp = new double[2][VEHICLE_CATEGORIES.length];
+    /** Road surface spectrum [vehicle category][band] by road surface identifier */
+    private final Map<String, double[][]> roadSurfaceSpectrum = new HashMap<>();
+    /** Road surface ßm [vehicle category] by road surface identifier */
+    private final Map<String, double[]> roadSurfaceBeta = new HashMap<>();
+
+    private RoadCnossosCoefficients(JsonNode cnossosData) {
+        JsonNode vehicles = cnossosData.path("vehicles");
+        for (int category = 0; category < VEHICLE_CATEGORIES.length; category++) {
+            JsonNode vehicle = vehicles.path(VEHICLE_CATEGORIES[category]);
+            ar[category] = readBands(vehicle.path("ar"));
+            br[category] = readBands(vehicle.path("br"));
+            ap[category] = readBands(vehicle.path("ap"));
+            bp[category] = readBands(vehicle.path("bp"));
+            cr[0][category] = vehicle.path("crossing").path("cr").doubleValue();
+            cr[1][category] = vehicle.path("roundabout").path("cr").doubleValue();
+            cp[0][category] = vehicle.path("crossing").path("cp").doubleValue();
+            cp[1][category] = vehicle.path("roundabout").path("cp").doubleValue();
+        }
+        studdedA = readBands(vehicles.path("1").path("a"));
+        studdedB = readBands(vehicles.path("1").path("b"));
+        Iterator<Map.Entry<String, JsonNode>> roads = cnossosData.path("roads").fields();
+        while (roads.hasNext()) {
+            Map.Entry<String, JsonNode> road = roads.next();
+            double[][] spectrum = new double[VEHICLE_CATEGORIES.length][];
+            double[] beta = new double[VEHICLE_CATEGORIES.length];
+            for (int category = 0; category < VEHICLE_CATEGORIES.length; category++) {
+                JsonNode reference = road.getValue().path("ref").path(VEHICLE_CATEGORIES[category]);
+                spectrum[category] = readBands(reference.path("spectrum"));
+                beta[category] = reference.path("ßm").doubleValue();
+            }
+            roadSurfaceSpectrum.put(road.getKey(), spectrum);
+            roadSurfaceBeta.put(road.getKey(), beta);
+        }
+    }
+
+    private static double[] readBands(JsonNode values) {
+        double[] bands = new double[BAND_COUNT];
+        for (int band = 0; band < BAND_COUNT; band++) {
+            bands[band] = values.path(band).doubleValue();
+        }
+        return bands;
+    }
+
+    /**
+     * @param fileVersion 1 for 2015 coefficients, other for 2020 coefficients
+     * @return Compiled coefficients
+     */
+    static RoadCnossosCoefficients get(int fileVersion) {
+        return fileVersion == 1 ? COEFFICIENTS_2015 : COEFFICIENTS_2020;
+    }
+
+    /**
+     * @param roadSurface Road surface identifier
+     * @return Spectrum [vehicle category][band] or null if the road surface does not exist
+     */
+    double[][] getRoadSurfaceSpectrum(String roadSurface) {
+        return roadSurface == null ? null : roadSurfaceSpectrum.get(roadSurface);
+    }
+
+    /**
+     * @param roadSurface Road surface identifier
+     * @return ßm [vehicle category] or null if the road surface does not exist
+     */
+    double[] getRoadSurfaceBeta(String roadSurface) {
+        return roadSurface == null ? null : roadSurfaceBeta.get(roadSurface);
+    }
+}
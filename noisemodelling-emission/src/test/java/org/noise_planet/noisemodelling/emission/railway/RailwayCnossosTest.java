@@ -10,6 +10,7 @@
 package org.noise_planet.noisemodelling.emission.railway;
 
 import org.junit.jupiter.api.Test;
+import org.noise_planet.noisemodelling.emission.railway.cnossos.RailWayCnossosParameters;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailwayCnossos;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailwayTrackCnossosParameters;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailwayVehicleCnossosParameters;
@@ -967,4 +968,34 @@ public class RailwayCnossosTest {
         }
 
     }
+
+    @Test
+    public void testEvaluateTrafficFlows() throws IOException {
+        railwayCnossos.setVehicleDataFile("RailwayVehiclesCnossos.json");
+        railwayCnossos.setTrainSetDataFile("RailwayTrainsets.json");
+        railwayCnossos.setRailwayDataFile("RailwayCnossosSNCF_2021.json");
+
+        double[] vehiclesPerHour = new double[]{12, 4.5, 1};
+        RailwayTrackCnossosParameters trackParameters = new RailwayTrackCnossosParameters(160, 5, 1, 0, 0, 1, 120,
+                false, 2);
+        RailwayVehicleCnossosParameters vehicleParameters = new RailwayVehicleCnossosParameters("SNCF2", 80, 0, 0, 0);
+        RailWayCnossosParameters[] lWFlows = railwayCnossos.evaluate(vehicleParameters, trackParameters, vehiclesPerHour);
+        assertEquals(vehiclesPerHour.length, lWFlows.length);
+        for (int idFlow = 0; idFlow < vehiclesPerHour.length; idFlow++) {
+            // evaluate again one flow, the source spectra are now read from the cache
+            RailwayVehicleCnossosParameters flowParameters = new RailwayVehicleCnossosParameters("SNCF2", 80,
+                    vehiclesPerHour[idFlow], 0, 0);
+            RailWayCnossosParameters lWRailWay = railwayCnossos.evaluate(flowParameters, trackParameters);
+            assertEquals(lWRailWay.getRailwaySourceList().keySet(), lWFlows[idFlow].getRailwaySourceList().keySet());
+            for (String sourceType : RailWayCnossosParameters.sourceType) {
+                assertArrayEquals(lWRailWay.getRailwaySourceList().get(sourceType).getlW(),
+                        lWFlows[idFlow].getRailwaySourceList().get(sourceType).getlW(), 0, sourceType);
+            }
+        }
+        // cached spectra must not be modified by the returned levels
+        lWFlows[0].getRailwaySourceList().get("ROLLING").getlW()[0] = 0;
+        RailWayCnossosParameters lWRailWay = railwayCnossos.evaluate(vehicleParameters, trackParameters,
+                vehiclesPerHour)[0];
+        assertNotEquals(0, lWRailWay.getRailwaySourceList().get("ROLLING").getlW()[0]);
+    }
 }
@@ -246,4 +246,36 @@ public class RoadCnossosTest {
             assertThrows(IOException.class, () -> RoadCnossos.evaluate(rsParameters));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEvaluateSpectrum() throws IOException {
+        String[] surfaces = new String[]{"NL01", "FR_R2", "DEF"};
+        double[] slopes = new double[]{-15, -5, 0, 3, 10};
+        for (int fileVersion = 1; fileVersion <= 2; fileVersion++) {
+            for (String surface : surfaces) {
+                for (double slope : slopes) {
+                    for (int way = 1; way <= 3; way++) {
+                        for (int juncType = 1; juncType <= 2; juncType++) {
+                            double pmStud = way == 2 ? 0 : 0.5;
+                            RoadCnossosParameters rsParameters = new RoadCnossosParameters(30 + 10 * way, 50, 80, 45,
+                                    60, 1000, 120, 80, 15, 25, 63, 12, surface, 4, pmStud, 40 * juncType, juncType);
+                            rsParameters.setSlopePercentage(slope);
+                            rsParameters.setWay(way);
+                            rsParameters.setFileVersion(fileVersion);
+                            double[] spectrum = RoadCnossos.evaluateSpectrum(rsParameters);
+                            assertEquals(FREQUENCIES.length, spectrum.length);
+                            for (int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                                rsParameters.setFrequency(FREQUENCIES[idFreq]);
+                                // Same values as the previous implementation reading the json for each frequency
+                                assertEquals(RoadCnossosReference.evaluate(rsParameters), spectrum[idFreq], 0,
+                                        String.format("%d Hz", FREQUENCIES[idFreq]));
+                                assertEquals(RoadCnossos.evaluate(rsParameters), spectrum[idFreq], 0,
+                                        String.format("%d Hz", FREQUENCIES[idFreq]));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
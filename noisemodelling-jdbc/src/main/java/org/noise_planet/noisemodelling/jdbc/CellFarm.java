@@ -0,0 +1,464 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.output.NoiseMapWriter;
+import org.noise_planet.noisemodelling.jdbc.output.ResultsCache;
+import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Share the computation of a noise map between several processes, on the same host or on hosts connected to the
+ * same database (PostGIS, or H2 with AUTO_SERVER=TRUE).
+ * <ul>
+ *     <li>The coordinator creates the queue of the populated cells with {@link #createQueue(Connection)}</li>
+ *     <li>Each worker process claims a cell for a limited time (the lease), computes it and writes the results into
+ *     its own tables with {@link #runWorker(Connection, Connection, ProgressVisitor)}. The lease is renewed while the
+ *     worker is alive, so the cells of a stopped worker are computed again by the other workers. The leases are
+ *     computed with the clock of the database server, the clocks of the hosts of the workers do not matter.</li>
+ *     <li>When all cells are done the coordinator merges the results tables of the workers with
+ *     {@link #merge(Connection)}</li>
+ * </ul>
+ * Each receiver is owned by a single cell, see
+ * {@link GridMapMaker#getReceiverCell(org.locationtech.jts.geom.Coordinate)}. The coordinator stores the cell of each
+ * receiver in order to delete the results of a cell computed again. All processes must configure the {@link NoiseMapByReceiverMaker} with the same parameters.
+ */
+public class CellFarm {
+    /** Suffix of the table of the cell of each receiver */
+    public static final String RECEIVERS_TABLE_SUFFIX = "_RECEIVERS";
+    /** Suffix of the table of the workers that have joined the computation */
+    public static final String WORKERS_TABLE_SUFFIX = "_WORKERS";
+    public static final long DEFAULT_LEASE_DURATION = TimeUnit.MINUTES.toMillis(5);
+    private static final int BATCH_SIZE = 1000;
+    private final Logger logger = LoggerFactory.getLogger(CellFarm.class);
+    private final NoiseMapByReceiverMaker noiseMapByReceiverMaker;
+    private final String queueTable;
+    private String workerId;
+    private long leaseDuration = DEFAULT_LEASE_DURATION;
+    private long pollInterval = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * @param noiseMapByReceiverMaker Computation settings, the same settings must be used by all the processes
+     * @param queueTable Table of the cells to compute
+     */
+    public CellFarm(NoiseMapByReceiverMaker noiseMapByReceiverMaker, String queueTable) {
+        this.noiseMapByReceiverMaker = noiseMapByReceiverMaker;
+        this.queueTable = queueTable;
+        setWorkerId(defaultWorkerId());
+    }
+
+    private static String defaultWorkerId() {
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (IOException ex) {
+            hostName = "localhost";
+        }
+        return hostName + "_" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * @return Identifier of this worker, used in the name of its results tables
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @param workerId Identifier of this worker, unique among the workers. Default to host name and process id.
+     */
+    public void setWorkerId(String workerId) {
+        this.workerId = workerId.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9_]", "_");
+    }
+
+    /**
+     * @return Time in milliseconds after which a cell claimed by a worker that did not renew it can be claimed by
+     * another worker
+     */
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    /**
+     * @param leaseDuration Time in milliseconds after which a cell claimed by a worker that did not renew it can be
+     *                      claimed by another worker. The workers renew their leases at a third of this duration.
+     */
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    /**
+     * @return Waiting time in milliseconds of a worker before looking again for a free cell, when the remaining cells
+     * are claimed by other workers
+     */
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * @param pollInterval Waiting time in milliseconds of a worker before looking again for a free cell, when the
+     *                     remaining cells are claimed by other workers
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @param tableName Results table of the computation
+     * @return Results table of this worker
+     */
+    public String getWorkerTable(String tableName) {
+        return getWorkerTable(tableName, workerId);
+    }
+
+    private static String getWorkerTable(String tableName, String workerId) {
+        return tableName + "_" + workerId;
+    }
+
+    /**
+     * Coordinator: create the queue of the populated cells and assign each receiver to a cell. The previous queue
+     * is dropped.
+     * @param connection Active connection
+     * @return Number of cells to compute
+     */
+    public int createQueue(Connection connection) throws SQLException {
+        noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
+        Map<CellIndex, Integer> cells = noiseMapByReceiverMaker.searchPopulatedCells(connection);
+        String receiversTable = queueTable + RECEIVERS_TABLE_SUFFIX;
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + queueTable + ", " + receiversTable + ", " + queueTable +
+                    WORKERS_TABLE_SUFFIX);
+            st.execute("CREATE TABLE " + queueTable + "(CELL_LONGITUDE INTEGER NOT NULL, CELL_LATITUDE INTEGER " +
+                    "NOT NULL, WORKER VARCHAR, LEASE_END TIMESTAMP WITH TIME ZONE, ATTEMPTS INTEGER NOT NULL DEFAULT 0, DONE BOOLEAN " +
+                    "NOT NULL DEFAULT FALSE, PRIMARY KEY(CELL_LONGITUDE, CELL_LATITUDE))");
+            st.execute("CREATE TABLE " + receiversTable + "(IDRECEIVER BIGINT PRIMARY KEY, CELL_LONGITUDE " +
+                    "INTEGER NOT NULL, CELL_LATITUDE INTEGER NOT NULL)");
+            st.execute("CREATE TABLE " + queueTable + WORKERS_TABLE_SUFFIX + "(WORKER VARCHAR PRIMARY KEY)");
+        }
+        CellJournal.writeParameters(connection, queueTable + CellJournal.PARAMETERS_TABLE_SUFFIX,
+                noiseMapByReceiverMaker.getJournalParameters());
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + queueTable +
+                "(CELL_LONGITUDE, CELL_LATITUDE) VALUES (?, ?)")) {
+            for (CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                st.setInt(1, cellIndex.getLongitudeIndex());
+                st.setInt(2, cellIndex.getLatitudeIndex());
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + receiversTable +
+                " VALUES (?, ?, ?)")) {
+            int[] batchSize = new int[] {0};
+            SQLException[] batchException = new SQLException[1];
+            noiseMapByReceiverMaker.forEachOwnedReceiver(connection, cells.keySet(), (cellIndex, receiverPk) -> {
+                if(batchException[0] != null) {
+                    return;
+                }
+                try {
+                    st.setLong(1, receiverPk);
+                    st.setInt(2, cellIndex.getLongitudeIndex());
+                    st.setInt(3, cellIndex.getLatitudeIndex());
+                    st.addBatch();
+                    if(++batchSize[0] >= BATCH_SIZE) {
+                        st.executeBatch();
+                        batchSize[0] = 0;
+                    }
+                } catch (SQLException ex) {
+                    batchException[0] = ex;
+                }
+            });
+            if(batchException[0] != null) {
+                throw batchException[0];
+            }
+            if(batchSize[0] > 0) {
+                st.executeBatch();
+            }
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE INDEX ON " + receiversTable + "(CELL_LONGITUDE, CELL_LATITUDE)");
+        }
+        logger.info("The queue {} contains {} cells", queueTable, cells.size());
+        return cells.size();
+    }
+
+    /**
+     * Worker: compute the cells of the queue until all cells are done. The results are written into the tables of
+     * this worker, see {@link #getWorkerTable(String)}.
+     * @param connection Active connection
+     * @param leaseConnection Another connection to the same database, used by the background renewal of the leases
+     * @param progressLogger Progression info
+     * @return Number of cells computed by this worker
+     * @throws SQLException If the parameters differ from the parameters of the coordinator
+     */
+    public int runWorker(Connection connection, Connection leaseConnection, ProgressVisitor progressLogger)
+            throws SQLException {
+        NoiseMapDatabaseParameters databaseParameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+        if(databaseParameters.sqlOutputFile != null || databaseParameters.attenuationMatrixDirectory != null ||
+                databaseParameters.cellJournalTable != null) {
+            throw new SQLException("The workers only support writing the results into the database tables");
+        }
+        noiseMapByReceiverMaker.initialize(connection, progressLogger);
+        CellJournal.checkParameters(connection, queueTable + CellJournal.PARAMETERS_TABLE_SUFFIX,
+                noiseMapByReceiverMaker.getJournalParameters());
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + queueTable + WORKERS_TABLE_SUFFIX +
+                " SELECT CAST(? AS VARCHAR) WHERE NOT EXISTS (SELECT 1 FROM " + queueTable + WORKERS_TABLE_SUFFIX +
+                " WHERE WORKER = ?)")) {
+            st.setString(1, workerId);
+            st.setString(2, workerId);
+            st.execute();
+        }
+        // Release the cells of a previous run of this worker
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + queueTable + " SET WORKER = NULL " +
+                "WHERE WORKER = ? AND NOT DONE")) {
+            st.setString(1, workerId);
+            st.executeUpdate();
+        }
+        // The worker insert into its own tables, kept if the worker is restarted
+        String receiversLevelTable = databaseParameters.receiversLevelTable;
+        String raysTable = databaseParameters.raysTable;
+        Boolean dropResultsTable = databaseParameters.dropResultsTable;
+        databaseParameters.receiversLevelTable = getWorkerTable(receiversLevelTable);
+        databaseParameters.raysTable = getWorkerTable(raysTable);
+        databaseParameters.dropResultsTable = false;
+        ScheduledExecutorService leaseRenewal = Executors.newSingleThreadScheduledExecutor();
+        int computedCells = 0;
+        try {
+            ProgressVisitor progressVisitor = progressLogger.subProcess(countRemainingCells(connection));
+            NoiseMapByReceiverMaker.IComputeRaysOutFactory computeRaysOutFactory =
+                    noiseMapByReceiverMaker.getComputeRaysOutFactory();
+            long renewalPeriod = Math.max(1, leaseDuration / 3);
+            leaseRenewal.scheduleWithFixedDelay(() -> renewLeases(leaseConnection), renewalPeriod, renewalPeriod,
+                    TimeUnit.MILLISECONDS);
+            Map<CellIndex, BooleanSupplier> pendingCells = new LinkedHashMap<>();
+            AtomicBoolean aborted = noiseMapByReceiverMaker.aborted;
+            computeRaysOutFactory.start(progressVisitor);
+            try {
+                while (!progressVisitor.isCanceled() && !aborted.get()) {
+                    markStoredCells(connection, pendingCells);
+                    CellIndex cellIndex = claimCell(connection);
+                    if(cellIndex == null) {
+                        if(countRemainingCells(connection) == 0) {
+                            break;
+                        }
+                        // Wait for the end of the leases of the other workers
+                        Thread.sleep(pollInterval);
+                        continue;
+                    }
+                    deleteCellResults(connection, cellIndex);
+                    SceneWithEmission scene = noiseMapByReceiverMaker.prepareCell(connection, cellIndex);
+                    noiseMapByReceiverMaker.evaluateCell(scene, progressVisitor);
+                    pendingCells.put(cellIndex, computeRaysOutFactory.getResultsStoredCondition());
+                    computedCells++;
+                }
+            } finally {
+                computeRaysOutFactory.stop();
+            }
+            if(!progressVisitor.isCanceled() && !aborted.get()) {
+                markStoredCells(connection, pendingCells);
+            }
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        } finally {
+            leaseRenewal.shutdownNow();
+            databaseParameters.receiversLevelTable = receiversLevelTable;
+            databaseParameters.raysTable = raysTable;
+            databaseParameters.dropResultsTable = dropResultsTable;
+        }
+        logger.info("The worker {} has computed {} cells", workerId, computedCells);
+        return computedCells;
+    }
+
+    /**
+     * @return Number of cells not done and not claimed by this worker
+     */
+    private int countRemainingCells(Connection connection) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("SELECT COUNT(*) FROM " + queueTable +
+                " WHERE NOT DONE AND (WORKER IS NULL OR WORKER <> ?)")) {
+            st.setString(1, workerId);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Claim a free cell or a cell with an expired lease
+     * @return Claimed cell or null if there is no free cell
+     */
+    private CellIndex claimCell(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT CELL_LONGITUDE, CELL_LATITUDE FROM " +
+                queueTable + " WHERE NOT DONE AND (WORKER IS NULL OR LEASE_END < CURRENT_TIMESTAMP)" +
+                " ORDER BY CELL_LATITUDE, CELL_LONGITUDE LIMIT 1");
+             PreparedStatement update = connection.prepareStatement("UPDATE " + queueTable +
+                     " SET WORKER = ?, LEASE_END = CURRENT_TIMESTAMP + " + getLeaseInterval() + ", ATTEMPTS = " +
+                     "ATTEMPTS + 1 WHERE CELL_LONGITUDE = ? AND CELL_LATITUDE = ? AND NOT DONE AND (WORKER IS NULL " +
+                     "OR LEASE_END < CURRENT_TIMESTAMP)")) {
+            while (true) {
+                CellIndex cellIndex;
+                try (ResultSet rs = select.executeQuery()) {
+                    if(!rs.next()) {
+                        return null;
+                    }
+                    cellIndex = new CellIndex(rs.getInt(1), rs.getInt(2));
+                }
+                // Another worker may have claimed the cell since the select
+                update.setString(1, workerId);
+                update.setInt(2, cellIndex.getLongitudeIndex());
+                update.setInt(3, cellIndex.getLatitudeIndex());
+                if(update.executeUpdate() == 1) {
+                    return cellIndex;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return SQL interval literal of the lease duration
+     */
+    private String getLeaseInterval() {
+        return String.format(Locale.ROOT, "INTERVAL '%.3f' SECOND", leaseDuration / 1000.0);
+    }
+
+    private void renewLeases(Connection connection) {
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + queueTable + " SET LEASE_END = " +
+                "CURRENT_TIMESTAMP + " + getLeaseInterval() + " WHERE WORKER = ? AND NOT DONE")) {
+            st.setString(1, workerId);
+            st.executeUpdate();
+        } catch (SQLException ex) {
+            logger.error("Cannot renew the leases of the worker " + workerId, ex);
+        }
+    }
+
+    /**
+     * Mark as done the computed cells with all the results stored
+     */
+    private void markStoredCells(Connection connection, Map<CellIndex, BooleanSupplier> pendingCells)
+            throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("UPDATE " + queueTable + " SET DONE = TRUE " +
+                "WHERE CELL_LONGITUDE = ? AND CELL_LATITUDE = ? AND WORKER = ?")) {
+            Iterator<Map.Entry<CellIndex, BooleanSupplier>> iterator = pendingCells.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CellIndex, BooleanSupplier> pendingCell = iterator.next();
+                if(pendingCell.getValue().getAsBoolean()) {
+                    st.setInt(1, pendingCell.getKey().getLongitudeIndex());
+                    st.setInt(2, pendingCell.getKey().getLatitudeIndex());
+                    st.setString(3, workerId);
+                    if(st.executeUpdate() == 0) {
+                        logger.warn("The lease of the cell {} has been lost, the results of this worker will not be " +
+                                "used", pendingCell.getKey());
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the results of a previous computation of the cell by this worker
+     */
+    private void deleteCellResults(Connection connection, CellIndex cellIndex) throws SQLException {
+        NoiseMapDatabaseParameters databaseParameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+        List<String> tables = new ArrayList<>();
+        tables.add(databaseParameters.receiversLevelTable);
+        if(databaseParameters.exportRaysMethod == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
+            tables.add(databaseParameters.raysTable);
+        }
+        for (String table : tables) {
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + table + " WHERE IDRECEIVER IN " +
+                    "(SELECT IDRECEIVER FROM " + queueTable + RECEIVERS_TABLE_SUFFIX + " WHERE CELL_LONGITUDE = ? " +
+                    "AND CELL_LATITUDE = ?)")) {
+                st.setInt(1, cellIndex.getLongitudeIndex());
+                st.setInt(2, cellIndex.getLatitudeIndex());
+                st.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Coordinator: move the results of the workers into the results tables, then drop the tables of the workers.
+     * Only the results of the worker that has completed a cell are kept.
+     * @param connection Active connection
+     * @throws SQLException If some cells are not done
+     */
+    public void merge(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + queueTable + " WHERE NOT DONE")) {
+            if(rs.next() && rs.getInt(1) > 0) {
+                throw new SQLException(String.format(Locale.ROOT, "%d cells of %s are not computed",
+                        rs.getInt(1), queueTable));
+            }
+        }
+        List<String> workers = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT WORKER FROM " + queueTable + WORKERS_TABLE_SUFFIX +
+                     " ORDER BY WORKER")) {
+            while (rs.next()) {
+                workers.add(rs.getString(1));
+            }
+        }
+        noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
+        NoiseMapDatabaseParameters databaseParameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+        boolean exportRays = databaseParameters.exportRaysMethod ==
+                NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE;
+        NoiseMapWriter noiseMapWriter = new NoiseMapWriter(connection, noiseMapByReceiverMaker, new ResultsCache(),
+                new AtomicBoolean(true), new AtomicBoolean(false));
+        try {
+            noiseMapWriter.init();
+            for (String worker : workers) {
+                String levelsTable = getWorkerTable(databaseParameters.receiversLevelTable, worker);
+                String raysTable = getWorkerTable(databaseParameters.raysTable, worker);
+                boolean levelsTableExists = JDBCUtilities.tableExists(connection, levelsTable);
+                boolean raysTableExists = exportRays && JDBCUtilities.tableExists(connection, raysTable);
+                // Remove the results of the cells completed by another worker
+                for (String table : new String[] {levelsTableExists ? levelsTable : null,
+                        raysTableExists ? raysTable : null}) {
+                    if(table == null) {
+                        continue;
+                    }
+                    try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + table +
+                            " T WHERE NOT EXISTS (SELECT 1 FROM " + queueTable + RECEIVERS_TABLE_SUFFIX + " R, " +
+                            queueTable + " Q WHERE R.IDRECEIVER = T.IDRECEIVER AND R.CELL_LONGITUDE = " +
+                            "Q.CELL_LONGITUDE AND R.CELL_LATITUDE = Q.CELL_LATITUDE AND Q.WORKER = ?)")) {
+                        st.setString(1, worker);
+                        st.executeUpdate();
+                    }
+                }
+                noiseMapWriter.mergeTables(levelsTableExists ? levelsTable : null,
+                        raysTableExists ? raysTable : null);
+            }
+            noiseMapWriter.createKeys();
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+        logger.info("The results of {} workers have been merged", workers.size());
+    }
+}
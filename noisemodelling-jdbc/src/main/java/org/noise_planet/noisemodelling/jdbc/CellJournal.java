@@ -0,0 +1,221 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.noise_planet.noisemodelling.jdbc.utils.LongBitmapSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Journal of the computed cells of a noise map, stored in a database table.
+ * A cell is written in the journal only when all its results have been stored by the writers, so an interrupted
+ * computation can be resumed from the cells that are not in the journal. The parameters of the computation are
+ * stored along the journal and must be the same when resuming.
+ */
+public class CellJournal {
+    /** Suffix of the table of the computation parameters */
+    public static final String PARAMETERS_TABLE_SUFFIX = "_PARAMETERS";
+    private final String tableName;
+    private final boolean resume;
+    private final Set<CellIndex> doneCells = new HashSet<>();
+    // Cells computed but with results not yet stored
+    private final List<PendingCell> pendingCells = new ArrayList<>();
+    private final Set<Long> recomputedReceivers = new LongBitmapSet();
+
+    /**
+     * @param tableName Table of the computed cells
+     * @param resume If true the journal must exist and the computation continue from it, else the journal is cleared
+     */
+    public CellJournal(String tableName, boolean resume) {
+        this.tableName = tableName;
+        this.resume = resume;
+    }
+
+    /**
+     * @return Table of the computed cells
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return True if the computation continue from the cells of the existing journal
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Create the journal tables, or read them if resuming
+     * @param connection Active connection
+     * @param parameters Parameters of the computation, compared with the stored parameters when resuming
+     * @return Cells computed by the previous run, empty if not resuming
+     * @throws SQLException If the journal does not exist or the parameters differ when resuming
+     */
+    public synchronized Set<CellIndex> open(Connection connection, Map<String, String> parameters) throws SQLException {
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        String parametersTable = tableName + PARAMETERS_TABLE_SUFFIX;
+        doneCells.clear();
+        recomputedReceivers.clear();
+        if(resume) {
+            if(!JDBCUtilities.tableExists(connection, TableLocation.parse(tableName, dbTypes)) ||
+                    !JDBCUtilities.tableExists(connection, TableLocation.parse(parametersTable, dbTypes))) {
+                throw new SQLException(String.format(Locale.ROOT, "Cannot resume the computation, the journal " +
+                        "table %s does not exist", tableName));
+            }
+            checkParameters(connection, parametersTable, parameters);
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT CELL_LONGITUDE, CELL_LATITUDE FROM " + tableName)) {
+                while (rs.next()) {
+                    doneCells.add(new CellIndex(rs.getInt(1), rs.getInt(2)));
+                }
+            }
+        } else {
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + tableName);
+                st.execute("CREATE TABLE " + tableName + "(CELL_LONGITUDE INTEGER NOT NULL, CELL_LATITUDE " +
+                        "INTEGER NOT NULL, RECEIVERS INTEGER, END_TIME TIMESTAMP, " +
+                        "PRIMARY KEY(CELL_LONGITUDE, CELL_LATITUDE))");
+            }
+            writeParameters(connection, parametersTable, parameters);
+        }
+        return new HashSet<>(doneCells);
+    }
+
+    /**
+     * Create the table of the parameters of a computation
+     * @param connection Active connection
+     * @param parametersTable Table to create, dropped if exists
+     * @param parameters Parameters of the computation
+     */
+    static void writeParameters(Connection connection, String parametersTable,
+                                Map<String, String> parameters) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + parametersTable);
+            st.execute("CREATE TABLE " + parametersTable + "(NAME VARCHAR PRIMARY KEY, PARAMETER_VALUE VARCHAR)");
+        }
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + parametersTable +
+                " VALUES (?, ?)")) {
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                st.setString(1, parameter.getKey());
+                st.setString(2, parameter.getValue());
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+    }
+
+    /**
+     * Compare the parameters of a computation with the stored parameters
+     * @param connection Active connection
+     * @param parametersTable Table created by {@link #writeParameters(Connection, String, Map)}
+     * @param parameters Parameters of the computation
+     * @throws SQLException If a parameter differs
+     */
+    static void checkParameters(Connection connection, String parametersTable,
+                                Map<String, String> parameters) throws SQLException {
+        Map<String, String> storedParameters = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT NAME, PARAMETER_VALUE FROM " + parametersTable)) {
+            while (rs.next()) {
+                storedParameters.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        Set<String> names = new TreeSet<>(storedParameters.keySet());
+        names.addAll(parameters.keySet());
+        for (String name : names) {
+            String storedValue = storedParameters.get(name);
+            if(!Objects.equals(storedValue, parameters.get(name))) {
+                throw new SQLException(String.format(Locale.ROOT, "The parameter %s of the computation stored in %s" +
+                        " was %s and is now %s", name, parametersTable, storedValue, parameters.get(name)));
+            }
+        }
+    }
+
+    /**
+     * @return Cells in the journal
+     */
+    public synchronized Set<CellIndex> getDoneCells() {
+        return new HashSet<>(doneCells);
+    }
+
+    /**
+     * @return Receivers of the cells of the previous run that are not in the journal, their stored results (if any)
+     * are partial and must be deleted before the computation
+     */
+    public Set<Long> getRecomputedReceivers() {
+        return recomputedReceivers;
+    }
+
+    /**
+     * Called when the computation of a cell is done, the cell will be written in the journal when the results are
+     * stored
+     * @param cellIndex Computed cell
+     * @param receivers Number of receivers of the cell
+     * @param resultsStored Condition that becomes true once the results of the cell are stored
+     */
+    public synchronized void onCellComputed(CellIndex cellIndex, int receivers, BooleanSupplier resultsStored) {
+        pendingCells.add(new PendingCell(cellIndex, receivers, resultsStored));
+    }
+
+    /**
+     * Insert in the journal the computed cells with all the results stored
+     * @param connection Active connection
+     * @throws SQLException
+     */
+    public synchronized void writeStoredCells(Connection connection) throws SQLException {
+        List<PendingCell> storedCells = new ArrayList<>();
+        for (PendingCell pendingCell : pendingCells) {
+            if(pendingCell.resultsStored.getAsBoolean()) {
+                storedCells.add(pendingCell);
+            }
+        }
+        if(storedCells.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + tableName +
+                " VALUES (?, ?, ?, CURRENT_TIMESTAMP)")) {
+            for (PendingCell storedCell : storedCells) {
+                st.setInt(1, storedCell.cellIndex.getLongitudeIndex());
+                st.setInt(2, storedCell.cellIndex.getLatitudeIndex());
+                st.setInt(3, storedCell.receivers);
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        pendingCells.removeAll(storedCells);
+        for (PendingCell storedCell : storedCells) {
+            doneCells.add(storedCell.cellIndex);
+        }
+    }
+
+    private static final class PendingCell {
+        final CellIndex cellIndex;
+        final int receivers;
+        final BooleanSupplier resultsStored;
+
+        PendingCell(CellIndex cellIndex, int receivers, BooleanSupplier resultsStored) {
+            this.cellIndex = cellIndex;
+            this.receivers = receivers;
+            this.resultsStored = resultsStored;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Load and prepare the scenes of the next cells on its own connection while the current cell is computed.
+ * The loader stays at most prefetchDepth cells ahead of the computation, and does not start the preparation of a new
+ * cell while a prepared cell is waiting and the used heap is over the memory limit.
+ * Each receiver is computed by the single cell that owns it, see
+ * {@link GridMapMaker#getReceiverCell(org.locationtech.jts.geom.Coordinate)}, so a cell does not depend on the cells
+ * prepared before it and the receivers are attributed to the same cells than the sequential run.
+ */
+final class CellScenePrefetcher implements Callable<Boolean> {
+    /** Interval in ms between two heap checks while the loader wait for memory */
+    private static final long MEMORY_CHECK_INTERVAL = 100;
+    private static final Logger LOGGER = LoggerFactory.getLogger(CellScenePrefetcher.class);
+    private final NoiseMapByReceiverMaker noiseMapByReceiverMaker;
+    private final DataSource dataSource;
+    private final List<CellIndex> cells;
+    private final int prefetchDepth;
+    private final long memoryLimit;
+    private final Object lock = new Object();
+    private final Deque<PreparedCell> preparedCells = new ArrayDeque<>();
+    private boolean loaderDone = false;
+    private boolean cancelled = false;
+    private Exception loaderError = null;
+
+    /**
+     * @param noiseMapByReceiverMaker Maker used to prepare the cells
+     * @param dataSource Source of the loader connection
+     * @param cells Cells to prepare, in processing order
+     * @param prefetchDepth Maximum number of prepared cells waiting for the computation
+     * @param memoryLimit Used heap limit in bytes, over this limit only one prepared cell can wait for the computation
+     */
+    CellScenePrefetcher(NoiseMapByReceiverMaker noiseMapByReceiverMaker, DataSource dataSource, List<CellIndex> cells,
+                        int prefetchDepth, long memoryLimit) {
+        this.noiseMapByReceiverMaker = noiseMapByReceiverMaker;
+        this.dataSource = dataSource;
+        this.cells = cells;
+        this.prefetchDepth = Math.max(1, prefetchDepth);
+        this.memoryLimit = memoryLimit;
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Wait until a new cell can be prepared
+     * @return False if the loader has been cancelled
+     */
+    private boolean waitForRoom() throws InterruptedException {
+        synchronized (lock) {
+            while (!cancelled && (preparedCells.size() >= prefetchDepth ||
+                    (!preparedCells.isEmpty() && getUsedMemory() > memoryLimit))) {
+                lock.wait(MEMORY_CHECK_INTERVAL);
+            }
+            return !cancelled;
+        }
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+        try (Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            for (CellIndex cellIndex : cells) {
+                if (!waitForRoom() || noiseMapByReceiverMaker.aborted.get()) {
+                    break;
+                }
+                SceneWithEmission scene = noiseMapByReceiverMaker.prepareCell(connection, cellIndex);
+                synchronized (lock) {
+                    if (cancelled) {
+                        break;
+                    }
+                    preparedCells.addLast(new PreparedCell(cellIndex, scene));
+                    lock.notifyAll();
+                }
+            }
+        } catch (Exception ex) {
+            LOGGER.error("Error while loading cell data", ex);
+            synchronized (lock) {
+                loaderError = ex;
+            }
+            return false;
+        } finally {
+            synchronized (lock) {
+                loaderDone = true;
+                lock.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the next prepared cell
+     * @return The next cell in the processing order or null if all cells have been processed
+     * @throws SQLException If the loader failed to prepare a cell
+     */
+    PreparedCell take() throws SQLException {
+        synchronized (lock) {
+            try {
+                while (preparedCells.isEmpty() && !loaderDone && loaderError == null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(ex);
+            }
+            if (loaderError != null) {
+                throw loaderError instanceof SQLException ? (SQLException) loaderError : new SQLException(loaderError);
+            }
+            PreparedCell preparedCell = preparedCells.pollFirst();
+            lock.notifyAll();
+            return preparedCell;
+        }
+    }
+
+    /**
+     * Stop loading cells and release the prepared scenes
+     */
+    void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            preparedCells.clear();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Cell with its scene ready for the computation
+     */
+    static final class PreparedCell {
+        final CellIndex cellIndex;
+        final SceneWithEmission scene;
+
+        PreparedCell(CellIndex cellIndex, SceneWithEmission scene) {
+            this.cellIndex = cellIndex;
+            this.scene = scene;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+/**
+ * Admit cells into the computation while the sum of the estimated footprints of the running cells stays under a
+ * memory budget. A cell is always admitted when no other cell is running, so a cell larger than the budget is
+ * computed alone. A cell with an unknown footprint (negative value) is also computed alone.
+ * This class is thread safe.
+ */
+final class CellScheduler {
+    private final long memoryBudget;
+    private final int maximumConcurrentCells;
+    private long usedBudget = 0;
+    private int runningCells = 0;
+    private boolean exclusiveCellRunning = false;
+    private int peakRunningCells = 0;
+
+    /**
+     * @param memoryBudget Maximum sum of the running cells footprint in bytes
+     * @param maximumConcurrentCells Maximum number of running cells
+     */
+    CellScheduler(long memoryBudget, int maximumConcurrentCells) {
+        this.memoryBudget = memoryBudget;
+        this.maximumConcurrentCells = Math.max(1, maximumConcurrentCells);
+    }
+
+    /**
+     * @param footprint Estimated footprint in bytes, negative if unknown
+     * @return True if the cell can start now
+     */
+    private boolean canStart(long footprint) {
+        if (runningCells == 0) {
+            return true;
+        }
+        return !exclusiveCellRunning && footprint >= 0 && runningCells < maximumConcurrentCells &&
+                usedBudget + footprint <= memoryBudget;
+    }
+
+    /**
+     * Wait until the cell can be computed
+     * @param footprint Estimated footprint in bytes, negative if unknown
+     * @throws InterruptedException If interrupted while waiting
+     */
+    synchronized void acquire(long footprint) throws InterruptedException {
+        while (!canStart(footprint)) {
+            wait();
+        }
+        runningCells++;
+        peakRunningCells = Math.max(peakRunningCells, runningCells);
+        if (footprint < 0) {
+            exclusiveCellRunning = true;
+        } else {
+            usedBudget += footprint;
+        }
+    }
+
+    /**
+     * The cell computation is done
+     * @param footprint Value given to {@link #acquire(long)}
+     */
+    synchronized void release(long footprint) {
+        runningCells--;
+        if (footprint < 0) {
+            exclusiveCellRunning = false;
+        } else {
+            usedBudget -= footprint;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return Number of cells currently computed
+     */
+    synchronized int getRunningCells() {
+        return runningCells;
+    }
+
+    /**
+     * @return Maximum number of cells computed at the same time since the creation of this instance
+     */
+    synchronized int getPeakRunningCells() {
+        return peakRunningCells;
+    }
+
+    /**
+     * @return Sum of the footprint of the running cells in bytes
+     */
+    synchronized long getUsedBudget() {
+        return usedBudget;
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelHistogram;
+import org.noise_planet.noisemodelling.jdbc.utils.BatchInsert;
+import org.noise_planet.noisemodelling.jdbc.utils.PostgreSQLCopyStatement;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compute the statistical indicators L10, L50, L90, LAEQ and LMAX of each receiver from the time series of its levels,
+ * without sorting the time series. The levels are folded as they are produced into a {@link LevelHistogram} per
+ * receiver, the memory depends on the number of receivers and on the resolution, not on the number of time steps.
+ * The levels can be read from a table with {@link #run(Connection, String, String, ProgressVisitor)} or provided by
+ * {@link DynamicNoiseMapMaker#setIndicators(DynamicIndicatorsMaker)}.
+ * This class is not thread-safe.
+ */
+public class DynamicIndicatorsMaker {
+    private final String outputTable;
+    private String receiverIdField = "IDRECEIVER";
+    private String geometryField = "THE_GEOM";
+    private String leqField = "LAEQ";
+    private String maximumField = "LMAX";
+    private double resolution = LevelHistogram.DEFAULT_RESOLUTION;
+    private final Map<Long, ReceiverIndicators> receivers = new HashMap<>();
+    private boolean withGeometry = false;
+
+    private static final class ReceiverIndicators {
+        final LevelHistogram histogram;
+        Object geometry;
+
+        ReceiverIndicators(double resolution) {
+            histogram = new LevelHistogram(resolution);
+        }
+    }
+
+    /**
+     * @param outputTable Created table with the fields IDRECEIVER, THE_GEOM if available, L10, L50, L90, LAEQ, LMAX
+     */
+    public DynamicIndicatorsMaker(String outputTable) {
+        this.outputTable = outputTable;
+    }
+
+    /**
+     * @param leqField Output field of the energetic average of the levels (default LAEQ)
+     */
+    public void setLeqField(String leqField) {
+        this.leqField = leqField;
+    }
+
+    /**
+     * @param maximumField Output field of the maximum level (default LMAX)
+     */
+    public void setMaximumField(String maximumField) {
+        this.maximumField = maximumField;
+    }
+
+    /**
+     * @param receiverIdField Receiver identifier field of the input and output tables
+     */
+    public void setReceiverIdField(String receiverIdField) {
+        this.receiverIdField = receiverIdField;
+    }
+
+    /**
+     * @param geometryField Receiver geometry field of the input and output tables
+     */
+    public void setGeometryField(String geometryField) {
+        this.geometryField = geometryField;
+    }
+
+    /**
+     * @param resolution Accuracy of the percentiles in dB, width of the histogram bins. Must be set before adding
+     *                   levels.
+     */
+    public void setResolution(double resolution) {
+        if(!receivers.isEmpty()) {
+            throw new IllegalStateException("The resolution must be set before adding levels");
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * @return Number of receivers having at least one level
+     */
+    public int getReceiverCount() {
+        return receivers.size();
+    }
+
+    /**
+     * @param receiverId Receiver identifier
+     * @return Histogram of the levels of the receiver or null if the receiver has no levels
+     */
+    public LevelHistogram getHistogram(long receiverId) {
+        ReceiverIndicators receiverIndicators = receivers.get(receiverId);
+        return receiverIndicators == null ? null : receiverIndicators.histogram;
+    }
+
+    /**
+     * Fold a level of the time series of a receiver
+     * @param receiverId Receiver identifier
+     * @param geometry Receiver geometry or null
+     * @param level Level of the time step in dB
+     */
+    public void add(long receiverId, Object geometry, double level) {
+        ReceiverIndicators receiverIndicators = receivers.get(receiverId);
+        if(receiverIndicators == null) {
+            receiverIndicators = new ReceiverIndicators(resolution);
+            receivers.put(receiverId, receiverIndicators);
+        }
+        if(geometry != null && receiverIndicators.geometry == null) {
+            receiverIndicators.geometry = geometry;
+            withGeometry = true;
+        }
+        receiverIndicators.histogram.add(level);
+    }
+
+    /**
+     * Fold the levels of a time series table, the rows do not need to be sorted
+     * @param connection Database connection
+     * @param levelTable Table with the fields IDRECEIVER, THE_GEOM (optional) and the level field
+     * @param levelField Level field, ex. LAEQ
+     * @param progressVisitor Progression, checked for cancellation
+     * @throws SQLException Error while reading the table
+     */
+    public void addTable(Connection connection, String levelTable, String levelField,
+                         ProgressVisitor progressVisitor) throws SQLException {
+        List<String> fieldNames = JDBCUtilities.getColumnNames(connection, levelTable);
+        boolean hasGeometry = fieldNames.stream().anyMatch(name -> name.equalsIgnoreCase(geometryField));
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(receiverIdField).append(", ").append(levelField);
+        if(hasGeometry) {
+            query.append(", ").append(geometryField);
+        }
+        query.append(" FROM ").append(levelTable);
+        try(Statement st = connection.createStatement()) {
+            st.setFetchSize(DynamicNoiseMapMaker.BATCH_SIZE);
+            try(ResultSet rs = st.executeQuery(query.toString())) {
+                long rowCount = 0;
+                while (rs.next()) {
+                    long receiverId = rs.getLong(1);
+                    double level = rs.getDouble(2);
+                    if(rs.wasNull()) {
+                        continue;
+                    }
+                    Object geometry = null;
+                    // the geometry is only read on the first row of the receiver
+                    if(hasGeometry && !receivers.containsKey(receiverId)) {
+                        geometry = rs.getObject(3);
+                        if(geometry != null && !(geometry instanceof Geometry) &&
+                                rs.isWrapperFor(SpatialResultSet.class)) {
+                            geometry = rs.unwrap(SpatialResultSet.class).getGeometry(3);
+                        }
+                    }
+                    add(receiverId, geometry, level);
+                    if(progressVisitor != null && ++rowCount % DynamicNoiseMapMaker.BATCH_SIZE == 0 &&
+                            progressVisitor.isCanceled()) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the indicators of a time series table and write the output table
+     * @param connection Database connection
+     * @param levelTable Table with the fields IDRECEIVER, THE_GEOM (optional) and the level field
+     * @param levelField Level field, ex. LAEQ
+     * @param progressVisitor Progression, checked for cancellation
+     * @throws SQLException Error while reading or writing the tables
+     */
+    public void run(Connection connection, String levelTable, String levelField, ProgressVisitor progressVisitor)
+            throws SQLException {
+        addTable(connection, levelTable, levelField, progressVisitor);
+        if(progressVisitor == null || !progressVisitor.isCanceled()) {
+            writeIndicators(connection);
+        }
+    }
+
+    /**
+     * Create the output table with the indicators of the folded levels
+     * @param connection Database connection
+     * @throws SQLException Error while writing the table
+     */
+    public void writeIndicators(Connection connection) throws SQLException {
+        StringBuilder query = new StringBuilder("CREATE TABLE ");
+        query.append(outputTable).append(" (").append(receiverIdField).append(" BIGINT PRIMARY KEY");
+        if(withGeometry) {
+            query.append(", ").append(geometryField).append(" GEOMETRY");
+        }
+        query.append(", L10 REAL, L50 REAL, L90 REAL, ").append(leqField).append(" REAL, ").append(maximumField)
+                .append(" REAL)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(query.toString());
+        }
+        List<Long> receiverIds = new ArrayList<>(receivers.keySet());
+        receiverIds.sort(Long::compare);
+        BatchInsert insert;
+        if(PostgreSQLCopyStatement.isSupported(connection)) {
+            insert = new PostgreSQLCopyStatement(connection, outputTable, null);
+        } else {
+            insert = BatchInsert.of(connection.prepareStatement("INSERT INTO " + outputTable + " VALUES (?" +
+                    ", ?".repeat(withGeometry ? 6 : 5) + ")"));
+        }
+        try {
+            int batchRows = 0;
+            for (long receiverId : receiverIds) {
+                ReceiverIndicators receiverIndicators = receivers.get(receiverId);
+                LevelHistogram histogram = receiverIndicators.histogram;
+                if(histogram.getCount() == 0) {
+                    continue;
+                }
+                int parameterIndex = 1;
+                insert.setLong(parameterIndex++, receiverId);
+                if(withGeometry) {
+                    insert.setObject(parameterIndex++, receiverIndicators.geometry);
+                }
+                insert.setDouble(parameterIndex++, histogram.getExceededLevel(10));
+                insert.setDouble(parameterIndex++, histogram.getExceededLevel(50));
+                insert.setDouble(parameterIndex++, histogram.getExceededLevel(90));
+                insert.setDouble(parameterIndex++, histogram.getLeq());
+                insert.setDouble(parameterIndex, histogram.getMaximum());
+                insert.addBatch();
+                if(++batchRows >= DynamicNoiseMapMaker.BATCH_SIZE) {
+                    insert.executeBatch();
+                    batchRows = 0;
+                }
+            }
+            if(batchRows > 0) {
+                insert.executeBatch();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+}
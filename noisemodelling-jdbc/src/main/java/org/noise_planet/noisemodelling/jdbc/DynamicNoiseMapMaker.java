@@ -0,0 +1,668 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.GeometryMetaData;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.jdbc.output.AttenuationMatrixReader;
+import org.noise_planet.noisemodelling.jdbc.utils.BatchInsert;
+import org.noise_planet.noisemodelling.jdbc.utils.PostgreSQLCopyStatement;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compute the noise level of the receivers for each time period of a source emission table, from the attenuation
+ * matrix between the sources and the receivers. For each period the levels are the sum of the emission of the sources
+ * multiplied by the attenuation, in the energy domain:
+ * <pre>
+ * L(receiver, period, band) = 10 * LOG10( SUM over sources (10^((LW(source, period, band) + ATT(source, receiver, band)) / 10)))
+ * </pre>
+ * The attenuation matrix is loaded once in memory in a compressed sparse row layout, then the emission table is read
+ * sorted by period and each period is a sparse matrix - vector product computed by several threads.
+ * A receiver has a level on a period only if at least one of its sources has an emission on this period.
+ */
+public class DynamicNoiseMapMaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DynamicNoiseMapMaker.class);
+    /** Number of receivers computed by a task */
+    static final int RECEIVERS_PER_TASK = 4096;
+    static final int BATCH_SIZE = 10000;
+    private final String attenuationTable;
+    private final String emissionTable;
+    private final String outputTable;
+    private String sourceIdField = "IDSOURCE";
+    private String attenuationSourceIdField = "IDSOURCE";
+    private String receiverIdField = "IDRECEIVER";
+    private String periodField = "PERIOD";
+    private String geometryField = "THE_GEOM";
+    private String frequencyFieldPrepend = "HZ";
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private File attenuationMatrixDirectory = null;
+    private DynamicIndicatorsMaker indicators = null;
+
+    /**
+     * @param attenuationTable Table of the attenuation between each source and receiver in dB, with the fields
+     *                         IDRECEIVER, IDSOURCE, the frequency bands fields and optionally THE_GEOM
+     * @param emissionTable Table of the emission of the sources in dB, with the fields IDSOURCE, PERIOD and the
+     *                      frequency bands fields
+     * @param outputTable Created table of the levels with the fields IDRECEIVER, PERIOD, THE_GEOM if available, the
+     *                    frequency bands fields, LAEQ and LEQ. If null the levels are only provided to the indicators.
+     */
+    public DynamicNoiseMapMaker(String attenuationTable, String emissionTable, String outputTable) {
+        this.attenuationTable = attenuationTable;
+        this.emissionTable = emissionTable;
+        this.outputTable = outputTable;
+    }
+
+    /**
+     * @param sourceIdField Source identifier field of the emission table
+     */
+    public void setSourceIdField(String sourceIdField) {
+        this.sourceIdField = sourceIdField;
+    }
+
+    /**
+     * @param attenuationSourceIdField Source identifier field of the attenuation table
+     */
+    public void setAttenuationSourceIdField(String attenuationSourceIdField) {
+        this.attenuationSourceIdField = attenuationSourceIdField;
+    }
+
+    /**
+     * @param receiverIdField Receiver identifier field of the attenuation table
+     */
+    public void setReceiverIdField(String receiverIdField) {
+        this.receiverIdField = receiverIdField;
+    }
+
+    /**
+     * @param periodField Period field of the emission table, copied into the output table
+     */
+    public void setPeriodField(String periodField) {
+        this.periodField = periodField;
+    }
+
+    /**
+     * @param geometryField Receiver geometry field of the attenuation table, copied into the output table if present
+     */
+    public void setGeometryField(String geometryField) {
+        this.geometryField = geometryField;
+    }
+
+    /**
+     * @param frequencyFieldPrepend Text preceding the frequency in the bands fields (default HZ)
+     */
+    public void setFrequencyFieldPrepend(String frequencyFieldPrepend) {
+        this.frequencyFieldPrepend = frequencyFieldPrepend;
+    }
+
+    /**
+     * @param threadCount Number of threads computing the levels of a period
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Read the attenuation from the binary files written with
+     * {@link NoiseMapDatabaseParameters#setAttenuationMatrixDirectory(File)} instead of the attenuation table.
+     * The output table has no geometry field in this case.
+     * @param attenuationMatrixDirectory Directory of the attenuation matrix files, null to read the attenuation table
+     */
+    public void setAttenuationMatrixDirectory(File attenuationMatrixDirectory) {
+        this.attenuationMatrixDirectory = attenuationMatrixDirectory;
+    }
+
+    /**
+     * Fold the LAEQ of each receiver and period into the statistical indicators while the levels are computed. The
+     * indicators table is written by {@link DynamicIndicatorsMaker#writeIndicators(Connection)} after the run.
+     * @param indicators Indicators of the receivers, null to disable
+     */
+    public void setIndicators(DynamicIndicatorsMaker indicators) {
+        this.indicators = indicators;
+    }
+
+    /**
+     * Compressed sparse row attenuation matrix, the rows are the receivers and the columns the sources
+     */
+    static final class SparseAttenuation {
+        final int[] frequencies;
+        /** Sorted receiver identifiers */
+        final long[] receiverIds;
+        /** Geometry of each receiver, null if not available */
+        final Object[] receiverGeometries;
+        /** Sorted source identifiers */
+        final long[] sourceIds;
+        /** Index of the first entry of each receiver */
+        final int[] rowOffsets;
+        /** Source index of each entry */
+        final int[] entrySources;
+        /** Attenuation of each entry and band in the energy domain */
+        final float[] entryAttenuation;
+
+        SparseAttenuation(int[] frequencies, long[] receiverIds, Object[] receiverGeometries, long[] sourceIds,
+                          int[] rowOffsets, int[] entrySources, float[] entryAttenuation) {
+            this.frequencies = frequencies;
+            this.receiverIds = receiverIds;
+            this.receiverGeometries = receiverGeometries;
+            this.sourceIds = sourceIds;
+            this.rowOffsets = rowOffsets;
+            this.entrySources = entrySources;
+            this.entryAttenuation = entryAttenuation;
+        }
+
+        int getEntryCount() {
+            return entrySources.length;
+        }
+    }
+
+    /**
+     * Accumulate the attenuation entries in primitive arrays then build the sparse matrix
+     */
+    static final class SparseAttenuationBuilder {
+        private final int[] frequencies;
+        private int entryCount = 0;
+        private long[] receivers = new long[1024];
+        private long[] sources = new long[1024];
+        private float[] values;
+        /** Geometry of each receiver identifier, null if the receivers have no geometry */
+        private final Map<Long, Object> geometries;
+
+        SparseAttenuationBuilder(int[] frequencies, boolean withGeometry) {
+            this.frequencies = frequencies;
+            values = new float[receivers.length * frequencies.length];
+            geometries = withGeometry ? new HashMap<>() : null;
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @return True if the geometry of this receiver has to be read
+         */
+        boolean isGeometryMissing(long receiverId) {
+            return geometries != null && !geometries.containsKey(receiverId);
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @param geometry Receiver geometry
+         */
+        void setGeometry(long receiverId, Object geometry) {
+            geometries.put(receiverId, geometry);
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @param sourceId Source identifier
+         * @param attenuation Attenuation of each band in dB
+         */
+        void add(long receiverId, long sourceId, double[] attenuation) {
+            if(entryCount == receivers.length) {
+                receivers = Arrays.copyOf(receivers, entryCount * 2);
+                sources = Arrays.copyOf(sources, entryCount * 2);
+                values = Arrays.copyOf(values, entryCount * 2 * frequencies.length);
+            }
+            receivers[entryCount] = receiverId;
+            sources[entryCount] = sourceId;
+            int offset = entryCount * frequencies.length;
+            for (int band = 0; band < frequencies.length; band++) {
+                values[offset + band] = (float) Math.pow(10, attenuation[band] / 10);
+            }
+            entryCount++;
+        }
+
+        private static long[] sortedUnique(long[] values, int length) {
+            long[] sorted = Arrays.copyOf(values, length);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < length; i++) {
+                if(i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+
+        SparseAttenuation build() {
+            long[] receiverIds = sortedUnique(receivers, entryCount);
+            long[] sourceIds = sortedUnique(sources, entryCount);
+            // counting sort of the entries by receiver
+            int[] entryReceivers = new int[entryCount];
+            int[] rowOffsets = new int[receiverIds.length + 1];
+            for (int entry = 0; entry < entryCount; entry++) {
+                entryReceivers[entry] = Arrays.binarySearch(receiverIds, receivers[entry]);
+                rowOffsets[entryReceivers[entry] + 1]++;
+            }
+            for (int receiver = 0; receiver < receiverIds.length; receiver++) {
+                rowOffsets[receiver + 1] += rowOffsets[receiver];
+            }
+            int[] nextPosition = Arrays.copyOf(rowOffsets, receiverIds.length);
+            int[] entrySources = new int[entryCount];
+            float[] entryAttenuation = new float[entryCount * frequencies.length];
+            Object[] receiverGeometries = null;
+            if(geometries != null) {
+                receiverGeometries = new Object[receiverIds.length];
+                for (int receiver = 0; receiver < receiverIds.length; receiver++) {
+                    receiverGeometries[receiver] = geometries.get(receiverIds[receiver]);
+                }
+            }
+            for (int entry = 0; entry < entryCount; entry++) {
+                int receiver = entryReceivers[entry];
+                int position = nextPosition[receiver]++;
+                entrySources[position] = Arrays.binarySearch(sourceIds, sources[entry]);
+                System.arraycopy(values, entry * frequencies.length, entryAttenuation,
+                        position * frequencies.length, frequencies.length);
+            }
+            return new SparseAttenuation(frequencies, receiverIds, receiverGeometries, sourceIds, rowOffsets,
+                    entrySources, entryAttenuation);
+        }
+    }
+
+    /**
+     * @param fieldNames Table fields
+     * @return Frequency of each band field, in the order of the fields
+     */
+    List<Integer> findFrequencies(List<String> fieldNames) {
+        Pattern pattern = Pattern.compile(Pattern.quote(frequencyFieldPrepend.toUpperCase(Locale.ROOT)) + "(\\d+)");
+        List<Integer> frequencies = new ArrayList<>();
+        for (String fieldName : fieldNames) {
+            Matcher matcher = pattern.matcher(fieldName.toUpperCase(Locale.ROOT));
+            if(matcher.matches()) {
+                frequencies.add(Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Load the attenuation table
+     * @param connection Database connection
+     * @return Sparse attenuation matrix
+     * @throws SQLException Error while reading the table
+     */
+    SparseAttenuation loadAttenuation(Connection connection) throws SQLException {
+        List<String> fieldNames = JDBCUtilities.getColumnNames(connection, attenuationTable);
+        List<Integer> frequencies = findFrequencies(fieldNames);
+        if(frequencies.isEmpty()) {
+            throw new SQLException("No frequency band field " + frequencyFieldPrepend + " found in " +
+                    attenuationTable);
+        }
+        boolean hasGeometry = fieldNames.stream().anyMatch(name -> name.equalsIgnoreCase(geometryField));
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(receiverIdField).append(", ").append(attenuationSourceIdField);
+        for (int frequency : frequencies) {
+            query.append(", ").append(frequencyFieldPrepend).append(frequency);
+        }
+        if(hasGeometry) {
+            query.append(", ").append(geometryField);
+        }
+        query.append(" FROM ").append(attenuationTable);
+        SparseAttenuationBuilder builder = new SparseAttenuationBuilder(
+                frequencies.stream().mapToInt(Integer::intValue).toArray(), hasGeometry);
+        double[] attenuation = new double[frequencies.size()];
+        try(Statement st = connection.createStatement()) {
+            st.setFetchSize(BATCH_SIZE);
+            try(ResultSet rs = st.executeQuery(query.toString())) {
+                while (rs.next()) {
+                    for (int band = 0; band < attenuation.length; band++) {
+                        attenuation[band] = rs.getDouble(3 + band);
+                    }
+                    long receiverId = rs.getLong(1);
+                    // the geometry is only read on the first row of the receiver
+                    if(builder.isGeometryMissing(receiverId)) {
+                        int geometryIndex = 3 + attenuation.length;
+                        Object geometry = rs.getObject(geometryIndex);
+                        if(geometry != null && !(geometry instanceof Geometry) &&
+                                rs.isWrapperFor(SpatialResultSet.class)) {
+                            geometry = rs.unwrap(SpatialResultSet.class).getGeometry(geometryIndex);
+                        }
+                        builder.setGeometry(receiverId, geometry);
+                    }
+                    builder.add(receiverId, rs.getLong(2), attenuation);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Load the attenuation matrix files, the entries of all the periods are summed
+     * @param reader Attenuation matrix files
+     * @return Sparse attenuation matrix
+     */
+    static SparseAttenuation loadAttenuation(AttenuationMatrixReader reader) {
+        int[] frequencies = reader.getFrequencies();
+        SparseAttenuationBuilder builder = new SparseAttenuationBuilder(frequencies, false);
+        double[] attenuation = new double[frequencies.length];
+        reader.forEach((receiverPk, sourcePk, period, levels) -> {
+            for (int band = 0; band < levels.length; band++) {
+                attenuation[band] = levels[band];
+            }
+            builder.add(receiverPk, sourcePk, attenuation);
+        });
+        return builder.build();
+    }
+
+    /**
+     * Compute the levels of a range of receivers for one period
+     * @param matrix Attenuation matrix
+     * @param sourceEmission Emission of each source and band in the energy domain
+     * @param activeSources True if the source has an emission on this period
+     * @param firstReceiver First receiver index
+     * @param lastReceiver Last receiver index, excluded
+     * @param receiverLevels Output, level of each receiver and band in the energy domain
+     * @param receiverHasSource Output, true if at least one source contributes to the receiver
+     */
+    static void computeReceivers(SparseAttenuation matrix, double[] sourceEmission, boolean[] activeSources,
+                                 int firstReceiver, int lastReceiver, double[] receiverLevels,
+                                 boolean[] receiverHasSource) {
+        final int bandCount = matrix.frequencies.length;
+        for (int receiver = firstReceiver; receiver < lastReceiver; receiver++) {
+            int receiverOffset = receiver * bandCount;
+            Arrays.fill(receiverLevels, receiverOffset, receiverOffset + bandCount, 0);
+            boolean hasSource = false;
+            for (int entry = matrix.rowOffsets[receiver]; entry < matrix.rowOffsets[receiver + 1]; entry++) {
+                int source = matrix.entrySources[entry];
+                if(!activeSources[source]) {
+                    continue;
+                }
+                hasSource = true;
+                int entryOffset = entry * bandCount;
+                int sourceOffset = source * bandCount;
+                for (int band = 0; band < bandCount; band++) {
+                    receiverLevels[receiverOffset + band] += matrix.entryAttenuation[entryOffset + band] *
+                            sourceEmission[sourceOffset + band];
+                }
+            }
+            receiverHasSource[receiver] = hasSource;
+        }
+    }
+
+    /**
+     * Create the output table and compute the levels of each period of the emission table
+     * @param connection Database connection
+     * @param progressVisitor Progression, checked for cancellation between periods
+     * @throws SQLException Error while reading or writing the tables
+     * @throws IOException Error while reading the attenuation matrix files
+     */
+    public void run(Connection connection, ProgressVisitor progressVisitor) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        SparseAttenuation matrix;
+        if(attenuationMatrixDirectory != null) {
+            try(AttenuationMatrixReader reader = new AttenuationMatrixReader(attenuationMatrixDirectory)) {
+                matrix = loadAttenuation(reader);
+            }
+        } else {
+            matrix = loadAttenuation(connection);
+        }
+        LOGGER.info(String.format(Locale.ROOT, "Attenuation matrix of %d receivers, %d sources and %d entries" +
+                " loaded in %d ms", matrix.receiverIds.length, matrix.sourceIds.length, matrix.getEntryCount(),
+                System.currentTimeMillis() - start));
+        final int[] frequencies = matrix.frequencies;
+        final int bandCount = frequencies.length;
+        double[] aWeighting = new double[bandCount];
+        for (int band = 0; band < bandCount; band++) {
+            int index = Arrays.binarySearch(ProfileBuilder.DEFAULT_FREQUENCIES_THIRD_OCTAVE, frequencies[band]);
+            if(index < 0) {
+                throw new SQLException("Unsupported frequency band " + frequencies[band]);
+            }
+            aWeighting[band] = Math.pow(10, ProfileBuilder.DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE[index] / 10);
+        }
+        List<Integer> emissionFrequencies = findFrequencies(JDBCUtilities.getColumnNames(connection, emissionTable));
+        if(!emissionFrequencies.containsAll(Arrays.stream(frequencies).boxed().collect(Collectors.toList()))) {
+            throw new SQLException("The emission table " + emissionTable + " must contain the frequency bands " +
+                    Arrays.toString(frequencies));
+        }
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(periodField).append(", ").append(sourceIdField);
+        for (int frequency : frequencies) {
+            query.append(", ").append(frequencyFieldPrepend).append(frequency);
+        }
+        query.append(" FROM ").append(emissionTable).append(" ORDER BY ").append(periodField);
+        final int receiverCount = matrix.receiverIds.length;
+        final int sourceCount = matrix.sourceIds.length;
+        double[] sourceEmission = new double[sourceCount * bandCount];
+        boolean[] activeSources = new boolean[sourceCount];
+        double[] receiverLevels = new double[receiverCount * bandCount];
+        boolean[] receiverHasSource = new boolean[receiverCount];
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        boolean createdTable = false;
+        BatchInsert insert = null;
+        long periodCount = 0;
+        try(Statement st = connection.createStatement()) {
+            st.setFetchSize(BATCH_SIZE);
+            try(ResultSet rs = st.executeQuery(query.toString())) {
+                if(outputTable != null) {
+                    createOutputTable(connection, getColumnDefinition(rs.getMetaData(), 1), matrix);
+                    createdTable = true;
+                    insert = prepareInsert(connection, matrix);
+                }
+                boolean hasRow = rs.next();
+                while (hasRow) {
+                    if(progressVisitor != null && progressVisitor.isCanceled()) {
+                        break;
+                    }
+                    // Read the emission of the sources for this period
+                    Object period = rs.getObject(1);
+                    Arrays.fill(activeSources, false);
+                    do {
+                        int source = Arrays.binarySearch(matrix.sourceIds, rs.getLong(2));
+                        if(source >= 0) {
+                            if(!activeSources[source]) {
+                                activeSources[source] = true;
+                                Arrays.fill(sourceEmission, source * bandCount, (source + 1) * bandCount, 0);
+                            }
+                            for (int band = 0; band < bandCount; band++) {
+                                double lw = rs.getDouble(3 + band);
+                                if(!rs.wasNull()) {
+                                    sourceEmission[source * bandCount + band] += Math.pow(10, lw / 10);
+                                }
+                            }
+                        }
+                        hasRow = rs.next();
+                    } while (hasRow && Objects.equals(period, rs.getObject(1)));
+                    // Sparse matrix - vector product
+                    List<Future<?>> tasks = new ArrayList<>();
+                    for (int firstReceiver = 0; firstReceiver < receiverCount; firstReceiver += RECEIVERS_PER_TASK) {
+                        final int first = firstReceiver;
+                        final int last = Math.min(receiverCount, firstReceiver + RECEIVERS_PER_TASK);
+                        tasks.add(executorService.submit(() -> computeReceivers(matrix, sourceEmission,
+                                activeSources, first, last, receiverLevels, receiverHasSource)));
+                    }
+                    for (Future<?> task : tasks) {
+                        task.get();
+                    }
+                    writeLevels(insert, indicators, matrix, period, receiverLevels, receiverHasSource, aWeighting);
+                    periodCount++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause());
+        } finally {
+            executorService.shutdownNow();
+            if(insert != null) {
+                insert.close();
+            }
+        }
+        if(progressVisitor != null && progressVisitor.isCanceled()) {
+            LOGGER.info("Computation cancelled, the output table is not indexed");
+        } else if(createdTable) {
+            try(Statement st = connection.createStatement()) {
+                st.execute("CREATE UNIQUE INDEX ON " + outputTable + " (" + receiverIdField + ", " + periodField +
+                        ")");
+            }
+        }
+        LOGGER.info(String.format(Locale.ROOT, "%d periods computed in %d ms", periodCount,
+                System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @param metaData Result set columns
+     * @param column Column index, the first column is 1
+     * @return SQL type of the column with its length, or its precision and scale
+     */
+    static String getColumnDefinition(ResultSetMetaData metaData, int column) throws SQLException {
+        String typeName = metaData.getColumnTypeName(column);
+        int precision = metaData.getPrecision(column);
+        switch (metaData.getColumnType(column)) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.BINARY:
+            case Types.VARBINARY:
+                // unbounded text types (PostgreSQL text, varchar) report the maximum integer
+                if(precision > 0 && precision < Integer.MAX_VALUE) {
+                    return String.format(Locale.ROOT, "%s(%d)", typeName, precision);
+                }
+                break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                if(precision > 0 && precision <= 1000) {
+                    return String.format(Locale.ROOT, "%s(%d, %d)", typeName, precision, metaData.getScale(column));
+                }
+                break;
+            default:
+                break;
+        }
+        return typeName;
+    }
+
+    /**
+     * @param connection Database connection
+     * @param matrix Attenuation matrix with the receivers geometries
+     * @return SQL type of the receiver geometry field of the attenuation table, with its SRID
+     */
+    private String getGeometryDefinition(Connection connection, SparseAttenuation matrix) throws SQLException {
+        GeometryMetaData geometryMetaData = GeometryTableUtilities.getMetaData(connection,
+                TableLocation.parse(attenuationTable, DBUtils.getDBType(connection)), geometryField);
+        if(geometryMetaData.getSRID() == 0) {
+            // the column is not constrained, use the SRID of the receivers geometries
+            for (Object geometry : matrix.receiverGeometries) {
+                if(geometry instanceof Geometry && ((Geometry) geometry).getSRID() != 0) {
+                    geometryMetaData.setSRID(((Geometry) geometry).getSRID());
+                    break;
+                }
+            }
+        }
+        String geometryDefinition = geometryMetaData.getSQL();
+        if(geometryMetaData.getSRID() != 0 && geometryDefinition.indexOf('(') < 0) {
+            // the SRID of the generic geometry type is not written by GeometryMetaData
+            geometryDefinition = String.format(Locale.ROOT, "GEOMETRY(GEOMETRY, %d)", geometryMetaData.getSRID());
+        }
+        return geometryDefinition;
+    }
+
+    private void createOutputTable(Connection connection, String periodType, SparseAttenuation matrix)
+            throws SQLException {
+        StringBuilder query = new StringBuilder("CREATE TABLE ");
+        query.append(outputTable).append(" (").append(receiverIdField).append(" BIGINT NOT NULL, ");
+        query.append(periodField).append(" ").append(periodType);
+        if(matrix.receiverGeometries != null) {
+            query.append(", ").append(geometryField).append(" ").append(getGeometryDefinition(connection, matrix));
+        }
+        for (int frequency : matrix.frequencies) {
+            query.append(", ").append(frequencyFieldPrepend).append(frequency).append(" DOUBLE PRECISION");
+        }
+        query.append(", LAEQ DOUBLE PRECISION, LEQ DOUBLE PRECISION)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(query.toString());
+        }
+    }
+
+    private BatchInsert prepareInsert(Connection connection, SparseAttenuation matrix) throws SQLException {
+        if(PostgreSQLCopyStatement.isSupported(connection)) {
+            return new PostgreSQLCopyStatement(connection, outputTable, null);
+        }
+        int fieldCount = 2 + (matrix.receiverGeometries != null ? 1 : 0) + matrix.frequencies.length + 2;
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(outputTable).append(" VALUES (?");
+        query.append(", ?".repeat(fieldCount - 1));
+        query.append(")");
+        return BatchInsert.of(connection.prepareStatement(query.toString()));
+    }
+
+    private static void writeLevels(BatchInsert insert, DynamicIndicatorsMaker indicators,
+                                    SparseAttenuation matrix, Object period, double[] receiverLevels,
+                                    boolean[] receiverHasSource, double[] aWeighting) throws SQLException {
+        final int bandCount = matrix.frequencies.length;
+        int batchRows = 0;
+        for (int receiver = 0; receiver < matrix.receiverIds.length; receiver++) {
+            if(!receiverHasSource[receiver]) {
+                continue;
+            }
+            Object geometry = matrix.receiverGeometries != null ? matrix.receiverGeometries[receiver] : null;
+            double laeq = 0;
+            double leq = 0;
+            for (int band = 0; band < bandCount; band++) {
+                double level = receiverLevels[receiver * bandCount + band];
+                laeq += level * aWeighting[band];
+                leq += level;
+            }
+            if(indicators != null) {
+                indicators.add(matrix.receiverIds[receiver], geometry, 10 * Math.log10(laeq));
+            }
+            if(insert == null) {
+                continue;
+            }
+            int parameterIndex = 1;
+            insert.setLong(parameterIndex++, matrix.receiverIds[receiver]);
+            insert.setObject(parameterIndex++, period);
+            if(matrix.receiverGeometries != null) {
+                insert.setObject(parameterIndex++, geometry);
+            }
+            for (int band = 0; band < bandCount; band++) {
+                insert.setDouble(parameterIndex++, 10 * Math.log10(receiverLevels[receiver * bandCount + band]));
+            }
+            insert.setDouble(parameterIndex++, 10 * Math.log10(laeq));
+            insert.setDouble(parameterIndex, 10 * Math.log10(leq));
+            insert.addBatch();
+            if(++batchRows >= BATCH_SIZE) {
+                insert.executeBatch();
+                batchRows = 0;
+            }
+        }
+        if(batchRows > 0) {
+            insert.executeBatch();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.dBToW;
@@ -66,6 +67,15 @@ public class EmissionTableGenerator {
      * @return Emission spectrum in dB
      */
     public static double[] getEmissionFromTrafficTable(ResultSet rs, String period, double slope, int coefficientVersion, Map<String, Integer> sourceFieldsCache) throws SQLException {
+        if(roadOctaveFrequencyBands.isEmpty()) {
+            throw new SQLException("No frequency band to evaluate the road emission");
+        }
+        for (int frequency : roadOctaveFrequencyBands) {
+            if(RoadCnossos.OCTAVE_BANDS[RoadCnossos.getFrequencyIndex(frequency)] != frequency) {
+                throw new SQLException(String.format(Locale.ROOT,
+                        "The road emission is only defined for octave bands, got %d Hz", frequency));
+            }
+        }
         cacheFields(sourceFieldsCache, rs);
         // Set default values
         double tv = 0; // old format "total vehicles"
@@ -166,21 +176,22 @@ public class EmissionTableGenerator {
         if(hv > 0) {
             hgvPerHour = hv;
         }
-        // Compute emission
+        // Compute emission of all octave bands at once
+        RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
+                wbv_speed, lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, RoadCnossos.OCTAVE_BANDS[0],
+                temperature, roadSurface, tsStud, pmStud, junctionDistance, junctionType);
+        rsParametersCnossos.setSlopePercentage(slope);
+        rsParametersCnossos.setWay(way);
+        rsParametersCnossos.setFileVersion(coefficientVersion);
+        double[] spectrum;
+        try {
+            spectrum = RoadCnossos.evaluateSpectrum(rsParametersCnossos);
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
         double[] lvl = new double[roadOctaveFrequencyBands.size()];
         for (int idFreq = 0; idFreq < roadOctaveFrequencyBands.size(); idFreq++) {
-            int freq = roadOctaveFrequencyBands.get(idFreq);
-            RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
-                    wbv_speed, lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
-                    roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setFileVersion(coefficientVersion);
-            try {
-                lvl[idFreq] = RoadCnossos.evaluate(rsParametersCnossos);
-            } catch (IOException ex) {
-                throw new SQLException(ex);
-            }
+            lvl[idFreq] = spectrum[RoadCnossos.getFrequencyIndex(roadOctaveFrequencyBands.get(idFreq))];
         }
         return lvl;
     }
@@ -92,6 +92,50 @@ public abstract class GridMapMaker {
         return  getCellEnv(mainEnvelope, cellIndex.getLatitudeIndex(),
                 cellIndex.getLongitudeIndex(), getCellWidth(), getCellHeight());
     }
+
+    /**
+     * Each receiver is owned by exactly one cell: the cell that contains its position, the lower edges of a cell
+     * being inclusive and the upper edges exclusive (except on the border of the computation area).
+     * @param coordinate Receiver position
+     * @return The cell that computes this receiver, null if the position is outside the computation area
+     */
+    public CellIndex getReceiverCell(Coordinate coordinate) {
+        if(!mainEnvelope.contains(coordinate)) {
+            return null;
+        }
+        double cellWidth = getCellWidth();
+        double cellHeight = getCellHeight();
+        int i = getOwnerCellIndex(coordinate.x, mainEnvelope.getMinX(), cellWidth);
+        int j = getOwnerCellIndex(coordinate.y, mainEnvelope.getMinY(), cellHeight);
+        return new CellIndex(j, i);
+    }
+
+    /**
+     * @return Index of the cell where lower edge &lt;= position &lt; lower edge of the next cell, with the edges
+     * computed as in {@link #getCellEnv(Envelope, int, int, double, double)}
+     */
+    private int getOwnerCellIndex(double position, double origin, double cellSize) {
+        int index = Math.max(0, Math.min(gridDim - 1, (int) Math.floor((position - origin) / cellSize)));
+        // fix the rounding errors of the division
+        if(index > 0 && position < origin + index * cellSize) {
+            index--;
+        } else if(index < gridDim - 1 && position >= origin + (index + 1) * cellSize) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @param cellIndex Cell location
+     * @return Envelope used to fetch the receivers of the cell, slightly larger than the cell in order to not miss
+     * a receiver on the cell edges. The fetched receivers must be filtered with {@link #getReceiverCell(Coordinate)}
+     */
+    public Envelope getCellReceiversEnv(CellIndex cellIndex) {
+        Envelope envelope = getCellEnv(cellIndex);
+        envelope.expandBy(Math.max(getCellWidth(), getCellHeight()) * 1e-6);
+        return envelope;
+    }
+
     /**
      * Compute the envelope corresping to parameters
      *
@@ -17,7 +17,6 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
@@ -26,16 +25,30 @@ import org.noise_planet.noisemodelling.jdbc.output.DefaultCutPlaneProcessing;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
 import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitorFactory;
 import org.noise_planet.noisemodelling.pathfinder.PathFinder;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
+import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -53,6 +66,12 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     private Logger logger = LoggerFactory.getLogger(NoiseMapByReceiverMaker.class);
     private int threadCount = 0;
     private ProfilerThread profilerThread;
+    private int cellPrefetchDepth = 0;
+    private long cellPrefetchMemoryLimit = Runtime.getRuntime().maxMemory() / 2;
+    private int maximumConcurrentCells = 1;
+    private long cellMemoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private DataSource dataSource;
+    private CellJournal cellJournal;
 
     SceneDatabaseInputSettings sceneDatabaseInputSettings = new SceneDatabaseInputSettings();
 
@@ -156,6 +175,191 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         this.profilerThread = profilerThread;
     }
 
+    /**
+     * Create the profiler of the computation stages of a cell
+     * @param cellIndex Computation area index
+     * @return New StageProfiler or null if the profiler thread does not collect the stages
+     */
+    public StageProfiler createStageProfiler(CellIndex cellIndex) {
+        if(profilerThread == null || profilerThread.getMetric(StageMetric.class) == null) {
+            return null;
+        }
+        return new StageProfiler(String.format(Locale.ROOT, "%d_%d", cellIndex.getLongitudeIndex(),
+                cellIndex.getLatitudeIndex()));
+    }
+
+    /**
+     * @return Journal of the computed cells of the running computation, null if
+     * {@link NoiseMapDatabaseParameters#cellJournalTable} is not set
+     */
+    public CellJournal getCellJournal() {
+        return cellJournal;
+    }
+
+    /**
+     * @return Parameters that must not change when an interrupted computation is resumed
+     */
+    public Map<String, String> getJournalParameters() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("receiverTable", receiverTableName);
+        parameters.put("buildingsTable", getBuildingsTableName());
+        parameters.put("sourcesTable", getSourcesTableName());
+        parameters.put("sourcesEmissionTable", getSourcesEmissionTableName());
+        parameters.put("soilTable", getSoilTableName());
+        parameters.put("demTable", getDemTable());
+        parameters.put("inputMode", String.valueOf(getInputMode()));
+        parameters.put("frequencyFieldPrepend", getFrequencyFieldPrepend());
+        parameters.put("gridDim", String.valueOf(gridDim));
+        parameters.put("mainEnvelope", String.valueOf(mainEnvelope));
+        parameters.put("maximumPropagationDistance", String.valueOf(maximumPropagationDistance));
+        parameters.put("maximumReflectionDistance", String.valueOf(maximumReflectionDistance));
+        parameters.put("soundReflectionOrder", String.valueOf(soundReflectionOrder));
+        parameters.put("computeHorizontalDiffraction", String.valueOf(computeHorizontalDiffraction));
+        parameters.put("computeVerticalDiffraction", String.valueOf(computeVerticalDiffraction));
+        parameters.put("bodyBarrier", String.valueOf(bodyBarrier));
+        parameters.put("receiverHasAbsoluteZCoordinates", String.valueOf(receiverHasAbsoluteZCoordinates));
+        parameters.put("sourceHasAbsoluteZCoordinates", String.valueOf(sourceHasAbsoluteZCoordinates));
+        parameters.put("gs", String.valueOf(gs));
+        parameters.put("wallAbsorption", String.valueOf(getWallAbsorption()));
+        parameters.put("heightField", getHeightField());
+        parameters.put("receiversLevelTable", noiseMapDatabaseParameters.receiversLevelTable);
+        parameters.put("raysTable", noiseMapDatabaseParameters.raysTable);
+        parameters.put("exportRaysMethod", String.valueOf(noiseMapDatabaseParameters.exportRaysMethod));
+        parameters.put("mergeSources", String.valueOf(noiseMapDatabaseParameters.mergeSources));
+        parameters.put("computeLAEQOnly", String.valueOf(noiseMapDatabaseParameters.computeLAEQOnly));
+        parameters.put("exportReceiverPosition", String.valueOf(noiseMapDatabaseParameters.exportReceiverPosition));
+        parameters.put("maximumError", String.valueOf(noiseMapDatabaseParameters.maximumError));
+        parameters.put("sourceEmissionPrimaryKeyField", sceneDatabaseInputSettings.getSourceEmissionPrimaryKeyField());
+        parameters.put("periodAtmosphericSettingsTable",
+                sceneDatabaseInputSettings.getPeriodAtmosphericSettingsTableName());
+        parameters.put("coefficientVersion", String.valueOf(sceneDatabaseInputSettings.getCoefficientVersion()));
+        parameters.put("directivityTable", sceneDatabaseInputSettings.getDirectivityTableName());
+        parameters.put("useTrainDirectivity", String.valueOf(sceneDatabaseInputSettings.isUseTrainDirectivity()));
+        if(tableLoader instanceof DefaultTableLoader) {
+            // Atmospheric settings of each period, read from the period atmospheric settings table on initialization
+            DefaultTableLoader defaultTableLoader = (DefaultTableLoader) tableLoader;
+            parameters.put("attenuationParameters", getJournalParameter(defaultTableLoader.defaultParameters));
+            for (Map.Entry<String, AttenuationParameters> entry :
+                    new TreeMap<>(defaultTableLoader.getCnossosParametersPerPeriod()).entrySet()) {
+                parameters.put("attenuationParameters_" + entry.getKey(), getJournalParameter(entry.getValue()));
+            }
+        }
+        return parameters;
+    }
+
+    private static String getJournalParameter(AttenuationParameters attenuationParameters) {
+        return String.format(Locale.ROOT, "temperature=%s humidity=%s pressure=%s defaultOccurance=%s " +
+                        "windRose=%s gDisc=%s prime2520=%s frequencies=%s",
+                attenuationParameters.getTemperature(), attenuationParameters.getHumidity(),
+                attenuationParameters.getPressure(), attenuationParameters.getDefaultOccurance(),
+                Arrays.toString(attenuationParameters.getWindRose()), attenuationParameters.isgDisc(),
+                attenuationParameters.isPrime2520(), attenuationParameters.getFrequencies());
+    }
+
+    /**
+     * Open the journal of the computed cells, if enabled. When resuming, the computed cells are removed from the
+     * provided cells. The receivers of the other cells are kept in {@link CellJournal#getRecomputedReceivers()}.
+     * @param connection Active connection
+     * @param cells Populated cells, the computed cells are removed
+     */
+    private void openCellJournal(Connection connection, Map<CellIndex, Integer> cells) throws SQLException {
+        if(noiseMapDatabaseParameters.cellJournalTable == null) {
+            if(noiseMapDatabaseParameters.resume) {
+                throw new SQLException("The cell journal table must be set in order to resume the computation");
+            }
+            cellJournal = null;
+            return;
+        }
+        cellJournal = new CellJournal(noiseMapDatabaseParameters.cellJournalTable, noiseMapDatabaseParameters.resume);
+        Set<CellIndex> doneCells = cellJournal.open(connection, getJournalParameters());
+        if(!cellJournal.isResume()) {
+            return;
+        }
+        cells.keySet().removeAll(doneCells);
+        // The receivers are owned by a single cell, so the receivers of the computed cells will not be processed
+        // again. Only the receivers of the remaining cells may have partial results to delete, even if no cell has
+        // been journaled the interrupted run may have stored results
+        forEachOwnedReceiver(connection, cells.keySet(),
+                (cellIndex, receiverPk) -> cellJournal.getRecomputedReceivers().add(receiverPk));
+        logger.info("Resume the computation, {} cells have already been computed, {} cells remaining",
+                doneCells.size(), cells.size());
+    }
+
+    /**
+     * Fetch the receivers owned by the cells, see {@link #getReceiverCell(Coordinate)}
+     * @param connection Active connection
+     * @param cells Populated cells
+     * @param receiverConsumer Called with the cell and the primary key of each receiver
+     */
+    void forEachOwnedReceiver(Connection connection, Collection<CellIndex> cells,
+                              BiConsumer<CellIndex, Long> receiverConsumer) throws SQLException {
+        try (PreparedStatement st = prepareCellReceiversStatement(connection)) {
+            for (CellIndex cellIndex : new TreeSet<>(cells)) {
+                forEachCellReceiver(st, cellIndex, receiverPk -> receiverConsumer.accept(cellIndex, receiverPk));
+            }
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @return Statement for {@link #forEachCellReceiver(PreparedStatement, CellIndex, LongConsumer)}
+     */
+    PreparedStatement prepareCellReceiversStatement(Connection connection) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String receiverGeomName = GeometryTableUtilities.getGeometryColumnNames(connection,
+                TableLocation.parse(receiverTableName)).get(0);
+        int intPk = JDBCUtilities.getIntegerPrimaryKey(connection.unwrap(Connection.class),
+                TableLocation.parse(receiverTableName, dbType));
+        if(intPk < 1) {
+            throw new SQLException(String.format("Table %s missing primary key for receiver identification",
+                    receiverTableName));
+        }
+        return connection.prepareStatement("SELECT " +
+                TableLocation.quoteIdentifier(receiverGeomName, dbType) + ", " +
+                TableLocation.quoteIdentifier(JDBCUtilities.getColumnName(connection, receiverTableName, intPk),
+                        dbType) + " FROM " + receiverTableName + " WHERE " +
+                TableLocation.quoteIdentifier(receiverGeomName, dbType) + " && ?::geometry");
+    }
+
+    /**
+     * Fetch the primary keys of the receivers owned by the cell
+     * @param st Statement created with {@link #prepareCellReceiversStatement(Connection)}
+     * @param cellIndex Computation area index
+     * @param receiverConsumer Called with each receiver primary key
+     */
+    void forEachCellReceiver(PreparedStatement st, CellIndex cellIndex, LongConsumer receiverConsumer)
+            throws SQLException {
+        st.setObject(1, geometryFactory.toGeometry(getCellReceiversEnv(cellIndex)));
+        try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                Geometry pt = rs.getGeometry();
+                if(pt != null && !pt.isEmpty() && cellIndex.equals(getReceiverCell(pt.getCoordinate()))) {
+                    receiverConsumer.accept(rs.getLong(2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the computation of a cell is done
+     * @param cellIndex Computation area index
+     * @param scene Cell data
+     * @param progression Progression info
+     */
+    private void onCellEvaluated(CellIndex cellIndex, SceneWithEmission scene, ProgressVisitor progression) {
+        if(cellJournal != null && !progression.isCanceled() && !aborted.get()) {
+            cellJournal.onCellComputed(cellIndex, scene.receivers.size(),
+                    computeRaysOutFactory.getResultsStoredCondition());
+        }
+    }
+
+    /**
+     * @return Object that create the output of each cell
+     */
+    public IComputeRaysOutFactory getComputeRaysOutFactory() {
+        return computeRaysOutFactory;
+    }
+
     public void setComputeRaysOutFactory(IComputeRaysOutFactory computeRaysOutFactory) {
         this.computeRaysOutFactory = computeRaysOutFactory;
     }
@@ -183,16 +387,80 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Number of cells prepared in advance by {@link #run(DataSource, ProgressVisitor)}
+     */
+    public int getCellPrefetchDepth() {
+        return cellPrefetchDepth;
+    }
+
+    /**
+     * Load and prepare the next cells on a background thread while the current cell is computed.
+     * Only used by {@link #run(DataSource, ProgressVisitor)} as the loader needs its own connection.
+     * @param cellPrefetchDepth Number of cells prepared in advance, 0 to evaluate the cells one after another
+     */
+    public void setCellPrefetchDepth(int cellPrefetchDepth) {
+        this.cellPrefetchDepth = cellPrefetchDepth;
+    }
+
+    /**
+     * @return Used heap in bytes over which no more than one cell is prepared in advance
+     */
+    public long getCellPrefetchMemoryLimit() {
+        return cellPrefetchMemoryLimit;
+    }
+
+    /**
+     * @param cellPrefetchMemoryLimit Used heap in bytes over which no more than one cell is prepared in advance.
+     *                                Default to the half of the maximum heap size
+     */
+    public void setCellPrefetchMemoryLimit(long cellPrefetchMemoryLimit) {
+        this.cellPrefetchMemoryLimit = cellPrefetchMemoryLimit;
+    }
+
+    /**
+     * @return Maximum number of cells computed at the same time by {@link #run(DataSource, ProgressVisitor)}
+     */
+    public int getMaximumConcurrentCells() {
+        return maximumConcurrentCells;
+    }
+
+    /**
+     * Compute several cells at the same time, the computation threads ({@link #setThreadCount(int)}) are shared
+     * by all the running cells. A new cell is started only if the sum of the estimated footprint of the running cells
+     * ({@link TableLoader#estimateMemoryFootprint(SceneWithEmission)}) stay under {@link #getCellMemoryBudget()}.
+     * Only used by {@link #run(DataSource, ProgressVisitor)}.
+     * @param maximumConcurrentCells Maximum number of cells computed at the same time, 1 to compute one cell at a time
+     */
+    public void setMaximumConcurrentCells(int maximumConcurrentCells) {
+        this.maximumConcurrentCells = maximumConcurrentCells;
+    }
+
+    /**
+     * @return Maximum sum of the estimated footprint of the cells computed at the same time, in bytes
+     */
+    public long getCellMemoryBudget() {
+        return cellMemoryBudget;
+    }
+
+    /**
+     * @param cellMemoryBudget Maximum sum of the estimated footprint of the cells computed at the same time, in bytes.
+     *                         Default to the half of the maximum heap size
+     */
+    public void setCellMemoryBudget(long cellMemoryBudget) {
+        this.cellMemoryBudget = cellMemoryBudget;
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
-     * @param cellIndex Computation area index
-     * @param skipReceivers Do not process the receivers primary keys in this set and once included add the new receivers primary in it
+     * @param cellIndex Computation area index, the receivers of the cell are the receivers owned by the cell, see
+     *                  {@link #getReceiverCell(Coordinate)}
      * @return Data input for cell evaluation
      * @throws SQLException
      */
-    public SceneWithEmission prepareCell(Connection connection, CellIndex cellIndex,
-                                         Set<Long> skipReceivers) throws SQLException, IOException {
+    public SceneWithEmission prepareCell(Connection connection, CellIndex cellIndex)
+            throws SQLException, IOException {
 
         Envelope cellEnvelope = getCellEnv(cellIndex);
 
@@ -204,7 +472,15 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
                     roundWKTWriter.write(geometryFactory.toGeometry(cellEnvelope)));
         }
 
-        return tableLoader.create(connection, cellIndex, skipReceivers);
+        long start = System.nanoTime();
+        SceneWithEmission scene = tableLoader.create(connection, cellIndex);
+        if(scene.stageProfiler == null) {
+            scene.stageProfiler = createStageProfiler(cellIndex);
+        }
+        if(scene.stageProfiler != null) {
+            scene.stageProfiler.recordSince(StageProfiler.Stage.SCENE_LOAD, start);
+        }
+        return scene;
     }
 
     /**
@@ -222,7 +498,9 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     }
 
     /**
-     * Fetch all receivers and compute cells that contains receivers
+     * Fetch all receivers and compute cells that contains receivers, each receiver being counted only in the cell
+     * that owns it, see {@link #getReceiverCell(Coordinate)}. On H2GIS and PostGIS the receivers are counted by the
+     * database, else the receivers positions are fetched.
      * @param connection
      * @return Cell index with number of receivers
      * @throws SQLException
@@ -231,36 +509,37 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         if(mainEnvelope == null) {
             throw new IllegalStateException("Call initialize before calling searchPopulatedCells");
         }
-        Map<CellIndex, Integer> cellIndices = new HashMap<>();
         List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection, TableLocation.parse(receiverTableName));
-        String geometryField;
         if(geometryFields.isEmpty()) {
             throw new SQLException("The table "+receiverTableName+" does not contain a Geometry field, then the extent " +
                     "cannot be computed");
         }
         logger.info("Collect all receivers in order to localize populated cells");
-        geometryField = geometryFields.get(0);
-        ResultSet rs = connection.createStatement().executeQuery("SELECT " + geometryField + " FROM " + receiverTableName);
-        // Construct RTree with cells envelopes
-        STRtree rtree = new STRtree();
-        for(int i = 0; i < gridDim; i++) {
-            for(int j = 0; j < gridDim; j++) {
-                Envelope refEnv = getCellEnv(mainEnvelope, i,
-                        j, getCellWidth(), getCellHeight());
-                rtree.insert(refEnv, new CellIndex(j, i));
-            }
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        if(dbType == DBTypes.H2GIS || dbType == DBTypes.POSTGIS) {
+            return countCellReceiversInDatabase(connection, geometryFields.get(0), dbType);
+        } else {
+            return countCellReceivers(connection, geometryFields.get(0));
         }
-        // Iterate over receivers and look for intersecting cells
-        try (SpatialResultSet srs = rs.unwrap(SpatialResultSet.class)) {
+    }
+
+    /**
+     * Fetch the position of all receivers and count the receivers of each cell
+     * @param connection Active connection
+     * @param geometryField Geometry column of the receivers table
+     * @return Cell index with number of receivers
+     */
+    Map<CellIndex, Integer> countCellReceivers(Connection connection, String geometryField) throws SQLException {
+        Map<CellIndex, Integer> cellIndices = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             SpatialResultSet srs = st.executeQuery("SELECT " + geometryField + " FROM " +
+                     receiverTableName).unwrap(SpatialResultSet.class)) {
             while (srs.next()) {
                 Geometry pt = srs.getGeometry();
                 if(pt != null && !pt.isEmpty()) {
-                    Coordinate ptCoord = pt.getCoordinate();
-                    List queryResult = rtree.query(new Envelope(ptCoord));
-                    for(Object o : queryResult) {
-                        if(o instanceof CellIndex) {
-                            cellIndices.merge((CellIndex) o, 1, Integer::sum);
-                        }
+                    CellIndex cellIndex = getReceiverCell(pt.getCoordinate());
+                    if(cellIndex != null) {
+                        cellIndices.merge(cellIndex, 1, Integer::sum);
                     }
                 }
             }
@@ -268,19 +547,103 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         return cellIndices;
     }
 
+    /**
+     * Count the receivers of each cell with an aggregate query, only the counts are transferred. The cell index is
+     * evaluated with the same operations as {@link #getReceiverCell(Coordinate)} so a receiver on a cell edge is
+     * counted in the same cell.
+     * @param connection Active connection
+     * @param geometryField Geometry column of the receivers table
+     * @param dbType H2GIS or PostGIS
+     * @return Cell index with number of receivers
+     */
+    Map<CellIndex, Integer> countCellReceiversInDatabase(Connection connection, String geometryField,
+                                                         DBTypes dbType) throws SQLException {
+        String geometry = TableLocation.quoteIdentifier(geometryField, dbType);
+        String query = "SELECT " + ownerCellExpression("X", "I0", mainEnvelope.getMinX(), getCellWidth()) + " I, " +
+                ownerCellExpression("Y", "J0", mainEnvelope.getMinY(), getCellHeight()) + " J, COUNT(*) FROM " +
+                "(SELECT X, Y, " + floorCellExpression("X", mainEnvelope.getMinX(), getCellWidth()) + " I0, " +
+                floorCellExpression("Y", mainEnvelope.getMinY(), getCellHeight()) + " J0 FROM " +
+                "(SELECT ST_X(PT) X, ST_Y(PT) Y FROM (SELECT " + firstVertexExpression(geometry) + " PT FROM " +
+                receiverTableName + " WHERE " + geometry + " IS NOT NULL AND NOT ST_ISEMPTY(" + geometry + ")) G) P" +
+                " WHERE X >= " + sqlDouble(mainEnvelope.getMinX()) +
+                " AND X <= " + sqlDouble(mainEnvelope.getMaxX()) + " AND Y >= " + sqlDouble(mainEnvelope.getMinY()) +
+                " AND Y <= " + sqlDouble(mainEnvelope.getMaxY()) + ") C GROUP BY I, J";
+        Map<CellIndex, Integer> cellIndices = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery(query)) {
+            while (rs.next()) {
+                cellIndices.put(new CellIndex(rs.getInt(2), rs.getInt(1)), rs.getInt(3));
+            }
+        }
+        return cellIndices;
+    }
+
+    /**
+     * @param geometry Geometry column
+     * @return SQL expression of the first vertex of the geometry, as {@link Geometry#getCoordinate()}. Only the
+     * functions available on both H2GIS and PostGIS are used.
+     */
+    private static String firstVertexExpression(String geometry) {
+        // first primitive of a collection, or of a collection in a collection
+        String primitive = "ST_GEOMETRYN(ST_GEOMETRYN(" + geometry + ", 1), 1)";
+        return "CASE ST_DIMENSION(" + primitive + ") WHEN 0 THEN " + primitive + " WHEN 1 THEN ST_STARTPOINT(" +
+                primitive + ") ELSE ST_STARTPOINT(ST_EXTERIORRING(" + primitive + ")) END";
+    }
+
+    private static String sqlDouble(double value) {
+        return "CAST(" + value + " AS DOUBLE PRECISION)";
+    }
+
+    /**
+     * @return SQL expression of the cell index computed by division, first step of {@link #getReceiverCell(Coordinate)}
+     */
+    private String floorCellExpression(String position, double origin, double cellSize) {
+        return "LEAST(GREATEST(FLOOR((" + position + " - " + sqlDouble(origin) + ") / " + sqlDouble(cellSize) +
+                "), 0), " + (gridDim - 1) + ")";
+    }
+
+    /**
+     * @return SQL expression of the cell index with the rounding errors fixed, as {@link #getReceiverCell(Coordinate)}
+     */
+    private String ownerCellExpression(String position, String index, double origin, double cellSize) {
+        return "CASE WHEN " + index + " > 0 AND " + position + " < " + sqlDouble(origin) + " + " + index + " * " +
+                sqlDouble(cellSize) + " THEN " + index + " - 1 WHEN " + index + " < " + (gridDim - 1) + " AND " +
+                position + " >= " + sqlDouble(origin) + " + (" + index + " + 1) * " + sqlDouble(cellSize) + " THEN " +
+                index + " + 1 ELSE " + index + " END";
+    }
+
     /**
      * Launch sound propagation
      * @param connection JDBC Connection
      * @param cellIndex Computation area index
      * @param progression Progression info
-     * @param skipReceivers Do not process the receivers primary keys in this set and once included add the new receivers primary in it
      * @return Output data instance for this cell
      * @throws SQLException Sql exception instance
      */
     public CutPlaneVisitorFactory evaluateCell(Connection connection, CellIndex cellIndex,
-                                        ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        SceneWithEmission scene = prepareCell(connection, cellIndex, skipReceivers);
+                                        ProgressVisitor progression) throws SQLException, IOException {
+        return evaluateCell(prepareCell(connection, cellIndex), progression);
+    }
 
+    /**
+     * Launch sound propagation on a scene returned by {@link #prepareCell(Connection, CellIndex)}
+     * @param scene Cell data
+     * @param progression Progression info
+     * @return Output data instance for this cell
+     */
+    public CutPlaneVisitorFactory evaluateCell(SceneWithEmission scene, ProgressVisitor progression) {
+        return evaluateCell(scene, progression, null);
+    }
+
+    /**
+     * Launch sound propagation on a scene returned by {@link #prepareCell(Connection, CellIndex)}
+     * @param scene Cell data
+     * @param progression Progression info
+     * @param computationPool Pool shared with the other running cells, null to use {@link #getThreadCount()} threads
+     * @return Output data instance for this cell
+     */
+    private CutPlaneVisitorFactory evaluateCell(SceneWithEmission scene, ProgressVisitor progression,
+                                                ExecutorService computationPool) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     scene.receivers.size(), scene.sourceGeometries.size(),
@@ -299,6 +662,8 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
             computeRays.setThreadCount(threadCount);
         }
 
+        computeRays.setComputationPool(computationPool);
+
         if(!receiverHasAbsoluteZCoordinates) {
             computeRays.makeReceiverRelativeZToAbsolute();
         }
@@ -309,6 +674,11 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
 
         computeRays.run(computeRaysOut);
 
+        if(scene.stageProfiler != null && profilerThread != null &&
+                profilerThread.getMetric(StageMetric.class) != null) {
+            profilerThread.getMetric(StageMetric.class).endCell(scene.stageProfiler);
+        }
+
         return computeRaysOut;
     }
 
@@ -338,11 +708,9 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     public void run(Connection connection, ProgressVisitor progressLogger) throws SQLException {
         initialize(connection, progressLogger);
 
-        // Set of already processed receivers
-        Set<Long> receivers = new HashSet<>();
-
         // Fetch cell identifiers with receivers
         Map<CellIndex, Integer> cells = searchPopulatedCells(connection);
+        openCellJournal(connection, cells);
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
 
         try {
@@ -350,7 +718,9 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
             for (CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
                 // Run ray propagation
                 try {
-                    evaluateCell(connection, cellIndex, progressVisitor, receivers);
+                    SceneWithEmission scene = prepareCell(connection, cellIndex);
+                    evaluateCell(scene, progressVisitor);
+                    onCellEvaluated(cellIndex, scene, progressVisitor);
                 } catch (IOException ex) {
                     throw new SQLException(ex);
                 }
@@ -360,6 +730,121 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         }
     }
 
+    /**
+     * Run NoiseModelling with provided parameters, return when computation is done
+     * If {@link #getCellPrefetchDepth()} is greater than 0, the next cells are loaded and prepared on another
+     * connection while the current cell is computed.
+     * If {@link #getMaximumConcurrentCells()} is greater than 1, several cells are computed at the same time under
+     * the memory budget {@link #getCellMemoryBudget()}.
+     * @param dataSource Database, the computation use one connection and the cell loader another one
+     * @param progressLogger Progression info
+     */
+    public void run(DataSource dataSource, ProgressVisitor progressLogger) throws SQLException {
+        this.dataSource = dataSource;
+        try (Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            if (cellPrefetchDepth <= 0 && maximumConcurrentCells <= 1) {
+                run(connection, progressLogger);
+                return;
+            }
+            initialize(connection, progressLogger);
+
+            // Fetch cell identifiers with receivers
+            Map<CellIndex, Integer> cells = searchPopulatedCells(connection);
+            openCellJournal(connection, cells);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+
+            CellScenePrefetcher prefetcher = new CellScenePrefetcher(this, dataSource,
+                    new ArrayList<>(new TreeSet<>(cells.keySet())), Math.max(1, cellPrefetchDepth),
+                    cellPrefetchMemoryLimit);
+            ThreadPool loaderThreadPool = new ThreadPool(1, 1, Long.MAX_VALUE, TimeUnit.SECONDS);
+            try {
+                computeRaysOutFactory.start(progressVisitor);
+                Future<Boolean> loaderFuture = loaderThreadPool.submit(prefetcher);
+                if (maximumConcurrentCells > 1) {
+                    runConcurrentCells(prefetcher, progressVisitor);
+                } else {
+                    CellScenePrefetcher.PreparedCell preparedCell;
+                    while ((preparedCell = prefetcher.take()) != null) {
+                        if (progressVisitor.isCanceled() || aborted.get()) {
+                            break;
+                        }
+                        evaluateCell(preparedCell.scene, progressVisitor);
+                        onCellEvaluated(preparedCell.cellIndex, preparedCell.scene, progressVisitor);
+                    }
+                }
+                prefetcher.cancel();
+                loaderFuture.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new SQLException(ex);
+            } finally {
+                prefetcher.cancel();
+                loaderThreadPool.shutdown();
+                computeRaysOutFactory.stop();
+            }
+        } finally {
+            this.dataSource = null;
+        }
+    }
+
+    /**
+     * @return DataSource of the running {@link #run(DataSource, ProgressVisitor)}, null if the computation has been
+     * run with a single connection
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Compute the prepared cells, several at a time, on a shared computation pool
+     * @param prefetcher Source of the prepared cells
+     * @param progressVisitor Progression info
+     */
+    private void runConcurrentCells(CellScenePrefetcher prefetcher, ProgressVisitor progressVisitor)
+            throws SQLException, InterruptedException, ExecutionException {
+        int computationThreadCount = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        ThreadPool computationPool = new ThreadPool(computationThreadCount, computationThreadCount,
+                Long.MAX_VALUE, TimeUnit.SECONDS);
+        ThreadPool cellThreadPool = new ThreadPool(maximumConcurrentCells, maximumConcurrentCells,
+                Long.MAX_VALUE, TimeUnit.SECONDS);
+        CellScheduler cellScheduler = new CellScheduler(cellMemoryBudget, maximumConcurrentCells);
+        List<Future<Boolean>> cellTasks = new ArrayList<>();
+        try {
+            CellScenePrefetcher.PreparedCell preparedCell;
+            while ((preparedCell = prefetcher.take()) != null) {
+                if (progressVisitor.isCanceled() || aborted.get()) {
+                    break;
+                }
+                final SceneWithEmission scene = preparedCell.scene;
+                final CellIndex cellIndex = preparedCell.cellIndex;
+                final long footprint = tableLoader.estimateMemoryFootprint(scene);
+                cellScheduler.acquire(footprint);
+                cellTasks.add(cellThreadPool.submit(() -> {
+                    try {
+                        evaluateCell(scene, progressVisitor, computationPool);
+                        onCellEvaluated(cellIndex, scene, progressVisitor);
+                    } finally {
+                        cellScheduler.release(footprint);
+                    }
+                    return true;
+                }));
+                // Raise the exception of a finished cell as soon as possible
+                for (Future<Boolean> cellTask : cellTasks) {
+                    if (cellTask.isDone()) {
+                        cellTask.get();
+                    }
+                }
+                cellTasks.removeIf(Future::isDone);
+            }
+            for (Future<Boolean> cellTask : cellTasks) {
+                cellTask.get();
+            }
+            logger.info("Up to {} cells have been computed at the same time", cellScheduler.getPeakRunningCells());
+        } finally {
+            cellThreadPool.shutdownNow();
+            computationPool.shutdownNow();
+        }
+    }
+
     /**
      * A factory interface for initializing input propagation process data for noise map computation.
      */
@@ -377,11 +862,21 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
          * Called on each sub-domain in order to create cell input data.
          *
          * @param connection          Active connection
-         * @param cellIndex           Active cell covering the computation
-         * @param skipReceivers Do not process the receivers primary keys in this set and once included add the new receivers primary in it
+         * @param cellIndex           Active cell covering the computation, the receivers of the cell are the receivers
+         *                            owned by the cell, see {@link GridMapMaker#getReceiverCell(Coordinate)}
          * @return Scene to feed the data
          */
-        SceneWithEmission create(Connection connection, CellIndex cellIndex, Set<Long> skipReceivers) throws SQLException;
+        SceneWithEmission create(Connection connection, CellIndex cellIndex) throws SQLException;
+
+        /**
+         * Estimate the heap used by a scene returned by {@link #create(Connection, CellIndex)} until the end of
+         * its computation. Used to choose how many cells can be computed at the same time.
+         * @param scene Cell data
+         * @return Estimated size in bytes, or a negative value if unknown (the cell is then computed alone)
+         */
+        default long estimateMemoryFootprint(SceneWithEmission scene) {
+            return -1;
+        }
     }
 
     /**
@@ -416,6 +911,15 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
          * @return an object that computes paths out for noise map computation.
          */
         CutPlaneVisitorFactory create(SceneWithEmission cellData);
+
+        /**
+         * Used by the journal of the computed cells, see {@link NoiseMapDatabaseParameters#cellJournalTable}.
+         * The outputs that store the results asynchronously must override this method.
+         * @return Condition that becomes true once the results of the cells computed before this call are stored
+         */
+        default BooleanSupplier getResultsStoredCondition() {
+            return () -> true;
+        }
     }
 
 
@@ -19,6 +19,7 @@ import java.io.File;
 public class NoiseMapDatabaseParameters {
     public boolean exportAttenuationMatrix;
     public static final String DEFAULT_RECEIVERS_LEVEL_TABLE_NAME = "RECEIVERS_LEVEL";
+    public static final int DEFAULT_OUTPUT_MAXIMUM_QUEUE = 50000;
     /**
      * Noise level on the receiver for each period if mergeSources is true and no sound source were found
      */
@@ -60,13 +61,25 @@ public class NoiseMapDatabaseParameters {
     public int getMaximumRaysOutputCount() {
         return maximumRaysOutputCount;
     }
-    public int outputMaximumQueue = 50000;
+    public int outputMaximumQueue = DEFAULT_OUTPUT_MAXIMUM_QUEUE;
+    public int writerCount = 1;
+    public boolean postgreSQLCopy = true;
+    /** If not null, write the receivers levels into binary matrix files of this directory instead of the table */
+    public File attenuationMatrixDirectory = null;
 
     public boolean mergeSources = true;
 
     public String receiversLevelTable = DEFAULT_RECEIVERS_LEVEL_TABLE_NAME;
     public String raysTable = "RAYS";
 
+    /**
+     * If not null, the computed cells are written into this table once their results are stored, in order to resume
+     * an interrupted computation
+     */
+    public String cellJournalTable = null;
+    /** If true, continue the computation from the cells of {@link #cellJournalTable} */
+    public boolean resume = false;
+
     public File sqlOutputFile;
     public Boolean sqlOutputFileCompression = true;
     public Boolean dropResultsTable = true;
@@ -153,12 +166,98 @@ public class NoiseMapDatabaseParameters {
     /**
      * Maximum result stack to be inserted in database
      * if the stack is full, the computation core is waiting
+     * The receiver levels and the rays share this stack size, it is divided between the writers
      * @param outputMaximumQueue Maximum number of elements in stack
     */
     public void setOutputMaximumQueue(int outputMaximumQueue) {
         this.outputMaximumQueue = outputMaximumQueue;
     }
 
+    /**
+     * @return Number of threads inserting the results in the database
+     */
+    public int getWriterCount() {
+        return writerCount;
+    }
+
+    /**
+     * Insert the results with several threads, each one with its own connection. All the writers insert into the
+     * results tables, the keys are created at the end of the computation.
+     * Only used when the computation is run with a DataSource and without sqlOutputFile.
+     * The maximum queue size is shared by the writers.
+     * @param writerCount Number of threads inserting the results in the database
+     */
+    public void setWriterCount(int writerCount) {
+        this.writerCount = writerCount;
+    }
+
+    /**
+     * @return True if the results are inserted with the COPY protocol when the database is PostgreSQL
+     */
+    public boolean isPostgreSQLCopy() {
+        return postgreSQLCopy;
+    }
+
+    /**
+     * Insert the results with the binary COPY protocol when the database is PostgreSQL, instead of batched INSERT
+     * queries. Ignored with other databases and with sqlOutputFile.
+     * @param postgreSQLCopy True to use the COPY protocol
+     */
+    public void setPostgreSQLCopy(boolean postgreSQLCopy) {
+        this.postgreSQLCopy = postgreSQLCopy;
+    }
+
+    /**
+     * @return Directory of the binary attenuation matrix files, null if the receivers levels are written into the table
+     */
+    public File getAttenuationMatrixDirectory() {
+        return attenuationMatrixDirectory;
+    }
+
+    /**
+     * Write the receivers levels (the attenuation when there is no emission) into memory mapped binary files of this
+     * directory instead of the receivers level table. The files are read with
+     * {@link org.noise_planet.noisemodelling.jdbc.output.AttenuationMatrixReader}.
+     * @param attenuationMatrixDirectory Directory of the binary files, null to write into the table
+     */
+    public void setAttenuationMatrixDirectory(File attenuationMatrixDirectory) {
+        this.attenuationMatrixDirectory = attenuationMatrixDirectory;
+    }
+
+    /**
+     * @return Table of the computed cells, null if the computation is not journaled
+     */
+    public String getCellJournalTable() {
+        return cellJournalTable;
+    }
+
+    /**
+     * Write each computed cell into a table once all its results are stored. An interrupted computation can then be
+     * continued with {@link #setResume(boolean)}. Only supported when the results are written into the database
+     * tables.
+     * @param cellJournalTable Table of the computed cells, null to disable the journal
+     */
+    public void setCellJournalTable(String cellJournalTable) {
+        this.cellJournalTable = cellJournalTable;
+    }
+
+    /**
+     * @return True if the computation continue from the cells of the journal table
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Continue an interrupted computation: the results tables are kept, the cells of the journal table are skipped
+     * and the partial results of the other cells are deleted. The computation parameters must be the same as the
+     * interrupted computation.
+     * @param resume True to continue from the cells of the journal table
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
     /**
      * @return maximum dB Error, stop calculation if the maximum sum of further sources contributions are smaller than this value
      */
@@ -26,12 +26,21 @@ import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Building;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilderCacheFile;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Wall;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.*;
 
@@ -55,7 +64,33 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     public AttenuationParameters defaultParameters = new AttenuationParameters();
 
     public static final int DEFAULT_FETCH_SIZE = 300;
+    // Average heap size of the scene items, used to estimate the footprint of a cell
+    public static final long SCENE_BASE_BYTES = 1024 * 1024;
+    public static final long BUILDING_BYTES = 1024;
+    public static final long WALL_BYTES = 256;
+    /** Vertex and neighbor indexes of a mesh triangle (6 int) and its entries in the location grid */
+    public static final long TRIANGLE_BYTES = 32;
+    /** x, y, z of a mesh vertex (3 double) */
+    public static final long VERTEX_BYTES = 24;
+    /** Altitude of a topographic grid sample (1 float), the grid triangles are not stored */
+    public static final long GRID_SAMPLE_BYTES = 4;
+    public static final long SOURCE_BYTES = 2048;
+    public static final long RECEIVER_BYTES = 256;
     protected int fetchSize = DEFAULT_FETCH_SIZE;
+    /**
+     * If true the buildings, DEM and soil areas of the whole computation domain are loaded once in a single
+     * ProfileBuilder shared by all the cells
+     */
+    protected boolean shareDomainProfileBuilder = false;
+    private ProfileBuilder domainProfileBuilder = null;
+    /**
+     * If not null, the geometry loaded for each envelope is stored in this folder and read back by the next runs
+     * while the input tables are not modified
+     */
+    protected File sceneCacheDirectory = null;
+    private String inputFingerprint = "";
+    /** If true the cut profiles find the crossed walls with a uniform grid instead of the R-Tree */
+    protected boolean wallGridIndex = false;
 
     /**
      * Attenuation and other attributes relative to direction on sphere
@@ -84,6 +119,7 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     @Override
     public void initialize(Connection connection, NoiseMapByReceiverMaker noiseMapByReceiverMaker) throws SQLException {
         this.noiseMapByReceiverMaker = noiseMapByReceiverMaker;
+        domainProfileBuilder = null;
         SceneDatabaseInputSettings inputSettings = noiseMapByReceiverMaker.getSceneInputSettings();
         if(inputSettings.inputMode == SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_GUESS) {
             // Check fields to find appropriate expected data
@@ -157,6 +193,9 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
                 LOGGER.info("Loaded {} directivities from the database", directionAttributes.size());
             }
         }
+        if(sceneCacheDirectory != null) {
+            inputFingerprint = computeInputFingerprint(connection);
+        }
     }
 
     private void loadAtmosphericTableSettings(Connection connection, String atmosphericSettingsTableName) throws SQLException {
@@ -199,6 +238,169 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         return aWeightingArray;
     }
 
+    /**
+     * @return True if the geometry of the whole computation domain is loaded once and shared by all the cells
+     */
+    public boolean isShareDomainProfileBuilder() {
+        return shareDomainProfileBuilder;
+    }
+
+    /**
+     * Load the buildings, DEM and soil areas of the whole computation domain once, instead of loading them for each
+     * cell. All the cells share the same read-only ProfileBuilder and only the sources and receivers are fetched per
+     * cell. The domain geometry must fit in memory.
+     * @param shareDomainProfileBuilder True to share the domain geometry between cells
+     */
+    public void setShareDomainProfileBuilder(boolean shareDomainProfileBuilder) {
+        this.shareDomainProfileBuilder = shareDomainProfileBuilder;
+    }
+
+    /**
+     * @return Folder of the scene geometry cache, null if the cache is disabled
+     */
+    public File getSceneCacheDirectory() {
+        return sceneCacheDirectory;
+    }
+
+    /**
+     * Store the buildings, walls, soil areas and DEM triangulation of each cell in binary files in the provided folder.
+     * The next runs on the same cells read these files instead of querying the tables and triangulating the DEM.
+     * A file is used only if the buildings, DEM and soil tables and the loading settings are unchanged.
+     * @param sceneCacheDirectory Cache folder, created if needed. Null to disable the cache (default)
+     */
+    public void setSceneCacheDirectory(File sceneCacheDirectory) {
+        this.sceneCacheDirectory = sceneCacheDirectory;
+    }
+
+    /**
+     * @return True if the cut profiles find the crossed walls with a uniform grid
+     */
+    public boolean isWallGridIndex() {
+        return wallGridIndex;
+    }
+
+    /**
+     * @param wallGridIndex True to find the walls crossed by the cut profiles by walking a uniform grid instead of
+     *                      querying the R-Tree. The computed profiles are the same.
+     * @see ProfileBuilder#setWallGridIndex(boolean)
+     */
+    public void setWallGridIndex(boolean wallGridIndex) {
+        this.wallGridIndex = wallGridIndex;
+    }
+
+    /**
+     * Summary of the content of a table, changed by almost any modification of its rows
+     * @param connection Active connection
+     * @param tableName Table name
+     * @param fields Numeric fields to include in the summary
+     * @return Fingerprint of the table
+     * @throws SQLException
+     */
+    private static String computeTableFingerprint(Connection connection, String tableName, List<String> fields)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation tableLocation = TableLocation.parse(tableName, dbType);
+        String geom = TableLocation.quoteIdentifier(getGeometryColumnNames(connection, tableLocation).get(0), dbType);
+        StringBuilder query = new StringBuilder("SELECT COUNT(*), SUM(ST_NPOINTS(" + geom + ")), SUM(ST_XMIN(" +
+                geom + ")), SUM(ST_YMIN(" + geom + ")), SUM(ST_XMAX(" + geom + ")), SUM(ST_YMAX(" + geom +
+                ")), SUM(ST_ZMAX(" + geom + "))");
+        for (String field : fields) {
+            query.append(", SUM(").append(TableLocation.quoteIdentifier(field, dbType)).append(")");
+        }
+        query.append(" FROM ").append(tableLocation);
+        StringBuilder fingerprint = new StringBuilder(tableLocation.toString());
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery(query.toString())) {
+            if (rs.next()) {
+                for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                    fingerprint.append(';').append(rs.getString(i));
+                }
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Compute the part of the cache key that depends on the content of the input tables and the loading settings.
+     * @param connection Active connection
+     * @return Fingerprint of the buildings, DEM and soil tables
+     * @throws SQLException
+     */
+    protected String computeInputFingerprint(Connection connection) throws SQLException {
+        BuildingTableParameters buildingParameters = noiseMapByReceiverMaker.getBuildingTableParameters();
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(buildingParameters.zBuildings).append('|')
+                .append(buildingParameters.defaultWallAbsorption).append('|')
+                .append(groundSurfaceSplitSideLength).append('|')
+                .append(noiseMapByReceiverMaker.getGeometryFactory().getSRID()).append('|');
+        List<String> buildingFields = new ArrayList<>();
+        if(!buildingParameters.heightField.isEmpty()) {
+            buildingFields.add(buildingParameters.heightField);
+        }
+        if(JDBCUtilities.hasField(connection, buildingParameters.buildingsTableName,
+                buildingParameters.alphaFieldName)) {
+            buildingFields.add(buildingParameters.alphaFieldName);
+        }
+        fingerprint.append(computeTableFingerprint(connection, buildingParameters.buildingsTableName,
+                buildingFields));
+        String demTable = noiseMapByReceiverMaker.getDemTable();
+        if(!demTable.isEmpty()) {
+            fingerprint.append('|').append(computeTableFingerprint(connection, demTable, Collections.emptyList()));
+        }
+        String soilTableName = noiseMapByReceiverMaker.getSoilTableName();
+        if(!soilTableName.isEmpty()) {
+            fingerprint.append('|').append(computeTableFingerprint(connection, soilTableName,
+                    Collections.singletonList("G")));
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * @param cacheKey Content identifier
+     * @return File name of the cache entry
+     */
+    private static String getCacheFileName(String cacheKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(cacheKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder fileName = new StringBuilder();
+            for (byte b : hash) {
+                fileName.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return fileName.append(".bin").toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Linear estimation of the scene size using the number of buildings, walls, triangles, vertices, sources
+     * and receivers. The geometry of the shared domain ProfileBuilder is not counted as it is not owned by the cell.
+     * @param scene Cell data
+     * @return Estimated size in bytes
+     */
+    @Override
+    public long estimateMemoryFootprint(SceneWithEmission scene) {
+        ProfileBuilder profileBuilder = scene.profileBuilder;
+        if(profileBuilder == domainProfileBuilder) {
+            return SCENE_BASE_BYTES +
+                    scene.sourceGeometries.size() * SOURCE_BYTES +
+                    scene.receivers.size() * RECEIVER_BYTES;
+        }
+        long topographyBytes;
+        if(profileBuilder.getTopographicGrid() != null) {
+            topographyBytes = profileBuilder.getTopographicVertexCount() * GRID_SAMPLE_BYTES;
+        } else {
+            topographyBytes = profileBuilder.getTopographicTriangleCount() * TRIANGLE_BYTES +
+                    profileBuilder.getTopographicVertexCount() * VERTEX_BYTES;
+        }
+        return SCENE_BASE_BYTES +
+                profileBuilder.getBuildingCount() * BUILDING_BYTES +
+                profileBuilder.getWallCount() * WALL_BYTES +
+                topographyBytes +
+                scene.sourceGeometries.size() * SOURCE_BYTES +
+                scene.receivers.size() * RECEIVER_BYTES;
+    }
+
     /**
      * Retrieves the parameters defined for different time periods.
      *
@@ -235,9 +437,98 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         return frequencyValues;
     }
 
+    /**
+     * Fetch the buildings, the DEM and the soil areas located in the provided envelope, or read them from the scene
+     * cache if enabled
+     * @param connection Active connection
+     * @param fetchEnvelope Geometry located in this envelope are loaded
+     * @param stageProfiler Records the duration of {@link ProfileBuilder#finishFeeding()}, can be null
+     * @return ProfileBuilder with feeding finished
+     * @throws SQLException
+     */
+    protected ProfileBuilder createProfileBuilder(Connection connection, Envelope fetchEnvelope,
+                                                  StageProfiler stageProfiler) throws SQLException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setFrequencyArray(frequencyArray);
+        profileBuilder.setWallGridIndex(wallGridIndex);
+        Path cacheFile = null;
+        String cacheKey = "";
+        if(sceneCacheDirectory != null) {
+            cacheKey = inputFingerprint + "|" + fetchEnvelope.getMinX() + "|" + fetchEnvelope.getMinY() + "|" +
+                    fetchEnvelope.getMaxX() + "|" + fetchEnvelope.getMaxY();
+            cacheFile = sceneCacheDirectory.toPath().resolve(getCacheFileName(cacheKey));
+            try {
+                if(ProfileBuilderCacheFile.read(cacheFile, cacheKey, profileBuilder)) {
+                    finishFeeding(profileBuilder, stageProfiler);
+                    return profileBuilder;
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Ignore the scene cache file " + cacheFile, ex);
+            }
+        }
+        // //////////////////////////////////////////////////////
+        // feed freeFieldFinder for fast intersection query
+        // optimization
+        // Fetch buildings in extendedEnvelope
+        fetchCellBuildings(connection, noiseMapByReceiverMaker.getBuildingTableParameters(), fetchEnvelope,
+                profileBuilder, noiseMapByReceiverMaker.getGeometryFactory());
+
+        //if we have topographic points data
+        fetchCellDem(connection, fetchEnvelope, profileBuilder);
+
+        // Fetch soil areas
+        fetchCellSoilAreas(connection, fetchEnvelope, profileBuilder);
+
+        finishFeeding(profileBuilder, stageProfiler);
+        if(cacheFile != null) {
+            try {
+                Files.createDirectories(sceneCacheDirectory.toPath());
+                ProfileBuilderCacheFile.write(profileBuilder, cacheFile, cacheKey);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot write the scene cache file " + cacheFile, ex);
+            }
+        }
+        return profileBuilder;
+    }
+
+    private static void finishFeeding(ProfileBuilder profileBuilder, StageProfiler stageProfiler) {
+        long start = System.nanoTime();
+        profileBuilder.finishFeeding();
+        if(stageProfiler != null) {
+            stageProfiler.recordSince(StageProfiler.Stage.FINISH_FEEDING, start);
+        }
+    }
+
+    /**
+     * Load the geometry of the whole computation domain on the first call, then return the same instance.
+     * The ProfileBuilder is not modified after {@link ProfileBuilder#finishFeeding()} so it can be read by the
+     * computation threads of all cells.
+     * @param connection Active connection
+     * @param stageProfiler Records the duration of {@link ProfileBuilder#finishFeeding()} on the first call, can be
+     *                      null
+     * @return ProfileBuilder of the computation domain
+     * @throws SQLException
+     */
+    protected synchronized ProfileBuilder getDomainProfileBuilder(Connection connection,
+                                                                  StageProfiler stageProfiler) throws SQLException {
+        if(domainProfileBuilder == null) {
+            long start = System.currentTimeMillis();
+            // Same margin than the cells in order to fetch the geometry around the receivers of the border cells
+            Envelope domainEnvelope = new Envelope(noiseMapByReceiverMaker.getMainEnvelope());
+            domainEnvelope.expandBy(noiseMapByReceiverMaker.getMaximumPropagationDistance() +
+                    2 * noiseMapByReceiverMaker.getMaximumReflectionDistance());
+            domainProfileBuilder = createProfileBuilder(connection, domainEnvelope, stageProfiler);
+            if(noiseMapByReceiverMaker.isVerbose()) {
+                LOGGER.info("Domain geometry loaded in {} ms: {} buildings, {} walls, {} triangles",
+                        System.currentTimeMillis() - start, domainProfileBuilder.getBuildingCount(),
+                        domainProfileBuilder.getWallCount(), domainProfileBuilder.getTriangles().size());
+            }
+        }
+        return domainProfileBuilder;
+    }
+
     @Override
-    public SceneWithEmission create(Connection connection, CellIndex cellIndex,
-                                    Set<Long> skipReceivers) throws SQLException {
+    public SceneWithEmission create(Connection connection, CellIndex cellIndex) throws SQLException {
         DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
         GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
 
@@ -250,30 +541,21 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         // between subdomains
         expandedCellEnvelop.expandBy(maximumPropagationDistance + 2 * maximumReflectionDistance);
 
-        ProfileBuilder profileBuilder = new ProfileBuilder();
-        profileBuilder.setFrequencyArray(frequencyArray);
+        StageProfiler stageProfiler = noiseMapByReceiverMaker.createStageProfiler(cellIndex);
+        ProfileBuilder profileBuilder;
+        if(shareDomainProfileBuilder) {
+            profileBuilder = getDomainProfileBuilder(connection, stageProfiler);
+        } else {
+            profileBuilder = createProfileBuilder(connection, expandedCellEnvelop, stageProfiler);
+        }
         SceneWithEmission scene = new SceneWithEmission(profileBuilder, noiseMapByReceiverMaker.getSceneInputSettings());
+        scene.stageProfiler = stageProfiler;
         scene.setDirectionAttributes(directionAttributes);
         scene.cnossosParametersPerPeriod = cnossosParametersPerPeriod;
         scene.defaultCnossosParameters = defaultParameters;
         scene.periodSet.addAll(cnossosParametersPerPeriod.keySet());
 
 
-        // //////////////////////////////////////////////////////
-        // feed freeFieldFinder for fast intersection query
-        // optimization
-        // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, noiseMapByReceiverMaker.getBuildingTableParameters(), expandedCellEnvelop,
-                scene.profileBuilder, geometryFactory);
-
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, scene.profileBuilder);
-
-        // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, scene.profileBuilder);
-
-        scene.profileBuilder.finishFeeding();
-
         scene.reflexionOrder = noiseMapByReceiverMaker.getSoundReflectionOrder();
         scene.setBodyBarrier(noiseMapByReceiverMaker.isBodyBarrier());
         scene.maxRefDist = maximumReflectionDistance;
@@ -299,17 +581,14 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
                 "SELECT " + TableLocation.quoteIdentifier(receiverGeomName, dbType ) + pkSelect + " FROM " +
                         receiverTableName + " WHERE " +
                         TableLocation.quoteIdentifier(receiverGeomName, dbType) + " && ?::geometry")) {
-            st.setObject(1, geometryFactory.toGeometry(cellEnvelope));
+            st.setObject(1, geometryFactory.toGeometry(noiseMapByReceiverMaker.getCellReceiversEnv(cellIndex)));
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 while (rs.next()) {
                     long receiverPk = rs.getLong(2);
-                    if(skipReceivers.contains(receiverPk)) {
-                        continue;
-                    } else {
-                        skipReceivers.add(receiverPk);
-                    }
                     Geometry pt = rs.getGeometry();
-                    if(pt != null && !pt.isEmpty()) {
+                    // a receiver on the edge of the cell may be owned by a neighbor cell
+                    if(pt != null && !pt.isEmpty() &&
+                            cellIndex.equals(noiseMapByReceiverMaker.getReceiverCell(pt.getCoordinate()))) {
                         // check z value
                         if(pt.getCoordinate().getZ() == Coordinate.NULL_ORDINATE) {
                             throw new IllegalArgumentException("The table " + receiverTableName +
@@ -0,0 +1,323 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read the attenuation matrix written by {@link AttenuationMatrixWriter}. The chunk files are memory mapped, the
+ * entries are read directly from the mapped files without loading the matrix in memory. The entries of a receiver or
+ * of a source are found with a binary search in the receiver and source indexes of each chunk.
+ * This class is thread-safe once opened.
+ */
+public class AttenuationMatrixReader implements Closeable {
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final int[] frequencies;
+    private final List<String> periods;
+    private final long entryCount;
+
+    /**
+     * Receive the entries of the matrix
+     */
+    public interface EntryVisitor {
+        /**
+         * @param receiverPk Receiver identifier
+         * @param sourcePk Source identifier, -1 if the sources were merged
+         * @param period Time period
+         * @param levels Value of each frequency band in dB, the array is overwritten by the next entry
+         */
+        void visit(long receiverPk, long sourcePk, String period, float[] levels);
+    }
+
+    /**
+     * Map all the chunk files of the directory
+     * @param directory Directory of the chunk files
+     * @throws IOException Unable to read a chunk or the chunks have different frequency bands
+     */
+    public AttenuationMatrixReader(File directory) throws IOException {
+        this(AttenuationMatrixWriter.listChunks(directory, null));
+    }
+
+    /**
+     * @param chunkFiles Chunk files to map
+     * @throws IOException Unable to read a chunk or the chunks have different frequency bands
+     */
+    public AttenuationMatrixReader(List<File> chunkFiles) throws IOException {
+        int[] chunkFrequencies = new int[0];
+        Set<String> periodSet = new LinkedHashSet<>();
+        long count = 0;
+        try {
+            for (File chunkFile : chunkFiles) {
+                Chunk chunk = new Chunk(chunkFile);
+                chunks.add(chunk);
+                if(chunks.size() == 1) {
+                    chunkFrequencies = chunk.frequencies;
+                } else if(!Arrays.equals(chunkFrequencies, chunk.frequencies)) {
+                    throw new IOException("The frequency bands of " + chunkFile + " differ from the other chunks");
+                }
+                periodSet.addAll(Arrays.asList(chunk.periods));
+                count += chunk.entryCount;
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        frequencies = chunkFrequencies;
+        periods = Collections.unmodifiableList(new ArrayList<>(periodSet));
+        entryCount = count;
+    }
+
+    /**
+     * @return Frequency of each band
+     */
+    public int[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @return Time periods of the entries
+     */
+    public List<String> getPeriods() {
+        return periods;
+    }
+
+    /**
+     * @return Number of entries of the matrix
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return Number of chunk files
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Visit all the entries, in the order of the chunks then by receiver and source
+     * @param visitor Entry visitor
+     */
+    public void forEach(EntryVisitor visitor) {
+        float[] levels = new float[frequencies.length];
+        for (Chunk chunk : chunks) {
+            for (int receiver = 0; receiver < chunk.receiverCount; receiver++) {
+                long receiverPk = chunk.receiverIds.get(receiver);
+                int end = (int) chunk.receiverOffsets.get(receiver + 1);
+                for (int entry = (int) chunk.receiverOffsets.get(receiver); entry < end; entry++) {
+                    chunk.visit(receiverPk, entry, levels, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the entries of a receiver, ordered by chunk then source
+     * @param receiverPk Receiver identifier
+     * @param visitor Entry visitor
+     */
+    public void forEachReceiverEntry(long receiverPk, EntryVisitor visitor) {
+        float[] levels = new float[frequencies.length];
+        for (Chunk chunk : chunks) {
+            int receiver = binarySearch(chunk.receiverIds, chunk.receiverCount, receiverPk);
+            if(receiver >= 0) {
+                int end = (int) chunk.receiverOffsets.get(receiver + 1);
+                for (int entry = (int) chunk.receiverOffsets.get(receiver); entry < end; entry++) {
+                    chunk.visit(receiverPk, entry, levels, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the entries of a source, ordered by chunk then receiver
+     * @param sourcePk Source identifier
+     * @param visitor Entry visitor
+     */
+    public void forEachSourceEntry(long sourcePk, EntryVisitor visitor) {
+        float[] levels = new float[frequencies.length];
+        for (Chunk chunk : chunks) {
+            int source = binarySearch(chunk.sourceIds, chunk.sourceCount, sourcePk);
+            if(source >= 0) {
+                int end = (int) chunk.sourceOffsets.get(source + 1);
+                for (int index = (int) chunk.sourceOffsets.get(source); index < end; index++) {
+                    int entry = chunk.sourceEntries.get(index);
+                    // the receiver of the entry is the last row starting before the entry
+                    int receiver = upperBound(chunk.receiverOffsets, chunk.receiverCount, entry) - 1;
+                    chunk.visit(chunk.receiverIds.get(receiver), entry, levels, visitor);
+                }
+            }
+        }
+    }
+
+    private static int binarySearch(LongBuffer sortedValues, int length, long key) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = sortedValues.get(middle);
+            if(value < key) {
+                low = middle + 1;
+            } else if(value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Index of the first value greater than key
+     */
+    private static int upperBound(LongBuffer sortedValues, int length, long key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if(sortedValues.get(middle) <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Unmap the chunk files, so they can be deleted or replaced. The reader must not be used after this call.
+     */
+    @Override
+    public void close() {
+        for (Chunk chunk : chunks) {
+            unmap(chunk.buffer);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * Release the mapped memory now instead of waiting for the garbage collector
+     * @param buffer Mapped buffer, not used afterward
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Not available on this runtime, the mapped memory is freed by the garbage collector
+        }
+    }
+
+    /**
+     * Memory mapped chunk file
+     */
+    private static final class Chunk {
+        final int[] frequencies;
+        final String[] periods;
+        final int receiverCount;
+        final int sourceCount;
+        final int entryCount;
+        final LongBuffer receiverIds;
+        final LongBuffer receiverOffsets;
+        final LongBuffer entrySources;
+        final LongBuffer sourceIds;
+        final LongBuffer sourceOffsets;
+        final IntBuffer sourceEntries;
+        final ShortBuffer entryPeriods;
+        final FloatBuffer values;
+        final MappedByteBuffer buffer;
+
+        Chunk(File chunkFile) throws IOException {
+            try(RandomAccessFile file = new RandomAccessFile(chunkFile, "r");
+                FileChannel channel = file.getChannel()) {
+                if(channel.size() > AttenuationMatrixWriter.MAXIMUM_CHUNK_SIZE) {
+                    throw new IOException("Chunk file too large " + chunkFile);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if(buffer.remaining() < 32 || buffer.getInt() != AttenuationMatrixWriter.MAGIC) {
+                throw new IOException("Not an attenuation matrix file " + chunkFile);
+            }
+            int version = buffer.getInt();
+            if(version != AttenuationMatrixWriter.VERSION) {
+                throw new IOException("Unsupported attenuation matrix version " + version + " in " + chunkFile);
+            }
+            int bandCount = buffer.getInt();
+            int periodCount = buffer.getInt();
+            receiverCount = buffer.getInt();
+            sourceCount = buffer.getInt();
+            entryCount = (int) buffer.getLong();
+            frequencies = new int[bandCount];
+            for (int band = 0; band < bandCount; band++) {
+                frequencies[band] = buffer.getInt();
+            }
+            periods = new String[periodCount];
+            for (int period = 0; period < periodCount; period++) {
+                byte[] encoded = new byte[buffer.getInt()];
+                buffer.get(encoded);
+                periods[period] = new String(encoded, StandardCharsets.UTF_8);
+            }
+            align(buffer);
+            receiverIds = slice(buffer, Long.BYTES * receiverCount).asLongBuffer();
+            receiverOffsets = slice(buffer, Long.BYTES * (receiverCount + 1)).asLongBuffer();
+            entrySources = slice(buffer, Long.BYTES * entryCount).asLongBuffer();
+            sourceIds = slice(buffer, Long.BYTES * sourceCount).asLongBuffer();
+            sourceOffsets = slice(buffer, Long.BYTES * (sourceCount + 1)).asLongBuffer();
+            sourceEntries = slice(buffer, Integer.BYTES * entryCount).asIntBuffer();
+            align(buffer);
+            entryPeriods = slice(buffer, Short.BYTES * entryCount).asShortBuffer();
+            align(buffer);
+            values = slice(buffer, Float.BYTES * entryCount * bandCount).asFloatBuffer();
+        }
+
+        private static void align(ByteBuffer buffer) {
+            buffer.position((buffer.position() + 7) & ~7);
+        }
+
+        private static ByteBuffer slice(ByteBuffer buffer, int length) {
+            ByteBuffer section = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            section.limit(length);
+            buffer.position(buffer.position() + length);
+            return section;
+        }
+
+        void visit(long receiverPk, int entry, float[] levels, EntryVisitor visitor) {
+            // absolute get, the buffers are shared by the reading threads
+            int offset = entry * levels.length;
+            for (int band = 0; band < levels.length; band++) {
+                levels[band] = values.get(offset + band);
+            }
+            visitor.visit(receiverPk, entrySources.get(entry), periods[entryPeriods.get(entry)], levels);
+        }
+    }
+}
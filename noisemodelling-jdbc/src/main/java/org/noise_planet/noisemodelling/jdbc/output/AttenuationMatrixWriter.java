@@ -0,0 +1,443 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * Write the sparse receiver x source matrix of the attenuation (or of the noise levels) per frequency band into
+ * binary files. The entries are kept in memory until the chunk is full, then sorted and written in a new chunk file
+ * of the directory. A receiver can have entries in several chunks. The files are read by
+ * {@link AttenuationMatrixReader}.
+ * <p>
+ * Chunk file layout, little endian, each section is aligned on 8 bytes:
+ * <pre>
+ * int magic, int version, int bandCount, int periodCount, int receiverCount, int sourceCount, long entryCount
+ * int[bandCount] frequencies
+ * periodCount x (int byteLength, UTF-8 bytes) period names
+ * long[receiverCount] sorted receiver identifiers
+ * long[receiverCount + 1] index of the first entry of each receiver (CSR row pointers)
+ * long[entryCount] source identifier of each entry, sorted by receiver then source
+ * long[sourceCount] sorted source identifiers
+ * long[sourceCount + 1] index in the source entries of the first entry of each source
+ * int[entryCount] entries sorted by source then receiver
+ * short[entryCount] period index of each entry
+ * float[entryCount x bandCount] values in dB
+ * </pre>
+ * A chunk holds at most {@link #MAXIMUM_CHUNK_PERIODS} periods, the chunk is written before adding one more period.
+ * This class is not thread-safe.
+ */
+public class AttenuationMatrixWriter implements Closeable {
+    public static final int MAGIC = 0x4D414D4E; // NMAM
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".nmam";
+    public static final int DEFAULT_MAXIMUM_CHUNK_ENTRIES = 1_000_000;
+    /** Maximum size of a chunk file, a mapped buffer cannot be larger */
+    static final long MAXIMUM_CHUNK_SIZE = Integer.MAX_VALUE;
+    /** Maximum number of periods of a chunk, the period index of the entries is a short */
+    public static final int MAXIMUM_CHUNK_PERIODS = Short.MAX_VALUE + 1;
+    private static final int WRITE_BUFFER_SIZE = 65536;
+    /** Ranges sorted with an insertion sort by {@link #sortIndexes(int[], IntBinaryOperator)} */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private final File directory;
+    private final String prefix;
+    private final int[] frequencies;
+    private final int maximumChunkEntries;
+    private int chunkIndex = 0;
+    // Entries of the current chunk
+    private int entryCount = 0;
+    private long[] receivers;
+    private long[] sources;
+    private short[] periods;
+    private float[] values;
+    private final Map<String, Short> periodIndex = new HashMap<>();
+    private final List<String> periodNames = new ArrayList<>();
+
+    /**
+     * @param directory Directory of the chunk files, created if it does not exist
+     * @param prefix Name of the chunk files, followed by the chunk index
+     * @param frequencies Frequency of each band
+     * @param maximumChunkEntries Number of entries of a chunk file
+     * @throws IOException Unable to create the directory
+     */
+    public AttenuationMatrixWriter(File directory, String prefix, int[] frequencies, int maximumChunkEntries)
+            throws IOException {
+        if(frequencies.length == 0) {
+            throw new IllegalArgumentException("At least one frequency band is expected");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.frequencies = frequencies.clone();
+        // A chunk must fit in a mapped buffer
+        long entrySize = Long.BYTES * 2 + Integer.BYTES + Short.BYTES + (long) Float.BYTES * frequencies.length;
+        this.maximumChunkEntries = (int) Math.max(1, Math.min(maximumChunkEntries,
+                (MAXIMUM_CHUNK_SIZE / 2) / entrySize));
+        int initialCapacity = Math.min(this.maximumChunkEntries, 1024);
+        receivers = new long[initialCapacity];
+        sources = new long[initialCapacity];
+        periods = new short[initialCapacity];
+        values = new float[initialCapacity * frequencies.length];
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Delete the chunk files written with this prefix
+     * @param directory Directory of the chunk files
+     * @param prefix Name of the chunk files, followed by the chunk index
+     * @throws IOException Unable to delete a file
+     */
+    public static void deleteChunks(File directory, String prefix) throws IOException {
+        for (File chunkFile : listChunks(directory, prefix)) {
+            Files.delete(chunkFile.toPath());
+        }
+    }
+
+    /**
+     * @param directory Directory of the chunk files
+     * @param prefix Name of the chunk files, null for all the chunks of the directory
+     * @return Chunk files sorted by name
+     */
+    static List<File> listChunks(File directory, String prefix) {
+        Pattern pattern = Pattern.compile((prefix == null ? ".*" : Pattern.quote(prefix)) + "_\\d+" +
+                Pattern.quote(FILE_EXTENSION));
+        File[] files = directory.listFiles((dir, name) -> pattern.matcher(name).matches());
+        if(files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * @return Number of entries kept in memory, not yet written
+     */
+    public int getPendingEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return Number of chunk files written
+     */
+    public int getChunkCount() {
+        return chunkIndex;
+    }
+
+    /**
+     * Add an entry of the matrix, write the chunk if it is full
+     * @param receiverPk Receiver identifier
+     * @param sourcePk Source identifier, -1 if the sources are merged
+     * @param period Time period
+     * @param levels Value of each frequency band in dB
+     * @throws IOException Unable to write the chunk
+     */
+    public void add(long receiverPk, long sourcePk, String period, double[] levels) throws IOException {
+        if(levels.length != frequencies.length) {
+            throw new IllegalArgumentException("Expected " + frequencies.length + " bands, got " + levels.length);
+        }
+        if(entryCount == receivers.length) {
+            int capacity = Math.min(maximumChunkEntries, receivers.length * 2);
+            receivers = Arrays.copyOf(receivers, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            periods = Arrays.copyOf(periods, capacity);
+            values = Arrays.copyOf(values, capacity * frequencies.length);
+        }
+        Short index = periodIndex.get(period);
+        if(index == null) {
+            if(periodNames.size() == MAXIMUM_CHUNK_PERIODS) {
+                flush();
+            }
+            index = (short) periodNames.size();
+            periodIndex.put(period, index);
+            periodNames.add(period);
+        }
+        receivers[entryCount] = receiverPk;
+        sources[entryCount] = sourcePk;
+        periods[entryCount] = index;
+        int valueOffset = entryCount * frequencies.length;
+        for (int band = 0; band < levels.length; band++) {
+            values[valueOffset + band] = (float) levels[band];
+        }
+        entryCount++;
+        if(entryCount == maximumChunkEntries) {
+            flush();
+        }
+    }
+
+    private static int compare(long[] first, long[] second, int a, int b) {
+        int result = Long.compare(first[a], first[b]);
+        return result != 0 ? result : Long.compare(second[a], second[b]);
+    }
+
+    /**
+     * Sort indexes without boxing them
+     * @param indexes Indexes to sort
+     * @param comparator Compare two indexes
+     */
+    static void sortIndexes(int[] indexes, IntBinaryOperator comparator) {
+        mergeSort(indexes, new int[indexes.length], 0, indexes.length, comparator);
+    }
+
+    private static void mergeSort(int[] indexes, int[] buffer, int from, int to, IntBinaryOperator comparator) {
+        if(to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int index = indexes[i];
+                int j = i - 1;
+                while (j >= from && comparator.applyAsInt(indexes[j], index) > 0) {
+                    indexes[j + 1] = indexes[j];
+                    j--;
+                }
+                indexes[j + 1] = index;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(indexes, buffer, from, middle, comparator);
+        mergeSort(indexes, buffer, middle, to, comparator);
+        if(comparator.applyAsInt(indexes[middle - 1], indexes[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(indexes, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if(right >= to || (left < middle && comparator.applyAsInt(buffer[left], buffer[right]) <= 0)) {
+                indexes[i] = buffer[left++];
+            } else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Write the entries kept in memory into a new chunk file
+     * @throws IOException Unable to write the chunk
+     */
+    public void flush() throws IOException {
+        if(entryCount == 0) {
+            return;
+        }
+        final int count = entryCount;
+        // The periods are written sorted by name
+        List<String> sortedPeriods = new ArrayList<>(periodNames);
+        Collections.sort(sortedPeriods);
+        final short[] periodRank = new short[periodNames.size()];
+        for (int period = 0; period < periodRank.length; period++) {
+            periodRank[period] = (short) Collections.binarySearch(sortedPeriods, periodNames.get(period));
+        }
+        // CSR order, by receiver then source then period
+        int[] rowOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            rowOrder[i] = i;
+        }
+        sortIndexes(rowOrder, (a, b) -> {
+            int result = compare(receivers, sources, a, b);
+            return result != 0 ? result : Short.compare(periodRank[periods[a]], periodRank[periods[b]]);
+        });
+        int receiverCount = 0;
+        for (int i = 0; i < count; i++) {
+            if(i == 0 || receivers[rowOrder[i]] != receivers[rowOrder[i - 1]]) {
+                receiverCount++;
+            }
+        }
+        // Entries (position in the CSR order) sorted by source then receiver
+        int[] columnOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            columnOrder[i] = i;
+        }
+        long[] rowSources = new long[count];
+        long[] rowReceivers = new long[count];
+        for (int i = 0; i < count; i++) {
+            rowSources[i] = sources[rowOrder[i]];
+            rowReceivers[i] = receivers[rowOrder[i]];
+        }
+        sortIndexes(columnOrder, (a, b) -> compare(rowSources, rowReceivers, a, b));
+        int sourceCount = 0;
+        for (int i = 0; i < count; i++) {
+            if(i == 0 || rowSources[columnOrder[i]] != rowSources[columnOrder[i - 1]]) {
+                sourceCount++;
+            }
+        }
+        File chunkFile = new File(directory, String.format("%s_%05d%s", prefix, chunkIndex, FILE_EXTENSION));
+        File tempFile = new File(directory, chunkFile.getName() + ".tmp");
+        // The file is written through a small buffer, it is not mapped so it can be renamed on all platforms
+        try(ChunkOutput buffer = new ChunkOutput(FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(frequencies.length);
+            buffer.putInt(sortedPeriods.size());
+            buffer.putInt(receiverCount);
+            buffer.putInt(sourceCount);
+            buffer.putLong(count);
+            for (int frequency : frequencies) {
+                buffer.putInt(frequency);
+            }
+            for (String periodName : sortedPeriods) {
+                byte[] encoded = periodName.getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(encoded.length);
+                buffer.put(encoded);
+            }
+            buffer.align();
+            // receiver identifiers then row pointers
+            for (int i = 0; i < count; i++) {
+                if(i == 0 || rowReceivers[i] != rowReceivers[i - 1]) {
+                    buffer.putLong(rowReceivers[i]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if(i == 0 || rowReceivers[i] != rowReceivers[i - 1]) {
+                    buffer.putLong(i);
+                }
+            }
+            buffer.putLong(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(rowSources[i]);
+            }
+            // source index
+            for (int i = 0; i < count; i++) {
+                if(i == 0 || rowSources[columnOrder[i]] != rowSources[columnOrder[i - 1]]) {
+                    buffer.putLong(rowSources[columnOrder[i]]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if(i == 0 || rowSources[columnOrder[i]] != rowSources[columnOrder[i - 1]]) {
+                    buffer.putLong(i);
+                }
+            }
+            buffer.putLong(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(columnOrder[i]);
+            }
+            buffer.align();
+            for (int i = 0; i < count; i++) {
+                buffer.putShort(periodRank[periods[rowOrder[i]]]);
+            }
+            buffer.align();
+            for (int i = 0; i < count; i++) {
+                int valueOffset = rowOrder[i] * frequencies.length;
+                for (int band = 0; band < frequencies.length; band++) {
+                    buffer.putFloat(values[valueOffset + band]);
+                }
+            }
+            buffer.force();
+        }
+        // The chunk is visible to the readers only once it is complete
+        Files.move(tempFile.toPath(), chunkFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        chunkIndex++;
+        entryCount = 0;
+        periodIndex.clear();
+        periodNames.clear();
+    }
+
+    /**
+     * Write the remaining entries
+     * @throws IOException Unable to write the chunk
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Little endian output of a chunk file
+     */
+    private static final class ChunkOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = 0;
+
+        ChunkOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void reserve(int length) throws IOException {
+            if(buffer.remaining() < length) {
+                drain();
+            }
+            position += length;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putShort(short value) throws IOException {
+            reserve(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            reserve(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            reserve(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            reserve(Float.BYTES);
+            buffer.putFloat(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (byte value : bytes) {
+                reserve(1);
+                buffer.put(value);
+            }
+        }
+
+        /**
+         * Pad with zeros up to the next multiple of 8 bytes
+         */
+        void align() throws IOException {
+            while ((position & 7) != 0) {
+                reserve(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        /**
+         * Write the buffered bytes and the file content to the storage device
+         */
+        void force() throws IOException {
+            drain();
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
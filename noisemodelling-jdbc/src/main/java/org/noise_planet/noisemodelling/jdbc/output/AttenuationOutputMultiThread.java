@@ -16,7 +16,10 @@ import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitor;
 import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitorFactory;
 import org.noise_planet.noisemodelling.propagation.AttenuationComputeOutput;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -24,7 +27,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * of AttenuationOutputSingleThread
  */
 public class AttenuationOutputMultiThread implements CutPlaneVisitorFactory {
-    public ResultsCache resultsCache = new ResultsCache();
+    public ResultsCache resultsCache;
+    /** Results cache of each writer, the first one is {@link #resultsCache} */
+    public List<ResultsCache> resultsCaches;
+    private final AtomicInteger nextResultsCache = new AtomicInteger();
     public SceneWithEmission sceneWithEmission;
     public NoiseMapDatabaseParameters noiseMapDatabaseParameters = new NoiseMapDatabaseParameters();
     public AtomicBoolean exitWhenDone = new AtomicBoolean(false);
@@ -39,7 +45,19 @@ public class AttenuationOutputMultiThread implements CutPlaneVisitorFactory {
      */
     public AttenuationOutputMultiThread(SceneWithEmission inputData,
                                         ResultsCache resultsCache, NoiseMapDatabaseParameters noiseMapDatabaseParameters, AtomicBoolean exitWhenDone, AtomicBoolean aborted) {
-        this.resultsCache = resultsCache;
+        this(inputData, Collections.singletonList(resultsCache), noiseMapDatabaseParameters, exitWhenDone, aborted);
+    }
+
+    /**
+     * Create NoiseMap constructor with several writers
+     * @param inputData
+     * @param resultsCaches Results cache of each writer, the computation threads are distributed over the caches
+     * @param noiseMapDatabaseParameters
+     */
+    public AttenuationOutputMultiThread(SceneWithEmission inputData,
+                                        List<ResultsCache> resultsCaches, NoiseMapDatabaseParameters noiseMapDatabaseParameters, AtomicBoolean exitWhenDone, AtomicBoolean aborted) {
+        this.resultsCache = resultsCaches.get(0);
+        this.resultsCaches = resultsCaches;
         this.sceneWithEmission = inputData;
         this.noiseMapDatabaseParameters = noiseMapDatabaseParameters;
         this.exitWhenDone = exitWhenDone;
@@ -48,6 +66,8 @@ public class AttenuationOutputMultiThread implements CutPlaneVisitorFactory {
 
     public AttenuationOutputMultiThread(SceneWithEmission sceneWithEmission) {
         this.sceneWithEmission = sceneWithEmission;
+        this.resultsCache = new ResultsCache(noiseMapDatabaseParameters.outputMaximumQueue);
+        this.resultsCaches = Collections.singletonList(resultsCache);
     }
 
     /**
@@ -56,7 +76,9 @@ public class AttenuationOutputMultiThread implements CutPlaneVisitorFactory {
      */
     @Override
     public CutPlaneVisitor subProcess(ProgressVisitor visitor) {
-        return new AttenuationOutputSingleThread(this, visitor);
+        ResultsCache threadResultsCache = resultsCaches.size() == 1 ? resultsCache :
+                resultsCaches.get(Math.floorMod(nextResultsCache.getAndIncrement(), resultsCaches.size()));
+        return new AttenuationOutputSingleThread(this, visitor, threadResultsCache);
     }
 
 }
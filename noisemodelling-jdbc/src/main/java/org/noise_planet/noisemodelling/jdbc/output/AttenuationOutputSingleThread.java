@@ -25,10 +25,10 @@ import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.AttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPathBuilder;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.DoubleStream;
 
@@ -69,15 +69,36 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
 
     ProgressVisitor progressVisitor;
 
+    /** Results cache of the writer of this thread */
+    ResultsCache resultsCache;
+
+    /**
+     * Attenuation engine of this thread, the returned attenuation array is reused for each path
+     */
+    private final AttenuationCnossos attenuationCnossos = new AttenuationCnossos();
+
     /**
      * Constructs a NoiseMapInStack object with a multithreaded parent NoiseMap instance.
      * This class is not thread-safe
      * @param multiThreadParent
      */
     public AttenuationOutputSingleThread(AttenuationOutputMultiThread multiThreadParent, ProgressVisitor progressVisitor) {
+        this(multiThreadParent, progressVisitor, multiThreadParent.resultsCache);
+    }
+
+    /**
+     * Constructs a NoiseMapInStack object with a multithreaded parent NoiseMap instance.
+     * This class is not thread-safe
+     * @param multiThreadParent
+     * @param progressVisitor
+     * @param resultsCache Results cache of the writer of this thread
+     */
+    public AttenuationOutputSingleThread(AttenuationOutputMultiThread multiThreadParent, ProgressVisitor progressVisitor,
+                                         ResultsCache resultsCache) {
         this.multiThread = multiThreadParent;
         this.dbSettings = multiThreadParent.noiseMapDatabaseParameters;
         this.progressVisitor = progressVisitor;
+        this.resultsCache = resultsCache;
     }
 
     /**
@@ -99,8 +120,11 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                     attenuationDivGeom), -1);
     }
 
+    /**
+     * @return Attenuation in dB, the array is overwritten by the next call
+     */
     private double[] processAndStoreAttenuation(AttenuationParameters data, CnossosPath proPathParameters, String period) {
-        double[] attenuation = AttenuationCnossos.computeCnossosAttenuation(data, proPathParameters, multiThread.sceneWithEmission,
+        double[] attenuation = attenuationCnossos.computeAttenuation(data, proPathParameters, multiThread.sceneWithEmission,
                 multiThread.noiseMapDatabaseParameters.exportAttenuationMatrix);
         if(multiThread.noiseMapDatabaseParameters.exportRaysMethod == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE &&
                 multiThread.noiseMapDatabaseParameters.exportAttenuationMatrix) {
@@ -133,8 +157,14 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
         cutProfileCount.addAndGet(1);
         PathSearchStrategy strategy = PathSearchStrategy.CONTINUE;
         final SceneWithEmission scene = multiThread.sceneWithEmission;
+        long start = scene.stageProfiler != null ? System.nanoTime() : 0;
         CnossosPath cnossosPath = CnossosPathBuilder.computeCnossosPathFromCutProfile(cutProfile, scene.isBodyBarrier(),
                 scene.profileBuilder.exactFrequencyArray, scene.defaultGroundAttenuation);
+        if(scene.stageProfiler != null) {
+            long end = System.nanoTime();
+            scene.stageProfiler.record(StageProfiler.Stage.CNOSSOS_PATH, end - start);
+            start = end;
+        }
         if(cnossosPath != null) {
             multiThread.cnossosPathCount.addAndGet(1);
             CutPointSource source = cutProfile.getSource();
@@ -243,6 +273,9 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                     strategy = PathSearchStrategy.PROCESS_SOURCE_BUT_SKIP_RECEIVER;
                 }
             }
+            if(scene.stageProfiler != null) {
+                scene.stageProfiler.recordSince(StageProfiler.Stage.ATTENUATION, start);
+            }
         }
         return strategy;
     }
@@ -282,45 +315,42 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
     }
 
     /**
-     * Pushes attenuation data into a concurrent linked deque.
+     * Pushes attenuation data into the results queue, wait if the queue is full.
      * @param stack Stack to feed
      * @param data receiver noise level in dB
      */
-    public void pushInStack(ConcurrentLinkedDeque<ReceiverNoiseLevel> stack, ReceiverNoiseLevel data) {
-        while(multiThread.resultsCache.queueSize.get() > dbSettings.outputMaximumQueue) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                multiThread.aborted.set(true);
-                break;
+    public void pushInStack(ResultsQueue<ReceiverNoiseLevel> stack, ReceiverNoiseLevel data) {
+        putInStack(stack, data);
+    }
+
+    /**
+     * Add an element to the results queue, wait if the queue is full.
+     * @return False if the computation has been aborted while waiting
+     */
+    private <T> boolean putInStack(ResultsQueue<T> stack, T data) {
+        final StageProfiler stageProfiler = multiThread.sceneWithEmission.stageProfiler;
+        long start = stageProfiler != null ? System.nanoTime() : 0;
+        try {
+            if(stack.put(data, multiThread.aborted::get)) {
+                return true;
             }
-            if(multiThread.aborted.get()) {
-                progressVisitor.cancel();
-                return;
+        } catch (InterruptedException ex) {
+            multiThread.aborted.set(true);
+        } finally {
+            if(stageProfiler != null) {
+                stageProfiler.recordSince(StageProfiler.Stage.QUEUE_WAIT, start);
             }
         }
-        stack.add(data);
-        multiThread.resultsCache.queueSize.incrementAndGet();
+        progressVisitor.cancel();
+        return false;
     }
 
     /**
-     * Adds Cnossos paths to a concurrent stack while maintaining the maximum stack size.
+     * Adds Cnossos paths to the results queue while maintaining the maximum stack size.
      * @param stack Stack to feed
      * @param data rays
      */
-    public void pushInStack(ConcurrentLinkedDeque<CnossosPath> stack, Collection<CnossosPath> data) {
-        while(multiThread.resultsCache.queueSize.get() > dbSettings.outputMaximumQueue) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                multiThread.aborted.set(true);
-                break;
-            }
-            if(multiThread.aborted.get()) {
-                progressVisitor.cancel();
-                return;
-            }
-        }
+    public void pushInStack(ResultsQueue<CnossosPath> stack, Collection<CnossosPath> data) {
         if(dbSettings.getMaximumRaysOutputCount() == 0 || multiThread.resultsCache.totalRaysInserted.get() < dbSettings.getMaximumRaysOutputCount()) {
             long newTotalRays = multiThread.resultsCache.totalRaysInserted.addAndGet(data.size());
             if(dbSettings.getMaximumRaysOutputCount() > 0 && newTotalRays > dbSettings.getMaximumRaysOutputCount()) {
@@ -339,8 +369,11 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                     data = Collections.emptyList();
                 }
             }
-            stack.addAll(data);
-            multiThread.resultsCache.queueSize.addAndGet(data.size());
+            for (CnossosPath cnossosPath : data) {
+                if(!putInStack(stack, cnossosPath)) {
+                    return;
+                }
+            }
         }
     }
 
@@ -361,7 +394,7 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
         if(!this.cnossosPaths.isEmpty()) {
             if(dbSettings.getExportRaysMethod() == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
                 // Push propagation rays
-                pushInStack(multiThread.resultsCache.cnossosPaths, this.cnossosPaths);
+                pushInStack(resultsCache.cnossosPaths, this.cnossosPaths);
             }
         }
         // Convert to dB then pushed cached entries for this receiver into multi-thread instance
@@ -371,7 +404,7 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
         for (Map.Entry<Integer, TimePeriodParameters> periodParametersEntry : receiverAttenuationList.entrySet()) {
             TimePeriodParameters periodParameters = periodParametersEntry.getValue();
             for (Map.Entry<String, double[]> levelsAtPeriod : periodParameters.levelsPerPeriod.entrySet()) {
-                pushInStack(multiThread.resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
+                pushInStack(resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
                         receiver, levelsAtPeriod.getKey(),
                         AcousticIndicatorsFunctions.wToDb(levelsAtPeriod.getValue())));
                 if(dbSettings.isMergeSources()) {
@@ -388,7 +421,7 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                             AcousticIndicatorsFunctions.multiplicationArray(levels,
                                     EmissionTableGenerator.RATIOS[period.ordinal()]));
                 }
-                pushInStack(multiThread.resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
+                pushInStack(resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
                         receiver, EmissionTableGenerator.DEN_PERIOD,
                         AcousticIndicatorsFunctions.wToDb(lden)));
                 if(dbSettings.isMergeSources()) {
@@ -406,7 +439,7 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
             double[] levels = new double[multiThread.sceneWithEmission.profileBuilder.frequencyArray.size()];
             Arrays.fill(levels, dbSettings.noSourceNoiseLevel);
             for (String period : difference) {
-                pushInStack(multiThread.resultsCache.receiverLevels,
+                pushInStack(resultsCache.receiverLevels,
                         new ReceiverNoiseLevel(new PathFinder.SourcePointInfo(), receiver, period, levels));
             }
         }
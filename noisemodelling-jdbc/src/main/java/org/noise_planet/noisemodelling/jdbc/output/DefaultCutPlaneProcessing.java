@@ -1,6 +1,8 @@
 package org.noise_planet.noisemodelling.jdbc.output;
 
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.CellJournal;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
@@ -10,16 +12,25 @@ import org.noise_planet.noisemodelling.pathfinder.utils.profiler.JVMMemoryMetric
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProgressMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.IComputeRaysOutFactory {
     public int DEFAULT_END_WRITING_THREAD_TIMEOUT = 30; // timeout for write thread stop in seconds
+    /** Suffix of the attenuation matrix chunks of the additional writers, followed by the writer index */
+    public static final String PARTITION_TABLE_SUFFIX = "_WRITER";
     ResultsCache resultsCache = new ResultsCache();
+    /** Results cache of each writer, the first one is resultsCache */
+    List<ResultsCache> resultsCaches = Collections.singletonList(resultsCache);
     final NoiseMapDatabaseParameters noiseMapDatabaseParameters;
     NoiseMapWriter noiseMapWriter;
     ProfilerThread profilerThread;
@@ -28,8 +39,13 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
     AtomicBoolean exitWhenDone;
     AtomicBoolean aborted;
     NoiseMapByReceiverMaker noiseMapByReceiverMaker;
-    ThreadPool postProcessingThreadPool = new ThreadPool();
+    // Threads of the writers and of the profiler, created on start and shut down on stop
+    ThreadPool postProcessingThreadPool;
     Future<Boolean> noiseMapWriterFuture;
+    // Additional writers, each one with its own connection, inserting into the tables of noiseMapWriter
+    List<NoiseMapWriter> partitionWriters = new ArrayList<>();
+    List<Future<Boolean>> partitionWritersFutures = new ArrayList<>();
+    List<Connection> partitionConnections = new ArrayList<>();
 
     /**
      * @param noiseMapDatabaseParameters Database settings
@@ -49,20 +65,64 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
      */
     @Override
     public CutPlaneVisitorFactory create(SceneWithEmission scene) {
-        return new AttenuationOutputMultiThread(scene, resultsCache, noiseMapDatabaseParameters, exitWhenDone, aborted);
+        return new AttenuationOutputMultiThread(scene, resultsCaches, noiseMapDatabaseParameters, exitWhenDone, aborted);
+    }
+
+    @Override
+    public BooleanSupplier getResultsStoredCondition() {
+        List<BooleanSupplier> conditions = new ArrayList<>(resultsCaches.size());
+        for (ResultsCache writerResultsCache : resultsCaches) {
+            conditions.add(writerResultsCache.getStoredCondition());
+        }
+        return () -> conditions.stream().allMatch(BooleanSupplier::getAsBoolean);
+    }
+
+    /**
+     * @return Results cache of each writer thread, the queue statistics give the lag of the writers
+     */
+    public List<ResultsCache> getResultsCaches() {
+        return Collections.unmodifiableList(resultsCaches);
     }
 
     @Override
     public void initialize(Connection connection, NoiseMapByReceiverMaker noiseMapByReceiverMaker) throws SQLException {
         this.connection = connection;
         this.noiseMapByReceiverMaker = noiseMapByReceiverMaker;
+        if(noiseMapDatabaseParameters.cellJournalTable != null && (noiseMapDatabaseParameters.sqlOutputFile != null ||
+                noiseMapDatabaseParameters.attenuationMatrixDirectory != null)) {
+            throw new SQLException("The cell journal is only supported when the results are written into the " +
+                    "database tables");
+        }
+        // The additional writers need their own connections
+        int writerCount = 1;
+        if(noiseMapByReceiverMaker.getDataSource() != null && noiseMapDatabaseParameters.sqlOutputFile == null) {
+            writerCount = Math.max(1, noiseMapDatabaseParameters.writerCount);
+        }
+        int maximumQueue = Math.max(1, noiseMapDatabaseParameters.outputMaximumQueue / writerCount);
+        if(resultsCaches.size() != writerCount || resultsCache.getCapacity() != Math.max(2, maximumQueue)) {
+            resultsCache = new ResultsCache(maximumQueue);
+            resultsCaches = new ArrayList<>(writerCount);
+            resultsCaches.add(resultsCache);
+            for (int writerIndex = 1; writerIndex < writerCount; writerIndex++) {
+                resultsCaches.add(new ResultsCache(maximumQueue, writerIndex));
+            }
+        }
         if(noiseMapDatabaseParameters.CSVProfilerOutputPath != null) {
+            ProfilerThread previousProfilerThread = profilerThread;
             profilerThread = new ProfilerThread(noiseMapDatabaseParameters.CSVProfilerOutputPath);
-            profilerThread.addMetric(resultsCache);
+            for (ResultsCache writerResultsCache : resultsCaches) {
+                profilerThread.addMetric(writerResultsCache);
+            }
             profilerThread.addMetric(new JVMMemoryMetric());
             profilerThread.addMetric(new ReceiverStatsMetric());
+            profilerThread.addMetric(new StageMetric(profilerThread));
             profilerThread.setWriteInterval(noiseMapDatabaseParameters.CSVProfilerWriteInterval);
             profilerThread.setFlushInterval(noiseMapDatabaseParameters.CSVProfilerWriteInterval);
+            // The computation feeds the receivers and stages metrics, unless an other profiler has been provided
+            if(noiseMapByReceiverMaker.getProfilerThread() == null ||
+                    noiseMapByReceiverMaker.getProfilerThread() == previousProfilerThread) {
+                noiseMapByReceiverMaker.setProfilerThread(profilerThread);
+            }
         }
     }
 
@@ -72,17 +132,51 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
     @Override
     public void start(ProgressVisitor progressLogger) throws SQLException {
         noiseMapWriter = new NoiseMapWriter(connection, noiseMapByReceiverMaker, resultsCache, exitWhenDone, aborted);
+        // With several writers the keys are created once all the writers are done
+        noiseMapWriter.setCreateKeysOnExit(resultsCaches.size() == 1);
         exitWhenDone.set(false);
+        postProcessingThreadPool = new ThreadPool();
         if(profilerThread != null) {
             profilerThread.addMetric(new ProgressMetric(progressLogger));
             postProcessingThreadPool.submit(profilerThread);
         }
         try {
             noiseMapWriter.init();
+            CellJournal cellJournal = noiseMapByReceiverMaker.getCellJournal();
+            if(cellJournal != null && cellJournal.isResume()) {
+                noiseMapWriter.resume(cellJournal.getRecomputedReceivers());
+            }
+            for (int writerIndex = 1; writerIndex < resultsCaches.size(); writerIndex++) {
+                Connection partitionConnection = JDBCUtilities.wrapConnection(
+                        noiseMapByReceiverMaker.getDataSource().getConnection());
+                partitionConnections.add(partitionConnection);
+                NoiseMapWriter partitionWriter = new NoiseMapWriter(partitionConnection, noiseMapByReceiverMaker,
+                        resultsCaches.get(writerIndex), exitWhenDone, aborted);
+                partitionWriter.setWriterIndex(writerIndex);
+                partitionWriter.setCreateKeysOnExit(false);
+                partitionWriter.init();
+                partitionWriters.add(partitionWriter);
+            }
         } catch (Exception ex) {
+            closePartitionConnections();
             throw new SQLException(ex);
         }
         noiseMapWriterFuture = postProcessingThreadPool.submitBlocking(noiseMapWriter);
+        for (NoiseMapWriter partitionWriter : partitionWriters) {
+            partitionWritersFutures.add(postProcessingThreadPool.submitBlocking(partitionWriter));
+        }
+    }
+
+    private void closePartitionConnections() throws SQLException {
+        try {
+            for (Connection partitionConnection : partitionConnections) {
+                partitionConnection.close();
+            }
+        } finally {
+            partitionConnections.clear();
+            partitionWriters.clear();
+            partitionWritersFutures.clear();
+        }
     }
 
     /**
@@ -92,10 +186,41 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
     @Override
     public void stop() throws SQLException {
         exitWhenDone.set(true);
+        for (ResultsCache writerResultsCache : resultsCaches) {
+            writerResultsCache.signalWriter();
+        }
         try {
             noiseMapWriterFuture.get(DEFAULT_END_WRITING_THREAD_TIMEOUT, TimeUnit.SECONDS);
+            for (Future<Boolean> partitionWriterFuture : partitionWritersFutures) {
+                partitionWriterFuture.get(DEFAULT_END_WRITING_THREAD_TIMEOUT, TimeUnit.SECONDS);
+            }
+            if(!partitionWriters.isEmpty() && !aborted.get()) {
+                noiseMapWriter.createKeys();
+            }
+            CellJournal cellJournal = noiseMapByReceiverMaker.getCellJournal();
+            if(cellJournal != null && !aborted.get()) {
+                cellJournal.writeStoredCells(connection);
+            }
         } catch (Exception e) {
             throw new SQLException(e);
+        } finally {
+            closePartitionConnections();
+            if(profilerThread != null) {
+                // write the last line with the database writing stages
+                profilerThread.stop();
+            }
+            if(postProcessingThreadPool != null) {
+                // the idle threads exit, the JVM is not kept alive by the pool
+                postProcessingThreadPool.shutdown();
+            }
         }
     }
+
+    /**
+     * @return Profiler that write the csv file {@link NoiseMapDatabaseParameters#CSVProfilerOutputPath}, null if not
+     * enabled or before {@link #initialize(Connection, NoiseMapByReceiverMaker)}
+     */
+    public ProfilerThread getProfilerThread() {
+        return profilerThread;
+    }
 }
@@ -12,16 +12,23 @@ package org.noise_planet.noisemodelling.jdbc.output;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import org.h2gis.utilities.JDBCUtilities;
 import org.locationtech.jts.geom.*;
+import org.noise_planet.noisemodelling.jdbc.CellJournal;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
+import org.noise_planet.noisemodelling.jdbc.utils.BatchInsert;
+import org.noise_planet.noisemodelling.jdbc.utils.PostgreSQLCopyStatement;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.CoordinateMixin;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.LineSegmentMixin;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 import org.slf4j.Logger;
@@ -32,10 +39,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPOutputStream;
 
@@ -46,8 +55,15 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicator
  * Process that run SQL query to feed tables
  */
 public class NoiseMapWriter implements Callable<Boolean> {
+    /** Initial number of rows of an insert batch */
     static final int BATCH_MAX_SIZE = 500;
+    static final int MINIMUM_BATCH_SIZE = 50;
+    static final int MAXIMUM_BATCH_SIZE = 20000;
+    /** The batch size is adapted so that the execution of a batch takes about this time */
+    static final long TARGET_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
     static final int WRITER_CACHE = 65536;
+    /** Maximum waiting time of the writer when there is no results, the writer is woken up by new results */
+    static final long MAXIMUM_IDLE_WAIT_MILLIS = 1000;
     AtomicBoolean exitWhenDone;
     AtomicBoolean aborted;
     Logger LOGGER = LoggerFactory.getLogger(NoiseMapWriter.class);
@@ -58,6 +74,20 @@ public class NoiseMapWriter implements Callable<Boolean> {
     ResultsCache resultsCache;
     Writer writer;
     ObjectWriter jsonWriter;
+    // Insert statements, prepared on the first batch
+    BatchInsert raysStatement;
+    BatchInsert receiverLevelsStatement;
+    /** Insert with the COPY protocol, evaluated on the first batch */
+    Boolean copySupported;
+    /** Receives the receivers levels instead of the table if the attenuation matrix directory is set */
+    AttenuationMatrixWriter attenuationMatrixWriter;
+    int raysBatchSize = BATCH_MAX_SIZE;
+    int receiverLevelsBatchSize = BATCH_MAX_SIZE;
+    /** Index of this writer, the additional writers (index greater than 0) insert into the tables created by the
+     * first writer, only the attenuation matrix chunks are specific to each writer */
+    int writerIndex = 0;
+    /** Create the primary keys when the results are written */
+    boolean createKeysOnExit = true;
     int srid;
     public List<Integer> frequencyArray = Arrays.asList(AcousticIndicatorsFunctions.asOctaveBands(ProfileBuilder.DEFAULT_FREQUENCIES_THIRD_OCTAVE));
     public double[] aWeightingArray = Arrays.stream(
@@ -102,46 +132,18 @@ public class NoiseMapWriter implements Callable<Boolean> {
     }
 
     /**
-     * Processes the stack of CnossosPath objects and inserts their data into the rays table.
-     * @param stack the stack of CnossosPath objects containing the data to be inserted into the rays table
+     * Inserts a batch of CnossosPath objects into the rays table.
+     * @param rows the CnossosPath objects containing the data to be inserted into the rays table
      * @throws SQLException if an SQL exception occurs while executing the INSERT query
      */
-    void processRaysStack(ConcurrentLinkedDeque<CnossosPath> stack) throws SQLException {
+    void processRaysStack(List<CnossosPath> rows) throws SQLException {
+        if(raysStatement == null) {
+            raysStatement = prepareRaysStatement();
+        }
+        BatchInsert ps = raysStatement;
         boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                 equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-        StringBuilder query = new StringBuilder("INSERT INTO " + databaseParameters.raysTable +
-                "(the_geom , IDRECEIVER , IDSOURCE");
-        if(databaseParameters.exportCnossosPathWithAttenuation) {
-            query.append(", PATH");
-        }
-        if(databaseParameters.exportAttenuationMatrix) {
-            query.append(", LEQ");
-        }
-        if(exportPeriod) {
-            query.append(", PERIOD");
-        }
-        query.append(") VALUES (?, ?, ?");
-        if(databaseParameters.exportCnossosPathWithAttenuation) {
-            query.append(", ?");
-        }
-        if(databaseParameters.exportAttenuationMatrix) {
-            query.append(", ?");
-        }
-        if(exportPeriod) {
-            query.append(", ?");
-        }
-        query.append(");");
-        // PK, GEOM, ID_RECEIVER, ID_SOURCE
-        PreparedStatement ps;
-        if(sqlFilePath == null) {
-            ps = connection.prepareStatement(query.toString());
-        } else {
-            ps = new StringPreparedStatements(writer, query.toString());
-        }
-        int batchSize = 0;
-        while(!stack.isEmpty()) {
-            CnossosPath row = stack.pop();
-            resultsCache.queueSize.decrementAndGet();
+        for (CnossosPath row : rows) {
             int parameterIndex = 1;
             LineString lineString = row.asGeom();
             lineString.setSRID(srid);
@@ -165,61 +167,87 @@ public class NoiseMapWriter implements Callable<Boolean> {
                 ps.setString(parameterIndex++, row.getTimePeriod());
             }
             ps.addBatch();
-            batchSize++;
-            if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
-                ps.clearBatch();
-                batchSize = 0;
-            }
         }
-        if (batchSize > 0) {
+        if (!rows.isEmpty()) {
+            long start = System.nanoTime();
             ps.executeBatch();
+            ps.clearBatch();
+            raysBatchSize = adaptBatchSize(raysBatchSize, rows.size(), System.nanoTime() - start);
         }
-
     }
 
     /**
-     * Pop values from stack and insert rows
-     * @param tableName Table to feed
-     * @param stack Stack to pop from
-     * @throws SQLException Got an error
+     * @return Inserted columns of the rays table
      */
-    void processStack(String tableName, ConcurrentLinkedDeque<ReceiverNoiseLevel> stack) throws SQLException {
-        if(stack.isEmpty()) {
-            return;
-        }
-        // If we compute attenuation only there is no period field
+    private String forgeRaysColumns() {
         boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
-                        equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-        StringBuilder query = new StringBuilder("INSERT INTO ");
-        query.append(tableName);
-        query.append(" VALUES (? "); // ID_RECEIVER
-        if(!databaseParameters.mergeSources) {
-            query.append(", ?"); // ID_SOURCE
+                equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
+        StringBuilder columns = new StringBuilder("the_geom , IDRECEIVER , IDSOURCE");
+        if(databaseParameters.exportCnossosPathWithAttenuation) {
+            columns.append(", PATH");
+        }
+        if(databaseParameters.exportAttenuationMatrix) {
+            columns.append(", LEQ");
         }
         if(exportPeriod) {
-            query.append(", ?"); // PERIOD
+            columns.append(", PERIOD");
         }
-        if(databaseParameters.exportReceiverPosition) {
-            query.append(", ?"); // THE_GEOM
+        return columns.toString();
+    }
+
+    /**
+     * @return the INSERT statement of the rays table
+     * @throws SQLException if an SQL exception occurs while preparing the query
+     */
+    private BatchInsert prepareRaysStatement() throws SQLException {
+        boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
+                equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
+        StringBuilder query = new StringBuilder("INSERT INTO " + getRaysTable() + "(");
+        query.append(forgeRaysColumns());
+        query.append(") VALUES (?, ?, ?");
+        if(databaseParameters.exportCnossosPathWithAttenuation) {
+            query.append(", ?");
         }
-        if (!databaseParameters.computeLAEQOnly) {
-            query.append(", ?".repeat(aWeightingArray.length)); // freq value LWXX
-            query.append(", ?, ?);"); // laeq, leq
-        }else{
-            query.append(", ?);"); // laeq, leq
+        if(databaseParameters.exportAttenuationMatrix) {
+            query.append(", ?");
         }
-        PreparedStatement ps;
-        if(sqlFilePath == null) {
-            ps = connection.prepareStatement(query.toString());
+        if(exportPeriod) {
+            query.append(", ?");
+        }
+        query.append(");");
+        // PK, GEOM, ID_RECEIVER, ID_SOURCE
+        if(isCopySupported()) {
+            return new PostgreSQLCopyStatement(connection, getRaysTable(), forgeRaysColumns());
+        } else if(sqlFilePath == null) {
+            return BatchInsert.of(connection.prepareStatement(query.toString()));
         } else {
-            ps = new StringPreparedStatements(writer, query.toString());
+            return BatchInsert.of(new StringPreparedStatements(writer, query.toString()));
+        }
+    }
+
+    /**
+     * Insert a batch of receiver levels
+     * @param tableName Table to feed
+     * @param rows Rows to insert
+     * @throws SQLException Got an error
+     */
+    void processStack(String tableName, List<ReceiverNoiseLevel> rows) throws SQLException, IOException {
+        if(rows.isEmpty()) {
+            return;
+        }
+        if(attenuationMatrixWriter != null) {
+            processMatrixStack(rows);
+            return;
+        }
+        if(receiverLevelsStatement == null) {
+            receiverLevelsStatement = prepareReceiverLevelsStatement(tableName);
         }
-        int batchSize = 0;
+        BatchInsert ps = receiverLevelsStatement;
+        // If we compute attenuation only there is no period field
+        boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
+                        equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
         GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
-        while(!stack.isEmpty()) {
-            ReceiverNoiseLevel row = stack.pop();
-            resultsCache.queueSize.decrementAndGet();
+        for (ReceiverNoiseLevel row : rows) {
             int parameterIndex = 1;
             ps.setLong(parameterIndex++, row.receiver.receiverPk);
             if(!databaseParameters.mergeSources) {
@@ -256,15 +284,91 @@ public class NoiseMapWriter implements Callable<Boolean> {
             }
 
             ps.addBatch();
-            batchSize++;
-            if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
-                ps.clearBatch();
-                batchSize = 0;
+        }
+        long start = System.nanoTime();
+        ps.executeBatch();
+        ps.clearBatch();
+        receiverLevelsBatchSize = adaptBatchSize(receiverLevelsBatchSize, rows.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * @return True if the rows can be inserted with the PostgreSQL COPY protocol
+     */
+    private boolean isCopySupported() {
+        if(copySupported == null) {
+            copySupported = sqlFilePath == null && databaseParameters.postgreSQLCopy &&
+                    PostgreSQLCopyStatement.isSupported(connection);
+        }
+        return copySupported;
+    }
+
+    /**
+     * Append a batch of receiver levels to the attenuation matrix files
+     * @param rows Rows to write
+     * @throws IOException Unable to write a chunk
+     */
+    private void processMatrixStack(List<ReceiverNoiseLevel> rows) throws IOException {
+        for (ReceiverNoiseLevel row : rows) {
+            for(int idfreq = 0; idfreq < row.levels.length; idfreq++) {
+                if(!Double.isFinite(row.levels[idfreq])) {
+                    row.levels[idfreq] = -99.0;
+                }
             }
+            attenuationMatrixWriter.add(row.receiver.receiverPk, row.source.sourcePk, row.period, row.levels);
         }
-        if (batchSize > 0) {
-            ps.executeBatch();
+    }
+
+    /**
+     * Compute the size of the next batch from the execution time of the last one, the batch size grows while the
+     * database insert the rows faster than {@link #TARGET_BATCH_NANOS} and shrinks when it is slower.
+     * @param batchSize Current batch size
+     * @param rowCount Number of rows of the executed batch
+     * @param elapsedNanos Execution time of the batch
+     * @return Next batch size
+     */
+    static int adaptBatchSize(int batchSize, int rowCount, long elapsedNanos) {
+        if(elapsedNanos > TARGET_BATCH_NANOS) {
+            return Math.max(MINIMUM_BATCH_SIZE, batchSize / 2);
+        } else if(rowCount >= batchSize && elapsedNanos < TARGET_BATCH_NANOS / 2) {
+            // the batch was full, the queue is filled faster than the rows are written
+            return Math.min(MAXIMUM_BATCH_SIZE, batchSize * 2);
+        }
+        return batchSize;
+    }
+
+    /**
+     * @param tableName Table to feed
+     * @return the INSERT statement of the receiver levels table
+     * @throws SQLException Got an error
+     */
+    private BatchInsert prepareReceiverLevelsStatement(String tableName) throws SQLException {
+        // If we compute attenuation only there is no period field
+        boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
+                        equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(tableName);
+        query.append(" VALUES (? "); // ID_RECEIVER
+        if(!databaseParameters.mergeSources) {
+            query.append(", ?"); // ID_SOURCE
+        }
+        if(exportPeriod) {
+            query.append(", ?"); // PERIOD
+        }
+        if(databaseParameters.exportReceiverPosition) {
+            query.append(", ?"); // THE_GEOM
+        }
+        if (!databaseParameters.computeLAEQOnly) {
+            query.append(", ?".repeat(aWeightingArray.length)); // freq value LWXX
+            query.append(", ?, ?);"); // laeq, leq
+        }else{
+            query.append(", ?);"); // laeq, leq
+        }
+        if(isCopySupported()) {
+            return new PostgreSQLCopyStatement(connection, tableName, null);
+        } else if(sqlFilePath == null) {
+            return BatchInsert.of(connection.prepareStatement(query.toString()));
+        } else {
+            return BatchInsert.of(new StringPreparedStatements(writer, query.toString()));
         }
     }
 
@@ -277,7 +381,7 @@ public class NoiseMapWriter implements Callable<Boolean> {
         // If we compute attenuation only there is no period field
         boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                 equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-        StringBuilder sb = new StringBuilder("create table ");
+        StringBuilder sb = new StringBuilder(isDropTables() ? "create table " : "create table if not exists ");
         sb.append(tableName);
         if(!databaseParameters.mergeSources) {
             sb.append(" (IDRECEIVER bigint NOT NULL");
@@ -352,14 +456,26 @@ public class NoiseMapWriter implements Callable<Boolean> {
      * @throws IOException
      */
     public void init() throws SQLException, IOException {
+        boolean dropTables = isDropTables();
+        if(writerIndex > 0) {
+            if(databaseParameters.attenuationMatrixDirectory != null) {
+                String prefix = getReceiversLevelTable() + DefaultCutPlaneProcessing.PARTITION_TABLE_SUFFIX +
+                        writerIndex;
+                AttenuationMatrixWriter.deleteChunks(databaseParameters.attenuationMatrixDirectory, prefix);
+                attenuationMatrixWriter = new AttenuationMatrixWriter(databaseParameters.attenuationMatrixDirectory,
+                        prefix, frequencyArray.stream().mapToInt(Integer::intValue).toArray(),
+                        AttenuationMatrixWriter.DEFAULT_MAXIMUM_CHUNK_ENTRIES);
+            }
+            return;
+        }
         if(databaseParameters.getExportRaysMethod() == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
             boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                     equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-            if(databaseParameters.dropResultsTable) {
-                String q = String.format("DROP TABLE IF EXISTS %s;", databaseParameters.raysTable);
+            if(dropTables) {
+                String q = String.format("DROP TABLE IF EXISTS %s;", getRaysTable());
                 processQuery(q);
             }
-            StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS " + databaseParameters.raysTable + "(pk bigint auto_increment, the_geom " +
+            StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS " + getRaysTable() + "(pk bigint auto_increment, the_geom " +
                     "geometry(LINESTRING Z,");
             sb.append(srid);
             sb.append("), IDRECEIVER bigint NOT NULL, IDSOURCE bigint NOT NULL");
@@ -375,36 +491,197 @@ public class NoiseMapWriter implements Callable<Boolean> {
             sb.append(");");
             processQuery(sb.toString());
         }
-        if(databaseParameters.dropResultsTable) {
-            String q = String.format("DROP TABLE IF EXISTS %s;", databaseParameters.receiversLevelTable);
+        if(databaseParameters.attenuationMatrixDirectory != null) {
+            if(dropTables) {
+                AttenuationMatrixWriter.deleteChunks(databaseParameters.attenuationMatrixDirectory,
+                        getReceiversLevelTable());
+            }
+            attenuationMatrixWriter = new AttenuationMatrixWriter(databaseParameters.attenuationMatrixDirectory,
+                    getReceiversLevelTable(), frequencyArray.stream().mapToInt(Integer::intValue).toArray(),
+                    AttenuationMatrixWriter.DEFAULT_MAXIMUM_CHUNK_ENTRIES);
+            return;
+        }
+        if(dropTables) {
+            String q = String.format("DROP TABLE IF EXISTS %s;", getReceiversLevelTable());
             processQuery(q);
         }
-        String q = forgeCreateTable(databaseParameters.receiversLevelTable);
+        String q = forgeCreateTable(getReceiversLevelTable());
         processQuery(q);
     }
 
+    /**
+     * @return True if the results tables are dropped on {@link #init()}, else the rows are added to the existing tables
+     */
+    boolean isDropTables() {
+        return databaseParameters.dropResultsTable && !isResume();
+    }
+
+    /**
+     * @return True if this writer continue the results tables of an interrupted computation
+     */
+    boolean isResume() {
+        CellJournal cellJournal = noiseMapByReceiverMaker.getCellJournal();
+        return cellJournal != null && cellJournal.isResume();
+    }
+
+    /**
+     * Prepare the results tables of an interrupted computation: the results of the provided receivers are deleted.
+     * @param recomputedReceivers Receivers of the cells that will be computed again
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void resume(Set<Long> recomputedReceivers) throws SQLException, IOException {
+        if(recomputedReceivers.isEmpty()) {
+            return;
+        }
+        // The receivers identifiers are written into a table in order to delete the rows with a single query
+        String receiversTable = getReceiversLevelTable() + "_RESUMED";
+        processQuery("DROP TABLE IF EXISTS " + receiversTable + ";");
+        processQuery("CREATE TABLE " + receiversTable + "(IDRECEIVER BIGINT PRIMARY KEY);");
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + receiversTable + " VALUES (?)")) {
+            int batchSize = 0;
+            for (long receiver : recomputedReceivers) {
+                st.setLong(1, receiver);
+                st.addBatch();
+                if(++batchSize >= BATCH_MAX_SIZE) {
+                    st.executeBatch();
+                    batchSize = 0;
+                }
+            }
+            if(batchSize > 0) {
+                st.executeBatch();
+            }
+        }
+        if(attenuationMatrixWriter == null) {
+            processQuery("DELETE FROM " + getReceiversLevelTable() + " WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM " +
+                    receiversTable + ");");
+        }
+        if(databaseParameters.getExportRaysMethod() == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
+            processQuery("DELETE FROM " + getRaysTable() + " WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM " +
+                    receiversTable + ");");
+        }
+        processQuery("DROP TABLE " + receiversTable + ";");
+    }
+
+    /**
+     * @return Name of the table of the receivers levels written by this writer
+     */
+    public String getReceiversLevelTable() {
+        return databaseParameters.receiversLevelTable;
+    }
+
+    /**
+     * @return Name of the table of the rays written by this writer
+     */
+    public String getRaysTable() {
+        return databaseParameters.raysTable;
+    }
+
+    /**
+     * @param writerIndex Index of this writer, the additional writers (index greater than 0) insert into the tables
+     *                    created by the first writer
+     */
+    public void setWriterIndex(int writerIndex) {
+        this.writerIndex = writerIndex;
+    }
+
+    /**
+     * @param createKeysOnExit Create the primary keys when the results are written, disabled when other writers
+     *                         insert into the same tables
+     */
+    public void setCreateKeysOnExit(boolean createKeysOnExit) {
+        this.createKeysOnExit = createKeysOnExit;
+    }
+
+    /**
+     * Move the rows of the provided tables into the tables of this writer, then drop the provided tables. Each row
+     * is written a second time, so the results should be written into the final tables when possible.
+     * @param levelsTable Table of receivers levels, null to skip
+     * @param raysTable Table of rays, null to skip
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void mergeTables(String levelsTable, String raysTable) throws SQLException, IOException {
+        // The matrix chunks of each writer are read together from the directory
+        if(attenuationMatrixWriter == null && levelsTable != null) {
+            processQuery("INSERT INTO " + getReceiversLevelTable() + " SELECT * FROM " + levelsTable + ";");
+            processQuery("DROP TABLE " + levelsTable + ";");
+        }
+        if(databaseParameters.getExportRaysMethod() == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE &&
+                raysTable != null) {
+            String columns = forgeRaysColumns();
+            processQuery("INSERT INTO " + getRaysTable() + "(" + columns + ") SELECT " + columns + " FROM " +
+                    raysTable + " ORDER BY PK;");
+            processQuery("DROP TABLE " + raysTable + ";");
+        }
+    }
+
+    /**
+     * Record in the journal the cells with all their results stored
+     * @param cellJournal Journal of the computation or null
+     */
+    private void writeStoredCells(CellJournal cellJournal) throws SQLException {
+        if(cellJournal != null && sqlFilePath == null) {
+            cellJournal.writeStoredCells(connection);
+        }
+    }
+
     /**
      * Main loop for processing attenuated paths and stacking results.
      * @throws SQLException
      * @throws IOException
      */
     void mainLoop() throws SQLException, IOException {
-        while (!aborted.get()) {
-            try {
-                if(!resultsCache.receiverLevels.isEmpty()) {
-                    processStack(databaseParameters.receiversLevelTable, resultsCache.receiverLevels);
-                } else if(!resultsCache.cnossosPaths.isEmpty()) {
-                    processRaysStack(resultsCache.cnossosPaths);
+        List<ReceiverNoiseLevel> receiverLevels = new ArrayList<>(BATCH_MAX_SIZE);
+        List<CnossosPath> cnossosPaths = new ArrayList<>(BATCH_MAX_SIZE);
+        CellJournal cellJournal = noiseMapByReceiverMaker.getCellJournal();
+        StageProfiler stageProfiler = null;
+        ProfilerThread profilerThread = noiseMapByReceiverMaker.getProfilerThread();
+        if(profilerThread != null && profilerThread.getMetric(StageMetric.class) != null) {
+            stageProfiler = profilerThread.getMetric(StageMetric.class).getProcessProfiler();
+        }
+        try {
+            while (!aborted.get()) {
+                long start = System.nanoTime();
+                if(resultsCache.receiverLevels.drainTo(receiverLevels, receiverLevelsBatchSize) > 0) {
+                    processStack(getReceiversLevelTable(), receiverLevels);
+                    resultsCache.onResultsStored(receiverLevels.size(), 0);
+                    receiverLevels.clear();
+                    if(stageProfiler != null) {
+                        stageProfiler.recordSince(StageProfiler.Stage.DB_WRITE, start);
+                    }
+                    writeStoredCells(cellJournal);
+                } else if(resultsCache.cnossosPaths.drainTo(cnossosPaths, raysBatchSize) > 0) {
+                    processRaysStack(cnossosPaths);
+                    resultsCache.onResultsStored(0, cnossosPaths.size());
+                    cnossosPaths.clear();
+                    if(stageProfiler != null) {
+                        stageProfiler.recordSince(StageProfiler.Stage.DB_WRITE, start);
+                    }
+                    writeStoredCells(cellJournal);
+                } else if(exitWhenDone.get()) {
+                    break;
                 } else {
-                    if(exitWhenDone.get()) {
+                    resultsCache.awaitResults(() -> exitWhenDone.get() || aborted.get(),
+                            MAXIMUM_IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    if(Thread.currentThread().isInterrupted()) {
                         break;
-                    } else {
-                        Thread.sleep(50);
                     }
                 }
-            } catch (InterruptedException ex) {
-                // ignore
-                break;
+            }
+        } finally {
+            // Release the computation threads waiting for free space if the writing is aborted
+            resultsCache.signalProducers();
+            if(raysStatement != null) {
+                raysStatement.close();
+                raysStatement = null;
+            }
+            if(receiverLevelsStatement != null) {
+                receiverLevelsStatement.close();
+                receiverLevelsStatement = null;
+            }
+            if(attenuationMatrixWriter != null && !aborted.get()) {
+                attenuationMatrixWriter.close();
             }
         }
     }
@@ -414,10 +691,18 @@ public class NoiseMapWriter implements Callable<Boolean> {
      * @throws SQLException
      * @throws IOException
      */
-    void createKeys()  throws SQLException, IOException {
+    public void createKeys()  throws SQLException, IOException {
+        if(attenuationMatrixWriter != null) {
+            return;
+        }
+        // The keys may have been created by a previous computation
+        if(!isDropTables() && sqlFilePath == null &&
+                JDBCUtilities.isIndexed(connection, getReceiversLevelTable(), "IDRECEIVER")) {
+            return;
+        }
         // Set primary keys
         LOGGER.info("Write done, apply primary keys");
-        processQuery(forgePkTable(databaseParameters.receiversLevelTable));
+        processQuery(forgePkTable(getReceiversLevelTable()));
         LOGGER.info("Primary keys applied");
     }
 
@@ -443,7 +728,9 @@ public class NoiseMapWriter implements Callable<Boolean> {
         if(sqlFilePath == null) {
             try {
                 mainLoop();
-                createKeys();
+                if(createKeysOnExit) {
+                    createKeys();
+                }
             } catch (Exception e) {
                 aborted.set(true);
                 throw e;
@@ -452,7 +739,9 @@ public class NoiseMapWriter implements Callable<Boolean> {
             try(OutputStreamWriter bw = getStream()) {
                 writer = bw;
                 mainLoop();
-                createKeys();
+                if(createKeysOnExit) {
+                    createKeys();
+                }
             } catch (Exception e) {
                 aborted.set(true);
                 throw e;
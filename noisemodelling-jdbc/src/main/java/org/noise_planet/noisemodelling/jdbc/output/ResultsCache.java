@@ -9,35 +9,136 @@
 
 package org.noise_planet.noisemodelling.jdbc.output;
 
+import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
- * Store results in memory, awaiting writing on sql database
+ * Store results in memory, awaiting writing on sql database.
+ * Each kind of result is stored in a {@link ResultsQueue}, the queues share the same capacity. The computation threads
+ * wait only when the capacity is reached and the writer thread is woken up by the first result.
  */
 public class ResultsCache implements ProfilerThread.Metric {
+    public final AtomicLong totalRaysInserted = new AtomicLong(0);
+    private final ResultsQueue.ConsumerSignal writerSignal = new ResultsQueue.ConsumerSignal();
+    public final ResultsQueue<ReceiverNoiseLevel> receiverLevels;
+    public final ResultsQueue<CnossosPath> cnossosPaths;
+    private final ResultsQueue.Capacity capacity;
+    private final String columnSuffix;
+    // Number of results written by the writer thread
+    private final AtomicLong storedReceiverLevels = new AtomicLong(0);
+    private final AtomicLong storedCnossosPaths = new AtomicLong(0);
+
+    public ResultsCache() {
+        this(NoiseMapDatabaseParameters.DEFAULT_OUTPUT_MAXIMUM_QUEUE);
+    }
+
     /**
-     * As reading the size of the queue is a O(n) operation, this attribute store the current number of elements in the stacks
+     * @param maximumQueue Maximum number of results of all kinds
      */
-    public final AtomicLong queueSize = new AtomicLong(0);
-    public final AtomicLong totalRaysInserted = new AtomicLong(0);
-    public final ConcurrentLinkedDeque<ReceiverNoiseLevel> receiverLevels = new ConcurrentLinkedDeque<>();
-    public final ConcurrentLinkedDeque<CnossosPath> cnossosPaths = new ConcurrentLinkedDeque<>();
+    public ResultsCache(int maximumQueue) {
+        this(maximumQueue, 0);
+    }
 
+    /**
+     * @param maximumQueue Maximum number of results of all kinds
+     * @param writerIndex Index of the writer thread of this cache, used in the profiler column names
+     */
+    public ResultsCache(int maximumQueue, int writerIndex) {
+        capacity = new ResultsQueue.Capacity(maximumQueue);
+        receiverLevels = new ResultsQueue<>(capacity, writerSignal);
+        cnossosPaths = new ResultsQueue<>(capacity, writerSignal);
+        columnSuffix = writerIndex == 0 ? "" : "_" + writerIndex;
+    }
+
+    /**
+     * @return Number of results not yet recorded in the database
+     */
+    public long getQueueSize() {
+        return receiverLevels.size() + cnossosPaths.size();
+    }
+
+    /**
+     * @return True if there is no result to write
+     */
+    public boolean isEmpty() {
+        return receiverLevels.isEmpty() && cnossosPaths.isEmpty();
+    }
+
+    /**
+     * Wait until a result is available, writer thread only.
+     * @param stop Stop waiting when this condition is true
+     * @param timeout Maximum waiting time
+     * @param unit Time unit of timeout
+     * @return True if there is a result to write
+     */
+    public boolean awaitResults(BooleanSupplier stop, long timeout, TimeUnit unit) {
+        writerSignal.await(() -> !isEmpty() || stop.getAsBoolean(), timeout, unit);
+        return !isEmpty();
+    }
+
+    /**
+     * Wake up the writer thread, to be called after changing its stop condition
+     */
+    public void signalWriter() {
+        writerSignal.signal();
+    }
+
+    /**
+     * Wake up the computation threads waiting for free space, to be called after changing their cancellation condition
+     */
+    public void signalProducers() {
+        receiverLevels.signalProducers();
+    }
+
+    /**
+     * @return Maximum number of results of all kinds
+     */
+    public int getCapacity() {
+        return capacity.getMaximum();
+    }
+
+    /**
+     * Called by the writer thread once the results are stored
+     * @param receiverLevelsCount Number of receiver levels read from {@link #receiverLevels} and stored
+     * @param cnossosPathsCount Number of paths read from {@link #cnossosPaths} and stored
+     */
+    public void onResultsStored(int receiverLevelsCount, int cnossosPathsCount) {
+        storedReceiverLevels.addAndGet(receiverLevelsCount);
+        storedCnossosPaths.addAndGet(cnossosPathsCount);
+    }
+
+    /**
+     * The queues are read in the order of insertion, so the results added before this call are stored when the
+     * stored count reaches the current added count.
+     * @return Condition that becomes true once the results added before this call are stored
+     */
+    public BooleanSupplier getStoredCondition() {
+        final long receiverLevelsCount = receiverLevels.getAddedCount();
+        final long cnossosPathsCount = cnossosPaths.getAddedCount();
+        return () -> storedReceiverLevels.get() >= receiverLevelsCount &&
+                storedCnossosPaths.get() >= cnossosPathsCount;
+    }
 
     @Override
     public String[] getColumnNames() {
-        return new String[] {"jdbc_stack"};
+        return new String[] {"jdbc_stack" + columnSuffix, "jdbc_stack_max" + columnSuffix,
+                "jdbc_blocked_push" + columnSuffix, "jdbc_blocked_ms" + columnSuffix};
     }
 
     @Override
     public String[] getCurrentValues() {
         // Metric that return unprocessed data (not yet recorded in the database)
-        return new String[] {Long.toString(queueSize.get())};
+        return new String[] {Long.toString(getQueueSize()),
+                Long.toString(Math.max(receiverLevels.getHighWaterMark(), cnossosPaths.getHighWaterMark())),
+                Long.toString(receiverLevels.getBlockedPutCount() + cnossosPaths.getBlockedPutCount()),
+                Long.toString(TimeUnit.NANOSECONDS.toMillis(receiverLevels.getBlockedNanos() +
+                        cnossosPaths.getBlockedNanos()))};
     }
 
     @Override
@@ -0,0 +1,417 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded ring buffer with many producers (the computation threads) and a single consumer (the table writer).
+ * Producers claim a slot with a compare and set on the tail counter and publish the element with the slot sequence
+ * number, so adding an element does not take a lock. A producer only blocks on {@link #put(Object, BooleanSupplier)}
+ * when the buffer is full, and is released as soon as the consumer frees slots. The consumer is parked while the
+ * buffer is empty and is unparked by the first published element.
+ * {@link #poll()}, {@link #drainTo(Collection, int)} and {@link #awaitNotEmpty(BooleanSupplier, long, TimeUnit)}
+ * must be called by only one thread at a time.
+ * Several buffers can share the same {@link Capacity}, the total number of elements of these buffers is then bounded.
+ * @param <E> Element type
+ */
+public class ResultsQueue<E> extends AbstractQueue<E> {
+    /** Maximum time a blocked producer waits before checking again its cancellation condition */
+    private static final long CANCELLATION_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private final int capacity;
+    private final Object[] elements;
+    /** Slot sequence, equal to the position when the slot is free and to position + 1 when the element is published */
+    private final AtomicLongArray sequences;
+    /** Next position to claim by producers */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next position to read by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    private final ConsumerSignal consumerSignal;
+    /** Number of elements that can still be added, may be shared with other buffers */
+    private final Capacity sharedCapacity;
+    // Metrics
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final LongAdder blockedPutCount = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of elements in the buffer
+     */
+    public ResultsQueue(int capacity) {
+        this(capacity, new ConsumerSignal());
+    }
+
+    /**
+     * @param capacity Maximum number of elements in the buffer, the buffer holds at least 2 elements
+     * @param consumerSignal Wake up of the consumer, can be shared by several buffers read by the same consumer
+     */
+    public ResultsQueue(int capacity, ConsumerSignal consumerSignal) {
+        this(new Capacity(capacity), consumerSignal);
+    }
+
+    /**
+     * @param sharedCapacity Maximum number of elements of all the buffers sharing this capacity
+     * @param consumerSignal Wake up of the consumer, can be shared by several buffers read by the same consumer
+     */
+    public ResultsQueue(Capacity sharedCapacity, ConsumerSignal consumerSignal) {
+        // The ring can hold all the elements of the shared capacity
+        this.capacity = sharedCapacity.getMaximum();
+        this.sharedCapacity = sharedCapacity;
+        this.consumerSignal = consumerSignal;
+        elements = new Object[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add the element if the buffer is not full, never blocks.
+     * @param element Element to add
+     * @return False if the buffer is full
+     */
+    @Override
+    public boolean offer(E element) {
+        if(element == null) {
+            throw new NullPointerException();
+        }
+        if(!sharedCapacity.tryAcquire()) {
+            return false;
+        }
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) (position % capacity);
+            long difference = sequences.get(slot) - position;
+            if(difference == 0) {
+                if(tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if(difference < 0) {
+                // the slot still contains the element of the previous lap
+                sharedCapacity.release(1);
+                return false;
+            }
+        }
+        elements[slot] = element;
+        sequences.set(slot, position + 1);
+        long occupancy = position + 1 - head.get();
+        if(occupancy > highWaterMark.get()) {
+            highWaterMark.accumulateAndGet(occupancy, Math::max);
+        }
+        consumerSignal.signal();
+        return true;
+    }
+
+    /**
+     * Add the element, wait for a free slot if the buffer is full.
+     * @param element Element to add
+     * @param cancelled Checked while waiting, stop waiting if it returns true
+     * @return False if the element has not been added because of the cancellation
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public boolean put(E element, BooleanSupplier cancelled) throws InterruptedException {
+        if(offer(element)) {
+            return true;
+        }
+        blockedPutCount.increment();
+        long start = System.nanoTime();
+        // The consumer reads waitingProducers after freeing slots, so it cannot miss this producer
+        sharedCapacity.waitingProducers.incrementAndGet();
+        try {
+            sharedCapacity.producersLock.lockInterruptibly();
+            try {
+                while (!offer(element)) {
+                    if(cancelled.getAsBoolean()) {
+                        return false;
+                    }
+                    sharedCapacity.notFull.awaitNanos(CANCELLATION_CHECK_INTERVAL);
+                }
+                return true;
+            } finally {
+                sharedCapacity.producersLock.unlock();
+            }
+        } finally {
+            sharedCapacity.waitingProducers.decrementAndGet();
+            blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E pollElement() {
+        long position = head.get();
+        int slot = (int) (position % capacity);
+        if(sequences.get(slot) != position + 1) {
+            return null;
+        }
+        E element = (E) elements[slot];
+        elements[slot] = null;
+        head.set(position + 1);
+        // Free the slot for the next lap
+        sequences.set(slot, position + capacity);
+        return element;
+    }
+
+    /**
+     * Retrieves and removes the oldest element, consumer only.
+     * @return The element or null if the buffer is empty
+     */
+    @Override
+    public E poll() {
+        E element = pollElement();
+        if(element != null) {
+            sharedCapacity.release(1);
+        }
+        return element;
+    }
+
+    /**
+     * Move the oldest elements into the provided collection, consumer only.
+     * @param collection Destination
+     * @param maximumElements Maximum number of elements to move
+     * @return Number of moved elements
+     */
+    public int drainTo(Collection<? super E> collection, int maximumElements) {
+        int count = 0;
+        E element;
+        while (count < maximumElements && (element = pollElement()) != null) {
+            collection.add(element);
+            count++;
+        }
+        if(count > 0) {
+            sharedCapacity.release(count);
+        }
+        return count;
+    }
+
+    /**
+     * Wake up the producers blocked in {@link #put(Object, BooleanSupplier)}, they check again their cancellation
+     * condition.
+     */
+    public void signalProducers() {
+        sharedCapacity.signalProducers();
+    }
+
+    /**
+     * Wait until an element is available, consumer only.
+     * @param stop Stop waiting when this condition is true
+     * @param timeout Maximum waiting time
+     * @param unit Time unit of timeout
+     * @return True if the buffer is not empty
+     */
+    public boolean awaitNotEmpty(BooleanSupplier stop, long timeout, TimeUnit unit) {
+        consumerSignal.await(() -> !isEmpty() || stop.getAsBoolean(), timeout, unit);
+        return !isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E peek() {
+        long position = head.get();
+        int slot = (int) (position % capacity);
+        if(sequences.get(slot) != position + 1) {
+            return null;
+        }
+        return (E) elements[slot];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        long position = head.get();
+        return sequences.get((int) (position % capacity)) != position + 1;
+    }
+
+    /**
+     * @return Number of elements, including the elements being added by producers
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    /**
+     * Iterate over a copy of the published elements, the iterator does not support removal.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Iterator<E> iterator() {
+        long position = head.get();
+        long end = tail.get();
+        List<E> snapshot = new ArrayList<>((int) Math.max(0, Math.min(capacity, end - position)));
+        for (; position < end; position++) {
+            int slot = (int) (position % capacity);
+            if(sequences.get(slot) != position + 1) {
+                break;
+            }
+            Object element = elements[slot];
+            if(element == null) {
+                break;
+            }
+            snapshot.add((E) element);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * @return Maximum number of elements
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of elements added since the creation of the buffer, including the elements being added by
+     * producers. The elements are read in this order.
+     */
+    public long getAddedCount() {
+        return tail.get();
+    }
+
+    /**
+     * @return Maximum number of elements reached since the creation of the buffer
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * @return Number of calls to {@link #put(Object, BooleanSupplier)} that have waited for a free slot
+     */
+    public long getBlockedPutCount() {
+        return blockedPutCount.sum();
+    }
+
+    /**
+     * @return Cumulated time in nanoseconds spent by producers waiting for a free slot
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    /**
+     * Bound of the number of elements of one or several buffers, and blocking of their producers
+     */
+    public static final class Capacity {
+        private final int maximum;
+        private final AtomicInteger available;
+        private final ReentrantLock producersLock = new ReentrantLock();
+        private final Condition notFull = producersLock.newCondition();
+        private final AtomicInteger waitingProducers = new AtomicInteger();
+
+        /**
+         * @param maximum Maximum number of elements, at least 2 elements
+         */
+        public Capacity(int maximum) {
+            if(maximum < 1) {
+                throw new IllegalArgumentException("Capacity must be strictly positive");
+            }
+            // With a single slot the published sequence of a lap would be equal to the free sequence of the next lap
+            this.maximum = Math.max(2, maximum);
+            this.available = new AtomicInteger(this.maximum);
+        }
+
+        /**
+         * @return Maximum number of elements
+         */
+        public int getMaximum() {
+            return maximum;
+        }
+
+        private boolean tryAcquire() {
+            int value;
+            do {
+                value = available.get();
+                if(value <= 0) {
+                    return false;
+                }
+            } while (!available.compareAndSet(value, value - 1));
+            return true;
+        }
+
+        private void release(int count) {
+            available.addAndGet(count);
+            if(waitingProducers.get() > 0) {
+                signalProducers();
+            }
+        }
+
+        private void signalProducers() {
+            producersLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                producersLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Park and unpark of the single consumer thread
+     */
+    public static final class ConsumerSignal {
+        private volatile Thread waitingThread;
+
+        /**
+         * Unpark the consumer if it is waiting
+         */
+        public void signal() {
+            Thread thread = waitingThread;
+            if(thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Park the current thread until the condition is true or the timeout is reached
+         * @param ready Condition, must be made true before calling {@link #signal()}
+         * @param timeout Maximum waiting time
+         * @param unit Time unit of timeout
+         * @return The last value of the condition
+         */
+        public boolean await(BooleanSupplier ready, long timeout, TimeUnit unit) {
+            if(ready.getAsBoolean()) {
+                return true;
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            // The thread is published before checking the condition, so a signal following the condition change is
+            // never lost
+            waitingThread = Thread.currentThread();
+            try {
+                long remaining;
+                while (!ready.getAsBoolean() && (remaining = deadline - System.nanoTime()) > 0) {
+                    if(Thread.interrupted()) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waitingThread = null;
+            }
+            return ready.getAsBoolean();
+        }
+    }
+}
@@ -30,6 +30,8 @@ import java.util.*;
 
 
 public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
+    /** Periods of the emission of a record: railWayLW, railWayLWDay, railWayLWEvening and railWayLWNight */
+    private static final String[] RECORD_PERIODS = new String[]{"DAY", "DAY", "EVENING", "NIGHT"};
     private RailwayCnossos railway = new RailwayCnossos();
     private Connection connection;
     private RailWayLWGeom railWayLWComplete = null;
@@ -157,10 +159,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
                 if (sourceFields.containsKey("TRACKSPC")) {
                     incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
                 }
-                incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
+                setRailwayEmission(incompleteRecord, getRailwayEmissionFromResultSet(spatialResultSet, RECORD_PERIODS));
                 incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
                 incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
                 if (hasColumn(spatialResultSet, "GS")) {
@@ -175,10 +174,11 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
             while (spatialResultSet.next()) {
                 hasNext = true;
                 if (incompleteRecord.pk == spatialResultSet.getInt("trackid")) {
-                    incompleteRecord.setRailWayLW(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLW, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWDay(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWDay, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWEvening(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWEvening, getRailwayEmissionFromResultSet(spatialResultSet, "EVENING")));
-                    incompleteRecord.setRailWayLWNight(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWNight, getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT")));
+                    RailWayCnossosParameters[] lWRailWay = getRailwayEmissionFromResultSet(spatialResultSet, RECORD_PERIODS);
+                    incompleteRecord.setRailWayLW(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLW, lWRailWay[0]));
+                    incompleteRecord.setRailWayLWDay(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWDay, lWRailWay[1]));
+                    incompleteRecord.setRailWayLWEvening(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWEvening, lWRailWay[2]));
+                    incompleteRecord.setRailWayLWNight(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWNight, lWRailWay[3]));
                 } else {
                     // railWayLWIncomplete is complete
                     completeRecord = new RailWayLWGeom(incompleteRecord);
@@ -188,10 +188,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
                         incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
                     }
                     // initialize incomplete record
-                    incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                    incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
+                    setRailwayEmission(incompleteRecord, getRailwayEmissionFromResultSet(spatialResultSet, RECORD_PERIODS));
                     incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
                     incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
                     if (hasColumn(spatialResultSet, "GS")) {
@@ -215,6 +212,18 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
         }
     }
 
+    /**
+     * Set the emission of the record for each of the {@link #RECORD_PERIODS}
+     * @param record Record to update
+     * @param lWRailWay Emission of each period
+     */
+    private static void setRailwayEmission(RailWayLWGeom record, RailWayCnossosParameters[] lWRailWay) {
+        record.setRailWayLW(lWRailWay[0]);
+        record.setRailWayLWDay(lWRailWay[1]);
+        record.setRailWayLWEvening(lWRailWay[2]);
+        record.setRailWayLWNight(lWRailWay[3]);
+    }
+
     /**
      * Retrieves railway emission parameters from the given ResultSet for a specified period.
      * @param rs     result set of source
@@ -222,9 +231,21 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
      * @return Emission spectrum in dB
      */
     public RailWayCnossosParameters getRailwayEmissionFromResultSet(ResultSet rs, String period) throws SQLException, IOException {
+        return getRailwayEmissionFromResultSet(rs, new String[]{period})[0];
+    }
+
+    /**
+     * Retrieves railway emission parameters from the given ResultSet for several periods. The source spectra of the
+     * vehicles are evaluated once for all the periods.
+     * @param rs     result set of source
+     * @param periods Day or Evening or Night
+     * @return Emission spectrum in dB of each period
+     */
+    public RailWayCnossosParameters[] getRailwayEmissionFromResultSet(ResultSet rs, String[] periods) throws SQLException, IOException {
         String train = "FRET";
         double vehicleSpeed = 160;
-        double vehiclePerHour = 1;
+        double[] vehiclePerHour = new double[periods.length];
+        Arrays.fill(vehiclePerHour, 1);
         int rollingCondition = 0;
         double idlingTime = 0;
         int trackTransfer = 4;
@@ -236,14 +257,15 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
         double vMaxInfra = 160;
         double commercialSpeed = 160;
         boolean isTunnel = false;
-        String idSection = "";
 
         // Read fields
         if (sourceFields.containsKey("TRAINSPD")) {
             vehicleSpeed = rs.getDouble("TRAINSPD");
         }
-        if (sourceFields.containsKey("T" + period)) {
-            vehiclePerHour = rs.getDouble("T" + period);
+        for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+            if (sourceFields.containsKey("T" + periods[idPeriod])) {
+                vehiclePerHour[idPeriod] = rs.getDouble("T" + periods[idPeriod]);
+            }
         }
         if (sourceFields.containsKey("ROLLINGCONDITION")) {
             rollingCondition = rs.getInt("ROLLINGCONDITION");
@@ -297,37 +319,48 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
         }
 
 
-        RailWayCnossosParameters  lWRailWay = new RailWayCnossosParameters();
+        RailWayCnossosParameters[] lWRailWay = new RailWayCnossosParameters[periods.length];
+        for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+            lWRailWay[idPeriod] = new RailWayCnossosParameters();
+        }
 
         RailwayTrackCnossosParameters trackParameters = new RailwayTrackCnossosParameters(vMaxInfra, trackTransfer, railRoughness,
                 impactNoise, bridgeTransfert, curvature, commercialSpeed, isTunnel, nbTrack);
 
         Map<String, Integer> vehicles = railway.getVehicleFromTrainset(train);
-       // double vehiclePerHouri=vehiclePerHour;
-        if (vehicles!=null){
+        if (vehicles == null && railway.isInVehicleList(train)) {
+            vehicles = Collections.singletonMap(train, 1);
+        }
+        if (vehicles != null) {
             int i = 0;
+            double[] vehiclePerHouri = new double[periods.length];
             for (Map.Entry<String,Integer> entry : vehicles.entrySet()){
                 String typeTrain = entry.getKey();
-                double vehiclePerHouri = vehiclePerHour * entry.getValue();
-                if (vehiclePerHouri>0) {
+                boolean hasTraffic = false;
+                for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                    vehiclePerHouri[idPeriod] = vehiclePerHour[idPeriod] * entry.getValue();
+                    hasTraffic |= vehiclePerHouri[idPeriod] > 0;
+                }
+                if (hasTraffic) {
+                    double[] vehiclePerHourTrack = new double[periods.length];
+                    for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                        vehiclePerHourTrack[idPeriod] = vehiclePerHouri[idPeriod] / (double) nbTrack;
+                    }
                     RailwayVehicleCnossosParameters vehicleParameters = new RailwayVehicleCnossosParameters(typeTrain, vehicleSpeed,
-                            vehiclePerHouri / (double) nbTrack, rollingCondition, idlingTime);
-
-                    if (i == 0) {
-                        lWRailWay = railway.evaluate(vehicleParameters, trackParameters);
-                    } else {
-                        lWRailWay = RailWayCnossosParameters.sumRailwaySource(lWRailWay, railway.evaluate(vehicleParameters, trackParameters));
+                            0, rollingCondition, idlingTime);
+                    RailWayCnossosParameters[] lWVehicle = railway.evaluate(vehicleParameters, trackParameters, vehiclePerHourTrack);
+                    for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                        if (vehiclePerHouri[idPeriod] > 0) {
+                            if (i == 0) {
+                                lWRailWay[idPeriod] = lWVehicle[idPeriod];
+                            } else {
+                                lWRailWay[idPeriod] = RailWayCnossosParameters.sumRailwaySource(lWRailWay[idPeriod], lWVehicle[idPeriod]);
+                            }
+                        }
                     }
                 }
                 i++;
             }
-
-        }else if (railway.isInVehicleList(train)){
-            if (vehiclePerHour>0) {
-                RailwayVehicleCnossosParameters vehicleParameters = new RailwayVehicleCnossosParameters(train, vehicleSpeed,
-                        vehiclePerHour / (double) nbTrack, rollingCondition, idlingTime);
-                lWRailWay = railway.evaluate(vehicleParameters, trackParameters);
-            }
         }
 
         return lWRailWay;
@@ -336,5 +369,3 @@ public class RailWayLWIterator implements Iterator<RailWayLWGeom> {
 
 
 }
-
-
@@ -17,6 +17,7 @@ import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.TopographicGrid;
 
 import java.io.*;
 import java.sql.*;
@@ -238,6 +239,65 @@ public class AscReaderDriver {
         }
     }
 
+    /**
+     * Read the asc file as a regular grid of altitudes, to be given to
+     * {@link org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder#setTopographicGrid(TopographicGrid)}
+     * instead of a triangulated DEM. The samples are located at the center of the raster cells, the NODATA cells are
+     * missing values. The down scale is applied, the extract envelope is ignored.
+     *
+     * @param fileName asc or asc.gz file
+     * @return Topographic grid of the file
+     * @throws IOException if the file cannot be read or is not an asc file
+     */
+    public TopographicGrid readGrid(File fileName) throws IOException {
+        String name = fileName.getName().toLowerCase();
+        if (!name.endsWith(".asc") && !name.endsWith(".gz")) {
+            throw new IOException("The asc read driver supports only asc or gz extensions");
+        }
+        try (InputStream inputStream = name.endsWith(".gz") ?
+                new GZIPInputStream(new FileInputStream(fileName)) : new FileInputStream(fileName)) {
+            return readGrid(inputStream);
+        }
+    }
+
+    /**
+     * Read the ascii file from inpustream as a regular grid of altitudes
+     *
+     * @param inputStream asc content
+     * @return Topographic grid of the content
+     * @throws IOException if the content is not a valid asc file
+     */
+    private TopographicGrid readGrid(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream, BUFFER_SIZE), encoding));
+        try {
+            Scanner scanner = new Scanner(reader);
+            readHeader(scanner);
+            int columns = (ncols + downScale - 1) / downScale;
+            int rows = (nrows + downScale - 1) / downScale;
+            float[] values = new float[columns * rows];
+            for (int i = 0; i < nrows; i++) {
+                for (int j = 0; j < ncols; j++) {
+                    if (readFirst) {
+                        lastWord = scanner.next();
+                    } else {
+                        readFirst = true;
+                    }
+                    if (i % downScale == 0 && j % downScale == 0) {
+                        double z = Double.parseDouble(lastWord);
+                        // The first row of the file is the northernmost one
+                        values[(rows - 1 - i / downScale) * columns + j / downScale] =
+                                Math.abs(noData - z) != 0 ? (float) z : Float.NaN;
+                    }
+                }
+            }
+            return new TopographicGrid(xValue + cellSize / 2,
+                    yValue - (rows - 1) * downScale * cellSize - cellSize / 2,
+                    cellSize * downScale, cellSize * downScale, columns, rows, values);
+        } catch (NoSuchElementException | NumberFormatException ex) {
+            throw new IOException("Unexpected word " + lastWord, ex);
+        }
+    }
+
     /**
      * Read the ascii file from inpustream
      *
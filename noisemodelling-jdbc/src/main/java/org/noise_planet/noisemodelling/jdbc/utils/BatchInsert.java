@@ -0,0 +1,98 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Insert rows into a table by batch. The parameters of a row are set with the same indexes as the parameters of a
+ * {@link PreparedStatement} then the row is appended to the batch with {@link #addBatch()}.
+ */
+public interface BatchInsert extends AutoCloseable {
+
+    void setLong(int parameterIndex, long x) throws SQLException;
+
+    void setDouble(int parameterIndex, double x) throws SQLException;
+
+    void setString(int parameterIndex, String x) throws SQLException;
+
+    /**
+     * @param parameterIndex Parameter index, the first parameter is 1
+     * @param x Value of the parameter, a geometry for the geometry columns, may be null
+     */
+    void setObject(int parameterIndex, Object x) throws SQLException;
+
+    /**
+     * Append the row of the current parameters to the batch
+     */
+    void addBatch() throws SQLException;
+
+    /**
+     * Insert the rows of the batch then clear the batch
+     * @return Number of inserted rows for each row of the batch
+     */
+    int[] executeBatch() throws SQLException;
+
+    /**
+     * Remove the rows of the batch
+     */
+    void clearBatch() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+
+    /**
+     * @param preparedStatement INSERT statement
+     * @return Batch insert with the provided statement, closed with the returned object
+     */
+    static BatchInsert of(PreparedStatement preparedStatement) {
+        return new BatchInsert() {
+            @Override
+            public void setLong(int parameterIndex, long x) throws SQLException {
+                preparedStatement.setLong(parameterIndex, x);
+            }
+
+            @Override
+            public void setDouble(int parameterIndex, double x) throws SQLException {
+                preparedStatement.setDouble(parameterIndex, x);
+            }
+
+            @Override
+            public void setString(int parameterIndex, String x) throws SQLException {
+                preparedStatement.setString(parameterIndex, x);
+            }
+
+            @Override
+            public void setObject(int parameterIndex, Object x) throws SQLException {
+                preparedStatement.setObject(parameterIndex, x);
+            }
+
+            @Override
+            public void addBatch() throws SQLException {
+                preparedStatement.addBatch();
+            }
+
+            @Override
+            public int[] executeBatch() throws SQLException {
+                return preparedStatement.executeBatch();
+            }
+
+            @Override
+            public void clearBatch() throws SQLException {
+                preparedStatement.clearBatch();
+            }
+
+            @Override
+            public void close() throws SQLException {
+                preparedStatement.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.util.Arrays;
+
+/**
+ * Streaming histogram of sound levels in dB. The levels are counted in bins of a fixed width, only the range of bins
+ * between the lowest and the highest level is allocated, so the memory is bounded by the dynamic of the levels and
+ * not by the number of levels. Each sorted level is estimated inside its bin, so the percentiles differ from the
+ * exact ones by less than the bin width. The equivalent level, the minimum and the maximum are exact.
+ * Two histograms with the same resolution can be merged.
+ */
+public class LevelHistogram {
+    /** Lowest level of the histogram, lower levels are counted in the first bin */
+    public static final double MINIMUM_LEVEL = -100;
+    /** Highest level of the histogram, higher levels are counted in the last bin */
+    public static final double MAXIMUM_LEVEL = 250;
+    public static final double DEFAULT_RESOLUTION = 0.1;
+    private final double resolution;
+    private final int maximumBin;
+    /** Count of each bin, from the bin firstBin */
+    private int[] counts = new int[0];
+    private int firstBin = 0;
+    private long count = 0;
+    private double energySum = 0;
+    private double minimum = Double.POSITIVE_INFINITY;
+    private double maximum = Double.NEGATIVE_INFINITY;
+
+    public LevelHistogram() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param resolution Width of the bins in dB, the maximum error of the percentiles
+     */
+    public LevelHistogram(double resolution) {
+        if(!(resolution > 0)) {
+            throw new IllegalArgumentException("The resolution must be greater than 0");
+        }
+        this.resolution = resolution;
+        this.maximumBin = (int) Math.ceil((MAXIMUM_LEVEL - MINIMUM_LEVEL) / resolution) - 1;
+    }
+
+    /**
+     * @return Width of the bins in dB
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    private int binOf(double level) {
+        return Math.max(0, Math.min(maximumBin, (int) Math.floor((level - MINIMUM_LEVEL) / resolution)));
+    }
+
+    /**
+     * Extend the allocated bins in order to contain the provided bin
+     */
+    private void ensureBin(int bin) {
+        if(counts.length == 0) {
+            counts = new int[16];
+            firstBin = Math.max(0, Math.min(maximumBin + 1 - counts.length, bin - counts.length / 2));
+        } else if(bin < firstBin) {
+            // grow by at least half of the current size to amortize the copies
+            int newFirstBin = Math.max(0, Math.min(bin, firstBin - counts.length / 2));
+            int[] newCounts = new int[counts.length + firstBin - newFirstBin];
+            System.arraycopy(counts, 0, newCounts, firstBin - newFirstBin, counts.length);
+            counts = newCounts;
+            firstBin = newFirstBin;
+        } else if(bin >= firstBin + counts.length) {
+            int newLength = Math.min(maximumBin + 1 - firstBin, Math.max(bin - firstBin + 1,
+                    counts.length + counts.length / 2));
+            counts = Arrays.copyOf(counts, newLength);
+        }
+    }
+
+    /**
+     * Add one level
+     * @param level Sound level in dB, non-finite values are ignored
+     */
+    public void add(double level) {
+        if(!Double.isFinite(level)) {
+            return;
+        }
+        int bin = binOf(level);
+        ensureBin(bin);
+        counts[bin - firstBin]++;
+        count++;
+        energySum += Math.pow(10, level / 10);
+        minimum = Math.min(minimum, level);
+        maximum = Math.max(maximum, level);
+    }
+
+    /**
+     * Add the levels of another histogram
+     * @param other Histogram with the same resolution
+     */
+    public void merge(LevelHistogram other) {
+        if(Double.compare(resolution, other.resolution) != 0) {
+            throw new IllegalArgumentException("Can not merge histograms of different resolutions");
+        }
+        if(other.count == 0) {
+            return;
+        }
+        ensureBin(other.firstBin);
+        ensureBin(other.firstBin + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.firstBin + i - firstBin] += other.counts[i];
+        }
+        count += other.count;
+        energySum += other.energySum;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+    }
+
+    /**
+     * @return Number of levels
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Lowest level, NaN if empty
+     */
+    public double getMinimum() {
+        return count > 0 ? minimum : Double.NaN;
+    }
+
+    /**
+     * @return Highest level (Lmax), NaN if empty
+     */
+    public double getMaximum() {
+        return count > 0 ? maximum : Double.NaN;
+    }
+
+    /**
+     * @return Equivalent continuous level, the energetic mean of the levels in dB, NaN if empty
+     */
+    public double getLeq() {
+        return count > 0 ? 10 * Math.log10(energySum / count) : Double.NaN;
+    }
+
+    /**
+     * Level below which the given fraction of the levels are, interpolated as the SQL percentile_cont function
+     * @param fraction Value between 0 and 1
+     * @return Level in dB, NaN if empty
+     */
+    public double getPercentile(double fraction) {
+        if(fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("The fraction must be between 0 and 1");
+        }
+        if(count == 0) {
+            return Double.NaN;
+        }
+        // rank of the level in the sorted levels, starting at 0
+        double rank = fraction * (count - 1);
+        long lowRank = (long) Math.floor(rank);
+        double lowLevel = getLevelAtRank(lowRank);
+        if(lowRank == rank) {
+            return lowLevel;
+        }
+        return lowLevel + (getLevelAtRank(lowRank + 1) - lowLevel) * (rank - lowRank);
+    }
+
+    /**
+     * @param rank Rank of the level in the sorted levels, starting at 0
+     * @return Estimated level, the levels of a bin are considered evenly spread inside the bin
+     */
+    private double getLevelAtRank(long rank) {
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int binCount = counts[i];
+            if(cumulated + binCount > rank) {
+                double binLow = MINIMUM_LEVEL + (firstBin + i) * resolution;
+                double level = binLow + resolution * (rank - cumulated + 0.5) / binCount;
+                return Math.max(minimum, Math.min(maximum, level));
+            }
+            cumulated += binCount;
+        }
+        return maximum;
+    }
+
+    /**
+     * Statistical level, exceeded during the given percentage of the time
+     * @param percentage Percentage of time, ex. 10 for L10
+     * @return Level in dB, NaN if empty
+     */
+    public double getExceededLevel(double percentage) {
+        return getPercentile(1 - percentage / 100.0);
+    }
+}
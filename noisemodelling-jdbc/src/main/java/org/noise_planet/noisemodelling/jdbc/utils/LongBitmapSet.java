@@ -0,0 +1,302 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+/**
+ * Compressed set of primitive long values, such as receivers primary keys. The values are split into chunks of 65536
+ * consecutive values. A chunk is stored as a sorted array of 16 bits values while it is sparse, then as a bitmap of
+ * 8 KB once it contains more than 4096 values. A dense range of 20 millions receivers identifiers takes 2.5 MB where
+ * a {@link java.util.HashSet} takes more than 1 GB.
+ * The values are iterated in ascending unsigned order.
+ */
+public class LongBitmapSet extends AbstractSet<Long> {
+    private static final int CHUNK_BITS = 16;
+    private static final long LOW_MASK = (1L << CHUNK_BITS) - 1;
+    /** Above this cardinality a chunk stored as an array would be larger than the bitmap */
+    private static final int ARRAY_MAXIMUM_SIZE = 4096;
+    private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+    private int size = 0;
+
+    public LongBitmapSet() {
+    }
+
+    /**
+     * @param values Initial content
+     */
+    public LongBitmapSet(Iterable<Long> values) {
+        for (Long value : values) {
+            add(value.longValue());
+        }
+    }
+
+    /**
+     * @param value Value to add
+     * @return True if the set did not already contain the value
+     */
+    public boolean add(long value) {
+        Chunk chunk = chunks.computeIfAbsent(value >>> CHUNK_BITS, key -> new Chunk());
+        if(chunk.add((int) (value & LOW_MASK))) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param value Value to look for
+     * @return True if the set contains the value
+     */
+    public boolean contains(long value) {
+        Chunk chunk = chunks.get(value >>> CHUNK_BITS);
+        return chunk != null && chunk.contains((int) (value & LOW_MASK));
+    }
+
+    /**
+     * @param value Value to remove
+     * @return True if the set contained the value
+     */
+    public boolean remove(long value) {
+        Long key = value >>> CHUNK_BITS;
+        Chunk chunk = chunks.get(key);
+        if(chunk == null || !chunk.remove((int) (value & LOW_MASK))) {
+            return false;
+        }
+        if(chunk.cardinality == 0) {
+            chunks.remove(key);
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Approximate memory used by the values, in bytes
+     */
+    public long getMemoryUsage() {
+        long memory = 0;
+        for (Chunk chunk : chunks.values()) {
+            memory += chunk.bitmap != null ? (long) chunk.bitmap.length * Long.BYTES :
+                    (long) chunk.values.length * Character.BYTES;
+        }
+        return memory;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return longIterator();
+    }
+
+    /**
+     * @return Iterator on the values without boxing, {@link Iterator#remove()} is supported
+     */
+    public PrimitiveIterator.OfLong longIterator() {
+        return new LongBitmapIterator();
+    }
+
+    /**
+     * Values sharing the same high bits
+     */
+    private static final class Chunk {
+        char[] values = new char[4];
+        /** Not null once the chunk is dense */
+        long[] bitmap = null;
+        int cardinality = 0;
+
+        boolean add(int low) {
+            if(bitmap != null) {
+                long mask = 1L << low;
+                if((bitmap[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bitmap[low >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if(index >= 0) {
+                return false;
+            }
+            if(cardinality == ARRAY_MAXIMUM_SIZE) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if(cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAXIMUM_SIZE, values.length * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = (char) low;
+            cardinality++;
+            return true;
+        }
+
+        boolean contains(int low) {
+            if(bitmap != null) {
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, (char) low) >= 0;
+        }
+
+        boolean remove(int low) {
+            if(bitmap != null) {
+                long mask = 1L << low;
+                if((bitmap[low >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bitmap[low >>> 6] &= ~mask;
+                cardinality--;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if(index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        /**
+         * @param fromLow Lowest returned value
+         * @return The smallest value greater or equal than fromLow, -1 if there is none
+         */
+        int next(int fromLow) {
+            if(fromLow > LOW_MASK) {
+                return -1;
+            }
+            if(bitmap != null) {
+                int word = fromLow >>> 6;
+                long bits = bitmap[word] & (-1L << fromLow);
+                while (bits == 0) {
+                    if(++word == bitmap.length) {
+                        return -1;
+                    }
+                    bits = bitmap[word];
+                }
+                return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) fromLow);
+            if(index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        private void toBitmap() {
+            bitmap = new long[(1 << CHUNK_BITS) / Long.SIZE];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+
+    /**
+     * Look for the next value from the position of the last returned value, so the set can be modified while
+     * iterating
+     */
+    private final class LongBitmapIterator implements PrimitiveIterator.OfLong {
+        private long nextKey = 0;
+        private int nextLow = 0;
+        private boolean nextFound = false;
+        private boolean exhausted = false;
+        private long nextValue;
+        private long lastValue;
+        private boolean canRemove = false;
+
+        @Override
+        public boolean hasNext() {
+            if(!nextFound && !exhausted) {
+                findNext();
+            }
+            return nextFound;
+        }
+
+        private void findNext() {
+            while (true) {
+                Map.Entry<Long, Chunk> entry = chunks.ceilingEntry(nextKey);
+                if(entry == null) {
+                    exhausted = true;
+                    return;
+                }
+                if(entry.getKey() != nextKey) {
+                    nextKey = entry.getKey();
+                    nextLow = 0;
+                }
+                int low = entry.getValue().next(nextLow);
+                if(low >= 0) {
+                    nextValue = (nextKey << CHUNK_BITS) | low;
+                    nextLow = low + 1;
+                    nextFound = true;
+                    return;
+                }
+                if(nextKey == -1L >>> CHUNK_BITS) {
+                    exhausted = true;
+                    return;
+                }
+                nextKey++;
+                nextLow = 0;
+            }
+        }
+
+        @Override
+        public long nextLong() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            nextFound = false;
+            lastValue = nextValue;
+            canRemove = true;
+            return lastValue;
+        }
+
+        @Override
+        public void remove() {
+            if(!canRemove) {
+                throw new IllegalStateException();
+            }
+            canRemove = false;
+            LongBitmapSet.this.remove(lastValue);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Insert rows into a PostgreSQL table with the binary COPY protocol instead of INSERT queries. The parameters of each batch row are encoded in the COPY binary format into a
+ * memory buffer, and the buffer is sent with a single COPY FROM STDIN command on {@link #executeBatch()}.
+ * Geometries are encoded as EWKB. The PostgreSQL driver is accessed through reflection so it is only required at
+ * runtime.
+ */
+public class PostgreSQLCopyStatement implements BatchInsert {
+    private static final String PG_CONNECTION_CLASS = "org.postgresql.PGConnection";
+    private static final byte[] HEADER = new byte[] {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+            0, 0, 0, 0, // flags
+            0, 0, 0, 0}; // header extension length
+    private static final byte[] TRAILER = new byte[] {(byte) 0xFF, (byte) 0xFF};
+    Connection connection;
+    String copyQuery;
+    int[] columnTypes;
+    boolean[] geometryColumns;
+    Object[] parameters;
+    RowsBuffer rowsBuffer = new RowsBuffer();
+    DataOutputStream rowsOutput = new DataOutputStream(rowsBuffer);
+    int rowCount = 0;
+    WKBWriter wkbWriter = new WKBWriter(3, ByteOrderValues.BIG_ENDIAN, true);
+    // CopyManager of the driver, fetched on the first batch
+    Object copyManager;
+    Method copyIn;
+
+    /**
+     * Read the type of the columns from the table
+     * @param connection PostgreSQL connection
+     * @param tableName Table to feed
+     * @param columns Comma separated list of the columns to feed, null for all the columns of the table
+     * @throws SQLException Got an error while reading the table
+     */
+    public PostgreSQLCopyStatement(Connection connection, String tableName, String columns) throws SQLException {
+        this.connection = connection;
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT " + (columns == null ? "*" : columns) + " FROM " + tableName +
+                    " LIMIT 0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            int[] types = new int[columnCount];
+            String[] typeNames = new String[columnCount];
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                types[columnIndex] = metaData.getColumnType(columnIndex + 1);
+                typeNames[columnIndex] = metaData.getColumnTypeName(columnIndex + 1);
+            }
+            init(tableName, columns, types, typeNames);
+        }
+    }
+
+    /**
+     * @param connection PostgreSQL connection
+     * @param tableName Table to feed
+     * @param columns Comma separated list of the columns to feed, null for all the columns of the table
+     * @param columnTypes {@link Types} of each column
+     * @param columnTypeNames Database type name of each column, geometry columns are identified by the name geometry
+     */
+    public PostgreSQLCopyStatement(Connection connection, String tableName, String columns, int[] columnTypes,
+                                   String[] columnTypeNames) {
+        this.connection = connection;
+        init(tableName, columns, columnTypes, columnTypeNames);
+    }
+
+    private void init(String tableName, String columns, int[] columnTypes, String[] columnTypeNames) {
+        this.copyQuery = "COPY " + tableName + (columns == null ? "" : "(" + columns + ")") +
+                " FROM STDIN (FORMAT BINARY)";
+        this.columnTypes = columnTypes;
+        geometryColumns = new boolean[columnTypes.length];
+        for (int columnIndex = 0; columnIndex < columnTypes.length; columnIndex++) {
+            geometryColumns[columnIndex] = "geometry".equalsIgnoreCase(columnTypeNames[columnIndex]);
+        }
+        parameters = new Object[columnTypes.length];
+    }
+
+    /**
+     * @param connection Database connection
+     * @return True if the connection is a PostgreSQL connection and the driver is available
+     */
+    public static boolean isSupported(Connection connection) {
+        try {
+            return connection.isWrapperFor(Class.forName(PG_CONNECTION_CLASS));
+        } catch (ClassNotFoundException | SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return COPY query sent to the database
+     */
+    public String getCopyQuery() {
+        return copyQuery;
+    }
+
+    /**
+     * @return Number of rows in the current batch
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return Content of the COPY stream of the current batch
+     */
+    public byte[] toByteArray() {
+        byte[] stream = new byte[HEADER.length + rowsBuffer.size() + TRAILER.length];
+        System.arraycopy(HEADER, 0, stream, 0, HEADER.length);
+        System.arraycopy(rowsBuffer.getBuffer(), 0, stream, HEADER.length, rowsBuffer.size());
+        System.arraycopy(TRAILER, 0, stream, HEADER.length + rowsBuffer.size(), TRAILER.length);
+        return stream;
+    }
+
+    private void setParameter(int parameterIndex, Object x) throws SQLException {
+        if(parameterIndex < 1 || parameterIndex > parameters.length) {
+            throw new SQLException("Invalid parameter index " + parameterIndex);
+        }
+        parameters[parameterIndex - 1] = x;
+    }
+
+    /**
+     * Write the field of the parameter, the length of the field followed by its value
+     */
+    private void writeField(int columnIndex, Object value) throws IOException, SQLException {
+        if(value == null) {
+            rowsOutput.writeInt(-1);
+            return;
+        }
+        if(geometryColumns[columnIndex]) {
+            byte[] ewkb = value instanceof Geometry ? wkbWriter.write((Geometry) value) : (byte[]) value;
+            rowsOutput.writeInt(ewkb.length);
+            rowsOutput.write(ewkb);
+            return;
+        }
+        switch (columnTypes[columnIndex]) {
+            case Types.BIGINT:
+                rowsOutput.writeInt(Long.BYTES);
+                rowsOutput.writeLong(((Number) value).longValue());
+                break;
+            case Types.INTEGER:
+                rowsOutput.writeInt(Integer.BYTES);
+                rowsOutput.writeInt(((Number) value).intValue());
+                break;
+            case Types.SMALLINT:
+                rowsOutput.writeInt(Short.BYTES);
+                rowsOutput.writeShort(((Number) value).shortValue());
+                break;
+            case Types.REAL:
+                rowsOutput.writeInt(Float.BYTES);
+                rowsOutput.writeFloat(((Number) value).floatValue());
+                break;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                rowsOutput.writeInt(Double.BYTES);
+                rowsOutput.writeDouble(((Number) value).doubleValue());
+                break;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                rowsOutput.writeInt(1);
+                rowsOutput.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                rowsOutput.writeInt(text.length);
+                rowsOutput.write(text);
+                break;
+            default:
+                throw new SQLException("Unsupported column type " + columnTypes[columnIndex] +
+                        " for the COPY of the parameter " + (columnIndex + 1));
+        }
+    }
+
+    private void fetchCopyManager() throws SQLException {
+        try {
+            Class<?> pgConnectionClass = Class.forName(PG_CONNECTION_CLASS);
+            Object pgConnection = connection.unwrap(pgConnectionClass);
+            copyManager = pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+            copyIn = copyManager.getClass().getMethod("copyIn", String.class, InputStream.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException ex) {
+            throw new SQLException("PostgreSQL driver is not available", ex);
+        } catch (InvocationTargetException ex) {
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        int rowStart = rowsBuffer.size();
+        try {
+            rowsOutput.writeShort(parameters.length);
+            for (int columnIndex = 0; columnIndex < parameters.length; columnIndex++) {
+                writeField(columnIndex, parameters[columnIndex]);
+            }
+        } catch (IOException | SQLException | ClassCastException ex) {
+            // remove the incomplete row from the stream
+            rowsBuffer.truncate(rowStart);
+            throw new SQLException(ex);
+        }
+        rowCount++;
+    }
+
+    @Override
+    public void clearBatch() {
+        rowsBuffer.reset();
+        rowCount = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        if(rowCount == 0) {
+            return new int[0];
+        }
+        if(copyManager == null) {
+            fetchCopyManager();
+        }
+        InputStream stream = new SequenceInputStream(new ByteArrayInputStream(HEADER),
+                new SequenceInputStream(new ByteArrayInputStream(rowsBuffer.getBuffer(), 0, rowsBuffer.size()),
+                        new ByteArrayInputStream(TRAILER)));
+        try {
+            copyIn.invoke(copyManager, copyQuery, stream);
+        } catch (IllegalAccessException ex) {
+            throw new SQLException(ex);
+        } catch (InvocationTargetException ex) {
+            if(ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+        int[] result = new int[rowCount];
+        Arrays.fill(result, 1);
+        clearBatch();
+        return result;
+    }
+
+    @Override
+    public void close() {
+        clearBatch();
+    }
+
+    /**
+     * Give access to the internal buffer in order to send the rows without copy
+     */
+    private static class RowsBuffer extends ByteArrayOutputStream {
+        RowsBuffer() {
+            super(65536);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.Test;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.RootProgressVisitor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellFarmTest {
+
+    private static NoiseMapByReceiverMaker createMaker() {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                "ROADS_TRAFF", "RECEIVERS");
+        noiseMapByReceiverMaker.setMaximumPropagationDistance(100);
+        noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+        noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+        noiseMapByReceiverMaker.setGridDim(3);
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().receiversLevelTable = "LVL_FARM";
+        return noiseMapByReceiverMaker;
+    }
+
+    private static Connection openDatabase(String databasePath) throws SQLException {
+        // Several processes share the database
+        return JDBCUtilities.wrapConnection(DriverManager.getConnection("jdbc:h2:" + databasePath +
+                ";AUTO_SERVER=TRUE", "sa", "sa"));
+    }
+
+    /**
+     * Worker process
+     * @param args database path, worker identifier
+     */
+    public static void main(String[] args) {
+        try (Connection connection = openDatabase(args[0]);
+             Connection leaseConnection = openDatabase(args[0])) {
+            CellFarm cellFarm = new CellFarm(createMaker(), "FARM");
+            cellFarm.setWorkerId(args[1]);
+            cellFarm.setPollInterval(200);
+            cellFarm.runWorker(connection, leaseConnection, new RootProgressVisitor(1, false, 5));
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * The cells are computed by several local worker processes then merged by the coordinator
+     */
+    @Test
+    public void testLocalWorkers() throws Exception {
+        Path directory = Files.createTempDirectory("nm_farm");
+        String databasePath = new File(directory.toFile(), "farm").getAbsolutePath();
+        try (Connection connection = openDatabase(databasePath);
+             Statement st = connection.createStatement()) {
+            H2GISFunctions.load(connection);
+            st.execute(String.format("CALL SHPREAD('%s', 'ROADS_TRAFF')", CellFarmTest.class.getResource("roads_traff.shp").getFile()));
+            st.execute(String.format("CALL SHPREAD('%s', 'BUILDINGS')", CellFarmTest.class.getResource("buildings.shp").getFile()));
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT (row_number() over())::int," +
+                    " ST_UPDATEZ(ST_POINTONSURFACE(ST_BUFFER(THE_GEOM, 2, 'join=mitre')), 4) FROM BUILDINGS LIMIT 60");
+
+            NoiseMapByReceiverMaker reference = createMaker();
+            reference.getNoiseMapDatabaseParameters().receiversLevelTable = "LVL_REFERENCE";
+            reference.run(connection, new RootProgressVisitor(1, false, 5));
+            int levelRowCount = JDBCUtilities.getRowCount(connection, "LVL_REFERENCE");
+            assertTrue(levelRowCount > 0);
+
+            CellFarm coordinator = new CellFarm(createMaker(), "FARM");
+            int cellCount = coordinator.createQueue(connection);
+            assertTrue(cellCount > 1);
+            assertEquals(60, JDBCUtilities.getRowCount(connection, "FARM" + CellFarm.RECEIVERS_TABLE_SUFFIX));
+
+            // A stopped worker has claimed the first cell and left some results
+            st.execute("INSERT INTO FARM_WORKERS VALUES ('DEAD')");
+            st.execute("UPDATE FARM SET WORKER = 'DEAD', LEASE_END = CURRENT_TIMESTAMP - INTERVAL '1' HOUR, ATTEMPTS = 1 WHERE (CELL_LONGITUDE," +
+                    " CELL_LATITUDE) = (SELECT CELL_LONGITUDE, CELL_LATITUDE FROM FARM ORDER BY CELL_LATITUDE," +
+                    " CELL_LONGITUDE LIMIT 1)");
+            st.execute("CREATE TABLE LVL_FARM_DEAD AS SELECT * FROM LVL_REFERENCE");
+
+            List<Process> workers = new ArrayList<>();
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+            for (String workerId : new String[] {"W1", "W2"}) {
+                workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        CellFarmTest.class.getName(), databasePath, workerId).inheritIO().start());
+            }
+            for (Process worker : workers) {
+                assertTrue(worker.waitFor(5, TimeUnit.MINUTES));
+                assertEquals(0, worker.exitValue());
+            }
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(ATTEMPTS) FROM FARM" +
+                    " WHERE DONE")) {
+                assertTrue(rs.next());
+                assertEquals(cellCount, rs.getInt(1));
+                assertEquals(cellCount + 1, rs.getInt(2));
+            }
+
+            CellFarm merge = new CellFarm(createMaker(), "FARM");
+            merge.merge(connection);
+            assertFalse(JDBCUtilities.tableExists(connection, "LVL_FARM_W1"));
+            assertFalse(JDBCUtilities.tableExists(connection, "LVL_FARM_DEAD"));
+            assertEquals(levelRowCount, JDBCUtilities.getRowCount(connection, "LVL_FARM"));
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(ABS(S.LAEQ - P.LAEQ)) FROM LVL_REFERENCE S, " +
+                    "LVL_FARM P WHERE S.IDRECEIVER = P.IDRECEIVER AND S.PERIOD = P.PERIOD")) {
+                assertTrue(rs.next());
+                assertEquals(levelRowCount, rs.getInt(1));
+                assertEquals(0, rs.getDouble(2), 1e-6);
+            }
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                Files.deleteIfExists(file.toPath());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+}
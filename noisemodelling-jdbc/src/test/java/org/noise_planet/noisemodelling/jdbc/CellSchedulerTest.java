@@ -0,0 +1,74 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CellSchedulerTest {
+
+    @Test
+    public void testMemoryBudget() throws InterruptedException {
+        CellScheduler cellScheduler = new CellScheduler(100, 4);
+        // a cell larger than the budget runs alone
+        cellScheduler.acquire(150);
+        assertEquals(1, cellScheduler.getRunningCells());
+        cellScheduler.release(150);
+        cellScheduler.acquire(40);
+        cellScheduler.acquire(60);
+        assertEquals(2, cellScheduler.getRunningCells());
+        assertEquals(100, cellScheduler.getUsedBudget());
+        // the third cell must wait for the release of the first one
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                cellScheduler.acquire(30);
+                started.countDown();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        assertFalse(started.await(200, TimeUnit.MILLISECONDS));
+        cellScheduler.release(40);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(90, cellScheduler.getUsedBudget());
+        assertEquals(2, cellScheduler.getPeakRunningCells());
+    }
+
+    @Test
+    public void testUnknownFootprint() throws InterruptedException {
+        CellScheduler cellScheduler = new CellScheduler(Long.MAX_VALUE, 4);
+        cellScheduler.acquire(-1);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                cellScheduler.acquire(10);
+                started.countDown();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        // unknown footprint, the cell runs alone
+        assertFalse(started.await(200, TimeUnit.MILLISECONDS));
+        cellScheduler.release(-1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(1, cellScheduler.getRunningCells());
+    }
+}
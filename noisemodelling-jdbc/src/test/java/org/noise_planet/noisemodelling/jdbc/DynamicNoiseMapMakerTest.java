@@ -0,0 +1,286 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.noise_planet.noisemodelling.jdbc.output.AttenuationMatrixWriter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DynamicNoiseMapMakerTest {
+    private static final int[] FREQUENCIES = new int[] {63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    private Connection connection;
+
+    @BeforeEach
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                DynamicNoiseMapMakerTest.class.getSimpleName(), true, ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    private static String bandFields(String type) {
+        StringBuilder sb = new StringBuilder();
+        for (int frequency : FREQUENCIES) {
+            sb.append(", HZ").append(frequency).append(" ").append(type);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Random attenuation between 30 receivers and 50 sources, each receiver sees 20 sources. 20 periods where about
+     * half of the sources are emitting.
+     */
+    private void createTables(AttenuationMatrixWriter matrixWriter) throws Exception {
+        Random random = new Random(42);
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE ATTENUATION(IDRECEIVER BIGINT, IDSOURCE BIGINT, THE_GEOM GEOMETRY(POINTZ, 2154)" +
+                    bandFields("REAL") + ")");
+            st.execute("CREATE TABLE EMISSION(IDSOURCE BIGINT, PERIOD VARCHAR(4)" + bandFields("REAL") + ")");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO ATTENUATION VALUES (?, ?, " +
+                "ST_SETSRID(ST_MAKEPOINT(?, ?, 4), 2154)" + ", ?".repeat(FREQUENCIES.length) + ")")) {
+            for (int receiver = 1; receiver <= 30; receiver++) {
+                int firstSource = random.nextInt(30);
+                for (int source = firstSource; source < firstSource + 20; source++) {
+                    double[] attenuation = new double[FREQUENCIES.length];
+                    ps.setLong(1, receiver);
+                    ps.setLong(2, source * 10);
+                    ps.setDouble(3, receiver);
+                    ps.setDouble(4, -receiver);
+                    for (int band = 0; band < FREQUENCIES.length; band++) {
+                        // use float values so the table and the matrix files contain the same attenuation
+                        attenuation[band] = (float) (-20 - random.nextDouble() * 60);
+                        ps.setDouble(5 + band, attenuation[band]);
+                    }
+                    ps.addBatch();
+                    if(matrixWriter != null) {
+                        matrixWriter.add(receiver, source * 10, "", attenuation);
+                    }
+                }
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO EMISSION VALUES (?, ?" +
+                ", ?".repeat(FREQUENCIES.length) + ")")) {
+            for (int period = 0; period < 20; period++) {
+                for (int source = 0; source < 60; source++) {
+                    if(random.nextBoolean()) {
+                        continue;
+                    }
+                    ps.setLong(1, source * 10);
+                    ps.setString(2, String.format("T%03d", period));
+                    for (int band = 0; band < FREQUENCIES.length; band++) {
+                        ps.setDouble(3 + band, 60 + random.nextDouble() * 40);
+                    }
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private Map<String, double[]> fetchLevels(String tableName) throws SQLException {
+        Map<String, double[]> levels = new HashMap<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT IDRECEIVER, PERIOD, HZ63, HZ1000, HZ8000, LAEQ, LEQ FROM " +
+                    tableName)) {
+            while (rs.next()) {
+                levels.put(rs.getLong(1) + "_" + rs.getString(2), new double[] {rs.getDouble(3),
+                        rs.getDouble(4), rs.getDouble(5), rs.getDouble(6), rs.getDouble(7)});
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Reference levels computed with the SQL join of the attenuation and the emission tables
+     */
+    private Map<String, double[]> computeExpectedLevels() throws SQLException {
+        StringBuilder query = new StringBuilder("CREATE TABLE EXPECTED AS SELECT lg.IDRECEIVER, mr.PERIOD");
+        for (int frequency : FREQUENCIES) {
+            query.append(String.format(", 10 * LOG10(SUM(POWER(10, (mr.HZ%d + lg.HZ%d) / 10))) AS HZ%d", frequency,
+                    frequency, frequency));
+        }
+        query.append(" FROM ATTENUATION lg, EMISSION mr WHERE lg.IDSOURCE = mr.IDSOURCE GROUP BY lg.IDRECEIVER," +
+                " mr.PERIOD");
+        try(Statement st = connection.createStatement()) {
+            st.execute(query.toString());
+            st.execute("ALTER TABLE EXPECTED ADD COLUMN LAEQ FLOAT AS 10*LOG10((POWER(10,(HZ63-26.2)/10)+" +
+                    "POWER(10,(HZ125-16.1)/10)+POWER(10,(HZ250-8.6)/10)+POWER(10,(HZ500-3.2)/10)+" +
+                    "POWER(10,(HZ1000)/10)+POWER(10,(HZ2000+1.2)/10)+POWER(10,(HZ4000+1)/10)+" +
+                    "POWER(10,(HZ8000-1.1)/10)))");
+            st.execute("ALTER TABLE EXPECTED ADD COLUMN LEQ FLOAT AS 10*LOG10((POWER(10,(HZ63)/10)+" +
+                    "POWER(10,(HZ125)/10)+POWER(10,(HZ250)/10)+POWER(10,(HZ500)/10)+POWER(10,(HZ1000)/10)+" +
+                    "POWER(10,(HZ2000)/10)+POWER(10,(HZ4000)/10)+POWER(10,(HZ8000)/10)))");
+        }
+        return fetchLevels("EXPECTED");
+    }
+
+    private static void assertLevels(Map<String, double[]> expected, Map<String, double[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<String, double[]> entry : expected.entrySet()) {
+            assertTrue(actual.containsKey(entry.getKey()), entry.getKey());
+            double[] levels = actual.get(entry.getKey());
+            for (int i = 0; i < levels.length; i++) {
+                assertEquals(entry.getValue()[i], levels[i], 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsSqlJoin() throws Exception {
+        createTables(null);
+        Map<String, double[]> expected = computeExpectedLevels();
+        DynamicNoiseMapMaker dynamicNoiseMapMaker = new DynamicNoiseMapMaker("ATTENUATION", "EMISSION", "LT_GEOM");
+        dynamicNoiseMapMaker.setThreadCount(4);
+        dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor());
+        assertTrue(JDBCUtilities.getColumnNames(connection, "LT_GEOM").contains("THE_GEOM"));
+        assertLevels(expected, fetchLevels("LT_GEOM"));
+        // the receiver geometry is copied
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM LT_GEOM WHERE ST_X(THE_GEOM) <> IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        // the column definitions are copied and the levels are not truncated
+        assertEquals(2154, GeometryTableUtilities.getSRID(connection, TableLocation.parse("LT_GEOM"), "THE_GEOM"));
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT COLUMN_NAME, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM" +
+                    " INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'LT_GEOM'")) {
+            while (rs.next()) {
+                if(rs.getString(1).equals("PERIOD")) {
+                    assertEquals(4, rs.getInt(3));
+                } else if(rs.getString(1).startsWith("HZ") || rs.getString(1).startsWith("L")) {
+                    assertEquals("DOUBLE PRECISION", rs.getString(2));
+                }
+            }
+        }
+        assertEquals(1, countIndexes("LT_GEOM"));
+    }
+
+    private int countIndexes(String tableName) throws SQLException {
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = '" +
+                    tableName + "'")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * A cancelled computation keeps the table of the computed periods without creating its index
+     */
+    @Test
+    public void testCancel() throws Exception {
+        createTables(null);
+        try(Statement st = connection.createStatement()) {
+            // the SRID is then read from the geometries
+            st.execute("ALTER TABLE ATTENUATION ALTER COLUMN THE_GEOM SET DATA TYPE GEOMETRY");
+        }
+        DynamicNoiseMapMaker dynamicNoiseMapMaker = new DynamicNoiseMapMaker("ATTENUATION", "EMISSION", "LT");
+        dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor() {
+            @Override
+            public boolean isCanceled() {
+                return true;
+            }
+        });
+        assertEquals(0, JDBCUtilities.getRowCount(connection, "LT"));
+        assertEquals(0, countIndexes("LT"));
+        assertEquals(2154, GeometryTableUtilities.getSRID(connection, TableLocation.parse("LT"), "THE_GEOM"));
+    }
+
+    @Test
+    public void testAttenuationMatrixFiles() throws Exception {
+        File directory = Files.createTempDirectory("nm_dynamic_matrix").toFile();
+        try {
+            try (AttenuationMatrixWriter matrixWriter = new AttenuationMatrixWriter(directory, "RECEIVERS_LEVEL",
+                    FREQUENCIES, 100)) {
+                createTables(matrixWriter);
+            }
+            Map<String, double[]> expected = computeExpectedLevels();
+            DynamicNoiseMapMaker dynamicNoiseMapMaker = new DynamicNoiseMapMaker("ATTENUATION", "EMISSION", "LT");
+            dynamicNoiseMapMaker.setAttenuationMatrixDirectory(directory);
+            dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor());
+            assertLevels(expected, fetchLevels("LT"));
+        } finally {
+            AttenuationMatrixWriter.deleteChunks(directory, "RECEIVERS_LEVEL");
+            Files.delete(directory.toPath());
+        }
+    }
+
+    private Map<Long, double[]> fetchIndicators(String query) throws SQLException {
+        Map<Long, double[]> indicators = new HashMap<>();
+        try(Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(query)) {
+            while (rs.next()) {
+                indicators.put(rs.getLong(1), new double[] {rs.getDouble(2), rs.getDouble(3), rs.getDouble(4),
+                        rs.getDouble(5), rs.getDouble(6)});
+            }
+        }
+        return indicators;
+    }
+
+    @Test
+    public void testIndicators() throws Exception {
+        createTables(null);
+        DynamicNoiseMapMaker dynamicNoiseMapMaker = new DynamicNoiseMapMaker("ATTENUATION", "EMISSION", "LT");
+        dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor());
+        Map<Long, double[]> expected = fetchIndicators("SELECT IDRECEIVER," +
+                " PERCENTILE_CONT(0.9) WITHIN GROUP (ORDER BY LAEQ)," +
+                " PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY LAEQ)," +
+                " PERCENTILE_CONT(0.1) WITHIN GROUP (ORDER BY LAEQ)," +
+                " 10 * LOG10(AVG(POWER(10, LAEQ / 10))), MAX(LAEQ) FROM LT GROUP BY IDRECEIVER");
+        // levels folded while computed, without the time series table
+        DynamicIndicatorsMaker indicators = new DynamicIndicatorsMaker("INDICATORS");
+        dynamicNoiseMapMaker = new DynamicNoiseMapMaker("ATTENUATION", "EMISSION", null);
+        dynamicNoiseMapMaker.setIndicators(indicators);
+        dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor());
+        indicators.writeIndicators(connection);
+        // levels read from the time series table
+        new DynamicIndicatorsMaker("TABLE_INDICATORS").run(connection, "LT", "LAEQ", new EmptyProgressVisitor());
+        for (String tableName : new String[] {"INDICATORS", "TABLE_INDICATORS"}) {
+            assertTrue(JDBCUtilities.getColumnNames(connection, tableName).contains("THE_GEOM"));
+            Map<Long, double[]> actual = fetchIndicators("SELECT IDRECEIVER, L10, L50, L90, LAEQ, LMAX FROM " +
+                    tableName);
+            assertEquals(expected.size(), actual.size());
+            for (Map.Entry<Long, double[]> entry : expected.entrySet()) {
+                double[] values = actual.get(entry.getKey());
+                for (int i = 0; i < values.length; i++) {
+                    // REAL fields, percentiles within the histogram resolution
+                    assertEquals(entry.getValue()[i], values[i], i < 3 ? 0.1 : 1e-3);
+                }
+            }
+        }
+    }
+}
@@ -22,15 +22,26 @@ import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.output.AttenuationOutputMultiThread;
+import org.noise_planet.noisemodelling.jdbc.output.DefaultCutPlaneProcessing;
 import org.noise_planet.noisemodelling.jdbc.output.NoiseMapWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
 import org.noise_planet.noisemodelling.jdbc.utils.IsoSurface;
+import org.noise_planet.noisemodelling.pathfinder.PathFinder;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.RootProgressVisitor;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
+import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundAbsorption;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
 
+import javax.sql.DataSource;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -71,12 +82,11 @@ public class NoiseMapByReceiverMakerTest {
             noiseMapByReceiverMaker.setFrequencyFieldPrepend("DB_M");
             noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
 
-            Set<Long> processedReceivers = new HashSet<>();
             Map<CellIndex, Integer> populatedCells = noiseMapByReceiverMaker.searchPopulatedCells(connection);
             double expectedMaxArea = Math.pow(noiseMapByReceiverMaker.getGroundSurfaceSplitSideLength(), 2);
             assertFalse(populatedCells.isEmpty());
             for (Map.Entry<CellIndex, Integer> indexIntegerEntry : populatedCells.entrySet()) {
-                SceneWithEmission scene = noiseMapByReceiverMaker.prepareCell(connection, indexIntegerEntry.getKey(), processedReceivers);
+                SceneWithEmission scene = noiseMapByReceiverMaker.prepareCell(connection, indexIntegerEntry.getKey());
                 assertFalse(scene.profileBuilder.getGroundEffects().isEmpty());
                 for(GroundAbsorption soil : scene.profileBuilder.getGroundEffects()) {
                     assertTrue(soil.getGeometry().getArea() < expectedMaxArea);
@@ -88,6 +98,116 @@ public class NoiseMapByReceiverMakerTest {
         }
     }
 
+    /**
+     * Check that the geometry read from the scene cache is the same as the geometry loaded from the database, and that
+     * the propagation gives the same levels with both scenes
+     */
+    @Test
+    public void testSceneCache() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("nm_scene_cache");
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", NoiseMapByReceiverMakerTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            // The SRID of the cached geometries must be kept
+            for (String tableName : new String[] {"RECEIVERS", "ROADS_GEOM", "BUILDINGS", "LAND_G"}) {
+                st.execute("SELECT UpdateGeometrySRID('" + tableName + "', 'THE_GEOM', 2154)");
+            }
+            st.execute("CREATE TABLE DEM AS SELECT ST_SETSRID(ST_MAKEPOINT(ST_XMIN(E) + A.X * (ST_XMAX(E) - ST_XMIN(E)) / 20," +
+                    " ST_YMIN(E) + B.X * (ST_YMAX(E) - ST_YMIN(E)) / 20, MOD(A.X * 7 + B.X * 3, 11)), 2154) THE_GEOM" +
+                    " FROM (SELECT ST_EXPAND(ST_EXTENT(THE_GEOM), 1000) E FROM RECEIVERS) T," +
+                    " SYSTEM_RANGE(0, 20) A, SYSTEM_RANGE(0, 20) B");
+            List<List<SceneWithEmission>> runScenes = new ArrayList<>();
+            for (int run = 0; run < 2; run++) {
+                NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+                noiseMapByReceiverMaker.setHeightField("HEIGHT");
+                noiseMapByReceiverMaker.setSoilTableName("LAND_G");
+                noiseMapByReceiverMaker.setDemTable("DEM");
+                noiseMapByReceiverMaker.setFrequencyFieldPrepend("DB_M");
+                ((DefaultTableLoader) noiseMapByReceiverMaker.getTableLoader()).setSceneCacheDirectory(cacheDirectory.toFile());
+                noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
+                List<SceneWithEmission> scenes = new ArrayList<>();
+                for (CellIndex cellIndex : new TreeSet<>(noiseMapByReceiverMaker.searchPopulatedCells(connection).keySet())) {
+                    scenes.add(noiseMapByReceiverMaker.prepareCell(connection, cellIndex));
+                }
+                runScenes.add(scenes);
+                // One file per cell, written by the first run
+                try (DirectoryStream<Path> cacheFiles = Files.newDirectoryStream(cacheDirectory)) {
+                    int fileCount = 0;
+                    for (Path ignored : cacheFiles) {
+                        fileCount++;
+                    }
+                    assertEquals(scenes.size(), fileCount);
+                }
+            }
+            assertFalse(runScenes.get(0).isEmpty());
+            assertEquals(runScenes.get(0).size(), runScenes.get(1).size());
+            for (int idScene = 0; idScene < runScenes.get(0).size(); idScene++) {
+                assertSameGeometry(runScenes.get(0).get(idScene), runScenes.get(1).get(idScene));
+                assertSameLevels(runScenes.get(0).get(idScene), runScenes.get(1).get(idScene));
+            }
+        } finally {
+            try (DirectoryStream<Path> cacheFiles = Files.newDirectoryStream(cacheDirectory)) {
+                for (Path cacheFile : cacheFiles) {
+                    Files.delete(cacheFile);
+                }
+            }
+            Files.delete(cacheDirectory);
+        }
+    }
+
+    private static void assertSameGeometry(SceneWithEmission loadedScene, SceneWithEmission cachedScene) {
+        ProfileBuilder loaded = loadedScene.profileBuilder;
+        ProfileBuilder cached = cachedScene.profileBuilder;
+        assertTrue(loaded.hasDem());
+        assertFalse(loaded.getGroundEffects().isEmpty());
+        assertEquals(loaded.getBuildingCount(), cached.getBuildingCount());
+        assertEquals(loaded.getProcessedWalls().size(), cached.getProcessedWalls().size());
+        assertEquals(loaded.getTriangles().size(), cached.getTriangles().size());
+        assertEquals(loaded.getGroundEffects().size(), cached.getGroundEffects().size());
+        for (int i = 0; i < loaded.getBuildingCount(); i++) {
+            assertTrue(loaded.getBuilding(i).getGeometry().equalsExact(cached.getBuilding(i).getGeometry()));
+            assertEquals(2154, loaded.getBuilding(i).getGeometry().getSRID());
+            assertEquals(loaded.getBuilding(i).getGeometry().getSRID(), cached.getBuilding(i).getGeometry().getSRID());
+            assertEquals(loaded.getBuilding(i).getZ(), cached.getBuilding(i).getZ(), 1e-9);
+        }
+        for (int i = 0; i < loaded.getGroundEffects().size(); i++) {
+            assertTrue(loaded.getGroundEffects().get(i).getGeometry().equalsExact(
+                    cached.getGroundEffects().get(i).getGeometry()));
+            assertEquals(loaded.getGroundEffects().get(i).getCoefficient(),
+                    cached.getGroundEffects().get(i).getCoefficient());
+        }
+        for (Coordinate receiver : loadedScene.receivers) {
+            assertEquals(loaded.getZGround(receiver), cached.getZGround(receiver), 1e-9);
+        }
+    }
+
+    private static void assertSameLevels(SceneWithEmission loadedScene, SceneWithEmission cachedScene) {
+        List<ReceiverNoiseLevel> loadedLevels = computeLevels(loadedScene);
+        List<ReceiverNoiseLevel> cachedLevels = computeLevels(cachedScene);
+        assertFalse(loadedLevels.isEmpty());
+        assertEquals(loadedLevels.size(), cachedLevels.size());
+        for (int i = 0; i < loadedLevels.size(); i++) {
+            assertEquals(loadedLevels.get(i).receiver.receiverPk, cachedLevels.get(i).receiver.receiverPk);
+            assertEquals(loadedLevels.get(i).period, cachedLevels.get(i).period);
+            assertArrayEquals(loadedLevels.get(i).levels, cachedLevels.get(i).levels, 1e-6);
+        }
+    }
+
+    /**
+     * @param scene Scene to compute
+     * @return Levels of the receivers sorted by receiver identifier then period
+     */
+    private static List<ReceiverNoiseLevel> computeLevels(SceneWithEmission scene) {
+        AttenuationOutputMultiThread propDataOut = new AttenuationOutputMultiThread(scene);
+        PathFinder computeRays = new PathFinder(scene);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        List<ReceiverNoiseLevel> levels = new ArrayList<>(propDataOut.resultsCache.receiverLevels);
+        levels.sort(Comparator.comparingLong((ReceiverNoiseLevel level) -> level.receiver.receiverPk)
+                .thenComparing(level -> level.period));
+        return levels;
+    }
+
     private static String createSource(Geometry source, double lvl, Orientation sourceOrientation, int directivityId) {
         StringBuilder sb = new StringBuilder("CREATE TABLE ROADS_GEOM(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY, YAW REAL, PITCH REAL, ROLL REAL, DIR_ID INT");
         StringBuilder values = new StringBuilder("(row_number() over())::int, ST_SETSRID('");
@@ -354,6 +474,243 @@ public class NoiseMapByReceiverMakerTest {
     }
 
 
+    /**
+     * The pipelined run and the concurrent cells run must produce the same levels than the sequential run
+     */
+    @Test
+    public void testCellPrefetch() throws SQLException {
+        DataSource dataSource = H2GISDBFactory.createDataSource(
+                NoiseMapByReceiverMakerTest.class.getSimpleName() + "Prefetch", true);
+        try (Connection prefetchConnection = JDBCUtilities.wrapConnection(dataSource.getConnection());
+             Statement st = prefetchConnection.createStatement()) {
+            for (String tableName : new String[]{"ROADS_TRAFF", "SOURCES_GEOM", "SOURCES_EMISSION", "BUILDINGS",
+                    "RECEIVERS", "LVL_SEQUENTIAL", "LVL_PIPELINED", "LVL_CONCURRENT", "LVL_SHARED", "LVL_WRITERS"}) {
+                st.execute("DROP TABLE IF EXISTS " + tableName);
+            }
+            st.execute(String.format("CALL SHPREAD('%s', 'ROADS_TRAFF')", NoiseMapByReceiverMakerTest.class.getResource("roads_traff.shp").getFile()));
+            st.execute("CREATE TABLE SOURCES_GEOM(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT PK, THE_GEOM FROM ROADS_TRAFF");
+            st.execute("CREATE TABLE SOURCES_EMISSION(PERIOD VARCHAR, IDSOURCE INT, TV REAL, HV REAL, LV_SPD REAL, HV_SPD REAL, PVMT VARCHAR)");
+            st.execute("INSERT INTO SOURCES_EMISSION SELECT 'D', PK, TV_D, HV_D, LV_SPD_D, HV_SPD_D, PVMT FROM ROADS_TRAFF");
+            st.execute(String.format("CALL SHPREAD('%s', 'BUILDINGS')", NoiseMapByReceiverMakerTest.class.getResource("buildings.shp").getFile()));
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT (row_number() over())::int," +
+                    " ST_UPDATEZ(ST_POINTONSURFACE(ST_BUFFER(THE_GEOM, 2, 'join=mitre')), 4) FROM BUILDINGS");
+
+            for (String outputTable : new String[]{"LVL_SEQUENTIAL", "LVL_PIPELINED", "LVL_CONCURRENT", "LVL_SHARED",
+                    "LVL_WRITERS"}) {
+                NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                        "SOURCES_GEOM", "RECEIVERS");
+                noiseMapByReceiverMaker.setMaximumPropagationDistance(100);
+                noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+                noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+                noiseMapByReceiverMaker.setGridDim(4);
+                noiseMapByReceiverMaker.setSourcesEmissionTableName("SOURCES_EMISSION");
+                noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().receiversLevelTable = outputTable;
+                if (outputTable.equals("LVL_PIPELINED")) {
+                    noiseMapByReceiverMaker.setCellPrefetchDepth(2);
+                    noiseMapByReceiverMaker.run(dataSource, new RootProgressVisitor(1, false, 5));
+                } else if (outputTable.equals("LVL_CONCURRENT")) {
+                    noiseMapByReceiverMaker.setThreadCount(2);
+                    noiseMapByReceiverMaker.setMaximumConcurrentCells(3);
+                    noiseMapByReceiverMaker.run(dataSource, new RootProgressVisitor(1, false, 5));
+                } else if (outputTable.equals("LVL_SHARED")) {
+                    ((DefaultTableLoader) noiseMapByReceiverMaker.getTableLoader()).setShareDomainProfileBuilder(true);
+                    noiseMapByReceiverMaker.setThreadCount(2);
+                    noiseMapByReceiverMaker.setMaximumConcurrentCells(2);
+                    noiseMapByReceiverMaker.run(dataSource, new RootProgressVisitor(1, false, 5));
+                } else if (outputTable.equals("LVL_WRITERS")) {
+                    noiseMapByReceiverMaker.setThreadCount(4);
+                    noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setWriterCount(3);
+                    noiseMapByReceiverMaker.run(dataSource, new RootProgressVisitor(1, false, 5));
+                } else {
+                    noiseMapByReceiverMaker.run(prefetchConnection, new RootProgressVisitor(1, false, 5));
+                }
+            }
+            int levelRowCount = JDBCUtilities.getRowCount(prefetchConnection, "LVL_SEQUENTIAL");
+            assertTrue(levelRowCount > 0);
+            // the additional writers insert into the results table
+            assertFalse(JDBCUtilities.tableExists(prefetchConnection, "LVL_WRITERS" +
+                    DefaultCutPlaneProcessing.PARTITION_TABLE_SUFFIX + "1"));
+            for (String outputTable : new String[]{"LVL_PIPELINED", "LVL_CONCURRENT", "LVL_SHARED", "LVL_WRITERS"}) {
+                assertEquals(levelRowCount, JDBCUtilities.getRowCount(prefetchConnection, outputTable));
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(ABS(S.LAEQ - P.LAEQ)) FROM LVL_SEQUENTIAL S, " +
+                        outputTable + " P WHERE S.IDRECEIVER = P.IDRECEIVER AND S.PERIOD = P.PERIOD")) {
+                    assertTrue(rs.next());
+                    assertEquals(levelRowCount, rs.getInt(1));
+                    assertEquals(0, rs.getDouble(2), 1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * The duration of the computation stages are collected for each cell and written in the profile csv file
+     */
+    @Test
+    public void testStageProfiler() throws Exception {
+        Path profileFile = Files.createTempFile("nm_profile", ".csv");
+        try (Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'ROADS_TRAFF')", NoiseMapByReceiverMakerTest.class.getResource("roads_traff.shp").getFile()));
+            st.execute(String.format("CALL SHPREAD('%s', 'BUILDINGS')", NoiseMapByReceiverMakerTest.class.getResource("buildings.shp").getFile()));
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT (row_number() over())::int," +
+                    " ST_UPDATEZ(ST_POINTONSURFACE(ST_BUFFER(THE_GEOM, 2, 'join=mitre')), 4) FROM BUILDINGS LIMIT 40");
+
+            NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                    "ROADS_TRAFF", "RECEIVERS");
+            noiseMapByReceiverMaker.setMaximumPropagationDistance(100);
+            noiseMapByReceiverMaker.setSoundReflectionOrder(1);
+            noiseMapByReceiverMaker.setGridDim(2);
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().CSVProfilerOutputPath = profileFile.toFile();
+            noiseMapByReceiverMaker.run(connection, new RootProgressVisitor(1, false, 5));
+
+            StageMetric stageMetric = noiseMapByReceiverMaker.getProfilerThread().getMetric(StageMetric.class);
+            assertNotNull(stageMetric);
+            Map<String, StageMetric.StageStatistics[]> cells = stageMetric.getCellStatistics();
+            assertFalse(cells.isEmpty());
+            StageMetric.StageStatistics[] total = stageMetric.getTotalStatistics();
+            assertEquals(cells.size(), total[StageProfiler.Stage.SCENE_LOAD.ordinal()].count);
+            assertEquals(cells.size(), total[StageProfiler.Stage.FINISH_FEEDING.ordinal()].count);
+            for (StageProfiler.Stage stage : new StageProfiler.Stage[] {StageProfiler.Stage.MIRROR_RECEIVERS,
+                    StageProfiler.Stage.SOURCE_QUERY, StageProfiler.Stage.GET_PROFILE,
+                    StageProfiler.Stage.CNOSSOS_PATH, StageProfiler.Stage.ATTENUATION,
+                    StageProfiler.Stage.QUEUE_WAIT, StageProfiler.Stage.DB_WRITE}) {
+                assertTrue(total[stage.ordinal()].count > 0, stage.name());
+                assertTrue(total[stage.ordinal()].median <= total[stage.ordinal()].max, stage.name());
+            }
+            // the header of the csv file contains the stages columns
+            String header = "";
+            for (int retry = 0; retry < 50 && header.isEmpty(); retry++) {
+                List<String> lines = Files.readAllLines(profileFile);
+                if (lines.isEmpty()) {
+                    Thread.sleep(100);
+                } else {
+                    header = lines.get(0);
+                }
+            }
+            assertTrue(header.contains("get_profile_p99_microseconds"), header);
+        } finally {
+            Files.deleteIfExists(profileFile);
+        }
+    }
+
+    /**
+     * Interrupted computation is continued from the cells of the journal
+     */
+    @Test
+    public void testResumeFromCellJournal() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'ROADS_TRAFF')", NoiseMapByReceiverMakerTest.class.getResource("roads_traff.shp").getFile()));
+            st.execute(String.format("CALL SHPREAD('%s', 'BUILDINGS')", NoiseMapByReceiverMakerTest.class.getResource("buildings.shp").getFile()));
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT (row_number() over())::int," +
+                    " ST_UPDATEZ(ST_POINTONSURFACE(ST_BUFFER(THE_GEOM, 2, 'join=mitre')), 4) FROM BUILDINGS LIMIT 40");
+
+            for (String outputTable : new String[]{"LVL_REFERENCE", "LVL_JOURNAL"}) {
+                NoiseMapByReceiverMaker noiseMapByReceiverMaker = createResumeMaker(outputTable);
+                if(outputTable.equals("LVL_JOURNAL")) {
+                    noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+                }
+                noiseMapByReceiverMaker.run(connection, new RootProgressVisitor(1, false, 5));
+            }
+            int levelRowCount = JDBCUtilities.getRowCount(connection, "LVL_REFERENCE");
+            assertTrue(levelRowCount > 0);
+            int cellCount = JDBCUtilities.getRowCount(connection, "CELLS_DONE");
+            assertTrue(cellCount > 1);
+            try (ResultSet rs = st.executeQuery("SELECT SUM(RECEIVERS) FROM CELLS_DONE")) {
+                assertTrue(rs.next());
+                assertEquals(40, rs.getInt(1));
+            }
+
+            // Interrupt the computation after the first cell, the results of the other cells are already stored
+            st.execute("DELETE FROM CELLS_DONE WHERE (CELL_LONGITUDE, CELL_LATITUDE) <> (SELECT CELL_LONGITUDE," +
+                    " CELL_LATITUDE FROM CELLS_DONE ORDER BY CELL_LATITUDE, CELL_LONGITUDE LIMIT 1)");
+            assertEquals(1, JDBCUtilities.getRowCount(connection, "CELLS_DONE"));
+
+            NoiseMapByReceiverMaker noiseMapByReceiverMaker = createResumeMaker("LVL_JOURNAL");
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setResume(true);
+            noiseMapByReceiverMaker.run(connection, new RootProgressVisitor(1, false, 5));
+
+            assertEquals(cellCount, JDBCUtilities.getRowCount(connection, "CELLS_DONE"));
+            assertEquals(levelRowCount, JDBCUtilities.getRowCount(connection, "LVL_JOURNAL"));
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(ABS(S.LAEQ - P.LAEQ)) FROM LVL_REFERENCE S, " +
+                    "LVL_JOURNAL P WHERE S.IDRECEIVER = P.IDRECEIVER AND S.PERIOD = P.PERIOD")) {
+                assertTrue(rs.next());
+                assertEquals(levelRowCount, rs.getInt(1));
+                assertEquals(0, rs.getDouble(2), 1e-6);
+            }
+
+            // The parameters of the computation must not change
+            NoiseMapByReceiverMaker changedMaker = createResumeMaker("LVL_JOURNAL");
+            changedMaker.setMaximumPropagationDistance(200);
+            changedMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+            changedMaker.getNoiseMapDatabaseParameters().setResume(true);
+            assertThrows(SQLException.class, () -> changedMaker.run(connection,
+                    new RootProgressVisitor(1, false, 5)));
+
+            // The atmospheric settings of a period must not change
+            NoiseMapByReceiverMaker changedAtmosphereMaker = createResumeMaker("LVL_JOURNAL");
+            AttenuationParameters dayParameters = new AttenuationParameters();
+            dayParameters.setTemperature(25);
+            ((DefaultTableLoader) changedAtmosphereMaker.getTableLoader()).cnossosParametersPerPeriod.put("D",
+                    dayParameters);
+            changedAtmosphereMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+            changedAtmosphereMaker.getNoiseMapDatabaseParameters().setResume(true);
+            SQLException refused = assertThrows(SQLException.class, () -> changedAtmosphereMaker.run(connection,
+                    new RootProgressVisitor(1, false, 5)));
+            assertTrue(refused.getMessage().contains("attenuationParameters_D"), refused.getMessage());
+        }
+    }
+
+    /**
+     * A run interrupted before the first write of the journal has stored results, they must not be duplicated
+     */
+    @Test
+    public void testResumeWithoutJournaledCell() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'ROADS_TRAFF')", NoiseMapByReceiverMakerTest.class.getResource("roads_traff.shp").getFile()));
+            st.execute(String.format("CALL SHPREAD('%s', 'BUILDINGS')", NoiseMapByReceiverMakerTest.class.getResource("buildings.shp").getFile()));
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY) AS SELECT (row_number() over())::int," +
+                    " ST_UPDATEZ(ST_POINTONSURFACE(ST_BUFFER(THE_GEOM, 2, 'join=mitre')), 4) FROM BUILDINGS LIMIT 40");
+
+            NoiseMapByReceiverMaker noiseMapByReceiverMaker = createResumeMaker("LVL_JOURNAL");
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+            noiseMapByReceiverMaker.run(connection, new RootProgressVisitor(1, false, 5));
+            int levelRowCount = JDBCUtilities.getRowCount(connection, "LVL_JOURNAL");
+            assertTrue(levelRowCount > 0);
+
+            // The run is killed before any cell is journaled, some results are already stored
+            st.execute("DELETE FROM CELLS_DONE");
+            st.execute("DELETE FROM LVL_JOURNAL WHERE MOD(IDRECEIVER, 2) = 0");
+            assertTrue(JDBCUtilities.getRowCount(connection, "LVL_JOURNAL") > 0);
+
+            NoiseMapByReceiverMaker resumedMaker = createResumeMaker("LVL_JOURNAL");
+            resumedMaker.getNoiseMapDatabaseParameters().setCellJournalTable("CELLS_DONE");
+            resumedMaker.getNoiseMapDatabaseParameters().setResume(true);
+            resumedMaker.run(connection, new RootProgressVisitor(1, false, 5));
+
+            assertEquals(levelRowCount, JDBCUtilities.getRowCount(connection, "LVL_JOURNAL"));
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT IDRECEIVER, PERIOD FROM LVL_JOURNAL" +
+                    " GROUP BY IDRECEIVER, PERIOD HAVING COUNT(*) > 1)")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+            try (ResultSet rs = st.executeQuery("SELECT SUM(RECEIVERS) FROM CELLS_DONE")) {
+                assertTrue(rs.next());
+                assertEquals(40, rs.getInt(1));
+            }
+        }
+    }
+
+    private static NoiseMapByReceiverMaker createResumeMaker(String outputTable) {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                "ROADS_TRAFF", "RECEIVERS");
+        noiseMapByReceiverMaker.setMaximumPropagationDistance(100);
+        noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+        noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+        noiseMapByReceiverMaker.setGridDim(2);
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().receiversLevelTable = outputTable;
+        return noiseMapByReceiverMaker;
+    }
+
     @Test
     public void testEmissionLwTable() throws SQLException {
         try (Statement st = connection.createStatement()) {
@@ -18,6 +18,8 @@ import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.output.AttenuationMatrixReader;
+import org.noise_planet.noisemodelling.jdbc.output.AttenuationMatrixWriter;
 import org.noise_planet.noisemodelling.jdbc.output.AttenuationOutputMultiThread;
 import org.noise_planet.noisemodelling.pathfinder.PathFinder;
 import org.noise_planet.noisemodelling.pathfinder.delaunay.LayerDelaunayError;
@@ -27,7 +29,9 @@ import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFuncti
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -164,6 +168,57 @@ public class SceneWithEmissionTest {
         }
     }
 
+    /**
+     * Check that the binary attenuation matrix contains the same values as the receivers level table
+     */
+    @Test
+    public void testAttenuationMatrixFiles() throws Exception {
+        try (Connection connection =
+                     JDBCUtilities.wrapConnection(
+                             H2GISDBFactory.createSpatialDataBase(
+                                     "testAttenuationMatrixFiles", true, ""))) {
+            try (Statement st = connection.createStatement()) {
+                st.execute(Utils.getRunScriptRes("scenario_skip_far_source.sql"));
+                testIgnoreNonSignificantSourcesParam(connection, 0.);
+                Map<String, Double> tableLevels = new HashMap<>();
+                // IDRECEIVER, IDSOURCE, PERIOD then the level of the first frequency band
+                try (ResultSet rs = st.executeQuery("SELECT * FROM RECEIVERS_LEVEL")) {
+                    while (rs.next()) {
+                        tableLevels.put(rs.getLong("IDRECEIVER") + "_" + rs.getLong("IDSOURCE") + "_" +
+                                rs.getString("PERIOD"), rs.getDouble(4));
+                    }
+                }
+                assertFalse(tableLevels.isEmpty());
+                // Same computation written into the matrix files
+                File directory = Files.createTempDirectory("nm_attenuation_matrix").toFile();
+                NoiseMapByReceiverMaker noiseMap = new NoiseMapByReceiverMaker("BUILDINGS", "LW_ROADS", "RECEIVERS");
+                noiseMap.setMaximumPropagationDistance(5000.0);
+                noiseMap.setSoundReflectionOrder(1);
+                noiseMap.setThreadCount(1);
+                noiseMap.setComputeHorizontalDiffraction(true);
+                noiseMap.setComputeVerticalDiffraction(true);
+                noiseMap.setHeightField("HEIGHT");
+                noiseMap.setGridDim(1);
+                noiseMap.getNoiseMapDatabaseParameters().mergeSources = false;
+                noiseMap.getNoiseMapDatabaseParameters().setAttenuationMatrixDirectory(directory);
+                try {
+                    noiseMap.run(connection, new EmptyProgressVisitor());
+                    try (AttenuationMatrixReader reader = new AttenuationMatrixReader(directory)) {
+                        assertEquals(tableLevels.size(), reader.getEntryCount());
+                        reader.forEach((receiverPk, sourcePk, period, levels) -> {
+                            String key = receiverPk + "_" + sourcePk + "_" + period;
+                            assertTrue(tableLevels.containsKey(key), key);
+                            assertEquals(tableLevels.get(key), levels[0], 1e-4);
+                        });
+                    }
+                } finally {
+                    AttenuationMatrixWriter.deleteChunks(directory, null);
+                    Files.deleteIfExists(directory.toPath());
+                }
+            }
+        }
+    }
+
     /**
      * Check if Li coefficient computation and line source subdivision are correctly done
      */
@@ -302,7 +357,7 @@ public class SceneWithEmissionTest {
             // number of propagation paths between two walls = reflectionOrder * 2 + 1
             assertEquals(i * 2 + 1, propDataOut.cnossosPathCount.get());
 
-            double globalPowerAtReceiver = AcousticIndicatorsFunctions.sumDbArray(propDataOut.resultsCache.receiverLevels.pop().levels);
+            double globalPowerAtReceiver = AcousticIndicatorsFunctions.sumDbArray(propDataOut.resultsCache.receiverLevels.poll().levels);
             if(i == 0) {
                 firstPowerAtReceiver = globalPowerAtReceiver;
             } else {
@@ -353,10 +408,10 @@ public class SceneWithEmissionTest {
         AttenuationOutputMultiThread outputMultiThread = new AttenuationOutputMultiThread(scene);
         computeRays.run(outputMultiThread);
 
-        assertEquals(1, outputMultiThread.resultsCache.queueSize.get());
+        assertEquals(1, outputMultiThread.resultsCache.getQueueSize());
 
         assertEquals(14.6, AcousticIndicatorsFunctions.wToDb(sumArray(roadLvl.length,
-                AcousticIndicatorsFunctions.dBToW(outputMultiThread.resultsCache.receiverLevels.pop().levels))),
+                AcousticIndicatorsFunctions.dBToW(outputMultiThread.resultsCache.receiverLevels.poll().levels))),
                 0.1);
     }
 
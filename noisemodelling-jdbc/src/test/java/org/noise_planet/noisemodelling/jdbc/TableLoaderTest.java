@@ -13,14 +13,17 @@ import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.shp.SHPRead;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.dbtypes.DBTypes;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.LineSource;
 import org.noise_planet.noisemodelling.emission.railway.RailWayParameters;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
+import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
 import org.noise_planet.noisemodelling.jdbc.railway.RailWayLWGeom;
 import org.noise_planet.noisemodelling.jdbc.railway.RailWayLWIterator;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
@@ -28,13 +31,16 @@ import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFuncti
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -429,4 +435,74 @@ public class TableLoaderTest {
         assertEquals(nbReceivers, populatedCells.values().stream().reduce(Integer::sum).orElse(0));
     }
 
+
+    /**
+     * Each receiver, including the receivers on the cells edges, must be loaded by a single cell
+     */
+    @Test
+    public void testReceiverOwnership() throws SQLException, IOException {
+        SHPRead.importTable(connection, TableLoaderTest.class.getResource("regression1/lw_roads_fence.shp").getFile());
+        SHPRead.importTable(connection, TableLoaderTest.class.getResource("regression1/bati_fence.shp").getFile());
+        SHPRead.importTable(connection, TableLoaderTest.class.getResource("regression1/receivers.shp").getFile());
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE EDGE_RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY)");
+            st.execute("INSERT INTO EDGE_RECEIVERS(THE_GEOM) SELECT THE_GEOM FROM RECEIVERS");
+        }
+
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BATI_FENCE",
+                "LW_ROADS_FENCE", "EDGE_RECEIVERS");
+        noiseMapByReceiverMaker.setGridDim(4);
+        noiseMapByReceiverMaker.initialize(connection, new EmptyProgressVisitor());
+
+        // Add receivers on the corners of the cells
+        Envelope mainEnvelope = noiseMapByReceiverMaker.getMainEnvelope();
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO EDGE_RECEIVERS(THE_GEOM) VALUES " +
+                "(ST_SETSRID(ST_MAKEPOINT(?, ?, 4), (SELECT ST_SRID(THE_GEOM) FROM RECEIVERS LIMIT 1)))")) {
+            for (int i = 0; i <= 4; i++) {
+                for (int j = 0; j <= 4; j++) {
+                    st.setDouble(1, mainEnvelope.getMinX() + i * noiseMapByReceiverMaker.getCellWidth());
+                    st.setDouble(2, mainEnvelope.getMinY() + j * noiseMapByReceiverMaker.getCellHeight());
+                    st.execute();
+                }
+            }
+        }
+        // Add non point receivers, owned by the cell of their first vertex on a corner of the cells
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO EDGE_RECEIVERS(THE_GEOM) VALUES " +
+                "(ST_GEOMFROMTEXT(?, (SELECT ST_SRID(THE_GEOM) FROM RECEIVERS LIMIT 1)))")) {
+            double halfWidth = noiseMapByReceiverMaker.getCellWidth() / 2;
+            double halfHeight = noiseMapByReceiverMaker.getCellHeight() / 2;
+            for (int i = 0; i <= 4; i++) {
+                for (int j = 0; j <= 4; j++) {
+                    double x = mainEnvelope.getMinX() + i * noiseMapByReceiverMaker.getCellWidth();
+                    double y = mainEnvelope.getMinY() + j * noiseMapByReceiverMaker.getCellHeight();
+                    String first = x + " " + y + " 4";
+                    String lowerLeft = (x - halfWidth) + " " + (y - halfHeight) + " 4";
+                    st.setString(1, "LINESTRING Z(" + first + ", " + lowerLeft + ")");
+                    st.execute();
+                    st.setString(1, "POLYGON Z((" + first + ", " + (x - halfWidth) + " " + y + " 4, " +
+                            lowerLeft + ", " + first + "))");
+                    st.execute();
+                    st.setString(1, "MULTIPOINT Z((" + first + "), (" + lowerLeft + "))");
+                    st.execute();
+                }
+            }
+        }
+        int nbReceivers = JDBCUtilities.getRowCount(connection, "EDGE_RECEIVERS");
+
+        Map<CellIndex, Integer> populatedCells = noiseMapByReceiverMaker.searchPopulatedCells(connection);
+        assertEquals(nbReceivers, populatedCells.values().stream().reduce(Integer::sum).orElse(0));
+        // the receivers counted by the database are in the same cells
+        assertEquals(populatedCells, noiseMapByReceiverMaker.countCellReceivers(connection, "THE_GEOM"));
+        assertEquals(populatedCells, noiseMapByReceiverMaker.countCellReceiversInDatabase(connection, "THE_GEOM",
+                DBTypes.H2GIS));
+        Set<Long> loadedReceivers = new HashSet<>();
+        for (Map.Entry<CellIndex, Integer> cell : populatedCells.entrySet()) {
+            SceneWithEmission scene = noiseMapByReceiverMaker.prepareCell(connection, cell.getKey());
+            assertEquals(cell.getValue().intValue(), scene.receiversPk.size());
+            for (Long receiverPk : scene.receiversPk) {
+                assertTrue(loadedReceivers.add(receiverPk), "Receiver " + receiverPk + " loaded twice");
+            }
+        }
+        assertEquals(nbReceivers, loadedReceivers.size());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AttenuationMatrixTest {
+
+    private static double[] levels(long receiver, long source, int period) {
+        return new double[] {-receiver - source * 0.5 - period, -10 - receiver, -20 - source};
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        File directory = Files.createTempDirectory("nm_attenuation_matrix").toFile();
+        String[] periods = new String[] {"D", "E", "N"};
+        List<String> missing = new ArrayList<>();
+        // 3 chunks of 40 entries, the receivers are spread over the chunks
+        try(AttenuationMatrixWriter writer = new AttenuationMatrixWriter(directory, "RECEIVERS_LEVEL",
+                new int[] {63, 125, 250}, 40)) {
+            for (long source = 5; source >= 1; source--) {
+                for (long receiver = 1; receiver <= 8; receiver++) {
+                    for (int period = 0; period < periods.length; period++) {
+                        writer.add(receiver * 10, source * 100, periods[period], levels(receiver * 10, source * 100,
+                                period));
+                    }
+                }
+            }
+            assertEquals(3, writer.getChunkCount());
+            assertEquals(0, writer.getPendingEntryCount());
+        }
+        try(AttenuationMatrixReader reader = new AttenuationMatrixReader(directory)) {
+            assertEquals(3, reader.getChunkCount());
+            assertEquals(120, reader.getEntryCount());
+            assertArrayEquals(new int[] {63, 125, 250}, reader.getFrequencies());
+            assertEquals(List.of("D", "E", "N"), reader.getPeriods());
+            List<String> all = new ArrayList<>();
+            reader.forEach((receiverPk, sourcePk, period, values) -> {
+                double[] expectedValues = levels(receiverPk, sourcePk, period.charAt(0) == 'D' ? 0 :
+                        period.charAt(0) == 'E' ? 1 : 2);
+                for (int band = 0; band < values.length; band++) {
+                    assertEquals(expectedValues[band], values[band], 1e-4);
+                }
+                all.add(receiverPk + "_" + sourcePk + "_" + period);
+            });
+            assertEquals(120, all.size());
+            // Entries of a receiver
+            List<String> receiverEntries = new ArrayList<>();
+            reader.forEachReceiverEntry(30, (receiverPk, sourcePk, period, values) ->
+                    receiverEntries.add(receiverPk + "_" + sourcePk + "_" + period));
+            assertEquals(15, receiverEntries.size());
+            // first chunk contains the sources 500 and 400 then sorted by source in each chunk
+            assertEquals("30_400_D", receiverEntries.get(0));
+            assertEquals("30_500_D", receiverEntries.get(3));
+            // Entries of a source
+            List<String> sourceEntries = new ArrayList<>();
+            reader.forEachSourceEntry(200, (receiverPk, sourcePk, period, values) -> {
+                assertEquals(levels(receiverPk, sourcePk, period.charAt(0) == 'D' ? 0 :
+                        period.charAt(0) == 'E' ? 1 : 2)[0], values[0], 1e-4);
+                sourceEntries.add(receiverPk + "_" + sourcePk + "_" + period);
+            });
+            assertEquals(24, sourceEntries.size());
+            assertEquals("10_200_D", sourceEntries.get(0));
+            reader.forEachReceiverEntry(15, (receiverPk, sourcePk, period, values) -> missing.add(period));
+            assertEquals(0, missing.size());
+        }
+        AttenuationMatrixWriter.deleteChunks(directory, "RECEIVERS_LEVEL");
+        assertEquals(0, AttenuationMatrixWriter.listChunks(directory, null).size());
+        Files.delete(directory.toPath());
+    }
+
+    /**
+     * The period index of a chunk is a short, a new chunk is written when a chunk has the maximum number of periods
+     */
+    @Test
+    public void testPeriodLimit() throws Exception {
+        File directory = Files.createTempDirectory("nm_attenuation_matrix").toFile();
+        int periodCount = AttenuationMatrixWriter.MAXIMUM_CHUNK_PERIODS + 2;
+        try {
+            try (AttenuationMatrixWriter writer = new AttenuationMatrixWriter(directory, "RECEIVERS_LEVEL",
+                    new int[]{1000}, periodCount * 2)) {
+                for (int period = 0; period < periodCount; period++) {
+                    writer.add(period, -1, String.format("P%06d", period), new double[]{period});
+                }
+                assertEquals(1, writer.getChunkCount());
+            }
+            try (AttenuationMatrixReader reader = new AttenuationMatrixReader(directory)) {
+                assertEquals(2, reader.getChunkCount());
+                assertEquals(periodCount, reader.getEntryCount());
+                assertEquals(periodCount, reader.getPeriods().size());
+                List<String> periods = new ArrayList<>();
+                reader.forEachReceiverEntry(periodCount - 1, (receiverPk, sourcePk, period, values) -> {
+                    assertEquals(receiverPk, values[0], 1e-6);
+                    periods.add(period);
+                });
+                assertEquals(List.of(String.format("P%06d", periodCount - 1)), periods);
+            }
+        } finally {
+            AttenuationMatrixWriter.deleteChunks(directory, "RECEIVERS_LEVEL");
+            Files.delete(directory.toPath());
+        }
+    }
+
+    @Test
+    public void testSortIndexes() {
+        long[] keys = new long[1000];
+        int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (i * 7919L) % 101;
+            indexes[i] = i;
+        }
+        AttenuationMatrixWriter.sortIndexes(indexes, (a, b) -> Long.compare(keys[a], keys[b]));
+        for (int i = 1; i < indexes.length; i++) {
+            assertTrue(keys[indexes[i - 1]] <= keys[indexes[i]]);
+            // stable
+            if(keys[indexes[i - 1]] == keys[indexes[i]]) {
+                assertTrue(indexes[i - 1] < indexes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResultsQueueTest {
+
+    @Test
+    public void testBoundedCapacity() throws InterruptedException {
+        ResultsQueue<Integer> queue = new ResultsQueue<>(3);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+        assertEquals(List.of(1, 2, 3), new ArrayList<>(queue));
+        // the producer must wait until the consumer frees a slot
+        CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                if(queue.put(4, () -> false)) {
+                    added.countDown();
+                }
+            } catch (InterruptedException ex) {
+                // ignore
+            }
+        });
+        producer.start();
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.poll());
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        producer.join();
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(2, queue.drainTo(batch, 2));
+        assertEquals(List.of(2, 3), batch);
+        assertEquals(4, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(3, queue.getHighWaterMark());
+        assertEquals(1, queue.getBlockedPutCount());
+    }
+
+    @Test
+    public void testSharedCapacity() {
+        ResultsQueue.Capacity capacity = new ResultsQueue.Capacity(3);
+        ResultsQueue.ConsumerSignal signal = new ResultsQueue.ConsumerSignal();
+        ResultsQueue<Integer> levels = new ResultsQueue<>(capacity, signal);
+        ResultsQueue<String> paths = new ResultsQueue<>(capacity, signal);
+        assertTrue(levels.offer(1));
+        assertTrue(levels.offer(2));
+        assertTrue(paths.offer("a"));
+        // the total is reached whatever the queue
+        assertFalse(levels.offer(3));
+        assertFalse(paths.offer("b"));
+        assertEquals(1, levels.poll());
+        assertTrue(paths.offer("b"));
+        assertFalse(levels.offer(3));
+        List<String> batch = new ArrayList<>();
+        assertEquals(2, paths.drainTo(batch, 10));
+        assertTrue(levels.offer(3));
+        assertTrue(levels.offer(4));
+        assertEquals(3, levels.size());
+    }
+
+    @Test
+    public void testCancelledPut() throws InterruptedException {
+        ResultsQueue<Integer> queue = new ResultsQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        AtomicBoolean result = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            try {
+                result.set(queue.put(3, aborted::get));
+            } catch (InterruptedException ex) {
+                // ignore
+            }
+        });
+        producer.start();
+        aborted.set(true);
+        queue.signalProducers();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(result.get());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testProducersConsumer() throws InterruptedException {
+        final int producerCount = 4;
+        final int elementsPerProducer = 20000;
+        ResultsQueue<Integer> queue = new ResultsQueue<>(64);
+        List<Thread> producers = new ArrayList<>();
+        for (int producerIndex = 0; producerIndex < producerCount; producerIndex++) {
+            final int offset = producerIndex * elementsPerProducer;
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < elementsPerProducer; i++) {
+                        queue.put(offset + i, () -> false);
+                    }
+                } catch (InterruptedException ex) {
+                    // ignore
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        // the consumer waits for the elements and checks that each producer order is kept
+        int[] lastValue = new int[producerCount];
+        for (int producerIndex = 0; producerIndex < producerCount; producerIndex++) {
+            lastValue[producerIndex] = producerIndex * elementsPerProducer - 1;
+        }
+        List<Integer> batch = new ArrayList<>();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (received < producerCount * elementsPerProducer && System.currentTimeMillis() < deadline) {
+            if(queue.drainTo(batch, 500) == 0) {
+                queue.awaitNotEmpty(() -> false, 1, TimeUnit.SECONDS);
+                continue;
+            }
+            for (int value : batch) {
+                int producerIndex = value / elementsPerProducer;
+                assertEquals(lastValue[producerIndex] + 1, value);
+                lastValue[producerIndex] = value;
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(producerCount * elementsPerProducer, received);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.getHighWaterMark() <= 64);
+    }
+}
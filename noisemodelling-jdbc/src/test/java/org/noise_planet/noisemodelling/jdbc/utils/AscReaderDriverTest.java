@@ -29,6 +29,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.TopographicGrid;
 
 import java.io.File;
 import java.io.IOException;
@@ -171,6 +172,37 @@ public class AscReaderDriverTest {
         }
     }
 
+    /**
+     * The grid samples must be the points of the imported table
+     */
+    @Test
+    public void testReadPrecipGrid() throws IOException, SQLException {
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        File file = new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath());
+        reader.read(connection, file, new EmptyProgressVisitor(), "PRECIP30MIN", 4326);
+        TopographicGrid grid = new AscReaderDriver().readGrid(file);
+        assertEquals(15, grid.getColumns());
+        assertEquals(20, grid.getRows());
+        int samples = 0;
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int column = 0; column < grid.getColumns(); column++) {
+                if (!Float.isNaN(grid.getValue(column, row))) {
+                    samples++;
+                }
+            }
+        }
+        assertEquals(JDBCUtilities.getRowCount(connection, TableLocation.parse("PRECIP30MIN", DBTypes.H2GIS)), samples);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT ST_X(THE_GEOM) X, ST_Y(THE_GEOM) Y, Z FROM PRECIP30MIN")) {
+            while (rs.next()) {
+                assertEquals(rs.getDouble("Z"), grid.getZ(rs.getDouble("X"), rs.getDouble("Y")), 1e-6);
+            }
+        }
+        // Nodata cell
+        assertTrue(Double.isNaN(grid.getZ(-177.25, -84.25)));
+    }
+
     @Test
     public void testReadPrecipCenterNodata() throws IOException, SQLException {
         AscReaderDriver reader = new AscReaderDriver();
@@ -0,0 +1,102 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LevelHistogramTest {
+
+    /**
+     * Same as the SQL percentile_cont function
+     */
+    private static double percentile(double[] sortedLevels, double fraction) {
+        double rank = fraction * (sortedLevels.length - 1);
+        int low = (int) Math.floor(rank);
+        int high = Math.min(sortedLevels.length - 1, low + 1);
+        return sortedLevels[low] + (sortedLevels[high] - sortedLevels[low]) * (rank - low);
+    }
+
+    @Test
+    public void testPercentiles() {
+        Random random = new Random(7);
+        double[] levels = new double[100000];
+        LevelHistogram histogram = new LevelHistogram(0.1);
+        double energy = 0;
+        for (int i = 0; i < levels.length; i++) {
+            // background noise with passing vehicles
+            levels[i] = random.nextDouble() < 0.2 ? 65 + random.nextGaussian() * 5 : 42 + random.nextGaussian() * 2;
+            histogram.add(levels[i]);
+            energy += Math.pow(10, levels[i] / 10);
+        }
+        histogram.add(Double.NEGATIVE_INFINITY);
+        histogram.add(Double.NaN);
+        Arrays.sort(levels);
+        assertEquals(levels.length, histogram.getCount());
+        assertEquals(10 * Math.log10(energy / levels.length), histogram.getLeq(), 1e-9);
+        assertEquals(levels[levels.length - 1], histogram.getMaximum(), 0);
+        assertEquals(levels[0], histogram.getMinimum(), 0);
+        for (double percentage : new double[] {1, 10, 50, 90, 99}) {
+            assertEquals(percentile(levels, 1 - percentage / 100), histogram.getExceededLevel(percentage), 0.1);
+        }
+        assertEquals(levels[0], histogram.getPercentile(0), 0);
+        assertEquals(levels[levels.length - 1], histogram.getPercentile(1), 0);
+        // Lower resolution, lower accuracy
+        LevelHistogram coarse = new LevelHistogram(1);
+        for (double level : levels) {
+            coarse.add(level);
+        }
+        assertEquals(percentile(levels, 0.5), coarse.getExceededLevel(50), 1);
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(3);
+        LevelHistogram all = new LevelHistogram();
+        LevelHistogram low = new LevelHistogram();
+        LevelHistogram high = new LevelHistogram();
+        for (int i = 0; i < 1000; i++) {
+            double lowLevel = 30 + random.nextDouble() * 10;
+            double highLevel = 80 + random.nextDouble() * 30;
+            all.add(lowLevel);
+            all.add(highLevel);
+            low.add(lowLevel);
+            high.add(highLevel);
+        }
+        low.merge(high);
+        low.merge(new LevelHistogram());
+        assertEquals(all.getCount(), low.getCount());
+        assertEquals(all.getLeq(), low.getLeq(), 1e-9);
+        for (double percentage : new double[] {10, 50, 90}) {
+            assertEquals(all.getExceededLevel(percentage), low.getExceededLevel(percentage), 1e-9);
+        }
+        assertThrows(IllegalArgumentException.class, () -> low.merge(new LevelHistogram(1)));
+    }
+
+    @Test
+    public void testBounds() {
+        LevelHistogram histogram = new LevelHistogram(0.5);
+        assertTrue(Double.isNaN(histogram.getLeq()));
+        assertTrue(Double.isNaN(histogram.getExceededLevel(50)));
+        histogram.add(-500);
+        histogram.add(1000);
+        histogram.add(60);
+        assertEquals(-500, histogram.getMinimum(), 0);
+        assertEquals(1000, histogram.getMaximum(), 0);
+        assertEquals(3, histogram.getCount());
+        assertEquals(60, histogram.getExceededLevel(50), 0.5);
+    }
+}
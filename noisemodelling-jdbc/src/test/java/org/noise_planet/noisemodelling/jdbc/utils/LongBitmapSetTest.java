@@ -0,0 +1,85 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongBitmapSetTest {
+
+    @Test
+    public void testSameAsTreeSet() {
+        Random random = new Random(42);
+        LongBitmapSet set = new LongBitmapSet();
+        Set<Long> expected = new TreeSet<>();
+        // dense range (bitmap chunks), sparse values (array chunks) and large identifiers
+        for (long value = 0; value < 200000; value++) {
+            if(random.nextInt(10) > 0) {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            long value = random.nextInt(100000000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+        long[] largeValues = new long[] {Integer.MAX_VALUE + 1L, Long.MAX_VALUE, 1L << 40};
+        for (long value : largeValues) {
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertFalse(set.contains(-1L));
+        assertFalse(set.contains((Object) 5));
+
+        // remove values, sometimes while iterating
+        List<Long> removed = new ArrayList<>();
+        Iterator<Long> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            Long value = iterator.next();
+            if(random.nextInt(3) == 0) {
+                iterator.remove();
+                removed.add(value);
+            }
+        }
+        expected.removeAll(removed);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextInt(200000);
+            assertEquals(expected.remove(value), set.remove(value));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.iterator().hasNext());
+    }
+
+    @Test
+    public void testMemoryUsage() {
+        LongBitmapSet set = new LongBitmapSet();
+        for (long value = 1; value <= 2000000; value++) {
+            set.add(value);
+        }
+        assertEquals(2000000, set.size());
+        // one bit per value
+        assertTrue(set.getMemoryUsage() <= 2000000 / 8 + 8192);
+    }
+}
@@ -0,0 +1,157 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.WKBReader;
+import org.postgresql.util.PSQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostgreSQLCopyStatementTest {
+    Logger LOGGER = LoggerFactory.getLogger(PostgreSQLCopyStatementTest.class);
+
+    @Test
+    public void testBinaryRows() throws Exception {
+        PostgreSQLCopyStatement copyStatement = new PostgreSQLCopyStatement(null, "RECEIVERS_LEVEL",
+                "IDRECEIVER, PERIOD, THE_GEOM, LAEQ, LEQ",
+                new int[] {Types.BIGINT, Types.VARCHAR, Types.OTHER, Types.REAL, Types.DOUBLE},
+                new String[] {"int8", "varchar", "geometry", "float4", "float8"});
+        assertEquals("COPY RECEIVERS_LEVEL(IDRECEIVER, PERIOD, THE_GEOM, LAEQ, LEQ) FROM STDIN (FORMAT BINARY)",
+                copyStatement.getCopyQuery());
+        BatchInsert ps = copyStatement;
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 2154);
+        ps.setLong(1, 42);
+        ps.setString(2, "DEN");
+        ps.setObject(3, factory.createPoint(new Coordinate(1, 2, 3)));
+        ps.setDouble(4, 55.5);
+        ps.setDouble(5, 60.25);
+        ps.addBatch();
+        ps.setLong(1, 43);
+        ps.setString(2, null);
+        ps.setObject(3, null);
+        ps.setDouble(4, -99);
+        ps.setDouble(5, -99);
+        ps.addBatch();
+        assertEquals(2, copyStatement.getRowCount());
+        ByteBuffer stream = ByteBuffer.wrap(copyStatement.toByteArray());
+        // header
+        byte[] signature = new byte[11];
+        stream.get(signature);
+        assertArrayEquals(new byte[] {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        assertEquals(0, stream.getInt());
+        assertEquals(0, stream.getInt());
+        // first row
+        assertEquals(5, stream.getShort());
+        assertEquals(8, stream.getInt());
+        assertEquals(42, stream.getLong());
+        assertEquals(3, stream.getInt());
+        byte[] period = new byte[3];
+        stream.get(period);
+        assertEquals("DEN", new String(period, StandardCharsets.UTF_8));
+        byte[] ewkb = new byte[stream.getInt()];
+        stream.get(ewkb);
+        Point point = (Point) new WKBReader().read(ewkb);
+        assertEquals(2154, point.getSRID());
+        assertEquals(3, point.getCoordinate().getZ(), 1e-12);
+        assertEquals(4, stream.getInt());
+        assertEquals(55.5f, stream.getFloat());
+        assertEquals(8, stream.getInt());
+        assertEquals(60.25, stream.getDouble());
+        // second row with null fields
+        assertEquals(5, stream.getShort());
+        assertEquals(8, stream.getInt());
+        assertEquals(43, stream.getLong());
+        assertEquals(-1, stream.getInt());
+        assertEquals(-1, stream.getInt());
+        assertEquals(4, stream.getInt());
+        assertEquals(-99f, stream.getFloat());
+        assertEquals(8, stream.getInt());
+        assertEquals(-99, stream.getDouble());
+        // trailer
+        assertEquals(-1, stream.getShort());
+        assertFalse(stream.hasRemaining());
+        ps.clearBatch();
+        assertEquals(0, copyStatement.getRowCount());
+    }
+
+    @Test
+    public void testNotSupported() throws Exception {
+        try (Connection connection = JDBCUtilities.wrapConnection(
+                H2GISDBFactory.createSpatialDataBase(PostgreSQLCopyStatementTest.class.getSimpleName(), true, ""))) {
+            assertFalse(PostgreSQLCopyStatement.isSupported(connection));
+        }
+    }
+
+    /**
+     * Insert rows into a PostGIS table, skipped if there is no local PostGIS server
+     */
+    @Test
+    public void testPostGISCopy() throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:postgresql://localhost:5432/noisemodelling_db", "noisemodelling", "noisemodelling");
+             Statement st = connection.createStatement()) {
+            assertTrue(PostgreSQLCopyStatement.isSupported(connection));
+            st.execute("DROP TABLE IF EXISTS copy_statement_test");
+            st.execute("CREATE TABLE copy_statement_test(idreceiver int8, period varchar, the_geom " +
+                    "geometry(POINTZ, 2154), laeq float4, leq float8)");
+            GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 2154);
+            try (PostgreSQLCopyStatement copyStatement = new PostgreSQLCopyStatement(connection,
+                    "copy_statement_test", null)) {
+                copyStatement.setLong(1, 42);
+                copyStatement.setString(2, "DEN");
+                copyStatement.setObject(3, factory.createPoint(new Coordinate(1, 2, 3)));
+                copyStatement.setDouble(4, 55.5);
+                copyStatement.setDouble(5, 60.25);
+                copyStatement.addBatch();
+                copyStatement.setLong(1, 43);
+                copyStatement.setString(2, null);
+                copyStatement.setObject(3, null);
+                copyStatement.setDouble(4, -99);
+                copyStatement.setDouble(5, -99);
+                copyStatement.addBatch();
+                assertEquals(2, copyStatement.executeBatch().length);
+                assertEquals(0, copyStatement.getRowCount());
+            }
+            try (ResultSet rs = st.executeQuery("SELECT idreceiver, period, ST_SRID(the_geom), ST_Z(the_geom), " +
+                    "laeq, leq FROM copy_statement_test ORDER BY idreceiver")) {
+                assertTrue(rs.next());
+                assertEquals(42, rs.getLong(1));
+                assertEquals("DEN", rs.getString(2));
+                assertEquals(2154, rs.getInt(3));
+                assertEquals(3, rs.getDouble(4), 1e-12);
+                assertEquals(55.5, rs.getDouble(5), 1e-6);
+                assertEquals(60.25, rs.getDouble(6), 1e-12);
+                assertTrue(rs.next());
+                assertEquals(43, rs.getLong(1));
+                assertNull(rs.getString(2));
+                assertNull(rs.getObject(3));
+                assertEquals(-99, rs.getDouble(6), 1e-12);
+                assertFalse(rs.next());
+            }
+            st.execute("DROP TABLE copy_statement_test");
+        } catch (PSQLException psqlException) {
+            if(!(psqlException.getCause() instanceof ConnectException)) {
+                throw psqlException;
+            } else {
+                // Ignore connection exception, we may not be inside the unit test of github workflow
+                LOGGER.warn(psqlException.getLocalizedMessage(), psqlException);
+            }
+        }
+    }
+}
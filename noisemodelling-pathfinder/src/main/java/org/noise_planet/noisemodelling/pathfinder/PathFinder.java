@@ -28,11 +28,13 @@ import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -66,7 +68,15 @@ public class PathFinder {
 
     /** Number of thread used for ray computation. */
     private int threadCount ;
+    /** Minimal number of receivers fetched at once by a computation thread */
+    private int minimumReceiverChunkSize = ReceiverRangeCursor.DEFAULT_MINIMUM_CHUNK_SIZE;
     private ProfilerThread profilerThread;
+    /** Computation threads of the last run with utilisation statistics */
+    private List<ThreadPathFinder> lastRunThreads = new ArrayList<>();
+    /** Duration of the last run in nanoseconds */
+    private long lastRunDuration = 0;
+    /** Pool shared with other instances, null if each run use its own threads */
+    private ExecutorService computationPool = null;
 
     /**
      * Create new instance from the propagation data.
@@ -114,54 +124,123 @@ public class PathFinder {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Pool shared with other instances or null if each run create its own threads
+     */
+    public ExecutorService getComputationPool() {
+        return computationPool;
+    }
+
+    /**
+     * Submit the computation tasks into a pool shared by several PathFinder instances running at the same time.
+     * The pool is not shutdown by {@link #run(CutPlaneVisitorFactory)}. The calling thread of run must not be
+     * a thread of this pool.
+     * @param computationPool Shared pool or null to create a pool of {@link #setThreadCount(int)} threads on each run
+     */
+    public void setComputationPool(ExecutorService computationPool) {
+        this.computationPool = computationPool;
+    }
+
+    /**
+     * @param minimumReceiverChunkSize Minimal number of receivers fetched at once by a computation thread
+     */
+    public void setMinimumReceiverChunkSize(int minimumReceiverChunkSize) {
+        this.minimumReceiverChunkSize = minimumReceiverChunkSize;
+    }
+
+    /**
+     * @return Computation threads of the last call to {@link #run(CutPlaneVisitorFactory)}, used to
+     * read the utilisation statistics of each thread
+     */
+    public List<ThreadPathFinder> getLastRunThreads() {
+        return Collections.unmodifiableList(lastRunThreads);
+    }
+
+    /**
+     * @return For each thread of the last run, the ratio of the time spent in receivers computation over the
+     * duration of the run [0-1]
+     */
+    public double[] getLastRunThreadsUtilisation() {
+        double[] utilisation = new double[lastRunThreads.size()];
+        if(lastRunDuration > 0) {
+            for (int i = 0; i < utilisation.length; i++) {
+                utilisation[i] = lastRunThreads.get(i).getBusyTime() / (double) lastRunDuration;
+            }
+        }
+        return utilisation;
+    }
+
     /**
      * Run computation and store the results in the given output.
+     * Receivers are handed out on demand to the computation threads by small ranges, so a thread that processes
+     * a dense area does not delay the others.
      * @param computeRaysOut Result output.
      */
     public void run(CutPlaneVisitorFactory computeRaysOut) {
-        ThreadPool threadManager = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
-        int maximumReceiverBatch = (int) ceil(data.receivers.size() / (double) threadCount);
-        int endReceiverRange = 0;
-        //Launch execution of computation by batch
-        List<Future<Boolean>> tasks = new ArrayList<>();
-        ProgressVisitor cellProgress = progressVisitor == null ? new EmptyProgressVisitor() : progressVisitor.subProcess(data.receivers.size());
-        while (endReceiverRange < data.receivers.size()) {
-            //Break if the progress visitor is cancelled
-            if (cellProgress.isCanceled()) {
-                break;
-            }
-            int newEndReceiver = min(endReceiverRange + maximumReceiverBatch, data.receivers.size());
-            ThreadPathFinder batchThread = new ThreadPathFinder(endReceiverRange, newEndReceiver,
-                    this, cellProgress, computeRaysOut.subProcess(cellProgress), data);
-            if (threadCount != 1) {
-                tasks.add(threadManager.submitBlocking(batchThread));
-            } else {
+        final int receiverCount = data.receivers.size();
+        final int workerCount = max(1, min(threadCount, receiverCount));
+        ReceiverRangeCursor receiverRangeCursor = new ReceiverRangeCursor(0, receiverCount, workerCount,
+                minimumReceiverChunkSize);
+        ProgressVisitor cellProgress = progressVisitor == null ? new EmptyProgressVisitor() : progressVisitor.subProcess(receiverCount);
+        List<ThreadPathFinder> workers = new ArrayList<>(workerCount);
+        long start = System.nanoTime();
+        if(receiverCount > 0) {
+            if (workerCount == 1 && computationPool == null) {
+                ThreadPathFinder batchThread = new ThreadPathFinder(receiverRangeCursor, this, cellProgress,
+                        computeRaysOut.subProcess(cellProgress), data);
+                workers.add(batchThread);
                 try {
                     batchThread.call();
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
+            } else {
+                ExecutorService threadManager = computationPool != null ? computationPool :
+                        new ThreadPool(workerCount, workerCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
+                //Launch one task per thread, each task fetch receivers until there is no more receivers to compute
+                List<Future<Boolean>> tasks = new ArrayList<>();
+                for (int i = 0; i < workerCount; i++) {
+                    //Break if the progress visitor is cancelled
+                    if (cellProgress.isCanceled()) {
+                        break;
+                    }
+                    ThreadPathFinder batchThread = new ThreadPathFinder(receiverRangeCursor, this, cellProgress,
+                            computeRaysOut.subProcess(cellProgress), data);
+                    workers.add(batchThread);
+                    tasks.add(threadManager.submit(batchThread));
+                }
+                //Once the execution ends, shutdown the thread manager and await termination
+                if (threadManager != computationPool) {
+                    threadManager.shutdown();
+                    try {
+                        if (!threadManager.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                            LOGGER.warn("Timeout elapsed before termination.");
+                        }
+                    } catch (InterruptedException ex) {
+                        LOGGER.error(ex.getLocalizedMessage(), ex);
+                    }
+                }
+                // Must raise an exception if one the thread raised an exception
+                for (Future<Boolean> task : tasks) {
+                    try {
+                        task.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
             }
-            endReceiverRange = newEndReceiver;
-        }
-        //Once the execution ends, shutdown the thread manager and await termination
-        threadManager.shutdown();
-        try {
-            if(!threadManager.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
-                LOGGER.warn("Timeout elapsed before termination.");
-            }
-        } catch (InterruptedException ex) {
-            LOGGER.error(ex.getLocalizedMessage(), ex);
         }
-        // Must raise an exception if one the thread raised an exception
-        for (Future<Boolean> task : tasks) {
-            try {
-                task.get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
-            }
+        lastRunDuration = System.nanoTime() - start;
+        lastRunThreads = workers;
+        if(LOGGER.isDebugEnabled() && !workers.isEmpty()) {
+            double[] utilisation = getLastRunThreadsUtilisation();
+            LOGGER.debug(String.format(Locale.ROOT, "%d receivers computed by %d threads in %.2f s," +
+                            " threads utilisation min %.0f %% average %.0f %% max %.0f %%", receiverCount,
+                    workers.size(), lastRunDuration / 1e9,
+                    Arrays.stream(utilisation).min().orElse(0) * 100,
+                    Arrays.stream(utilisation).average().orElse(0) * 100,
+                    Arrays.stream(utilisation).max().orElse(0) * 100));
         }
-
     }
 
     /**
@@ -181,11 +260,15 @@ public class PathFinder {
 
         long reflectionPreprocessTime = 0;
         if(data.reflexionOrder > 0) {
+            long mirrorStart = data.stageProfiler != null ? System.nanoTime() : 0;
             Envelope receiverPropagationEnvelope = new Envelope(receiverPointInfo.getCoordinates());
             receiverPropagationEnvelope.expandBy(data.maxSrcDist);
             List<Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
             receiverMirrorIndex = new MirrorReceiversCompute(buildWalls, receiverPointInfo.position, data.reflexionOrder,
                     data.maxSrcDist, data.maxRefDist);
+            if(data.stageProfiler != null) {
+                data.stageProfiler.recordSince(StageProfiler.Stage.MIRROR_RECEIVERS, mirrorStart);
+            }
             if(profilerThread != null) {
                 reflectionPreprocessTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start,
                         TimeUnit.NANOSECONDS);
@@ -194,7 +277,7 @@ public class PathFinder {
 
 
         long startSourceCollect = 0;
-        if(profilerThread != null) {
+        if(profilerThread != null || data.stageProfiler != null) {
             startSourceCollect = System.nanoTime();
         }
         //Compute the source search area
@@ -244,6 +327,9 @@ public class PathFinder {
         }
         // Sort sources by power contribution descending
         sourceList.sort(Comparator.comparingDouble(o -> receiverPointInfo.position.distance3D(o.position)));
+        if(data.stageProfiler != null) {
+            data.stageProfiler.recordSince(StageProfiler.Stage.SOURCE_QUERY, startSourceCollect);
+        }
 
         // Provides full sources points list to output data in order to do preprocessing step to evaluate
         // the maximum expected power at receivers level
@@ -327,7 +413,7 @@ public class PathFinder {
 
         CutPlaneVisitor.PathSearchStrategy strategy = CutPlaneVisitor.PathSearchStrategy.CONTINUE;
 
-        CutProfile cutProfile = data.profileBuilder.getProfile(src.position, rcv.position, data.defaultGroundAttenuation, !verticalDiffraction);
+        CutProfile cutProfile = getProfile(data, src.position, rcv.position, data.defaultGroundAttenuation, !verticalDiffraction);
         if(cutProfile.getSource() != null) {
             cutProfile.getSource().id = src.getSourceIndex();
             cutProfile.getSource().li = src.li;
@@ -374,6 +460,28 @@ public class PathFinder {
         return strategy;
     }
 
+    /**
+     * Retrieve the cutting profile of the scene, the duration is recorded in the stage profiler of the scene
+     * @param scene Propagation data.
+     * @param sourceCoordinate Starting point.
+     * @param receiverCoordinate Ending point.
+     * @param defaultGroundAttenuation Default absorption ground effect value if no ground absorption value is found
+     * @param stopAtObstacleOverSourceReceiver Stop computing when an obstacle is higher than the segment
+     * @return Cutting profile.
+     */
+    private static CutProfile getProfile(Scene scene, Coordinate sourceCoordinate, Coordinate receiverCoordinate,
+                                         double defaultGroundAttenuation, boolean stopAtObstacleOverSourceReceiver) {
+        if(scene.stageProfiler == null) {
+            return scene.profileBuilder.getProfile(sourceCoordinate, receiverCoordinate, defaultGroundAttenuation,
+                    stopAtObstacleOverSourceReceiver);
+        }
+        long start = System.nanoTime();
+        CutProfile cutProfile = scene.profileBuilder.getProfile(sourceCoordinate, receiverCoordinate,
+                defaultGroundAttenuation, stopAtObstacleOverSourceReceiver);
+        scene.stageProfiler.recordSince(StageProfiler.Stage.GET_PROFILE, start);
+        return cutProfile;
+    }
+
     /**
      * Compute horizontal diffraction (diffraction of vertical edge.)
      * @param rcv Receiver coordinates.
@@ -385,15 +493,19 @@ public class PathFinder {
     public CutProfile computeVEdgeDiffraction(ReceiverPointInfo rcv, SourcePointInfo src,
                                                Scene data, ComputationSide side) {
 
+        long sideHullStart = data.stageProfiler != null ? System.nanoTime() : 0;
         List<Coordinate> coordinates = computeSideHull(side == LEFT, new Coordinate(src.position),
                 new Coordinate(rcv.position), data.profileBuilder);
+        if(data.stageProfiler != null) {
+            data.stageProfiler.recordSince(StageProfiler.Stage.SIDE_HULL, sideHullStart);
+        }
 
         List<CutPoint> cutPoints = new ArrayList<>();
 
         if(coordinates.size() > 2) {
             // Fetch vertical profile between each point of the diffraction path
             for(int i=0; i<coordinates.size()-1; i++) {
-                CutProfile profile = data.profileBuilder.getProfile(coordinates.get(i), coordinates.get(i+1), data.defaultGroundAttenuation,
+                CutProfile profile = getProfile(data, coordinates.get(i), coordinates.get(i+1), data.defaultGroundAttenuation,
                         false);
 
                 // Push new plane (except duplicate points for intermediate segments)
@@ -731,7 +843,7 @@ public class PathFinder {
                 }
             }
             // Compute direct path between source and first reflection point, add profile to the data
-            CutProfile cutProfile = data.profileBuilder.getProfile(src.position, rayPath.get(0).getReflectionPosition(),
+            CutProfile cutProfile = getProfile(data, src.position, rayPath.get(0).getReflectionPosition(),
                     data.defaultGroundAttenuation, !data.computeVerticalDiffraction);
             if(!cutProfile.isFreeField() && !data.computeVerticalDiffraction) {
                 // (maybe there is a blocking building/dem, and we disabled diffraction)
@@ -747,7 +859,7 @@ public class PathFinder {
             for (int idPt = 0; idPt < rayPath.size() - 1; idPt++) {
                 MirrorReceiver firstPoint = rayPath.get(idPt);
                 MirrorReceiver secondPoint = rayPath.get(idPt + 1);
-                cutProfile = data.profileBuilder.getProfile(firstPoint.getReflectionPosition(),
+                cutProfile = getProfile(data, firstPoint.getReflectionPosition(),
                         secondPoint.getReflectionPosition(), data.defaultGroundAttenuation, !data.computeVerticalDiffraction);
                 if(!cutProfile.isFreeField() && !data.computeVerticalDiffraction) {
                     // (maybe there is a blocking building/dem, and we disabled diffraction)
@@ -766,7 +878,7 @@ public class PathFinder {
                 continue;
             }
             // Compute direct path between receiver and last reflection point, add profile to the data
-            cutProfile = data.profileBuilder.getProfile(rayPath.get(rayPath.size() - 1).getReflectionPosition(),
+            cutProfile = getProfile(data, rayPath.get(rayPath.size() - 1).getReflectionPosition(),
                     rcv.position, data.defaultGroundAttenuation, !data.computeVerticalDiffraction);
             if(!cutProfile.isFreeField() && !data.computeVerticalDiffraction) {
                 // (maybe there is a blocking building/dem, and we disabled diffraction)
@@ -0,0 +1,78 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hand out contiguous ranges of receiver indexes to the computation threads on demand.
+ * The size of the range decrease with the remaining receivers count (guided scheduling), threads take large ranges
+ * at the beginning of the cell and small ones at the end so that all threads finish at about the same time even if
+ * the computation cost of receivers is not uniform.
+ * This class is thread safe.
+ */
+public final class ReceiverRangeCursor {
+    /** Remaining receivers are divided by threadCount * this value in order to compute the next range size */
+    public static final int DEFAULT_CHUNK_DIVISOR = 4;
+    public static final int DEFAULT_MINIMUM_CHUNK_SIZE = 1;
+    private final AtomicInteger nextReceiver;
+    private final int endReceiver;
+    private final int chunkDivisor;
+    private final int minimumChunkSize;
+
+    /**
+     * @param startReceiver First receiver index (included)
+     * @param endReceiver Last receiver index (excluded)
+     * @param threadCount Number of threads that will consume the ranges
+     * @param minimumChunkSize Minimal number of receivers in a range (except the last one)
+     */
+    public ReceiverRangeCursor(int startReceiver, int endReceiver, int threadCount, int minimumChunkSize) {
+        this.nextReceiver = new AtomicInteger(startReceiver);
+        this.endReceiver = endReceiver;
+        this.chunkDivisor = Math.max(1, threadCount) * DEFAULT_CHUNK_DIVISOR;
+        this.minimumChunkSize = Math.max(1, minimumChunkSize);
+    }
+
+    /**
+     * @param receiverCount Number of receivers
+     * @param threadCount Number of threads that will consume the ranges
+     */
+    public ReceiverRangeCursor(int receiverCount, int threadCount) {
+        this(0, receiverCount, threadCount, DEFAULT_MINIMUM_CHUNK_SIZE);
+    }
+
+    /**
+     * Reserve the next range of receivers
+     * @param range (output) range[0] first receiver index (included), range[1] last receiver index (excluded)
+     * @return False if there is no more receivers to process
+     */
+    public boolean nextRange(int[] range) {
+        while (true) {
+            int start = nextReceiver.get();
+            if (start >= endReceiver) {
+                return false;
+            }
+            int chunkSize = Math.max(minimumChunkSize, (endReceiver - start) / chunkDivisor);
+            int end = Math.min(endReceiver, start + chunkSize);
+            if (nextReceiver.compareAndSet(start, end)) {
+                range[0] = start;
+                range[1] = end;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return Number of receivers not yet handed out
+     */
+    public int getRemainingReceivers() {
+        return Math.max(0, endReceiver - nextReceiver.get());
+    }
+}
@@ -18,15 +18,22 @@ import static org.noise_planet.noisemodelling.pathfinder.PathFinder.LOGGER;
 
 /**
  * A Thread class to evaluate all receivers cut planes.
+ * Receivers are either a fixed range or ranges fetched on demand from a shared {@link ReceiverRangeCursor}.
  * Return true if the computation is done without issues
  */
 public final class ThreadPathFinder implements Callable<Boolean> {
     int startReceiver; // Included
     int endReceiver; // Excluded
+    ReceiverRangeCursor receiverRangeCursor;
     PathFinder propagationProcess;
     ProgressVisitor visitor;
     CutPlaneVisitor dataOut;
     Scene data;
+    // Utilisation statistics
+    private int processedReceivers = 0;
+    private int processedRanges = 0;
+    private long busyTime = 0;
+    private long elapsedTime = 0;
 
 
     /**
@@ -49,30 +56,100 @@ public final class ThreadPathFinder implements Callable<Boolean> {
         this.data = data;
     }
 
+    /**
+     * Create a ThreadPathFinder that fetch receivers ranges from a shared cursor until all receivers are processed
+     * @param receiverRangeCursor Shared cursor of receivers indexes
+     * @param propagationProcess
+     * @param visitor
+     * @param dataOut Cut plane visitor, used only by this thread
+     * @param data
+     */
+    public ThreadPathFinder(ReceiverRangeCursor receiverRangeCursor, PathFinder propagationProcess,
+                            ProgressVisitor visitor, CutPlaneVisitor dataOut,
+                            Scene data) {
+        this.receiverRangeCursor = receiverRangeCursor;
+        this.propagationProcess = propagationProcess;
+        this.visitor = visitor;
+        this.dataOut = dataOut;
+        this.data = data;
+    }
+
+    /**
+     * @return Number of receivers processed by this thread
+     */
+    public int getProcessedReceivers() {
+        return processedReceivers;
+    }
+
+    /**
+     * @return Number of receivers ranges processed by this thread
+     */
+    public int getProcessedRanges() {
+        return processedRanges;
+    }
+
+    /**
+     * @return Time spent in receivers computation (nanoseconds)
+     */
+    public long getBusyTime() {
+        return busyTime;
+    }
+
+    /**
+     * @return Time between the start and the end of this thread (nanoseconds)
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Compute the rays of the receivers in the provided range
+     * @param rangeStart First receiver index (included)
+     * @param rangeEnd Last receiver index (excluded)
+     * @return False if the computation has been canceled
+     */
+    private boolean processRange(int rangeStart, int rangeEnd) {
+        processedRanges++;
+        for (int idReceiver = rangeStart; idReceiver < rangeEnd; idReceiver++) {
+            if (visitor != null) {
+                if (visitor.isCanceled()) {
+                    return false;
+                }
+            }
+            long receiverPk = idReceiver;
+            if(idReceiver < data.receiversPk.size()) {
+                receiverPk = data.receiversPk.get(idReceiver);
+            }
+            PathFinder.ReceiverPointInfo rcv = new PathFinder.ReceiverPointInfo(idReceiver, receiverPk, data.receivers.get(idReceiver));
+
+            long start = System.nanoTime();
+            propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
+            busyTime += System.nanoTime() - start;
+            processedReceivers++;
+
+            if (visitor != null) {
+                visitor.endStep();
+            }
+        }
+        return true;
+    }
+
     /**
      * Executes the computation of ray paths for each receiver in the specified range.
      */
     @Override
     public Boolean call() throws Exception {
+        long start = System.nanoTime();
         try {
-            for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
-                if (visitor != null) {
-                    if (visitor.isCanceled()) {
+            if (receiverRangeCursor == null) {
+                processRange(startReceiver, endReceiver);
+            } else {
+                int[] range = new int[2];
+                while (receiverRangeCursor.nextRange(range)) {
+                    if (!processRange(range[0], range[1])) {
                         break;
                     }
                 }
-                long receiverPk = idReceiver;
-                if(idReceiver < data.receiversPk.size()) {
-                    receiverPk = data.receiversPk.get(idReceiver);
-                }
-                PathFinder.ReceiverPointInfo rcv = new PathFinder.ReceiverPointInfo(idReceiver, receiverPk, data.receivers.get(idReceiver));
-
-
-                propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
-
-                if (visitor != null) {
-                    visitor.endStep();
-                }
             }
         } catch (Exception ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
@@ -80,6 +157,8 @@ public final class ThreadPathFinder implements Callable<Boolean> {
                 visitor.cancel();
             }
             throw ex;
+        } finally {
+            elapsedTime = System.nanoTime() - start;
         }
         return true;
     }
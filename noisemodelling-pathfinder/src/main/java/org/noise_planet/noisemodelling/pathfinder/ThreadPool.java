@@ -11,14 +11,25 @@ package org.noise_planet.noisemodelling.pathfinder;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
 
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  *
  * @author Nicolas Fortin
  */
 public class ThreadPool extends ThreadPoolExecutor {
+    /** Maximum waiting time of {@link #executeBlocking(Runnable)} before checking again the cancellation */
+    private static final long CANCELLATION_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
     ProgressVisitor progressVisitor = new EmptyProgressVisitor();
+    /** Number of tasks queued or running */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final ReentrantLock taskDoneLock = new ReentrantLock();
+    private final Condition taskDone = taskDoneLock.newCondition();
+    private final AtomicInteger waitingSubmitters = new AtomicInteger();
 
     /**
      * Default constructor. Set CorePoolSize size to 32 Set Maximum pool size to
@@ -113,6 +124,13 @@ public class ThreadPool extends ThreadPoolExecutor {
         return this.getQueue().size() + this.getActiveCount();
     }
 
+    /**
+     * @return Number of tasks queued or running
+     */
+    public int getPendingTaskCount() {
+        return pendingTasks.get();
+    }
+
     /**
      * Wait for free queue slot if poolSize is superior or equal of maximum pool
      * size then executes the given task sometime in the future. The task may
@@ -124,15 +142,77 @@ public class ThreadPool extends ThreadPoolExecutor {
      * @param command
      */
     public void executeBlocking(Runnable command) {
-        while (this.getQueue().size() + this.getActiveCount() >= this
-                .getMaximumPoolSize() && !progressVisitor.isCanceled()) {
+        if (pendingTasks.get() >= getMaximumPoolSize()) {
+            // afterExecute reads waitingSubmitters after releasing a task, so it cannot miss this thread
+            waitingSubmitters.incrementAndGet();
             try {
-                Thread.sleep(100);
+                taskDoneLock.lockInterruptibly();
+                try {
+                    while (pendingTasks.get() >= getMaximumPoolSize() && !progressVisitor.isCanceled()
+                            && !isShutdown()) {
+                        taskDone.awaitNanos(CANCELLATION_CHECK_INTERVAL);
+                    }
+                } finally {
+                    taskDoneLock.unlock();
+                }
             } catch (InterruptedException e) {
                 return; // do not execute
+            } finally {
+                waitingSubmitters.decrementAndGet();
+            }
+        }
+        execute(command);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pendingTasks.incrementAndGet();
+        try {
+            super.execute(command);
+        } catch (RejectedExecutionException | NullPointerException ex) {
+            pendingTasks.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        releaseTasks(1);
+    }
+
+    /**
+     * The tasks removed from the queue are never executed, they are no longer pending
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> unexecutedTasks = super.shutdownNow();
+        releaseTasks(unexecutedTasks.size());
+        return unexecutedTasks;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        boolean removed = super.remove(task);
+        if (removed) {
+            releaseTasks(1);
+        }
+        return removed;
+    }
+
+    private void releaseTasks(int count) {
+        if (count == 0) {
+            return;
+        }
+        pendingTasks.addAndGet(-count);
+        if (waitingSubmitters.get() > 0) {
+            taskDoneLock.lock();
+            try {
+                taskDone.signalAll();
+            } finally {
+                taskDoneLock.unlock();
             }
         }
-        super.execute(command);
     }
 
     /**
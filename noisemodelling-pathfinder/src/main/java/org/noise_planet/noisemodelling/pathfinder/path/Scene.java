@@ -18,6 +18,7 @@ import org.noise_planet.noisemodelling.pathfinder.utils.geometry.QueryGeometrySt
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.QueryRTree;
 //import org.noise_planet.noisemodelling.pathfinder.aeffacer.GeoWithSoilType;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageProfiler;
 
 import java.util.*;
 
@@ -89,6 +90,8 @@ public class Scene {
     public double maxSrcDist = DEFAULT_MAX_PROPAGATION_DISTANCE;
     /** Maximum reflection wall distance from receiver to source line */
     public double maxRefDist = DEFAULT_MAXIMUM_REF_DIST;
+    /** Durations of the computation stages of this scene, null if the stages are not profiled */
+    public StageProfiler stageProfiler = null;
 
 
     /**
@@ -11,6 +11,7 @@ package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
 
 import org.locationtech.jts.algorithm.Angle;
 import org.locationtech.jts.algorithm.CGAlgorithms3D;
+import org.locationtech.jts.algorithm.Orientation;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.math.Vector2D;
@@ -23,14 +24,12 @@ import org.noise_planet.noisemodelling.pathfinder.delaunay.LayerTinfour;
 import org.noise_planet.noisemodelling.pathfinder.delaunay.Triangle;
 import org.noise_planet.noisemodelling.pathfinder.path.Scene;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
-import org.noise_planet.noisemodelling.pathfinder.utils.IntegerTuple;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static java.lang.Double.NaN;
 import static java.lang.Double.isNaN;
@@ -58,8 +57,6 @@ public class ProfileBuilder {
     private final Map<Integer, ArrayList<Coordinate>> buildingsWideAnglePoints = new HashMap<>();
     /** Building RTree node capacity. */
     private int buildingNodeCapacity = TREE_NODE_CAPACITY;
-    /** Topographic RTree node capacity. */
-    private int topoNodeCapacity = TREE_NODE_CAPACITY;
     /** Ground RTree node capacity. */
     private int groundNodeCapacity = TREE_NODE_CAPACITY;
     /**
@@ -79,20 +76,33 @@ public class ProfileBuilder {
      * The object is an integer. It's an index of the array {@link #processedWalls} */
     public STRtree rtree;
     private STRtree groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
+    /** If true the cut profiles fetch the processed walls with {@link #wallGridIndex} instead of {@link #rtree} */
+    private boolean wallGridIndexEnabled = false;
+    /** Uniform grid of {@link #processedWalls}, null if not enabled */
+    private WallGridIndex wallGridIndex;
+    /** Wall query buffer of each computation thread, its buffers are capped, see {@link WallGridIndex.WallCandidates} */
+    private static final ThreadLocal<WallGridIndex.WallCandidates> WALL_CANDIDATES =
+            ThreadLocal.withInitial(WallGridIndex.WallCandidates::new);
 
 
     /** List of topographic points. */
     private final List<Coordinate> topoPoints = new ArrayList<>();
     /** List of topographic lines. */
     private final List<LineString> topoLines = new ArrayList<>();
-    /** Topographic triangle facets. */
-    private List<Triangle> topoTriangles = new ArrayList<>();
-    /** Topographic triangle neighbors. */
-    private List<Triangle> topoNeighbors = new ArrayList<>();
-    /** Topographic Vertices .*/
-    private List<Coordinate> vertices = new ArrayList<>();
-    /** Topographic RTree. */
-    private STRtree topoTree;
+    /** Topographic mesh given by {@link #setTopographicMesh(List, List, List)}, released by finishFeeding. */
+    private List<Coordinate> providedVertices;
+    private List<Triangle> providedTriangles;
+    private List<Triangle> providedNeighbors;
+    /** Topographic triangles with their point location index, null if there is no DEM. */
+    TopographicMesh topoMesh;
+    /** Topographic grid given by {@link #setTopographicGrid(TopographicGrid)}, used instead of the mesh if not null. */
+    TopographicGrid topoGrid;
+    /** Profile walker of each computation thread, it does not reference any ProfileBuilder between walks and its
+     * buffers are capped, see {@link TopographicProfileWalker}. */
+    private static final ThreadLocal<TopographicProfileWalker> TOPOGRAPHIC_PROFILE_WALKER =
+            ThreadLocal.withInitial(TopographicProfileWalker::new);
+    /** If true the topographic mesh has been provided, the topographic points and lines are not triangulated. */
+    private boolean topographicMeshSet = false;
 
     /** List of ground effects. */
     private final List<GroundAbsorption> groundAbsorptions = new ArrayList<>();
@@ -108,7 +118,7 @@ public class ProfileBuilder {
 
     /** if true take into account z value on Buildings Polygons
      * In this case, z represent the altitude (from the sea to the top of the wall) */
-    private boolean zBuildings = false;
+    boolean zBuildings = false;
 
     public static final int[] DEFAULT_FREQUENCIES_THIRD_OCTAVE = new int[] {50, 63, 80, 100, 125, 160, 200, 250, 315, 400, 500, 630, 800, 1000, 1250, 1600, 2000, 2500, 3150, 4000, 5000, 6300, 8000, 10000};
     public static final Double[] DEFAULT_FREQUENCIES_EXACT_THIRD_OCTAVE = new Double[] {50.1187234, 63.0957344, 79.4328235, 100.0, 125.892541, 158.489319, 199.526231, 251.188643, 316.227766, 398.107171, 501.187234, 630.957344, 794.328235, 1000.0, 1258.92541, 1584.89319, 1995.26231, 2511.88643, 3162.27766, 3981.07171, 5011.87234, 6309.57344, 7943.28235, 10000.0};
@@ -140,18 +150,47 @@ public class ProfileBuilder {
     /**
      * Constructor setting parameters.
      * @param buildingNodeCapacity Building RTree node capacity.
-     * @param topoNodeCapacity     Topographic RTree node capacity.
      * @param groundNodeCapacity   Ground RTree node capacity.
      * @param maxLineLength        Max length of line part used for profile retrieving.
      */
-    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+    public ProfileBuilder(int buildingNodeCapacity, int groundNodeCapacity, int maxLineLength) {
         this.buildingNodeCapacity = buildingNodeCapacity;
-        this.topoNodeCapacity = topoNodeCapacity;
         this.groundNodeCapacity = groundNodeCapacity;
         this.maxLineLength = maxLineLength;
         buildingTree = new STRtree(buildingNodeCapacity);
     }
 
+    /**
+     * Constructor setting parameters.
+     * @param buildingNodeCapacity Building RTree node capacity.
+     * @param topoNodeCapacity     Not used, the topographic triangles are located with a uniform grid.
+     * @param groundNodeCapacity   Ground RTree node capacity.
+     * @param maxLineLength        Max length of line part used for profile retrieving.
+     * @deprecated Use {@link #ProfileBuilder(int, int, int)}
+     */
+    @Deprecated
+    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+        this(buildingNodeCapacity, groundNodeCapacity, maxLineLength);
+    }
+
+    /**
+     * @param wallGridIndex If true the cut profiles fetch the walls and ground effect borders crossed by the profile
+     *                      by walking a uniform grid instead of querying the R-Tree. The cut profiles are the same.
+     *                      Must be set before {@link #finishFeeding()}.
+     * @return this
+     */
+    public ProfileBuilder setWallGridIndex(boolean wallGridIndex) {
+        this.wallGridIndexEnabled = wallGridIndex;
+        return this;
+    }
+
+    /**
+     * @return True if the cut profiles use the uniform grid of walls
+     */
+    public boolean isWallGridIndex() {
+        return wallGridIndexEnabled;
+    }
+
     /**
      * @param frequencyArray Frequency used in the simulation (extracted from Scene.DEFAULT_FREQUENCIES_THIRD_OCTAVE)
      */
@@ -545,6 +584,68 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Set an already computed topographic mesh, the topographic points and lines are then not triangulated by
+     * {@link #finishFeeding()}.
+     * @param vertices Mesh vertices
+     * @param triangles Triangles, vertex indexes in the vertices list
+     * @param neighbors Neighbors of each triangle, triangle index (-1 if none) on the opposite side of each vertex
+     * @return this
+     */
+    public ProfileBuilder setTopographicMesh(List<Coordinate> vertices, List<Triangle> triangles,
+                                             List<Triangle> neighbors) {
+        if(!isFeedingFinished) {
+            for (Coordinate vertex : vertices) {
+                if(envelope == null) {
+                    envelope = new Envelope(vertex);
+                }
+                else {
+                    envelope.expandToInclude(vertex);
+                }
+            }
+            this.providedVertices = new ArrayList<>(vertices);
+            this.providedTriangles = new ArrayList<>(triangles);
+            this.providedNeighbors = new ArrayList<>(neighbors);
+            topographicMeshSet = true;
+        }
+        return this;
+    }
+
+    /**
+     * Set a regular grid digital elevation model, the topographic points, lines and mesh are then not used. The
+     * profiles are computed from the grid without triangulation and the memory used by the DEM is the memory of the
+     * grid samples.
+     * @param topographicGrid Digital elevation model
+     * @return this
+     */
+    public ProfileBuilder setTopographicGrid(TopographicGrid topographicGrid) {
+        if(!isFeedingFinished) {
+            if(envelope == null) {
+                envelope = topographicGrid.getEnvelope();
+            }
+            else {
+                envelope.expandToInclude(topographicGrid.getEnvelope());
+            }
+            this.topoGrid = topographicGrid;
+        }
+        return this;
+    }
+
+    /**
+     * @return The regular grid digital elevation model, null if not set
+     */
+    public TopographicGrid getTopographicGrid() {
+        return topoGrid;
+    }
+
+    /**
+     * Retrieve the topographic triangle neighbors.
+     * @return The neighbors of each topographic triangle.
+     */
+    public List<Triangle> getTriangleNeighbors() {
+        return topoMesh == null ? Collections.emptyList() : topoMesh.triangleList(topoMesh.triangleNeighbors);
+    }
+
     /**
      * Add a ground effect.
      * @param geom        Ground effect area footprint.
@@ -661,19 +762,45 @@ public class ProfileBuilder {
     }
 
     /**
-     * Retrieve the topographic triangles.
+     * Retrieve the topographic triangles. The list is a read only view of the mesh, available once the feeding is
+     * finished.
      * @return The topographic triangles.
      */
     public List<Triangle> getTriangles() {
-        return topoTriangles;
+        return topoMesh == null ? Collections.emptyList() : topoMesh.triangleList(topoMesh.triangleVertices);
     }
 
     /**
-     * Retrieve the topographic vertices.
+     * Retrieve the topographic vertices. The list is a read only view of the mesh, available once the feeding is
+     * finished.
      * @return The topographic vertices.
      */
     public List<Coordinate> getVertices() {
-        return vertices;
+        return topoMesh == null ? Collections.emptyList() : topoMesh.vertexList();
+    }
+
+    /**
+     * Retrieve the count of topographic triangles, of the grid if set else of the mesh, without creating them.
+     * Available once the feeding is finished.
+     * @return The count of topographic triangles.
+     */
+    public int getTopographicTriangleCount() {
+        if(topoGrid != null) {
+            return topoGrid.getTriangleCount();
+        }
+        return topoMesh == null ? 0 : topoMesh.getTriangleCount();
+    }
+
+    /**
+     * Retrieve the count of topographic vertices, the samples of the grid if set else the vertices of the mesh,
+     * without creating them. Available once the feeding is finished.
+     * @return The count of topographic vertices.
+     */
+    public int getTopographicVertexCount() {
+        if(topoGrid != null) {
+            return topoGrid.getColumns() * topoGrid.getRows();
+        }
+        return topoMesh == null ? 0 : topoMesh.getVertexCount();
     }
 
     /**
@@ -704,7 +831,11 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
+        if(topoGrid != null) {
+            providedVertices = null;
+            providedTriangles = null;
+            providedNeighbors = null;
+        } else if(!topographicMeshSet && topoPoints.size()+topoLines.size() > 1) {
             //Feed the Delaunay layer
             LayerDelaunay layerDelaunay = new LayerTinfour();
             layerDelaunay.setRetrieveNeighbors(true);
@@ -733,38 +864,20 @@ public class ProfileBuilder {
                 return null;
             }
             try {
-                topoTriangles = layerDelaunay.getTriangles();
-                topoNeighbors = layerDelaunay.getNeighbors();
+                topoMesh = new TopographicMesh(layerDelaunay.getVertices(), layerDelaunay.getTriangles(),
+                        layerDelaunay.getNeighbors());
             } catch (LayerDelaunayError e) {
                 LOGGER.error("Error while getting triangles", e);
                 return null;
             }
-            //Feed the RTree
-            topoTree = new STRtree(topoNodeCapacity);
-            try {
-                vertices = layerDelaunay.getVertices();
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while getting vertices", e);
-                return null;
-            }
-            // wallIndex set will merge shared triangle segments
-            Set<IntegerTuple> wallIndex = new HashSet<>();
-            for (int i = 0; i < topoTriangles.size(); i++) {
-                final Triangle tri = topoTriangles.get(i);
-                wallIndex.add(new IntegerTuple(tri.getA(), tri.getB(), i));
-                wallIndex.add(new IntegerTuple(tri.getB(), tri.getC(), i));
-                wallIndex.add(new IntegerTuple(tri.getC(), tri.getA(), i));
-                // Insert triangle in rtree
-                Coordinate vA = vertices.get(tri.getA());
-                Coordinate vB = vertices.get(tri.getB());
-                Coordinate vC = vertices.get(tri.getC());
-                Envelope env = FACTORY.createLineString(new Coordinate[]{vA, vB, vC}).getEnvelopeInternal();
-                topoTree.insert(env, i);
-            }
-            topoTree.build();
+        } else if(topographicMeshSet) {
+            topoMesh = new TopographicMesh(providedVertices, providedTriangles, providedNeighbors);
+            providedVertices = null;
+            providedTriangles = null;
+            providedNeighbors = null;
         }
         //Update building z
-        if(topoTree != null) {
+        if(topoMesh != null || topoGrid != null) {
             for (Building b : buildings) {
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
@@ -859,6 +972,9 @@ public class ProfileBuilder {
         }
         rtree.build();
         groundEffectsRtree.build();
+        if(wallGridIndexEnabled) {
+            wallGridIndex = new WallGridIndex(processedWalls);
+        }
         // initialize with default frequencies
         setFrequencyArray(frequencyArray);
         return this;
@@ -968,7 +1084,7 @@ public class ProfileBuilder {
         }
 
         //Fetch topography evolution between sourceCoordinate and receiverCoordinate
-        if(topoTree != null) {
+        if(topoMesh != null || topoGrid != null) {
             addTopoCutPts(sourceCoordinate, receiverCoordinate, profile, stopAtObstacleOverSourceReceiver);
             if(stopAtObstacleOverSourceReceiver && profile.hasTopographyIntersection) {
                 return profile;
@@ -1159,56 +1275,65 @@ public class ProfileBuilder {
      */
     private void addGroundBuildingCutPts(LineSegment fullLine, CutProfile profile, boolean stopAtObstacleOverSourceReceiver) {
         // Collect all objects where envelope intersects all sub-segments of fullLine
-        Set<Integer> processed = new HashSet<>();
-
-        // Segmented fullLine, this is the query for rTree indexes
-        // Split line into segments for structures based on RTree in order to limit the number of queries
-        // (for large area of the line segment envelope)
-        List<LineSegment> lines = splitSegment(fullLine.p0, fullLine.p1, maxLineLength);
-        List<CutPoint> newCutPoints = new LinkedList<>();
-        try {
-            for (int j = 0; j < lines.size()
-                    && !(profile.hasBuildingIntersection && stopAtObstacleOverSourceReceiver); j++) {
-                LineSegment line = lines.get(j);
+        WallGridIndex.WallCandidates candidates = WALL_CANDIDATES.get();
+        if(wallGridIndex != null) {
+            wallGridIndex.collectWalls(fullLine.p0.x, fullLine.p0.y, fullLine.p1.x, fullLine.p1.y, candidates);
+        } else {
+            candidates.start();
+            // Segmented fullLine, this is the query for rTree indexes
+            // Split line into segments for structures based on RTree in order to limit the number of queries
+            // (for large area of the line segment envelope)
+            List<LineSegment> lines = splitSegment(fullLine.p0, fullLine.p1, maxLineLength);
+            for (LineSegment line : lines) {
                 for (Object result : rtree.query(new Envelope(line.p0, line.p1))) {
-                    if (!(result instanceof Integer) || processed.contains((Integer) result)) {
-                        continue;
+                    if (result instanceof Integer) {
+                        candidates.add((Integer) result);
                     }
-                    processed.add((Integer) result);
-                    int i = (Integer) result;
-                    Wall facetLine = processedWalls.get(i);
-                    Coordinate intersection = fullLine.intersection(facetLine.ls);
-                    if (intersection != null) {
-                        intersection = new Coordinate(intersection);
-                        if (!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
-                            // same z in the line, so useless to compute interpolation between points
-                            if (Double.compare(facetLine.p0.z, facetLine.p1.z) == 0) {
-                                intersection.z = facetLine.p0.z;
-                            } else {
-                                intersection.z = Vertex.interpolateZ(intersection, facetLine.p0, facetLine.p1);
-                            }
-                        }
-                        switch (facetLine.type) {
-                            case BUILDING:
-                                if (!processBuilding(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
-                            case WALL:
-                                if (!processWall(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
-                            case GROUND_EFFECT:
-                                if (!processGroundEffect(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
+                }
+            }
+        }
+        // Process the walls in the same order whatever the index, so cut points at the same distance are sorted
+        // the same way
+        candidates.sort();
+        List<CutPoint> newCutPoints = new ArrayList<>();
+        try {
+            for (int j = 0; j < candidates.size(); j++) {
+                int i = candidates.get(j);
+                Wall facetLine = processedWalls.get(i);
+                if (!mayIntersect(fullLine, facetLine.ls)) {
+                    continue;
+                }
+                Coordinate intersection = fullLine.intersection(facetLine.ls);
+                if (intersection != null) {
+                    intersection = new Coordinate(intersection);
+                    if (!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
+                        // same z in the line, so useless to compute interpolation between points
+                        if (Double.compare(facetLine.p0.z, facetLine.p1.z) == 0) {
+                            intersection.z = facetLine.p0.z;
+                        } else {
+                            intersection.z = Vertex.interpolateZ(intersection, facetLine.p0, facetLine.p1);
                         }
                     }
+                    switch (facetLine.type) {
+                        case BUILDING:
+                            if (!processBuilding(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile)) {
+                                return;
+                            }
+                            break;
+                        case WALL:
+                            if (!processWall(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile)) {
+                                return;
+                            }
+                            break;
+                        case GROUND_EFFECT:
+                            if (!processGroundEffect(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile)) {
+                                return;
+                            }
+                            break;
+                    }
                 }
             }
         } finally {
@@ -1216,103 +1341,32 @@ public class ProfileBuilder {
         }
     }
 
-    Coordinate[] getTriangleVertices(int triIndex) {
-        final Triangle tri = topoTriangles.get(triIndex);
-        return new Coordinate[] {this.vertices.get(tri.getA()), this.vertices.get(tri.getB()), this.vertices.get(tri.getC())};
-    }
     /**
-     * Compute the next triangle index.Find the shortest intersection point of
-     * triIndex segments to the p1 coordinate
-     *
-     * @param triIndex        Triangle index
-     * @param propagationLine Propagation line
-     * @return Next triangle to the specified direction, -1 if there is no
-     * triangle neighbor.
-     */
-    private int getNextTri(final int triIndex,
-                           final LineSegment propagationLine,
-                           HashSet<Integer> navigationHistory, final Coordinate segmentIntersection) {
-        final Triangle tri = topoTriangles.get(triIndex);
-        final Triangle triNeighbors = topoNeighbors.get(triIndex);
-        int nearestIntersectionSide = -1;
-        int idNeighbor;
-
-        double nearestIntersectionPtDist = Double.MAX_VALUE;
-        // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
-        double distline_line;
-        // Intersection First Side
-        idNeighbor = triNeighbors.get(2);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(aTri, bTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 2;
-                }
-            }
-        }
-        // Intersection Second Side
-        idNeighbor = triNeighbors.get(0);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(bTri, cTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 0;
-                }
-            }
-        }
-        // Intersection Third Side
-        idNeighbor = triNeighbors.get(1);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(cTri, aTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionSide = 1;
-                }
-            }
-        }
-        if(nearestIntersectionSide > -1) {
-            return triNeighbors.get(nearestIntersectionSide);
-        } else {
-            return -1;
+     * Same orientation test as the one done first by {@link LineSegment#intersection(LineSegment)}, without
+     * allocation.
+     * @return False if the segments can not intersect
+     */
+    private static boolean mayIntersect(LineSegment a, LineSegment b) {
+        int pq1 = Orientation.index(a.p0, a.p1, b.p0);
+        int pq2 = Orientation.index(a.p0, a.p1, b.p1);
+        if ((pq1 > 0 && pq2 > 0) || (pq1 < 0 && pq2 < 0)) {
+            return false;
         }
+        int qp1 = Orientation.index(b.p0, b.p1, a.p0);
+        int qp2 = Orientation.index(b.p0, b.p1, a.p1);
+        return !((qp1 > 0 && qp2 > 0) || (qp1 < 0 && qp2 < 0));
     }
 
-
     /**
      * Get coordinates of triangle vertices
      * @param triIndex Index of triangle
      * @return triangle vertices
      */
     Coordinate[] getTriangle(int triIndex) {
-        final Triangle tri = this.topoTriangles.get(triIndex);
-        return new Coordinate[]{this.vertices.get(tri.getA()),
-                this.vertices.get(tri.getB()), this.vertices.get(tri.getC())};
+        if(topoGrid != null) {
+            return topoGrid.getTriangle(triIndex);
+        }
+        return topoMesh.getTriangle(triIndex);
     }
 
 
@@ -1322,9 +1376,8 @@ public class ProfileBuilder {
      * @return triangle vertices
      */
     Coordinate[] getClosedTriangle(int triIndex) {
-        final Triangle tri = this.topoTriangles.get(triIndex);
-        return new Coordinate[]{this.vertices.get(tri.getA()), this.vertices.get(tri.getB()),
-                this.vertices.get(tri.getC()), this.vertices.get(tri.getA())};
+        Coordinate[] triangle = getTriangle(triIndex);
+        return new Coordinate[]{triangle[0], triangle[1], triangle[2], new Coordinate(triangle[0])};
     }
 
     /**
@@ -1335,22 +1388,13 @@ public class ProfileBuilder {
      */
 
     public int getTriangleIdByCoordinate(Coordinate pt) {
-        Envelope ptEnv = new Envelope(pt);
-        ptEnv.expandBy(1);
-        var res = topoTree.query(new Envelope(ptEnv));
-        double minDistance = Double.MAX_VALUE;
-        int minDistanceTriangle = -1;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
-            Coordinate[] tri = getTriangle(triId);
-            AtomicReference<Double> err = new AtomicReference<>(0.);
-            JTSUtility.dotInTri(pt, tri[0], tri[1], tri[2], err);
-            if (err.get() < minDistance) {
-                minDistance = err.get();
-                minDistanceTriangle = triId;
-            }
+        if(topoGrid != null) {
+            return topoGrid.locate(pt.x, pt.y);
         }
-        return minDistanceTriangle;
+        if(topoMesh == null) {
+            return -1;
+        }
+        return topoMesh.locate(pt.x, pt.y);
     }
 
     /**
@@ -1360,11 +1404,12 @@ public class ProfileBuilder {
      * @param profile
      */
     public void addTopoCutPts(Coordinate p1, Coordinate p2, CutProfile profile, boolean stopAtObstacleOverSourceReceiver) {
-        List<Coordinate> coordinates = new ArrayList<>();
-        boolean freeField = fetchTopographicProfile(coordinates, p1, p2, stopAtObstacleOverSourceReceiver);
-        if(coordinates.size() >= 2) {
-            profile.getSource().zGround = coordinates.get(0).z;
-            profile.getReceiver().zGround = coordinates.get(coordinates.size() - 1).z;
+        TopographicProfileWalker walker = TOPOGRAPHIC_PROFILE_WALKER.get();
+        boolean freeField = walker.walk(this, p1, p2, stopAtObstacleOverSourceReceiver);
+        int pointCount = walker.getPointCount();
+        if(pointCount >= 2) {
+            profile.getSource().zGround = walker.getZ(0);
+            profile.getReceiver().zGround = walker.getZ(pointCount - 1);
         } else {
             LOGGER.warn(String.format(Locale.ROOT, "Propagation out of the DEM area from %s to %s",
                     p1.toString(), p2.toString()));
@@ -1372,15 +1417,22 @@ public class ProfileBuilder {
         }
         profile.hasTopographyIntersection = !freeField;
 
-        List<CutPointTopography> topographyList = new ArrayList<>(coordinates.size());
-        for(int idPoint = 1; idPoint < coordinates.size() - 1; idPoint++) {
-            final Coordinate previous = coordinates.get(idPoint - 1);
-            final Coordinate current = coordinates.get(idPoint);
-            final Coordinate next = coordinates.get(idPoint+1);
+        List<CutPointTopography> topographyList = new ArrayList<>(pointCount);
+        Coordinate previous = new Coordinate();
+        Coordinate current = new Coordinate();
+        Coordinate next = new Coordinate();
+        walker.getCoordinate(0, current);
+        walker.getCoordinate(1, next);
+        for(int idPoint = 1; idPoint < pointCount - 1; idPoint++) {
+            Coordinate swap = previous;
+            previous = current;
+            current = next;
+            next = swap;
+            walker.getCoordinate(idPoint + 1, next);
             // Do not add topographic points which are simply the linear interpolation between two points
             // triangulation add a lot of interpolated lines from line segment DEM
             if(CGAlgorithms3D.distancePointSegment(current, previous, next) >= DELTA) {
-                topographyList.add(new CutPointTopography(current));
+                topographyList.add(new CutPointTopography(new Coordinate(current)));
             }
         }
         profile.insertCutPoint(true, topographyList.toArray(CutPoint[]::new));
@@ -1399,14 +1451,18 @@ public class ProfileBuilder {
         if(queryEnvelope.getHeight() < 1.0 || queryEnvelope.getWidth() < 1) {
             queryEnvelope.expandBy(1.0);
         }
-        List res = topoTree.query(queryEnvelope);
+        List<Integer> res = new ArrayList<>();
+        if(topoGrid != null) {
+            queryGridTriangles(queryEnvelope, res);
+        } else if(topoMesh != null) {
+            topoMesh.query(queryEnvelope, res::add);
+        }
         double minDistance = Double.MAX_VALUE;
         int minDistanceTriangle = -1;
         GeometryFactory factory = new GeometryFactory();
         LineString lineString = factory.createLineString(new Coordinate[]{segment.p0, segment.p1});
         Coordinate intersectionPt = null;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
+        for(int triId : res) {
             Coordinate[] tri = getTriangle(triId);
             Geometry triangleGeometry = factory.createPolygon(new Coordinate[]{ tri[0], tri[1], tri[2], tri[0]});
             if(triangleGeometry.intersects(lineString)) {
@@ -1433,6 +1489,30 @@ public class ProfileBuilder {
         }
     }
 
+    /**
+     * @param queryEnvelope Search area
+     * @param triangles Output index of the grid triangles of the cells intersecting the area, without the triangles
+     *                  sharing a missing value
+     */
+    private void queryGridTriangles(Envelope queryEnvelope, List<Integer> triangles) {
+        int columns = topoGrid.getColumns();
+        int rows = topoGrid.getRows();
+        int minColumn = Math.max(0, (int) Math.floor(topoGrid.toGridX(queryEnvelope.getMinX())));
+        int maxColumn = Math.min(columns - 2, (int) Math.floor(topoGrid.toGridX(queryEnvelope.getMaxX())));
+        int minRow = Math.max(0, (int) Math.floor(topoGrid.toGridY(queryEnvelope.getMinY())));
+        int maxRow = Math.min(rows - 2, (int) Math.floor(topoGrid.toGridY(queryEnvelope.getMaxY())));
+        for(int row = minRow; row <= maxRow; row++) {
+            for(int column = minColumn; column <= maxColumn; column++) {
+                int cell = row * (columns - 1) + column;
+                for(int triangle = 2 * cell; triangle <= 2 * cell + 1; triangle++) {
+                    if(!topoGrid.isMissing(triangle)) {
+                        triangles.add(triangle);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Fetch all intersections with TIN. For simplification only plane change are pushed.
      * @param p1 first point
@@ -1441,58 +1521,9 @@ public class ProfileBuilder {
      * @return True if the segment p1-p2 is not intersecting with DEM
      */
     public boolean fetchTopographicProfile(List<Coordinate> outputPoints,Coordinate p1, Coordinate p2, boolean stopAtObstacleOverSourceReceiver) {
-        if(topoTree == null) {
-            return true;
-        }
-        //get origin triangle id
-        int curTriP1 = getTriangleIdByCoordinate(p1);
-        LineSegment propaLine = new LineSegment(p1, p2);
-        if(curTriP1 == -1) {
-            // we are outside the bounds of the triangles
-            // Find the closest triangle to p1 on the line p1 to p2
-            Coordinate intersectionPt = new Coordinate();
-            AtomicInteger minDistanceTriangle = new AtomicInteger();
-            if(findClosestTriangleIntersection(propaLine, intersectionPt, minDistanceTriangle)) {
-                Coordinate[] triangleVertex = getTriangleVertices(minDistanceTriangle.get());
-                outputPoints.add(new Coordinate(p1.x, p1.y,
-                        Vertex.interpolateZ(p2, triangleVertex[0], triangleVertex[1], triangleVertex[2])));
-                curTriP1 = minDistanceTriangle.get();
-            } else {
-                // out of DEM propagation area
-                return true;
-            }
-        }
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
-        int navigationTri = curTriP1;
-        // Add p1 coordinate
-        Coordinate[] triangleVertex = getTriangleVertices(curTriP1);
-        outputPoints.add(new Coordinate(p1.x, p1.y, Vertex.interpolateZ(p1, triangleVertex[0], triangleVertex[1], triangleVertex[2])));
-        boolean freeField = true;
-        while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate intersectionPt = new Coordinate();
-            int propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory, intersectionPt);
-            if(propaTri == -1) {
-                // Add p2 coordinate
-                triangleVertex = getTriangleVertices(navigationTri);
-                outputPoints.add(new Coordinate(p2.x, p2.y, Vertex.interpolateZ(p2, triangleVertex[0], triangleVertex[1], triangleVertex[2])));
-            } else {
-                // Found next triangle (if propaTri >= 0)
-                // extract X,Y,Z values of intersection with triangle segment
-                if(!Double.isNaN(intersectionPt.z)) {
-                    outputPoints.add(intersectionPt);
-                    Coordinate closestPointOnPropagationLine = propaLine.closestPoint(intersectionPt);
-                    double interpolatedZ = Vertex.interpolateZ(closestPointOnPropagationLine, propaLine.p0, propaLine.p1);
-                    if(interpolatedZ < intersectionPt.z) {
-                        freeField = false;
-                        if(stopAtObstacleOverSourceReceiver) {
-                            return false;
-                        }
-                    }
-                }
-            }
-            navigationTri = propaTri;
-        }
+        TopographicProfileWalker walker = TOPOGRAPHIC_PROFILE_WALKER.get();
+        boolean freeField = walker.walk(this, p1, p2, stopAtObstacleOverSourceReceiver);
+        walker.copyPoints(outputPoints);
         return freeField;
     }
 
@@ -1509,7 +1540,7 @@ public class ProfileBuilder {
      * @return True if digital elevation model has been added
      */
     public boolean hasDem() {
-        return topoTree != null && !topoTree.isEmpty();
+        return topoGrid != null || (topoMesh != null && topoMesh.getTriangleCount() > 0);
     }
 
     /**
@@ -1517,9 +1548,20 @@ public class ProfileBuilder {
      */
     public MultiPolygon demAsMultiPolygon() {
         GeometryFactory GF = new GeometryFactory();
-        if(!topoTriangles.isEmpty()) {
-            List<Polygon> polyTri = new ArrayList<>(topoTriangles.size());
-            for (int i = 0; i < topoTriangles.size(); i++) {
+        if(topoGrid != null) {
+            List<Polygon> polyTri = new ArrayList<>(topoGrid.getTriangleCount());
+            for (int i = 0; i < topoGrid.getTriangleCount(); i++) {
+                if(topoGrid.isMissing(i)) {
+                    continue;
+                }
+                Coordinate[] triangle = topoGrid.getTriangle(i);
+                polyTri.add(GF.createPolygon(new Coordinate[]{triangle[0], triangle[1], triangle[2],
+                        new Coordinate(triangle[0])}));
+            }
+            return GF.createMultiPolygon(polyTri.toArray(Polygon[]::new));
+        } else if(hasDem()) {
+            List<Polygon> polyTri = new ArrayList<>(topoMesh.getTriangleCount());
+            for (int i = 0; i < topoMesh.getTriangleCount(); i++) {
                 polyTri.add(GF.createPolygon(getClosedTriangle(i)));
             }
             return GF.createMultiPolygon(polyTri.toArray(Polygon[]::new));
@@ -1544,32 +1586,28 @@ public class ProfileBuilder {
      * @return Altitude in meters from sea level
      */
     public double getZGround(Coordinate coordinate, AtomicInteger triangleHint) {
-        if(topoTree == null) {
+        if(topoGrid != null) {
+            double z = topoGrid.getZ(coordinate.x, coordinate.y);
+            return isNaN(z) ? 0.0 : z;
+        }
+        if(topoMesh == null) {
             return 0.0;
         }
         int i = triangleHint.get();
-        if(i >= 0 && i < topoTriangles.size()) {
-            final Triangle tri = topoTriangles.get(i);
-            final Coordinate p1 = vertices.get(tri.getA());
-            final Coordinate p2 = vertices.get(tri.getB());
-            final Coordinate p3 = vertices.get(tri.getC());
-            if(!JTSUtility.dotInTri(coordinate, p1, p2, p3)) {
+        if(i >= 0 && i < topoMesh.getTriangleCount()) {
+            if(!topoMesh.contains(i, coordinate.x, coordinate.y)) {
                 i = -1;
             }
         }
         if(i < 0) {
-            i = getTriangleIdByCoordinate(coordinate);
+            i = topoMesh.locate(coordinate.x, coordinate.y);
             if(i == -1) {
                 return 0.0;
             }
         }
-        final Triangle tri = topoTriangles.get(i);
-        final Coordinate p1 = vertices.get(tri.getA());
-        final Coordinate p2 = vertices.get(tri.getB());
-        final Coordinate p3 = vertices.get(tri.getC());
-        if(JTSUtility.dotInTri(coordinate, p1, p2, p3)) {
+        if(topoMesh.contains(i, coordinate.x, coordinate.y)) {
             triangleHint.set(i);
-            return Vertex.interpolateZ(coordinate, p1, p2, p3);
+            return topoMesh.interpolateZ(i, coordinate.x, coordinate.y);
         } else {
             return 0.0;
         }
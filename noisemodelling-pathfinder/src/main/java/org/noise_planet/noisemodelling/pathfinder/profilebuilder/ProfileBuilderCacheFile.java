@@ -0,0 +1,349 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.noise_planet.noisemodelling.pathfinder.delaunay.Triangle;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file holding the geometry of a {@link ProfileBuilder} with its topographic mesh, so that a later run can
+ * feed a ProfileBuilder without querying the database and without the triangulation of the DEM.
+ * The file contains the buildings, the walls, the ground effects, the triangles with their neighbors and the
+ * topographic grid. The walls
+ * rtree and the processed walls are rebuilt by {@link ProfileBuilder#finishFeeding()}.
+ * The absorption of buildings and walls is stored as the G value, the frequency dependant alpha values are computed
+ * again from it.
+ * The SRID of the geometries is stored in the header, the geometries read from the file are created with it.
+ * The file is read through a memory mapped buffer, the altitudes of the topographic grid are not copied, the
+ * {@link TopographicGrid} read the mapped file.
+ */
+public final class ProfileBuilderCacheFile {
+    /** "NMPB" */
+    public static final int MAGIC = 0x4E4D5042;
+    /** Incremented each time the layout of the file change, files with another version are ignored */
+    public static final int VERSION = 3;
+    private static final byte POLYGON = 0;
+    private static final byte MULTI_POLYGON = 1;
+
+    private ProfileBuilderCacheFile() {
+    }
+
+    /**
+     * Write the geometry of the ProfileBuilder. The file is written next to the destination then moved in order to
+     * never expose a partially written file to another reader.
+     * @param profileBuilder ProfileBuilder with feeding finished
+     * @param file Destination file
+     * @param key Identifier of the content (input tables fingerprint, envelope, settings)
+     * @throws IOException On write error
+     */
+    public static void write(ProfileBuilder profileBuilder, Path file, String key) throws IOException {
+        Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream fileStream = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(getSRID(profileBuilder));
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeBoolean(profileBuilder.zBuildings);
+                // Buildings
+                List<Building> buildings = profileBuilder.getBuildings();
+                out.writeInt(buildings.size());
+                for (Building building : buildings) {
+                    writePolygon(out, building.poly);
+                    out.writeDouble(building.height);
+                    out.writeDouble(building.getG());
+                    out.writeLong(building.primaryKey);
+                    out.writeBoolean(building.zBuildings);
+                }
+                // Walls
+                List<Wall> walls = profileBuilder.getWalls();
+                out.writeInt(walls.size());
+                for (Wall wall : walls) {
+                    writeCoordinate(out, wall.p0);
+                    writeCoordinate(out, wall.p1);
+                    out.writeDouble(wall.height);
+                    out.writeDouble(wall.getG());
+                    out.writeLong(wall.primaryKey);
+                    out.writeInt(wall.originId);
+                    out.writeInt(wall.type.ordinal());
+                }
+                // Ground effects
+                List<GroundAbsorption> groundAbsorptions = profileBuilder.getGroundEffects();
+                out.writeInt(groundAbsorptions.size());
+                for (GroundAbsorption groundAbsorption : groundAbsorptions) {
+                    out.writeDouble(groundAbsorption.coef);
+                    if (groundAbsorption.geom instanceof MultiPolygon) {
+                        out.writeByte(MULTI_POLYGON);
+                        out.writeInt(groundAbsorption.geom.getNumGeometries());
+                        for (int i = 0; i < groundAbsorption.geom.getNumGeometries(); i++) {
+                            writePolygon(out, (Polygon) groundAbsorption.geom.getGeometryN(i));
+                        }
+                    } else {
+                        out.writeByte(POLYGON);
+                        writePolygon(out, (Polygon) groundAbsorption.geom);
+                    }
+                }
+                // Topographic mesh
+                List<Coordinate> vertices = profileBuilder.getVertices();
+                out.writeInt(vertices.size());
+                for (Coordinate vertex : vertices) {
+                    writeCoordinate(out, vertex);
+                }
+                List<Triangle> triangles = profileBuilder.getTriangles();
+                out.writeInt(triangles.size());
+                for (Triangle triangle : triangles) {
+                    out.writeInt(triangle.getA());
+                    out.writeInt(triangle.getB());
+                    out.writeInt(triangle.getC());
+                    out.writeInt(triangle.getAttribute());
+                }
+                List<Triangle> neighbors = profileBuilder.getTriangleNeighbors();
+                out.writeInt(neighbors.size());
+                for (Triangle neighbor : neighbors) {
+                    out.writeInt(neighbor.getA());
+                    out.writeInt(neighbor.getB());
+                    out.writeInt(neighbor.getC());
+                }
+                // Topographic grid
+                TopographicGrid grid = profileBuilder.getTopographicGrid();
+                out.writeBoolean(grid != null);
+                if (grid != null) {
+                    out.writeDouble(grid.getOriginX());
+                    out.writeDouble(grid.getOriginY());
+                    out.writeDouble(grid.getCellWidth());
+                    out.writeDouble(grid.getCellHeight());
+                    out.writeInt(grid.getColumns());
+                    out.writeInt(grid.getRows());
+                    for (int row = 0; row < grid.getRows(); row++) {
+                        for (int column = 0; column < grid.getColumns(); column++) {
+                            out.writeFloat(grid.getValue(column, row));
+                        }
+                    }
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Feed the ProfileBuilder with the content of the file. The caller must call
+     * {@link ProfileBuilder#finishFeeding()} afterward. The ProfileBuilder is not modified if the method return false.
+     * @param file Cache file
+     * @param key Expected identifier of the content
+     * @param profileBuilder ProfileBuilder to feed
+     * @return False if the file does not exist, has been written by another version or for another key
+     * @throws IOException If the file can't be read or is corrupted
+     */
+    public static boolean read(Path file, String key, ProfileBuilder profileBuilder) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < Integer.BYTES * 4 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            GeometryFactory factory = new GeometryFactory(new PrecisionModel(), buffer.getInt());
+            byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+                return false;
+            }
+            boolean zBuildings = buffer.get() != 0;
+            // Buildings
+            int buildingCount = buffer.getInt();
+            List<Building> buildings = new ArrayList<>(buildingCount);
+            for (int i = 0; i < buildingCount; i++) {
+                Polygon polygon = readPolygon(buffer, factory);
+                double height = buffer.getDouble();
+                double g = buffer.getDouble();
+                long primaryKey = buffer.getLong();
+                boolean buildingZ = buffer.get() != 0;
+                buildings.add(new Building(polygon, height, g, primaryKey, buildingZ));
+            }
+            // Walls
+            int wallCount = buffer.getInt();
+            List<Wall> walls = new ArrayList<>(wallCount);
+            ProfileBuilder.IntersectionType[] types = ProfileBuilder.IntersectionType.values();
+            for (int i = 0; i < wallCount; i++) {
+                Coordinate p0 = readCoordinate(buffer);
+                Coordinate p1 = readCoordinate(buffer);
+                double height = buffer.getDouble();
+                double g = buffer.getDouble();
+                long primaryKey = buffer.getLong();
+                int originId = buffer.getInt();
+                Wall wall = new Wall(p0, p1, originId, types[buffer.getInt()]);
+                wall.setHeight(height);
+                wall.setG(g);
+                wall.setPrimaryKey(primaryKey);
+                walls.add(wall);
+            }
+            // Ground effects
+            int groundCount = buffer.getInt();
+            List<GroundAbsorption> groundAbsorptions = new ArrayList<>(groundCount);
+            for (int i = 0; i < groundCount; i++) {
+                double coefficient = buffer.getDouble();
+                Geometry geometry;
+                if (buffer.get() == MULTI_POLYGON) {
+                    Polygon[] polygons = new Polygon[buffer.getInt()];
+                    for (int idPoly = 0; idPoly < polygons.length; idPoly++) {
+                        polygons[idPoly] = readPolygon(buffer, factory);
+                    }
+                    geometry = factory.createMultiPolygon(polygons);
+                } else {
+                    geometry = readPolygon(buffer, factory);
+                }
+                groundAbsorptions.add(new GroundAbsorption(geometry, coefficient));
+            }
+            // Topographic mesh
+            int vertexCount = buffer.getInt();
+            List<Coordinate> vertices = new ArrayList<>(vertexCount);
+            for (int i = 0; i < vertexCount; i++) {
+                vertices.add(readCoordinate(buffer));
+            }
+            int triangleCount = buffer.getInt();
+            List<Triangle> triangles = new ArrayList<>(triangleCount);
+            for (int i = 0; i < triangleCount; i++) {
+                triangles.add(new Triangle(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+            int neighborCount = buffer.getInt();
+            List<Triangle> neighbors = new ArrayList<>(neighborCount);
+            for (int i = 0; i < neighborCount; i++) {
+                neighbors.add(new Triangle(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+            // Topographic grid
+            TopographicGrid grid = null;
+            if (buffer.get() != 0) {
+                double originX = buffer.getDouble();
+                double originY = buffer.getDouble();
+                double cellWidth = buffer.getDouble();
+                double cellHeight = buffer.getDouble();
+                int columns = buffer.getInt();
+                int rows = buffer.getInt();
+                // View of the mapped file, valid after the channel is closed
+                grid = new TopographicGrid(originX, originY, cellWidth, cellHeight, columns, rows,
+                        buffer.slice().asFloatBuffer());
+            }
+            // The whole file has been read, feed the builder
+            profileBuilder.setzBuildings(zBuildings);
+            for (Building building : buildings) {
+                profileBuilder.addBuilding(building);
+            }
+            for (Wall wall : walls) {
+                profileBuilder.addWall(wall);
+            }
+            for (GroundAbsorption groundAbsorption : groundAbsorptions) {
+                profileBuilder.addGroundEffect(groundAbsorption.geom, groundAbsorption.coef);
+            }
+            if (!vertices.isEmpty()) {
+                profileBuilder.setTopographicMesh(vertices, triangles, neighbors);
+            }
+            if (grid != null) {
+                profileBuilder.setTopographicGrid(grid);
+            }
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Corrupted cache file " + file, ex);
+        }
+    }
+
+    /**
+     * @param profileBuilder ProfileBuilder with feeding finished
+     * @return SRID of the first building or ground effect having one, 0 if none
+     */
+    private static int getSRID(ProfileBuilder profileBuilder) {
+        for (Building building : profileBuilder.getBuildings()) {
+            if (building.poly.getSRID() != 0) {
+                return building.poly.getSRID();
+            }
+        }
+        for (GroundAbsorption groundAbsorption : profileBuilder.getGroundEffects()) {
+            if (groundAbsorption.geom.getSRID() != 0) {
+                return groundAbsorption.geom.getSRID();
+            }
+        }
+        return 0;
+    }
+
+    private static void writeCoordinate(DataOutputStream out, Coordinate coordinate) throws IOException {
+        out.writeDouble(coordinate.x);
+        out.writeDouble(coordinate.y);
+        out.writeDouble(coordinate.z);
+    }
+
+    private static Coordinate readCoordinate(ByteBuffer buffer) {
+        return new Coordinate(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+    }
+
+    private static void writeRing(DataOutputStream out, LinearRing ring) throws IOException {
+        Coordinate[] coordinates = ring.getCoordinates();
+        out.writeInt(coordinates.length);
+        for (Coordinate coordinate : coordinates) {
+            writeCoordinate(out, coordinate);
+        }
+    }
+
+    private static LinearRing readRing(ByteBuffer buffer, GeometryFactory factory) {
+        Coordinate[] coordinates = new Coordinate[buffer.getInt()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = readCoordinate(buffer);
+        }
+        return factory.createLinearRing(coordinates);
+    }
+
+    private static void writePolygon(DataOutputStream out, Polygon polygon) throws IOException {
+        out.writeInt(polygon.getNumInteriorRing());
+        writeRing(out, polygon.getExteriorRing());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            writeRing(out, polygon.getInteriorRingN(i));
+        }
+    }
+
+    private static Polygon readPolygon(ByteBuffer buffer, GeometryFactory factory) {
+        LinearRing[] holes = new LinearRing[buffer.getInt()];
+        LinearRing shell = readRing(buffer, factory);
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = readRing(buffer, factory);
+        }
+        return factory.createPolygon(shell, holes);
+    }
+}
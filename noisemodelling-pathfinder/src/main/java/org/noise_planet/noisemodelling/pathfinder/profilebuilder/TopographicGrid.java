@@ -0,0 +1,256 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.nio.FloatBuffer;
+import java.util.Locale;
+
+/**
+ * Digital elevation model stored as a regular grid of altitudes, 4 bytes per sample. The values can be a view of a
+ * memory mapped file, see {@link ProfileBuilderCacheFile}.
+ * Each grid cell is split into two triangles along the diagonal going from the sample (column, row) to the sample
+ * (column + 1, row + 1), the altitude is linearly interpolated on the triangles. The grid is then the same surface as
+ * the equivalent triangulated DEM and the profiles do not depend on the DEM storage.
+ * A NaN sample is a missing value, the triangles sharing this sample are out of the DEM.
+ * This class is immutable and can be shared between threads.
+ */
+public final class TopographicGrid {
+    /** Locations closer than this distance in grid units to a sample line are moved on the line */
+    private static final double SAMPLE_EPSILON = 1e-9;
+    private final double originX;
+    private final double originY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    /** Altitudes, row after row, the first row is the southernmost one */
+    private final FloatBuffer values;
+
+    /**
+     * @param originX X location of the first sample (column 0, row 0) the lowest X
+     * @param originY Y location of the first sample (column 0, row 0) the lowest Y
+     * @param cellWidth Distance along X between two samples
+     * @param cellHeight Distance along Y between two samples
+     * @param columns Number of samples along X
+     * @param rows Number of samples along Y
+     * @param values Altitudes row after row from the remaining content of the buffer, starting with the row at
+     *               originY. The buffer must not be modified afterward.
+     */
+    public TopographicGrid(double originX, double originY, double cellWidth, double cellHeight, int columns, int rows,
+                           FloatBuffer values) {
+        if(columns < 2 || rows < 2) {
+            throw new IllegalArgumentException("The grid must have at least 2 columns and 2 rows");
+        }
+        if(!(cellWidth > 0) || !(cellHeight > 0)) {
+            throw new IllegalArgumentException("The grid cell size must be strictly positive");
+        }
+        if(values.remaining() < (long) columns * rows) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                    "Expected %d values for a %dx%d grid, got %d", (long) columns * rows, columns, rows,
+                    values.remaining()));
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.values = values.slice();
+    }
+
+    /**
+     * @param originX X location of the first sample (column 0, row 0) the lowest X
+     * @param originY Y location of the first sample (column 0, row 0) the lowest Y
+     * @param cellWidth Distance along X between two samples
+     * @param cellHeight Distance along Y between two samples
+     * @param columns Number of samples along X
+     * @param rows Number of samples along Y
+     * @param values Altitudes row after row, starting with the row at originY
+     */
+    public TopographicGrid(double originX, double originY, double cellWidth, double cellHeight, int columns, int rows,
+                           float[] values) {
+        this(originX, originY, cellWidth, cellHeight, columns, rows, FloatBuffer.wrap(values));
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param column Column index [0-{@link #getColumns()}[
+     * @param row Row index [0-{@link #getRows()}[
+     * @return Altitude of the sample
+     */
+    public float getValue(int column, int row) {
+        return values.get(row * columns + column);
+    }
+
+    /**
+     * @return Extent of the samples
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(originX, originX + (columns - 1) * cellWidth, originY,
+                originY + (rows - 1) * cellHeight);
+    }
+
+    /**
+     * @param x X location
+     * @return Location in grid units, 0 is the first column
+     */
+    double toGridX(double x) {
+        return (x - originX) / cellWidth;
+    }
+
+    /**
+     * @param y Y location
+     * @return Location in grid units, 0 is the first row
+     */
+    double toGridY(double y) {
+        return (y - originY) / cellHeight;
+    }
+
+    /**
+     * @param x X location
+     * @param y Y location
+     * @return Interpolated altitude, NaN if the location is out of the grid or if a sample contributing to the
+     * altitude is a missing value
+     */
+    public double getZ(double x, double y) {
+        double gridX = toGridX(x);
+        double gridY = toGridY(y);
+        if(gridX >= 0 && gridX <= columns - 1 && gridY >= 0 && gridY <= rows - 1) {
+            return interpolateZ(gridX, gridY);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @param gridX Location in grid units, clamped to the grid
+     * @param gridY Location in grid units, clamped to the grid
+     * @return Interpolated altitude, NaN if a sample contributing to the altitude is a missing value
+     */
+    double interpolateZ(double gridX, double gridY) {
+        gridX = snapToSample(Math.max(0, Math.min(columns - 1, gridX)));
+        gridY = snapToSample(Math.max(0, Math.min(rows - 1, gridY)));
+        int column = Math.min((int) gridX, columns - 2);
+        int row = Math.min((int) gridY, rows - 2);
+        double u = gridX - column;
+        double v = gridY - row;
+        int index = row * columns + column;
+        // Barycentric weights, the samples with a zero weight are not read so a location on a valid sample or on
+        // a side of a valid triangle is not affected by a missing neighbour
+        double z = weightedSample(0, 1 - Math.max(u, v), index);
+        z = weightedSample(z, Math.min(u, v), index + columns + 1);
+        if(u >= v) {
+            // Triangle (column, row), (column + 1, row), (column + 1, row + 1)
+            return weightedSample(z, u - v, index + 1);
+        } else {
+            // Triangle (column, row), (column + 1, row + 1), (column, row + 1)
+            return weightedSample(z, v - u, index + columns);
+        }
+    }
+
+    /**
+     * @return sum + weight * value of the sample, sum if the weight is zero
+     */
+    private double weightedSample(double sum, double weight, int index) {
+        return weight == 0 ? sum : sum + weight * values.get(index);
+    }
+
+    /**
+     * @param gridLocation Location in grid units
+     * @return The nearest sample location if the location is closer than the rounding error of the grid units
+     */
+    private static double snapToSample(double gridLocation) {
+        double sample = Math.rint(gridLocation);
+        return Math.abs(gridLocation - sample) < SAMPLE_EPSILON ? sample : gridLocation;
+    }
+
+    /**
+     * @return Number of triangles, two per grid cell
+     */
+    public int getTriangleCount() {
+        return 2 * (columns - 1) * (rows - 1);
+    }
+
+    /**
+     * @param triangle Triangle index [0-{@link #getTriangleCount()}[, the triangle 2 * cell is under the diagonal of the
+     *                 cell and the triangle 2 * cell + 1 is above, the cell index being row * (columns - 1) + column
+     * @return The three vertices of the triangle in counter-clockwise order
+     */
+    public Coordinate[] getTriangle(int triangle) {
+        int cell = triangle / 2;
+        int column = cell % (columns - 1);
+        int row = cell / (columns - 1);
+        if(triangle % 2 == 0) {
+            return new Coordinate[]{getVertex(column, row), getVertex(column + 1, row),
+                    getVertex(column + 1, row + 1)};
+        } else {
+            return new Coordinate[]{getVertex(column, row), getVertex(column + 1, row + 1),
+                    getVertex(column, row + 1)};
+        }
+    }
+
+    /**
+     * @param x X location
+     * @param y Y location
+     * @return Index of the triangle containing the location, -1 if the location is out of the grid or on a triangle
+     * sharing a missing value
+     */
+    public int locate(double x, double y) {
+        double gridX = toGridX(x);
+        double gridY = toGridY(y);
+        if(!(gridX >= 0 && gridX <= columns - 1 && gridY >= 0 && gridY <= rows - 1)) {
+            return -1;
+        }
+        int column = Math.min((int) gridX, columns - 2);
+        int row = Math.min((int) gridY, rows - 2);
+        int triangle = 2 * (row * (columns - 1) + column) + (gridX - column >= gridY - row ? 0 : 1);
+        return isMissing(triangle) ? -1 : triangle;
+    }
+
+    /**
+     * @param triangle Triangle index [0-{@link #getTriangleCount()}[
+     * @return True if a vertex of the triangle is a missing value
+     */
+    public boolean isMissing(int triangle) {
+        int cell = triangle / 2;
+        int index = (cell / (columns - 1)) * columns + cell % (columns - 1);
+        return Float.isNaN(values.get(index)) || Float.isNaN(values.get(index + columns + 1)) ||
+                Float.isNaN(values.get(triangle % 2 == 0 ? index + 1 : index + columns));
+    }
+
+    private Coordinate getVertex(int column, int row) {
+        return new Coordinate(originX + column * cellWidth, originY + row * cellHeight, getValue(column, row));
+    }
+}
@@ -0,0 +1,419 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.delaunay.Triangle;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Triangulated digital elevation model stored in primitive arrays.
+ * Vertices are packed as x, y, z triples, triangles as 3 vertex indexes and 3 neighbor triangle indexes (the neighbor
+ * at index i is on the opposite side of the vertex i, -1 if none).
+ * Triangles are located with a uniform grid, each grid cell holds the triangles whose envelope overlap the cell.
+ * The buckets of all the grid cells are stored in a single int array.
+ * This class is immutable and can be shared between threads.
+ */
+final class TopographicMesh {
+    /** Targeted average number of triangles per grid cell */
+    private static final double TRIANGLES_PER_CELL = 2.0;
+    /** Maximum number of grid cells */
+    private static final int MAXIMUM_CELL_COUNT = 1 << 24;
+    /** Search distance in meters around a location out of any triangle */
+    static final double LOCATE_SEARCH_DISTANCE = 1.0;
+    /** x, y, z of the vertices */
+    final double[] vertices;
+    /** Vertex indexes of the triangles, 3 values per triangle */
+    final int[] triangleVertices;
+    /** Neighbor triangle indexes of the triangles, 3 values per triangle */
+    final int[] triangleNeighbors;
+    private final double gridMinX;
+    private final double gridMinY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    /** Index in cellTriangles of the first triangle of each grid cell, the last value is the bucket total length */
+    private final int[] cellStart;
+    /** Triangles of all grid cells */
+    private final int[] cellTriangles;
+
+    /**
+     * @param vertices Mesh vertices
+     * @param triangles Triangles, vertex indexes in the vertices list
+     * @param neighbors Neighbors of each triangle, triangle index (-1 if none) on the opposite side of each vertex
+     */
+    TopographicMesh(List<Coordinate> vertices, List<Triangle> triangles, List<Triangle> neighbors) {
+        this.vertices = new double[vertices.size() * 3];
+        Envelope envelope = new Envelope();
+        for (int i = 0; i < vertices.size(); i++) {
+            Coordinate vertex = vertices.get(i);
+            this.vertices[i * 3] = vertex.x;
+            this.vertices[i * 3 + 1] = vertex.y;
+            this.vertices[i * 3 + 2] = vertex.z;
+            envelope.expandToInclude(vertex);
+        }
+        triangleVertices = new int[triangles.size() * 3];
+        triangleNeighbors = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            Triangle triangle = triangles.get(i);
+            Triangle triangleNeighbor = neighbors.get(i);
+            for (int side = 0; side < 3; side++) {
+                triangleVertices[i * 3 + side] = triangle.get(side);
+                triangleNeighbors[i * 3 + side] = triangleNeighbor.get(side);
+            }
+        }
+        // Grid size
+        if(envelope.isNull()) {
+            envelope = new Envelope(0, 0, 0, 0);
+        }
+        gridMinX = envelope.getMinX();
+        gridMinY = envelope.getMinY();
+        double targetCellCount = Math.min(MAXIMUM_CELL_COUNT, Math.max(1, triangles.size() / TRIANGLES_PER_CELL));
+        double area = envelope.getWidth() * envelope.getHeight();
+        double size = area > 0 ? Math.sqrt(area / targetCellCount) : Math.max(envelope.getWidth(), envelope.getHeight());
+        cellSize = size > 0 ? size : 1.0;
+        columns = Math.max(1, Math.min(MAXIMUM_CELL_COUNT, (int) Math.ceil(envelope.getWidth() / cellSize)));
+        rows = Math.max(1, Math.min(MAXIMUM_CELL_COUNT / columns, (int) Math.ceil(envelope.getHeight() / cellSize)));
+        // Count the triangles of each cell then fill the buckets
+        int cellCount = columns * rows;
+        cellStart = new int[cellCount + 1];
+        int triangleCount = triangles.size();
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int minColumn = getColumn(getTriangleMinX(triangle));
+            int maxColumn = getColumn(getTriangleMaxX(triangle));
+            int maxRow = getRow(getTriangleMaxY(triangle));
+            for (int row = getRow(getTriangleMinY(triangle)); row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellTriangles = new int[cellStart[cellCount]];
+        int[] cellCursor = Arrays.copyOf(cellStart, cellCount);
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int minColumn = getColumn(getTriangleMinX(triangle));
+            int maxColumn = getColumn(getTriangleMaxX(triangle));
+            int maxRow = getRow(getTriangleMaxY(triangle));
+            for (int row = getRow(getTriangleMinY(triangle)); row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellTriangles[cellCursor[row * columns + column]++] = triangle;
+                }
+            }
+        }
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - gridMinX) / cellSize)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - gridMinY) / cellSize)));
+    }
+
+    private double getTriangleMinX(int triangle) {
+        return Math.min(getX(triangleVertices[triangle * 3]), Math.min(getX(triangleVertices[triangle * 3 + 1]),
+                getX(triangleVertices[triangle * 3 + 2])));
+    }
+
+    private double getTriangleMaxX(int triangle) {
+        return Math.max(getX(triangleVertices[triangle * 3]), Math.max(getX(triangleVertices[triangle * 3 + 1]),
+                getX(triangleVertices[triangle * 3 + 2])));
+    }
+
+    private double getTriangleMinY(int triangle) {
+        return Math.min(getY(triangleVertices[triangle * 3]), Math.min(getY(triangleVertices[triangle * 3 + 1]),
+                getY(triangleVertices[triangle * 3 + 2])));
+    }
+
+    private double getTriangleMaxY(int triangle) {
+        return Math.max(getY(triangleVertices[triangle * 3]), Math.max(getY(triangleVertices[triangle * 3 + 1]),
+                getY(triangleVertices[triangle * 3 + 2])));
+    }
+
+    /**
+     * @return Number of triangles
+     */
+    int getTriangleCount() {
+        return triangleVertices.length / 3;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    double getX(int vertex) {
+        return vertices[vertex * 3];
+    }
+
+    double getY(int vertex) {
+        return vertices[vertex * 3 + 1];
+    }
+
+    double getZ(int vertex) {
+        return vertices[vertex * 3 + 2];
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param side Vertex index in the triangle [0-2]
+     * @param coordinate (output) Vertex location
+     */
+    void getTriangleVertex(int triangle, int side, Coordinate coordinate) {
+        int vertex = triangleVertices[triangle * 3 + side];
+        coordinate.x = vertices[vertex * 3];
+        coordinate.y = vertices[vertex * 3 + 1];
+        coordinate.z = vertices[vertex * 3 + 2];
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @return Copy of the triangle vertices
+     */
+    Coordinate[] getTriangle(int triangle) {
+        Coordinate[] coordinates = new Coordinate[3];
+        for (int side = 0; side < 3; side++) {
+            coordinates[side] = new Coordinate();
+            getTriangleVertex(triangle, side, coordinates[side]);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Same as {@link org.locationtech.jts.triangulate.quadedge.Vertex#interpolateZ(Coordinate, Coordinate,
+     * Coordinate, Coordinate)} with the triangle vertices
+     * @param triangle Triangle index
+     * @param x Location x
+     * @param y Location y
+     * @return Altitude of the triangle plane at the location
+     */
+    double interpolateZ(int triangle, double x, double y) {
+        int v0 = triangleVertices[triangle * 3] * 3;
+        int v1 = triangleVertices[triangle * 3 + 1] * 3;
+        int v2 = triangleVertices[triangle * 3 + 2] * 3;
+        double x0 = vertices[v0];
+        double y0 = vertices[v0 + 1];
+        double a = vertices[v1] - x0;
+        double b = vertices[v2] - x0;
+        double c = vertices[v1 + 1] - y0;
+        double d = vertices[v2 + 1] - y0;
+        double det = a * d - b * c;
+        double dx = x - x0;
+        double dy = y - y0;
+        double t = (d * dx - b * dy) / det;
+        double u = (-c * dx + a * dy) / det;
+        double z0 = vertices[v0 + 2];
+        return z0 + t * (vertices[v1 + 2] - z0) + u * (vertices[v2 + 2] - z0);
+    }
+
+    /**
+     * Same barycentric test as {@link JTSUtility#dotInTri(Coordinate, Coordinate, Coordinate, Coordinate,
+     * java.util.concurrent.atomic.AtomicReference)}
+     * @param triangle Triangle index
+     * @param x Location x
+     * @param y Location y
+     * @return 0 if the location is in the triangle, the barycentric distance to the triangle otherwise
+     */
+    double locationError(int triangle, double x, double y) {
+        int va = triangleVertices[triangle * 3] * 3;
+        int vb = triangleVertices[triangle * 3 + 1] * 3;
+        int vc = triangleVertices[triangle * 3 + 2] * 3;
+        double ax = vertices[va];
+        double ay = vertices[va + 1];
+        double v0x = vertices[vc] - ax;
+        double v0y = vertices[vc + 1] - ay;
+        double v1x = vertices[vb] - ax;
+        double v1y = vertices[vb + 1] - ay;
+        double v2x = x - ax;
+        double v2y = y - ay;
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        double err = 0;
+        err += Math.max(0, -u);
+        err += Math.max(0, -v);
+        err += Math.max(0, (u + v) - 1);
+        return err;
+    }
+
+    /**
+     * Same test as {@link JTSUtility#dotInTri(Coordinate, Coordinate, Coordinate, Coordinate)}
+     * @param triangle Triangle index
+     * @param x Location x
+     * @param y Location y
+     * @return True if the location is in the triangle
+     */
+    boolean contains(int triangle, double x, double y) {
+        int va = triangleVertices[triangle * 3] * 3;
+        int vb = triangleVertices[triangle * 3 + 1] * 3;
+        int vc = triangleVertices[triangle * 3 + 2] * 3;
+        double ax = vertices[va];
+        double ay = vertices[va + 1];
+        double v0x = vertices[vc] - ax;
+        double v0y = vertices[vc + 1] - ay;
+        double v1x = vertices[vb] - ax;
+        double v1y = vertices[vb + 1] - ay;
+        double v2x = x - ax;
+        double v2y = y - ay;
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        return (u > (0. - JTSUtility.TRIANGLE_INTERSECTION_EPSILON)) &&
+                (v > (0. - JTSUtility.TRIANGLE_INTERSECTION_EPSILON)) &&
+                (u + v < (1. + JTSUtility.TRIANGLE_INTERSECTION_EPSILON));
+    }
+
+    /**
+     * Find the triangle that contains the location. If the location is not in a triangle, the closest triangle
+     * (barycentric distance) whose envelope is at less than {@link #LOCATE_SEARCH_DISTANCE} is returned.
+     * @param x Location x
+     * @param y Location y
+     * @return Triangle index or -1 if no triangle is found
+     */
+    int locate(double x, double y) {
+        // Look first in the grid cell of the location
+        if(x >= gridMinX && y >= gridMinY) {
+            int column = (int) Math.floor((x - gridMinX) / cellSize);
+            int row = (int) Math.floor((y - gridMinY) / cellSize);
+            if(column < columns && row < rows) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int triangle = cellTriangles[i];
+                    if(locationError(triangle, x, y) == 0) {
+                        return triangle;
+                    }
+                }
+            }
+        }
+        // Not in a triangle, look for the closest one
+        double minX = x - LOCATE_SEARCH_DISTANCE;
+        double maxX = x + LOCATE_SEARCH_DISTANCE;
+        double minY = y - LOCATE_SEARCH_DISTANCE;
+        double maxY = y + LOCATE_SEARCH_DISTANCE;
+        if(maxX < gridMinX || maxY < gridMinY || minX > gridMinX + columns * cellSize ||
+                minY > gridMinY + rows * cellSize) {
+            return -1;
+        }
+        double minDistance = Double.MAX_VALUE;
+        int minDistanceTriangle = -1;
+        int maxColumn = getColumn(maxX);
+        int maxRow = getRow(maxY);
+        for (int row = getRow(minY); row <= maxRow; row++) {
+            for (int column = getColumn(minX); column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int triangle = cellTriangles[i];
+                    if(getTriangleMaxX(triangle) < minX || getTriangleMinX(triangle) > maxX ||
+                            getTriangleMaxY(triangle) < minY || getTriangleMinY(triangle) > maxY) {
+                        continue;
+                    }
+                    double error = locationError(triangle, x, y);
+                    if(error < minDistance) {
+                        minDistance = error;
+                        minDistanceTriangle = triangle;
+                    }
+                }
+            }
+        }
+        return minDistanceTriangle;
+    }
+
+    /**
+     * Visit the triangles whose envelope intersects the provided envelope. A triangle may be visited more than once.
+     * @param envelope Query envelope
+     * @param visitor Called with each triangle index
+     */
+    void query(Envelope envelope, IntConsumer visitor) {
+        if(envelope.getMaxX() < gridMinX || envelope.getMaxY() < gridMinY ||
+                envelope.getMinX() > gridMinX + columns * cellSize || envelope.getMinY() > gridMinY + rows * cellSize) {
+            return;
+        }
+        int maxColumn = getColumn(envelope.getMaxX());
+        int maxRow = getRow(envelope.getMaxY());
+        for (int row = getRow(envelope.getMinY()); row <= maxRow; row++) {
+            for (int column = getColumn(envelope.getMinX()); column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int triangle = cellTriangles[i];
+                    if(getTriangleMaxX(triangle) >= envelope.getMinX() &&
+                            getTriangleMinX(triangle) <= envelope.getMaxX() &&
+                            getTriangleMaxY(triangle) >= envelope.getMinY() &&
+                            getTriangleMinY(triangle) <= envelope.getMaxY()) {
+                        visitor.accept(triangle);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Approximate heap size of the arrays in bytes
+     */
+    long getMemoryFootprint() {
+        return vertices.length * 8L + (triangleVertices.length + triangleNeighbors.length + cellStart.length +
+                cellTriangles.length) * 4L;
+    }
+
+    /**
+     * @return Read only view of the vertices, the coordinates are created on each call of get
+     */
+    List<Coordinate> vertexList() {
+        return new AbstractList<>() {
+            @Override
+            public Coordinate get(int index) {
+                return new Coordinate(getX(index), getY(index), getZ(index));
+            }
+
+            @Override
+            public int size() {
+                return getVertexCount();
+            }
+        };
+    }
+
+    /**
+     * @param indexes Triangle vertex or neighbor indexes
+     * @return Read only view of the triangles, the triangles are created on each call of get
+     */
+    List<Triangle> triangleList(int[] indexes) {
+        return new AbstractList<>() {
+            @Override
+            public Triangle get(int index) {
+                return new Triangle(indexes[index * 3], indexes[index * 3 + 1], indexes[index * 3 + 2]);
+            }
+
+            @Override
+            public int size() {
+                return indexes.length / 3;
+            }
+        };
+    }
+}
@@ -0,0 +1,450 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walk through the triangles of the digital elevation model along a segment and collect the intersections with the
+ * triangles sides.
+ * With a {@link TopographicGrid} the triangles sides are the grid lines and the cells diagonals, the intersections are
+ * computed by stepping from one line to the next without locating any triangle.
+ * The visited triangles are kept in a {@link VisitedIndexes} set and the points are written in a double array, both
+ * reused by the next walks, so a walk does not allocate objects except in the rare case of a segment starting out of
+ * the DEM. The memory kept between two walks does not depend on the DEM size, the buffers grown by a long walk are
+ * released by the next one. The computed points are exactly the same as the ones computed with JTS LineSegment.
+ * The walker does not keep any reference to the ProfileBuilder. An instance must not be shared between threads.
+ */
+public final class TopographicProfileWalker {
+    private static final int INITIAL_POINT_CAPACITY = 64;
+    /** A larger points buffer is released by the next walk */
+    static final int MAXIMUM_RETAINED_POINT_CAPACITY = 4096;
+    /** Intersections closer than this distance in grid units are merged */
+    private static final double GRID_EPSILON = 1e-9;
+    private final RobustLineIntersector lineIntersector = new RobustLineIntersector();
+    /** Triangles visited by the current walk */
+    private final VisitedIndexes visitedTriangles = new VisitedIndexes();
+    /** x, y, z of the profile points */
+    private double[] points = new double[INITIAL_POINT_CAPACITY * 3];
+    private int pointCount = 0;
+    // Output of closestPoint
+    private double closestX;
+    private double closestY;
+    // Output of sideIntersection
+    private double sideX;
+    private double sideY;
+    private double sideZ;
+    // Output of clip
+    private double clipMin;
+    private double clipMax;
+    // Output of nextTriangle
+    private double nextX;
+    private double nextY;
+    private double nextZ;
+    // Vertices of the current triangle
+    private final Coordinate aTri = new Coordinate();
+    private final Coordinate bTri = new Coordinate();
+    private final Coordinate cTri = new Coordinate();
+
+    /**
+     * Fetch all intersections of the segment p1-p2 with the DEM triangles. The points can be read with
+     * {@link #getPointCount()} and {@link #getCoordinate(int, Coordinate)} until the next walk.
+     * @param profileBuilder ProfileBuilder with feeding finished
+     * @param p1 first point
+     * @param p2 second point
+     * @param stopAtObstacleOverSourceReceiver Stop fetching intersections if the segment p1-p2 is intersecting with TIN
+     * @return True if the segment p1-p2 is not intersecting with DEM
+     */
+    public boolean walk(ProfileBuilder profileBuilder, Coordinate p1, Coordinate p2,
+                        boolean stopAtObstacleOverSourceReceiver) {
+        pointCount = 0;
+        if(points.length > MAXIMUM_RETAINED_POINT_CAPACITY * 3) {
+            points = new double[INITIAL_POINT_CAPACITY * 3];
+        }
+        if(profileBuilder.topoGrid != null) {
+            return walkGrid(profileBuilder.topoGrid, p1, p2, stopAtObstacleOverSourceReceiver);
+        }
+        final TopographicMesh mesh = profileBuilder.topoMesh;
+        if(mesh == null) {
+            return true;
+        }
+        //get origin triangle id
+        int curTriP1 = mesh.locate(p1.x, p1.y);
+        if(curTriP1 == -1) {
+            // we are outside the bounds of the triangles
+            // Find the closest triangle to p1 on the line p1 to p2
+            Coordinate intersectionPt = new Coordinate();
+            AtomicInteger minDistanceTriangle = new AtomicInteger();
+            if(profileBuilder.findClosestTriangleIntersection(new LineSegment(p1, p2), intersectionPt,
+                    minDistanceTriangle)) {
+                curTriP1 = minDistanceTriangle.get();
+                addPoint(p1.x, p1.y, mesh.interpolateZ(curTriP1, p2.x, p2.y));
+            } else {
+                // out of DEM propagation area
+                return true;
+            }
+        }
+        visitedTriangles.clear();
+        int navigationTri = curTriP1;
+        // Add p1 coordinate
+        addPoint(p1.x, p1.y, mesh.interpolateZ(curTriP1, p1.x, p1.y));
+        boolean freeField = true;
+        while (navigationTri != -1) {
+            visitedTriangles.add(navigationTri);
+            int propaTri = nextTriangle(navigationTri, p1, p2, mesh);
+            if(propaTri == -1) {
+                // Add p2 coordinate
+                addPoint(p2.x, p2.y, mesh.interpolateZ(navigationTri, p2.x, p2.y));
+            } else if(!Double.isNaN(nextZ)) {
+                // Found next triangle, keep the intersection with the triangle side
+                addPoint(nextX, nextY, nextZ);
+                closestPoint(p1, p2, nextX, nextY);
+                double interpolatedZ = interpolateZ(closestX, closestY, p1, p2);
+                if(interpolatedZ < nextZ) {
+                    freeField = false;
+                    if(stopAtObstacleOverSourceReceiver) {
+                        return false;
+                    }
+                }
+            }
+            navigationTri = propaTri;
+        }
+        return freeField;
+    }
+
+    /**
+     * Fetch the intersections of the segment p1-p2 with the grid lines and the cells diagonals. The profile is
+     * clipped to the grid, the altitude of p1 and p2 out of the grid is the altitude of the nearest point of the
+     * profile.
+     */
+    private boolean walkGrid(TopographicGrid grid, Coordinate p1, Coordinate p2,
+                             boolean stopAtObstacleOverSourceReceiver) {
+        final double gridX = grid.toGridX(p1.x);
+        final double gridY = grid.toGridY(p1.y);
+        final double dx = grid.toGridX(p2.x) - gridX;
+        final double dy = grid.toGridY(p2.y) - gridY;
+        // Clip the segment to the grid extent (Liang-Barsky)
+        clipMin = 0;
+        clipMax = 1;
+        if(!clip(-dx, gridX) || !clip(dx, grid.getColumns() - 1 - gridX) || !clip(-dy, gridY) ||
+                !clip(dy, grid.getRows() - 1 - gridY)) {
+            // out of DEM propagation area
+            return true;
+        }
+        final double tMin = clipMin;
+        final double tMax = clipMax;
+        final double length = Math.hypot(dx, dy);
+        final double epsilon = length > 0 ? GRID_EPSILON / length : Double.MAX_VALUE;
+        // Add p1 coordinate, the altitude is the one of the first sample in the DEM
+        addPoint(p1.x, p1.y, Double.NaN);
+        boolean freeField = true;
+        double lastZ = Double.NaN;
+        // Next vertical line, horizontal line and diagonal (x - y constant) crossed by the segment
+        final double dd = dx - dy;
+        double lineX = nextGridLine(gridX + tMin * dx, dx);
+        double lineY = nextGridLine(gridY + tMin * dy, dy);
+        double lineD = nextGridLine(gridX - gridY + tMin * dd, dd);
+        double nextTX = dx == 0 ? Double.POSITIVE_INFINITY : (lineX - gridX) / dx;
+        double nextTY = dy == 0 ? Double.POSITIVE_INFINITY : (lineY - gridY) / dy;
+        double nextTD = dd == 0 ? Double.POSITIVE_INFINITY : (lineD - gridX + gridY) / dd;
+        double t = tMin;
+        double previousT = Double.NEGATIVE_INFINITY;
+        while (true) {
+            if(t - previousT > epsilon) {
+                previousT = t;
+                double z = grid.interpolateZ(gridX + t * dx, gridY + t * dy);
+                if(!Double.isNaN(z)) {
+                    if(Double.isNaN(points[2])) {
+                        points[2] = z;
+                    }
+                    lastZ = z;
+                    if(t > epsilon && t < 1 - epsilon) {
+                        double x = p1.x + t * (p2.x - p1.x);
+                        double y = p1.y + t * (p2.y - p1.y);
+                        addPoint(x, y, z);
+                        if(interpolateZ(x, y, p1, p2) < z) {
+                            freeField = false;
+                            if(stopAtObstacleOverSourceReceiver) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+            }
+            if(t >= tMax) {
+                break;
+            }
+            // Step to the nearest line
+            if(nextTX <= nextTY && nextTX <= nextTD) {
+                t = nextTX;
+                lineX += Math.signum(dx);
+                nextTX = (lineX - gridX) / dx;
+            } else if(nextTY <= nextTD) {
+                t = nextTY;
+                lineY += Math.signum(dy);
+                nextTY = (lineY - gridY) / dy;
+            } else {
+                t = nextTD;
+                lineD += Math.signum(dd);
+                nextTD = (lineD - gridX + gridY) / dd;
+            }
+            t = Math.min(t, tMax);
+        }
+        if(Double.isNaN(lastZ)) {
+            // Only missing values along the segment
+            pointCount = 0;
+            return true;
+        }
+        // Add p2 coordinate
+        addPoint(p2.x, p2.y, lastZ);
+        return freeField;
+    }
+
+    /**
+     * Liang-Barsky clipping of one side, update clipMin and clipMax
+     * @return False if the segment is out of the side
+     */
+    private boolean clip(double p, double q) {
+        if(p == 0) {
+            return q >= 0;
+        }
+        double t = q / p;
+        if(p < 0) {
+            clipMin = Math.max(clipMin, t);
+        } else {
+            clipMax = Math.min(clipMax, t);
+        }
+        return clipMin <= clipMax;
+    }
+
+    /**
+     * @param start Location where to look for the next line
+     * @param delta Variation of the location along the segment
+     * @return The next integer location after start in the direction of delta
+     */
+    private static double nextGridLine(double start, double delta) {
+        return delta >= 0 ? Math.floor(start) + 1 : Math.ceil(start) - 1;
+    }
+
+    /**
+     * @return Number of points found by the last walk
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @param index Point index [0-{@link #getPointCount()}[
+     * @param coordinate (output) Point location
+     */
+    public void getCoordinate(int index, Coordinate coordinate) {
+        coordinate.x = points[index * 3];
+        coordinate.y = points[index * 3 + 1];
+        coordinate.z = points[index * 3 + 2];
+    }
+
+    /**
+     * @param index Point index [0-{@link #getPointCount()}[
+     * @return Altitude of the point
+     */
+    public double getZ(int index) {
+        return points[index * 3 + 2];
+    }
+
+    /**
+     * Append a copy of the points found by the last walk
+     * @param outputPoints Destination list
+     */
+    public void copyPoints(List<Coordinate> outputPoints) {
+        for (int i = 0; i < pointCount; i++) {
+            outputPoints.add(new Coordinate(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]));
+        }
+    }
+
+    private boolean isVisited(int triangle) {
+        return triangle >= 0 && visitedTriangles.contains(triangle);
+    }
+
+    /**
+     * @return Size of the points buffer, used by the tests
+     */
+    int getPointCapacity() {
+        return points.length / 3;
+    }
+
+    /**
+     * @return Size of the visited triangles table, used by the tests
+     */
+    int getVisitedCapacity() {
+        return visitedTriangles.capacity();
+    }
+
+    private void addPoint(double x, double y, double z) {
+        if((pointCount + 1) * 3 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[pointCount * 3] = x;
+        points[pointCount * 3 + 1] = y;
+        points[pointCount * 3 + 2] = z;
+        pointCount++;
+    }
+
+    /**
+     * Same as {@link org.locationtech.jts.triangulate.quadedge.Vertex#interpolateZ(Coordinate, Coordinate, Coordinate)}
+     */
+    private static double interpolateZ(double x, double y, Coordinate p0, Coordinate p1) {
+        double segLen = Math.hypot(p0.x - p1.x, p0.y - p1.y);
+        double ptLen = Math.hypot(x - p0.x, y - p0.y);
+        double dz = p1.z - p0.z;
+        return p0.z + dz * (ptLen / segLen);
+    }
+
+    /**
+     * Same as {@link LineSegment#closestPoint(Coordinate)}, result in closestX, closestY
+     */
+    private void closestPoint(Coordinate p0, Coordinate p1, double x, double y) {
+        double factor;
+        if(x == p0.x && y == p0.y) {
+            factor = 0;
+        } else if(x == p1.x && y == p1.y) {
+            factor = 1;
+        } else {
+            double dx = p1.x - p0.x;
+            double dy = p1.y - p0.y;
+            double len = dx * dx + dy * dy;
+            if(len <= 0.0) {
+                factor = Double.NaN;
+            } else {
+                factor = ((x - p0.x) * dx + (y - p0.y) * dy) / len;
+            }
+        }
+        if(factor > 0 && factor < 1) {
+            closestX = p0.x + factor * (p1.x - p0.x);
+            closestY = p0.y + factor * (p1.y - p0.y);
+        } else if(Math.hypot(p0.x - x, p0.y - y) < Math.hypot(p1.x - x, p1.y - y)) {
+            closestX = p0.x;
+            closestY = p0.y;
+        } else {
+            closestX = p1.x;
+            closestY = p1.y;
+        }
+    }
+
+    /**
+     * Same as {@link LineSegment#closestPoints(LineSegment)} of the propagation line with the triangle side, followed
+     * by the distance check and altitude interpolation on the triangle side.
+     * @return True if the propagation line p1-p2 intersects the side s0-s1, location in sideX, sideY, sideZ
+     */
+    private boolean sideIntersection(Coordinate p1, Coordinate p2, Coordinate s0, Coordinate s1) {
+        double x;
+        double y;
+        double distance;
+        lineIntersector.computeIntersection(p1, p2, s0, s1);
+        if(lineIntersector.hasIntersection()) {
+            Coordinate intersection = lineIntersector.getIntersection(0);
+            x = intersection.x;
+            y = intersection.y;
+            distance = 0;
+        } else {
+            // if no intersection closest pair contains at least one endpoint
+            closestPoint(p1, p2, s0.x, s0.y);
+            distance = Math.hypot(closestX - s0.x, closestY - s0.y);
+            x = closestX;
+            y = closestY;
+            closestPoint(p1, p2, s1.x, s1.y);
+            double dist = Math.hypot(closestX - s1.x, closestY - s1.y);
+            if(dist < distance) {
+                distance = dist;
+                x = closestX;
+                y = closestY;
+            }
+            closestPoint(s0, s1, p1.x, p1.y);
+            dist = Math.hypot(closestX - p1.x, closestY - p1.y);
+            if(dist < distance) {
+                distance = dist;
+                x = p1.x;
+                y = p1.y;
+            }
+            closestPoint(s0, s1, p2.x, p2.y);
+            dist = Math.hypot(closestX - p2.x, closestY - p2.y);
+            if(dist < distance) {
+                distance = dist;
+                x = p2.x;
+                y = p2.y;
+            }
+        }
+        if(distance < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
+            sideX = x;
+            sideY = y;
+            sideZ = interpolateZ(x, y, s0, s1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compute the next triangle index. Find the shortest intersection point of the triangle sides to p2.
+     * The intersection is stored in nextX, nextY, nextZ
+     * @return Next triangle to the specified direction, -1 if there is no triangle neighbor.
+     */
+    private int nextTriangle(int triIndex, Coordinate p1, Coordinate p2, TopographicMesh mesh) {
+        final int[] triangleNeighbors = mesh.triangleNeighbors;
+        mesh.getTriangleVertex(triIndex, 0, aTri);
+        mesh.getTriangleVertex(triIndex, 1, bTri);
+        mesh.getTriangleVertex(triIndex, 2, cTri);
+        int nearestIntersectionSide = -1;
+        double nearestIntersectionPtDist = Double.MAX_VALUE;
+        nextZ = Double.NaN;
+        // Intersection First Side
+        if(!isVisited(triangleNeighbors[triIndex * 3 + 2]) && sideIntersection(p1, p2, aTri, bTri)) {
+            double distance = Math.hypot(p2.x - sideX, p2.y - sideY);
+            if(distance < nearestIntersectionPtDist) {
+                setNext();
+                nearestIntersectionPtDist = distance;
+                nearestIntersectionSide = 2;
+            }
+        }
+        // Intersection Second Side
+        if(!isVisited(triangleNeighbors[triIndex * 3]) && sideIntersection(p1, p2, bTri, cTri)) {
+            double distance = Math.hypot(p2.x - sideX, p2.y - sideY);
+            if(distance < nearestIntersectionPtDist) {
+                setNext();
+                nearestIntersectionPtDist = distance;
+                nearestIntersectionSide = 0;
+            }
+        }
+        // Intersection Third Side
+        if(!isVisited(triangleNeighbors[triIndex * 3 + 1]) && sideIntersection(p1, p2, cTri, aTri)) {
+            double distance = Math.hypot(p2.x - sideX, p2.y - sideY);
+            if(distance < nearestIntersectionPtDist) {
+                setNext();
+                nearestIntersectionSide = 1;
+            }
+        }
+        if(nearestIntersectionSide > -1) {
+            return triangleNeighbors[triIndex * 3 + nearestIntersectionSide];
+        } else {
+            return -1;
+        }
+    }
+
+    private void setNext() {
+        nextX = sideX;
+        nextY = sideY;
+        nextZ = sideZ;
+    }
+}
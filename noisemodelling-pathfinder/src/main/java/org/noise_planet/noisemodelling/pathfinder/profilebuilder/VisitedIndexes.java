@@ -0,0 +1,114 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import java.util.Arrays;
+
+/**
+ * Set of positive indexes visited by a query, cleared in constant time by {@link #clear()}.
+ * The memory depends on the number of indexes visited by a query, not on the highest index, and the table grown by a
+ * large query is released by the next clear, so an instance kept by a thread stays small.
+ * An instance must not be shared between threads.
+ */
+final class VisitedIndexes {
+    private static final int INITIAL_CAPACITY = 64;
+    /** A larger table is released on clear */
+    static final int MAXIMUM_RETAINED_CAPACITY = 4096;
+    private int[] indexes = new int[INITIAL_CAPACITY];
+    /** Query number of each slot, a slot is empty if it does not hold the current epoch */
+    private int[] epochs = new int[INITIAL_CAPACITY];
+    private int epoch = 1;
+    private int size = 0;
+
+    /**
+     * Remove all the indexes
+     */
+    void clear() {
+        size = 0;
+        if(indexes.length > MAXIMUM_RETAINED_CAPACITY) {
+            indexes = new int[INITIAL_CAPACITY];
+            epochs = new int[INITIAL_CAPACITY];
+            epoch = 1;
+        } else if(epoch == Integer.MAX_VALUE) {
+            Arrays.fill(epochs, 0);
+            epoch = 1;
+        } else {
+            epoch++;
+        }
+    }
+
+    /**
+     * @param index Index to add
+     * @return False if the index is already in the set
+     */
+    boolean add(int index) {
+        if((size + 1) * 2 > indexes.length) {
+            grow();
+        }
+        int mask = indexes.length - 1;
+        int slot = hash(index) & mask;
+        while (epochs[slot] == epoch) {
+            if(indexes[slot] == index) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        indexes[slot] = index;
+        epochs[slot] = epoch;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param index Index to look for
+     * @return True if the index has been added since the last clear
+     */
+    boolean contains(int index) {
+        int mask = indexes.length - 1;
+        int slot = hash(index) & mask;
+        while (epochs[slot] == epoch) {
+            if(indexes[slot] == index) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return Size of the table, used by the tests
+     */
+    int capacity() {
+        return indexes.length;
+    }
+
+    private void grow() {
+        int[] oldIndexes = indexes;
+        int[] oldEpochs = epochs;
+        indexes = new int[oldIndexes.length * 2];
+        epochs = new int[oldIndexes.length * 2];
+        int mask = indexes.length - 1;
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if(oldEpochs[i] == epoch) {
+                int slot = hash(oldIndexes[i]) & mask;
+                while (epochs[slot] == epoch) {
+                    slot = (slot + 1) & mask;
+                }
+                indexes[slot] = oldIndexes[i];
+                epochs[slot] = epoch;
+            }
+        }
+    }
+
+    private static int hash(int index) {
+        int h = index * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
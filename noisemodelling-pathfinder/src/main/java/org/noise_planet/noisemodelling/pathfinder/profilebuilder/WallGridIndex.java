@@ -0,0 +1,241 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid of the processed walls (buildings walls, walls and ground effect borders).
+ * Each grid cell holds the index of the walls whose envelope overlap the cell, the lists of all cells are packed in a
+ * single int array. A segment query walks only the cells crossed by the segment (Amanatides and Woo traversal) in the
+ * segment direction.
+ * This class is immutable and can be shared between threads.
+ */
+final class WallGridIndex {
+    /** Targeted average number of walls per grid cell */
+    private static final double WALLS_PER_CELL = 2.0;
+    /** Maximum number of grid cells */
+    private static final int MAXIMUM_CELL_COUNT = 1 << 24;
+    /** Walls envelopes are expanded by this distance in meters, so a wall touching a cell border is in both cells */
+    private static final double WALL_ENVELOPE_MARGIN = 1e-6;
+    private final double gridMinX;
+    private final double gridMinY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int wallCount;
+    /** Index in cellWalls of the first wall of each grid cell, the last value is the total length */
+    private final int[] cellStart;
+    /** Walls of all grid cells */
+    private final int[] cellWalls;
+
+    /**
+     * @param walls Walls to index, the wall index is the position in this list
+     */
+    WallGridIndex(List<Wall> walls) {
+        wallCount = walls.size();
+        Envelope envelope = new Envelope();
+        for (Wall wall : walls) {
+            envelope.expandToInclude(wall.p0);
+            envelope.expandToInclude(wall.p1);
+        }
+        if(envelope.isNull()) {
+            envelope = new Envelope(0, 0, 0, 0);
+        }
+        envelope.expandBy(WALL_ENVELOPE_MARGIN);
+        gridMinX = envelope.getMinX();
+        gridMinY = envelope.getMinY();
+        double targetCellCount = Math.min(MAXIMUM_CELL_COUNT, Math.max(1, wallCount / WALLS_PER_CELL));
+        double size = Math.sqrt(envelope.getWidth() * envelope.getHeight() / targetCellCount);
+        cellSize = size > 0 ? size : 1.0;
+        columns = Math.max(1, Math.min(MAXIMUM_CELL_COUNT, (int) Math.ceil(envelope.getWidth() / cellSize)));
+        rows = Math.max(1, Math.min(MAXIMUM_CELL_COUNT / columns, (int) Math.ceil(envelope.getHeight() / cellSize)));
+        // Count the walls of each cell then fill the cells
+        int cellCount = columns * rows;
+        cellStart = new int[cellCount + 1];
+        for (Wall wall : walls) {
+            int minColumn = getColumn(Math.min(wall.p0.x, wall.p1.x) - WALL_ENVELOPE_MARGIN);
+            int maxColumn = getColumn(Math.max(wall.p0.x, wall.p1.x) + WALL_ENVELOPE_MARGIN);
+            int maxRow = getRow(Math.max(wall.p0.y, wall.p1.y) + WALL_ENVELOPE_MARGIN);
+            for (int row = getRow(Math.min(wall.p0.y, wall.p1.y) - WALL_ENVELOPE_MARGIN); row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellWalls = new int[cellStart[cellCount]];
+        int[] cellCursor = Arrays.copyOf(cellStart, cellCount);
+        for (int wallIndex = 0; wallIndex < wallCount; wallIndex++) {
+            Wall wall = walls.get(wallIndex);
+            int minColumn = getColumn(Math.min(wall.p0.x, wall.p1.x) - WALL_ENVELOPE_MARGIN);
+            int maxColumn = getColumn(Math.max(wall.p0.x, wall.p1.x) + WALL_ENVELOPE_MARGIN);
+            int maxRow = getRow(Math.max(wall.p0.y, wall.p1.y) + WALL_ENVELOPE_MARGIN);
+            for (int row = getRow(Math.min(wall.p0.y, wall.p1.y) - WALL_ENVELOPE_MARGIN); row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellWalls[cellCursor[row * columns + column]++] = wallIndex;
+                }
+            }
+        }
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - gridMinX) / cellSize)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - gridMinY) / cellSize)));
+    }
+
+    /**
+     * @return Number of indexed walls
+     */
+    int getWallCount() {
+        return wallCount;
+    }
+
+    /**
+     * Collect the walls of the grid cells crossed by the segment x0,y0 x1,y1. Each wall is added only once, in the
+     * order of the first crossed cell that contains it.
+     * @param x0 Segment start x
+     * @param y0 Segment start y
+     * @param x1 Segment end x
+     * @param y1 Segment end y
+     * @param candidates Output wall indexes
+     */
+    void collectWalls(double x0, double y0, double x1, double y1, WallCandidates candidates) {
+        candidates.start();
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        // Clip the segment parameter t in [0, 1] with the grid envelope
+        double tEnter = 0;
+        double tExit = 1;
+        double gridMaxX = gridMinX + columns * cellSize;
+        double gridMaxY = gridMinY + rows * cellSize;
+        if(dx != 0) {
+            double ta = (gridMinX - x0) / dx;
+            double tb = (gridMaxX - x0) / dx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if(x0 < gridMinX || x0 > gridMaxX) {
+            return;
+        }
+        if(dy != 0) {
+            double ta = (gridMinY - y0) / dy;
+            double tb = (gridMaxY - y0) / dy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if(y0 < gridMinY || y0 > gridMaxY) {
+            return;
+        }
+        if(tEnter > tExit) {
+            return;
+        }
+        int column = getColumn(x0 + dx * tEnter);
+        int row = getRow(y0 + dy * tEnter);
+        int lastColumn = getColumn(x0 + dx * tExit);
+        int lastRow = getRow(y0 + dy * tExit);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        // t value of the next vertical and horizontal cell border crossing
+        double tMaxX = dx == 0 ? Double.POSITIVE_INFINITY :
+                ((gridMinX + (column + (dx > 0 ? 1 : 0)) * cellSize) - x0) / dx;
+        double tMaxY = dy == 0 ? Double.POSITIVE_INFINITY :
+                ((gridMinY + (row + (dy > 0 ? 1 : 0)) * cellSize) - y0) / dy;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+        // the number of crossed cells can not exceed the Manhattan distance between the first and last cells
+        int remainingCells = Math.abs(lastColumn - column) + Math.abs(lastRow - row);
+        while (true) {
+            int cell = row * columns + column;
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                candidates.add(cellWalls[i]);
+            }
+            if(remainingCells-- <= 0) {
+                break;
+            }
+            if(tMaxX < tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+            if(column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Unique wall indexes found by a query. The instance is reused by the queries of a thread, the memory it keeps
+     * does not depend on the number of walls of the scene and the buffers grown by a large query are released by the
+     * next one.
+     */
+    static final class WallCandidates {
+        private static final int INITIAL_CAPACITY = 64;
+        /** A larger walls buffer is released by the next query */
+        static final int MAXIMUM_RETAINED_CAPACITY = 4096;
+        private final VisitedIndexes visitedWalls = new VisitedIndexes();
+        private int[] walls = new int[INITIAL_CAPACITY];
+        private int size = 0;
+
+        void start() {
+            size = 0;
+            visitedWalls.clear();
+            if(walls.length > MAXIMUM_RETAINED_CAPACITY) {
+                walls = new int[INITIAL_CAPACITY];
+            }
+        }
+
+        void add(int wall) {
+            if(visitedWalls.add(wall)) {
+                if(size == walls.length) {
+                    walls = Arrays.copyOf(walls, size * 2);
+                }
+                walls[size++] = wall;
+            }
+        }
+
+        /**
+         * Sort the wall indexes in ascending order
+         */
+        void sort() {
+            Arrays.sort(walls, 0, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return walls[index];
+        }
+
+        /**
+         * @return Size of the walls buffer, used by the tests
+         */
+        int capacity() {
+            return walls.length;
+        }
+
+        /**
+         * @return Size of the visited walls table, used by the tests
+         */
+        int visitedCapacity() {
+            return visitedWalls.capacity();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with fixed logarithmic buckets.
+ * Each power of two is split into {@link #SUB_BUCKETS} buckets, so the relative error of a percentile is below 12.5%.
+ * The memory footprint does not depend on the number of values and two histograms can be merged.
+ * Durations of more than 2^40 nanoseconds (about 18 minutes) are counted in the last bucket.
+ * This class is not thread-safe.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKETS_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    static final int MAXIMUM_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAXIMUM_EXPONENT - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long total = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * @param nanos Duration to add, negative durations are counted as 0
+     */
+    public void add(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[bucketIndex(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the values of another histogram
+     * @param other Histogram to add
+     */
+    public void merge(LatencyHistogram other) {
+        if(other.count == 0) {
+            return;
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Remove all values
+     */
+    public void clear() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @return Number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Sum of the values in nanoseconds
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Lowest value in nanoseconds, 0 if there is no values
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return Highest value in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile Percentile in the range [0, 100]
+     * @return Estimated value in nanoseconds, 0 if there is no values
+     */
+    public long getPercentile(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in the range [0, 100]");
+        }
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += buckets[i];
+            if(cumulated >= rank) {
+                long value = bucketLowerBound(i) + bucketWidth(i) / 2;
+                return Math.max(getMin(), Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    static int bucketIndex(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent >= MAXIMUM_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static long bucketWidth(int index) {
+        if(index < SUB_BUCKETS) {
+            return 1;
+        }
+        return 1L << (index / SUB_BUCKETS - 1);
+    }
+}
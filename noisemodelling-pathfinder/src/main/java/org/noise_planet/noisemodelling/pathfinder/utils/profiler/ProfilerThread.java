@@ -24,6 +24,11 @@ public class ProfilerThread  implements Runnable {
     public Logger log = LoggerFactory.getLogger(ProfilerThread.class);
     public AtomicLong timeTracker = new AtomicLong(System.currentTimeMillis());
     private AtomicBoolean doRun = new AtomicBoolean(true);
+    private AtomicBoolean writeRequested = new AtomicBoolean(false);
+    /** Notified on a write request or on stop */
+    private final Object wakeUp = new Object();
+    /** Maximum time in ms between two calls of {@link Metric#tick(long)} */
+    private static final long TICK_INTERVAL = 1000;
     private int writeInterval = 60;
     private int flushInterval = 300;
     private File outputFile;
@@ -80,6 +85,7 @@ public class ProfilerThread  implements Runnable {
     public void run() {
         long lastWrite = 0;
         long lastFlush = 0;
+        boolean pendingFlush = false;
         try(BufferedWriter b = new BufferedWriter(new FileWriter(outputFile))) {
             StringBuilder sb = new StringBuilder();
             for(Metric m : metrics) {
@@ -98,16 +104,28 @@ public class ProfilerThread  implements Runnable {
                 for(Metric m : metrics) {
                     m.tick(timeTracker.get());
                 }
+                if ((timeTracker.get() - lastWrite) / 1000.0 >= writeInterval ||
+                        writeRequested.getAndSet(false)) {
+                    lastWrite = timeTracker.get();
+                    writeData(b);
+                    pendingFlush = true;
+                }
+                if (pendingFlush && (timeTracker.get() - lastFlush) / 1000.0 >= flushInterval) {
+                    lastFlush = timeTracker.get();
+                    b.flush();
+                    pendingFlush = false;
+                }
+                // Wait for the next write or flush, a write request or the stop
+                long nextEvent = lastWrite + writeInterval * 1000L;
+                if (pendingFlush) {
+                    nextEvent = Math.min(nextEvent, lastFlush + flushInterval * 1000L);
+                }
+                long waitTime = Math.min(TICK_INTERVAL, nextEvent - System.currentTimeMillis());
                 try {
-                    if ((timeTracker.get() - lastWrite) / 1000.0 >= writeInterval) {
-                        lastWrite = timeTracker.get();
-                        writeData(b);
-                    } else {
-                        Thread.sleep(2);
-                    }
-                    if ((timeTracker.get() - lastFlush) / 1000.0 >= flushInterval) {
-                        lastFlush = timeTracker.get();
-                        b.flush();
+                    synchronized (wakeUp) {
+                        if (waitTime > 0 && doRun.get() && !writeRequested.get()) {
+                            wakeUp.wait(waitTime);
+                        }
                     }
                 } catch (InterruptedException ex) {
                     break;
@@ -121,6 +139,19 @@ public class ProfilerThread  implements Runnable {
 
     public void stop() {
         doRun.set(false);
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    /**
+     * Write a new line in the csv file as soon as possible, without waiting for the write interval
+     */
+    public void requestWrite() {
+        writeRequested.set(true);
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
     }
 
     /**
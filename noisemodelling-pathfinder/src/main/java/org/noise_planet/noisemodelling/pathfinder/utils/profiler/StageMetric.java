@@ -0,0 +1,163 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency percentiles of each computation stage {@link StageProfiler.Stage}.
+ * The stages of a cell are collected by a {@link StageProfiler} given to {@link #endCell(StageProfiler)} when the
+ * cell is done, a new csv line is then requested. The stages that are not related to a cell, like the database
+ * writing, are recorded in {@link #getProcessProfiler()}.
+ * A csv line contains the stages of the cells done since the previous line, the statistics of each cell and of the
+ * whole computation are available with {@link #getCellStatistics()} and {@link #getTotalStatistics()}.
+ */
+public class StageMetric implements ProfilerThread.Metric {
+    private static final double[] PERCENTILES = new double[] {50, 90, 99};
+    private final ProfilerThread profilerThread;
+    private final StageProfiler processProfiler = new StageProfiler("process");
+    private final LatencyHistogram[] intervalHistograms = StageProfiler.createHistograms();
+    private final LatencyHistogram[] totalHistograms = StageProfiler.createHistograms();
+    private final Map<String, StageStatistics[]> cellStatistics = new LinkedHashMap<>();
+    private final List<String> intervalCells = new ArrayList<>();
+
+    /**
+     * @param profilerThread Profiler that write the csv file, a new line is requested on each cell end. Can be null.
+     */
+    public StageMetric(ProfilerThread profilerThread) {
+        this.profilerThread = profilerThread;
+    }
+
+    /**
+     * @return Profiler of the stages that are not related to a cell
+     */
+    public StageProfiler getProcessProfiler() {
+        return processProfiler;
+    }
+
+    /**
+     * Collect the stages of a cell, no more durations must be recorded in the cell profiler
+     * @param cellProfiler Profiler of the cell
+     */
+    public void endCell(StageProfiler cellProfiler) {
+        LatencyHistogram[] cellHistograms = StageProfiler.createHistograms();
+        cellProfiler.drainTo(cellHistograms);
+        synchronized (this) {
+            cellStatistics.put(cellProfiler.getName(), StageStatistics.of(cellHistograms));
+            intervalCells.add(cellProfiler.getName());
+            for (int i = 0; i < cellHistograms.length; i++) {
+                intervalHistograms[i].merge(cellHistograms[i]);
+            }
+        }
+        if(profilerThread != null) {
+            profilerThread.requestWrite();
+        }
+    }
+
+    /**
+     * @return Statistics of each stage for each done cell, in the order of the cells end
+     */
+    public synchronized Map<String, StageStatistics[]> getCellStatistics() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(cellStatistics));
+    }
+
+    /**
+     * @return Statistics of each stage since the beginning of the computation
+     */
+    public synchronized StageStatistics[] getTotalStatistics() {
+        LatencyHistogram[] histograms = StageProfiler.createHistograms();
+        processProfiler.drainTo(intervalHistograms);
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].merge(totalHistograms[i]);
+            histograms[i].merge(intervalHistograms[i]);
+        }
+        return StageStatistics.of(histograms);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        List<String> columns = new ArrayList<>();
+        columns.add("stage_cells");
+        columns.add("stage_last_cell");
+        for (StageProfiler.Stage stage : StageProfiler.Stage.values()) {
+            columns.add(stage.getColumnName() + "_count");
+            for (double percentile : PERCENTILES) {
+                columns.add(String.format("%s_p%d_microseconds", stage.getColumnName(), (int) percentile));
+            }
+            columns.add(stage.getColumnName() + "_max_microseconds");
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized String[] getCurrentValues() {
+        processProfiler.drainTo(intervalHistograms);
+        List<String> values = new ArrayList<>();
+        values.add(Integer.toString(intervalCells.size()));
+        // csv separator and quotes are not expected in a cell identifier
+        values.add(intervalCells.isEmpty() ? "" :
+                intervalCells.get(intervalCells.size() - 1).replaceAll("[,\"\n]", " "));
+        for (LatencyHistogram histogram : intervalHistograms) {
+            values.add(Long.toString(histogram.getCount()));
+            for (double percentile : PERCENTILES) {
+                values.add(Long.toString(histogram.getPercentile(percentile) / 1000));
+            }
+            values.add(Long.toString(histogram.getMax() / 1000));
+        }
+        for (int i = 0; i < intervalHistograms.length; i++) {
+            totalHistograms[i].merge(intervalHistograms[i]);
+            intervalHistograms[i].clear();
+        }
+        intervalCells.clear();
+        return values.toArray(new String[0]);
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+
+    /**
+     * Summary of the durations of a stage, in nanoseconds
+     */
+    public static final class StageStatistics {
+        public final long count;
+        public final long total;
+        public final long median;
+        public final long percentile90;
+        public final long percentile99;
+        public final long max;
+
+        /**
+         * Create the StageStatistics constructor
+         * @param histogram Durations of the stage
+         */
+        public StageStatistics(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.total = histogram.getTotal();
+            this.median = histogram.getPercentile(50);
+            this.percentile90 = histogram.getPercentile(90);
+            this.percentile99 = histogram.getPercentile(99);
+            this.max = histogram.getMax();
+        }
+
+        static StageStatistics[] of(LatencyHistogram[] histograms) {
+            StageStatistics[] statistics = new StageStatistics[histograms.length];
+            for (int i = 0; i < histograms.length; i++) {
+                statistics[i] = new StageStatistics(histograms[i]);
+            }
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.util.Locale;
+
+/**
+ * Collect the durations of the computation stages of a cell.
+ * The durations are recorded into a fixed array of histograms selected by the thread id, there are more slots than
+ * processors so the lock of a slot is rarely contended. Nothing is attached to the recording threads, a profiler is
+ * freed with the cell.
+ */
+public class StageProfiler {
+
+    /**
+     * Computation stages, in the processing order
+     */
+    public enum Stage {
+        /** Load of the cell input data */
+        SCENE_LOAD,
+        /** Construction of the geometry index of the scene (ProfileBuilder#finishFeeding) */
+        FINISH_FEEDING,
+        /** Construction of the image receivers of a receiver */
+        MIRROR_RECEIVERS,
+        /** Search of the sources around a receiver */
+        SOURCE_QUERY,
+        /** Vertical cut profile between two points */
+        GET_PROFILE,
+        /** Search of the side diffraction path around the buildings */
+        SIDE_HULL,
+        /** Conversion of a cut profile into a CNOSSOS-EU path */
+        CNOSSOS_PATH,
+        /** Attenuation and noise level of a CNOSSOS-EU path */
+        ATTENUATION,
+        /** Time spent waiting for free space in the results queue */
+        QUEUE_WAIT,
+        /** Write of a batch of results */
+        DB_WRITE;
+
+        /**
+         * @return Prefix of the columns of this stage in the profile csv file
+         */
+        public String getColumnName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Number of recorders, a power of two */
+    private static final int RECORDER_COUNT = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+    private final String name;
+    private final Recorder[] recorders = new Recorder[RECORDER_COUNT];
+
+    /**
+     * @param name Identifier of the profiled cell
+     */
+    public StageProfiler(String name) {
+        this.name = name;
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Recorder();
+        }
+    }
+
+    /**
+     * @return Identifier of the profiled cell
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add a duration of the stage
+     * @param stage Computation stage
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        recorders[(int) Thread.currentThread().getId() & (RECORDER_COUNT - 1)].record(stage, nanos);
+    }
+
+    /**
+     * Add the duration from the provided start time to now
+     * @param stage Computation stage
+     * @param startNanos Value of {@link System#nanoTime()} when the stage started
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Move the collected durations into the provided histograms, the histograms of this profiler are cleared
+     * @param target One histogram per {@link Stage}, in the stage order
+     */
+    public void drainTo(LatencyHistogram[] target) {
+        for (Recorder recorder : recorders) {
+            recorder.drainTo(target);
+        }
+    }
+
+    /**
+     * @return New array with an empty histogram per {@link Stage}
+     */
+    public static LatencyHistogram[] createHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Histograms of a slot, the histogram of a stage is allocated on the first record
+     */
+    private static final class Recorder {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+        synchronized void record(Stage stage, long nanos) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            if(histogram == null) {
+                histogram = new LatencyHistogram();
+                histograms[stage.ordinal()] = histogram;
+            }
+            histogram.add(nanos);
+        }
+
+        synchronized void drainTo(LatencyHistogram[] target) {
+            for (int i = 0; i < histograms.length; i++) {
+                if(histograms[i] != null && histograms[i].getCount() > 0) {
+                    target[i].merge(histograms[i]);
+                    histograms[i].clear();
+                }
+            }
+        }
+    }
+}
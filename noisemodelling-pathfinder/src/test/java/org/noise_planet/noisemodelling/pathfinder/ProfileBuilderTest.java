@@ -16,18 +16,31 @@ import org.locationtech.jts.io.WKTReader;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Building;
 import org.noise_planet.noisemodelling.pathfinder.path.Scene;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPoint;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointTopography;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilderCacheFile;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.TopographicGrid;
+import org.noise_planet.noisemodelling.pathfinder.delaunay.Triangle;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.noise_planet.noisemodelling.pathfinder.PathFinderTest.assertZProfil;
 
 /**
@@ -361,4 +374,365 @@ public class ProfileBuilderTest {
 
 
     }
+
+    /**
+     * Previous implementation of the TIN walk, using JTS LineSegment and a HashSet of visited triangles
+     */
+    private static boolean referenceTopographicProfile(ProfileBuilder profileBuilder, List<Coordinate> outputPoints,
+                                                       Coordinate p1, Coordinate p2) {
+        List<Triangle> triangles = profileBuilder.getTriangles();
+        List<Triangle> neighbors = profileBuilder.getTriangleNeighbors();
+        List<Coordinate> vertices = profileBuilder.getVertices();
+        int navigationTri = profileBuilder.getTriangleIdByCoordinate(p1);
+        LineSegment propaLine = new LineSegment(p1, p2);
+        HashSet<Integer> navigationHistory = new HashSet<>();
+        Triangle tri = triangles.get(navigationTri);
+        outputPoints.add(new Coordinate(p1.x, p1.y, Vertex.interpolateZ(p1, vertices.get(tri.getA()),
+                vertices.get(tri.getB()), vertices.get(tri.getC()))));
+        boolean freeField = true;
+        while (navigationTri != -1) {
+            navigationHistory.add(navigationTri);
+            tri = triangles.get(navigationTri);
+            Triangle triNeighbors = neighbors.get(navigationTri);
+            Coordinate[] triVertices = new Coordinate[]{vertices.get(tri.getA()), vertices.get(tri.getB()),
+                    vertices.get(tri.getC())};
+            Coordinate intersectionPt = new Coordinate();
+            int nearestIntersectionSide = -1;
+            double nearestIntersectionPtDist = Double.MAX_VALUE;
+            // sides a-b, b-c, c-a are facing the neighbors 2, 0, 1
+            int[] sideNeighbor = new int[]{2, 0, 1};
+            for (int side = 0; side < 3; side++) {
+                if (navigationHistory.contains(triNeighbors.get(sideNeighbor[side]))) {
+                    continue;
+                }
+                LineSegment triSegment = new LineSegment(triVertices[side], triVertices[(side + 1) % 3]);
+                Coordinate[] closestPoints = propaLine.closestPoints(triSegment);
+                if (closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
+                    Coordinate intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y,
+                            Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
+                    double distance = propaLine.p1.distance(intersectionTest);
+                    if (distance < nearestIntersectionPtDist) {
+                        intersectionPt.setCoordinate(intersectionTest);
+                        nearestIntersectionPtDist = side == 2 ? nearestIntersectionPtDist : distance;
+                        nearestIntersectionSide = sideNeighbor[side];
+                    }
+                }
+            }
+            int propaTri = nearestIntersectionSide > -1 ? triNeighbors.get(nearestIntersectionSide) : -1;
+            if (propaTri == -1) {
+                outputPoints.add(new Coordinate(p2.x, p2.y, Vertex.interpolateZ(p2, triVertices[0], triVertices[1],
+                        triVertices[2])));
+            } else if (!Double.isNaN(intersectionPt.z)) {
+                outputPoints.add(intersectionPt);
+                Coordinate closestPointOnPropagationLine = propaLine.closestPoint(intersectionPt);
+                if (Vertex.interpolateZ(closestPointOnPropagationLine, propaLine.p0, propaLine.p1) < intersectionPt.z) {
+                    freeField = false;
+                }
+            }
+            navigationTri = propaTri;
+        }
+        return freeField;
+    }
+
+    /**
+     * The walker must produce exactly the same points as the previous implementation
+     */
+    @Test
+    public void testTopographicProfileWalker() {
+        Random random = new Random(42);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        List<Coordinate> latticePoints = new ArrayList<>();
+        // Regular lattice, segments cross exactly on vertices and sides
+        for (int x = 0; x <= 20; x++) {
+            for (int y = 0; y <= 20; y++) {
+                Coordinate point = new Coordinate(x * 10, y * 10, random.nextDouble() * 20);
+                latticePoints.add(point);
+                profileBuilder.addTopographicPoint(point);
+            }
+        }
+        // Irregular part
+        for (int i = 0; i < 300; i++) {
+            profileBuilder.addTopographicPoint(new Coordinate(200 + random.nextDouble() * 200,
+                    random.nextDouble() * 200, random.nextDouble() * 20));
+        }
+        profileBuilder.finishFeeding();
+        for (int i = 0; i < 2000; i++) {
+            Coordinate p1;
+            Coordinate p2;
+            if (i % 2 == 0) {
+                p1 = new Coordinate(1 + random.nextDouble() * 398, 1 + random.nextDouble() * 198, 4);
+                p2 = new Coordinate(1 + random.nextDouble() * 398, 1 + random.nextDouble() * 198, 1);
+            } else {
+                // vertices inside the lattice, not on the DEM hull
+                p1 = new Coordinate(latticePoints.get((1 + random.nextInt(19)) * 21 + 1 + random.nextInt(19)));
+                p2 = new Coordinate(latticePoints.get((1 + random.nextInt(19)) * 21 + 1 + random.nextInt(19)));
+                p1.z += 2;
+                p2.z += 2;
+            }
+            List<Coordinate> expected = new ArrayList<>();
+            boolean expectedFreeField = referenceTopographicProfile(profileBuilder, expected, p1, p2);
+            List<Coordinate> actual = new ArrayList<>();
+            boolean freeField = profileBuilder.fetchTopographicProfile(actual, p1, p2, false);
+            assertEquals(expectedFreeField, freeField);
+            assertEquals(expected.size(), actual.size());
+            for (int idPoint = 0; idPoint < expected.size(); idPoint++) {
+                assertEquals(expected.get(idPoint).x, actual.get(idPoint).x, 0);
+                assertEquals(expected.get(idPoint).y, actual.get(idPoint).y, 0);
+                assertEquals(expected.get(idPoint).z, actual.get(idPoint).z, 0);
+            }
+        }
+    }
+
+    /**
+     * The grid point location must find a triangle as close as the exhaustive search
+     */
+    @Test
+    public void testTriangleLocation() {
+        Random random = new Random(7);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (int i = 0; i < 500; i++) {
+            profileBuilder.addTopographicPoint(new Coordinate(random.nextDouble() * 300, random.nextDouble() * 100,
+                    random.nextDouble() * 20));
+        }
+        profileBuilder.finishFeeding();
+        List<Triangle> triangles = profileBuilder.getTriangles();
+        List<Coordinate> vertices = profileBuilder.getVertices();
+        for (int i = 0; i < 2000; i++) {
+            // include locations slightly out of the DEM
+            Coordinate location = new Coordinate(-2 + random.nextDouble() * 304, -2 + random.nextDouble() * 104);
+            double expectedError = Double.MAX_VALUE;
+            for (Triangle triangle : triangles) {
+                Coordinate a = vertices.get(triangle.getA());
+                Coordinate b = vertices.get(triangle.getB());
+                Coordinate c = vertices.get(triangle.getC());
+                Envelope envelope = new Envelope(a, b);
+                envelope.expandToInclude(c);
+                envelope.expandBy(1);
+                if(envelope.contains(location)) {
+                    AtomicReference<Double> error = new AtomicReference<>(0.);
+                    JTSUtility.dotInTri(location, a, b, c, error);
+                    expectedError = Math.min(expectedError, error.get());
+                }
+            }
+            int triangleId = profileBuilder.getTriangleIdByCoordinate(location);
+            if(expectedError == Double.MAX_VALUE) {
+                assertEquals(-1, triangleId);
+            } else {
+                Triangle triangle = triangles.get(triangleId);
+                Coordinate a = vertices.get(triangle.getA());
+                Coordinate b = vertices.get(triangle.getB());
+                Coordinate c = vertices.get(triangle.getC());
+                AtomicReference<Double> error = new AtomicReference<>(0.);
+                JTSUtility.dotInTri(location, a, b, c, error);
+                assertEquals(expectedError, error.get(), 0);
+                if(JTSUtility.dotInTri(location, a, b, c)) {
+                    assertEquals(Vertex.interpolateZ(location, a, b, c), profileBuilder.getZGround(location), 1e-9);
+                }
+            }
+        }
+    }
+
+    private static ProfileBuilder createRandomScene(long seed, boolean wallGridIndex) {
+        Random random = new Random(seed);
+        GeometryFactory factory = new GeometryFactory();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setWallGridIndex(wallGridIndex);
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                if(random.nextDouble() < 0.6) {
+                    // integer coordinates, so profiles can cross building corners
+                    int width = 2 + random.nextInt(15);
+                    int height = 2 + random.nextInt(15);
+                    Envelope envelope = new Envelope(x * 20, x * 20 + width, y * 20, y * 20 + height);
+                    profileBuilder.addBuilding(factory.toGeometry(envelope), 5 + random.nextInt(10));
+                }
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            profileBuilder.addWall(new Coordinate[]{new Coordinate(random.nextInt(400), random.nextInt(400)),
+                    new Coordinate(random.nextInt(400), random.nextInt(400))}, 3, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            int x = random.nextInt(350);
+            int y = random.nextInt(350);
+            profileBuilder.addGroundEffect(factory.toGeometry(new Envelope(x, x + random.nextInt(50) + 1, y,
+                    y + random.nextInt(50) + 1)), random.nextDouble());
+        }
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    /**
+     * The uniform grid of walls must give the same profiles than the R-Tree
+     */
+    @Test
+    public void testWallGridIndex() {
+        ProfileBuilder treeProfileBuilder = createRandomScene(12, false);
+        ProfileBuilder gridProfileBuilder = createRandomScene(12, true);
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            Coordinate source;
+            Coordinate receiver;
+            if(i % 2 == 0) {
+                source = new Coordinate(-10 + random.nextDouble() * 420, -10 + random.nextDouble() * 420, 1);
+                receiver = new Coordinate(-10 + random.nextDouble() * 420, -10 + random.nextDouble() * 420, 4);
+            } else {
+                // along the building sides and through the corners
+                source = new Coordinate(random.nextInt(400), random.nextInt(400), 1);
+                receiver = random.nextBoolean() ? new Coordinate(source.x, random.nextInt(400), 4) :
+                        new Coordinate(source.x + 20 * random.nextInt(5), source.y + 20 * random.nextInt(5), 4);
+            }
+            for (boolean stop : new boolean[]{false, true}) {
+                CutProfile expected = treeProfileBuilder.getProfile(source, receiver, 0.5, stop);
+                CutProfile actual = gridProfileBuilder.getProfile(source, receiver, 0.5, stop);
+                assertEquals(expected.hasBuildingIntersection, actual.hasBuildingIntersection);
+                assertEquals(expected.cutPoints.size(), actual.cutPoints.size());
+                for (int idPoint = 0; idPoint < expected.cutPoints.size(); idPoint++) {
+                    assertEquals(expected.cutPoints.get(idPoint).toString(),
+                            actual.cutPoints.get(idPoint).toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * The grid DEM must give the same altitudes and profiles as the equivalent triangulated DEM
+     */
+    @Test
+    public void testTopographicGrid() throws Exception {
+        Random random = new Random(7);
+        int columns = 21;
+        int rows = 15;
+        double originX = 100;
+        double originY = 50;
+        double cellWidth = 10;
+        double cellHeight = 8;
+        float[] values = new float[columns * rows];
+        List<Coordinate> vertices = new ArrayList<>(values.length);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                values[row * columns + column] = (float) (random.nextDouble() * 20);
+                vertices.add(new Coordinate(originX + column * cellWidth, originY + row * cellHeight,
+                        values[row * columns + column]));
+            }
+        }
+        // Same triangles as the grid, two per cell split along the (column, row) - (column + 1, row + 1) diagonal
+        List<Triangle> triangles = new ArrayList<>();
+        List<Triangle> neighbors = new ArrayList<>();
+        int cellColumns = columns - 1;
+        for (int row = 0; row < rows - 1; row++) {
+            for (int column = 0; column < cellColumns; column++) {
+                int v00 = row * columns + column;
+                int cell = row * cellColumns + column;
+                triangles.add(new Triangle(v00, v00 + 1, v00 + columns + 1));
+                neighbors.add(new Triangle(column < cellColumns - 1 ? 2 * (cell + 1) + 1 : -1, 2 * cell + 1,
+                        row > 0 ? 2 * (cell - cellColumns) + 1 : -1));
+                triangles.add(new Triangle(v00, v00 + columns + 1, v00 + columns));
+                neighbors.add(new Triangle(row < rows - 2 ? 2 * (cell + cellColumns) : -1,
+                        column > 0 ? 2 * (cell - 1) : -1, 2 * cell));
+            }
+        }
+        ProfileBuilder meshProfileBuilder = new ProfileBuilder();
+        meshProfileBuilder.setTopographicMesh(vertices, triangles, neighbors);
+        meshProfileBuilder.finishFeeding();
+        TopographicGrid grid = new TopographicGrid(originX, originY, cellWidth, cellHeight, columns, rows, values);
+        ProfileBuilder gridProfileBuilder = new ProfileBuilder();
+        gridProfileBuilder.setTopographicGrid(grid);
+        gridProfileBuilder.finishFeeding();
+        // The counts are the same without creating the triangles
+        assertEquals(triangles.size(), meshProfileBuilder.getTopographicTriangleCount());
+        assertEquals(vertices.size(), meshProfileBuilder.getTopographicVertexCount());
+        assertEquals(grid.getTriangleCount(), gridProfileBuilder.getTopographicTriangleCount());
+        assertEquals(columns * rows, gridProfileBuilder.getTopographicVertexCount());
+        assertTrue(gridProfileBuilder.hasDem());
+        assertEquals(meshProfileBuilder.demAsMultiPolygon().getArea(), gridProfileBuilder.demAsMultiPolygon().getArea(),
+                1e-6);
+
+        for (int i = 0; i < 2000; i++) {
+            Coordinate p1 = new Coordinate(originX + 0.01 + random.nextDouble() * 199.98,
+                    originY + 0.01 + random.nextDouble() * 111.98, 4);
+            Coordinate p2 = new Coordinate(originX + 0.01 + random.nextDouble() * 199.98,
+                    originY + 0.01 + random.nextDouble() * 111.98, 1);
+            assertEquals(meshProfileBuilder.getZGround(p1), gridProfileBuilder.getZGround(p1), 1e-6);
+            assertEquals(meshProfileBuilder.getZGround(p1), grid.getZ(p1.x, p1.y), 1e-6);
+            assertEquals(meshProfileBuilder.getTriangleIdByCoordinate(p1),
+                    gridProfileBuilder.getTriangleIdByCoordinate(p1));
+            CutProfile expected = meshProfileBuilder.getProfile(p1, p2, 0.5, false);
+            CutProfile actual = gridProfileBuilder.getProfile(p1, p2, 0.5, false);
+            assertEquals(expected.hasTopographyIntersection, actual.hasTopographyIntersection);
+            assertEquals(expected.getSource().zGround, actual.getSource().zGround, 1e-6);
+            assertEquals(expected.getReceiver().zGround, actual.getReceiver().zGround, 1e-6);
+            List<Coordinate> expectedTopography = new ArrayList<>();
+            List<Coordinate> actualTopography = new ArrayList<>();
+            for (CutPoint cutPoint : expected.cutPoints) {
+                if(cutPoint instanceof CutPointTopography) {
+                    expectedTopography.add(cutPoint.getCoordinate());
+                }
+            }
+            for (CutPoint cutPoint : actual.cutPoints) {
+                if(cutPoint instanceof CutPointTopography) {
+                    actualTopography.add(cutPoint.getCoordinate());
+                }
+            }
+            assertEquals(expectedTopography.size(), actualTopography.size());
+            for (int idPoint = 0; idPoint < expectedTopography.size(); idPoint++) {
+                assertEquals(expectedTopography.get(idPoint).x, actualTopography.get(idPoint).x, 1e-6);
+                assertEquals(expectedTopography.get(idPoint).y, actualTopography.get(idPoint).y, 1e-6);
+                assertEquals(expectedTopography.get(idPoint).z, actualTopography.get(idPoint).z, 1e-6);
+            }
+        }
+        // Out of the grid the profile is clipped
+        List<Coordinate> points = new ArrayList<>();
+        gridProfileBuilder.fetchTopographicProfile(points, new Coordinate(0, 0), new Coordinate(10, 500), false);
+        assertTrue(points.isEmpty());
+        gridProfileBuilder.fetchTopographicProfile(points, new Coordinate(50, 100), new Coordinate(150, 100), false);
+        assertEquals(new Coordinate(50, 100), points.get(0));
+        assertEquals(grid.getZ(100, 100), points.get(0).z, 1e-6);
+        assertEquals(new Coordinate(100, 100), points.get(1));
+        assertEquals(grid.getZ(150, 100), points.get(points.size() - 1).z, 1e-6);
+
+        // The cache file maps the grid values
+        Path cacheFile = Files.createTempFile("profile_builder", ".bin");
+        try {
+            ProfileBuilderCacheFile.write(gridProfileBuilder, cacheFile, "grid");
+            ProfileBuilder cachedProfileBuilder = new ProfileBuilder();
+            assertTrue(ProfileBuilderCacheFile.read(cacheFile, "grid", cachedProfileBuilder));
+            cachedProfileBuilder.finishFeeding();
+            TopographicGrid cachedGrid = cachedProfileBuilder.getTopographicGrid();
+            assertNotNull(cachedGrid);
+            assertEquals(columns, cachedGrid.getColumns());
+            assertEquals(rows, cachedGrid.getRows());
+            for (int i = 0; i < 100; i++) {
+                Coordinate p = new Coordinate(originX + random.nextDouble() * 200,
+                        originY + random.nextDouble() * 112);
+                assertEquals(gridProfileBuilder.getZGround(p), cachedProfileBuilder.getZGround(p), 0);
+            }
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+
+        // The triangles sharing a missing value are out of the DEM
+        float[] missingValues = values.clone();
+        missingValues[2 * columns + 2] = Float.NaN;
+        ProfileBuilder missingProfileBuilder = new ProfileBuilder();
+        missingProfileBuilder.setTopographicGrid(new TopographicGrid(originX, originY, cellWidth, cellHeight, columns,
+                rows, missingValues));
+        missingProfileBuilder.finishFeeding();
+        MultiPolygon dem = missingProfileBuilder.demAsMultiPolygon();
+        assertEquals(grid.getTriangleCount() - 6, dem.getNumGeometries());
+        assertEquals(gridProfileBuilder.demAsMultiPolygon().getArea() - 3 * cellWidth * cellHeight, dem.getArea(),
+                1e-6);
+        assertEquals(-1, missingProfileBuilder.getTriangleIdByCoordinate(
+                new Coordinate(originX + 2 * cellWidth + 1, originY + 2 * cellHeight + 2)));
+        assertNotEquals(-1, missingProfileBuilder.getTriangleIdByCoordinate(
+                new Coordinate(originX + 5 * cellWidth + 1, originY + 5 * cellHeight + 2)));
+        // The valid samples and sides next to the missing value keep their altitude
+        TopographicGrid missingGrid = missingProfileBuilder.getTopographicGrid();
+        assertEquals(values[2 * columns + 1], missingGrid.getZ(originX + cellWidth, originY + 2 * cellHeight), 0);
+        assertEquals(values[columns + 1], missingGrid.getZ(originX + cellWidth, originY + cellHeight), 0);
+        assertEquals((values[columns + 1] + values[columns + 2]) / 2.0,
+                missingGrid.getZ(originX + 1.5 * cellWidth, originY + cellHeight), 1e-6);
+        assertTrue(Double.isNaN(missingGrid.getZ(originX + 2 * cellWidth, originY + 2 * cellHeight)));
+        assertTrue(Double.isNaN(missingGrid.getZ(originX + 2 * cellWidth + 1, originY + 2 * cellHeight + 2)));
+    }
 }
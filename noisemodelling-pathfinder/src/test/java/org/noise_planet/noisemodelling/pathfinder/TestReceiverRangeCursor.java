@@ -0,0 +1,71 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestReceiverRangeCursor {
+
+    @Test
+    public void testGuidedRanges() {
+        ReceiverRangeCursor cursor = new ReceiverRangeCursor(1000, 4);
+        int[] range = new int[2];
+        assertTrue(cursor.nextRange(range));
+        assertEquals(0, range[0]);
+        // first range is 1000 / (4 * 4)
+        assertEquals(62, range[1]);
+        int lastSize = range[1] - range[0];
+        int lastEnd = range[1];
+        while (cursor.nextRange(range)) {
+            assertEquals(lastEnd, range[0]);
+            assertTrue(range[1] - range[0] <= lastSize);
+            lastSize = range[1] - range[0];
+            lastEnd = range[1];
+        }
+        assertEquals(1000, lastEnd);
+        assertEquals(1, lastSize);
+        assertEquals(0, cursor.getRemainingReceivers());
+        assertFalse(cursor.nextRange(range));
+    }
+
+    @Test
+    public void testConcurrentConsumers() throws InterruptedException {
+        final int receiverCount = 100000;
+        ReceiverRangeCursor cursor = new ReceiverRangeCursor(receiverCount, 8);
+        AtomicIntegerArray visits = new AtomicIntegerArray(receiverCount);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                int[] range = new int[2];
+                while (cursor.nextRange(range)) {
+                    for (int idReceiver = range[0]; idReceiver < range[1]; idReceiver++) {
+                        visits.incrementAndGet(idReceiver);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            assertEquals(1, visits.get(idReceiver));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThreadPoolTest {
+
+    /**
+     * A task removed from the queue must free its place for the blocking submissions
+     */
+    @Test
+    public void testRemovedTaskReleasesSubmitter() throws InterruptedException {
+        ThreadPool threadPool = new ThreadPool(1, 2, 1, TimeUnit.MINUTES);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            threadPool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // ignore
+                }
+            });
+            Runnable queuedTask = () -> { };
+            threadPool.execute(queuedTask);
+            CountDownLatch submitted = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                threadPool.executeBlocking(() -> { });
+                submitted.countDown();
+            });
+            submitter.start();
+            assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(threadPool.remove(queuedTask));
+            assertTrue(submitted.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            submitter.join();
+        } finally {
+            threadPool.shutdownNow();
+        }
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The tasks dropped by shutdownNow are no longer pending
+     */
+    @Test
+    public void testShutdownNowReleasesTasks() throws InterruptedException {
+        ThreadPool threadPool = new ThreadPool(1, 1, 1, TimeUnit.MINUTES);
+        CountDownLatch started = new CountDownLatch(1);
+        threadPool.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException ex) {
+                // ignore
+            }
+        });
+        threadPool.execute(() -> { });
+        threadPool.execute(() -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, threadPool.shutdownNow().size());
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, threadPool.getPendingTaskCount());
+    }
+}
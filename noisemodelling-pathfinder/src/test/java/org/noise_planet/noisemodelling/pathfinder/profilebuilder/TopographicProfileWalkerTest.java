@@ -0,0 +1,99 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.delaunay.Triangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TopographicProfileWalkerTest {
+
+    @Test
+    public void testVisitedIndexes() {
+        VisitedIndexes visitedIndexes = new VisitedIndexes();
+        for (int i = 0; i < 10000; i += 3) {
+            assertTrue(visitedIndexes.add(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i % 3 == 0, visitedIndexes.contains(i));
+        }
+        assertFalse(visitedIndexes.add(9));
+        assertTrue(visitedIndexes.capacity() > VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        // The large table is released
+        visitedIndexes.clear();
+        assertTrue(visitedIndexes.capacity() <= VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        assertFalse(visitedIndexes.contains(9));
+        assertTrue(visitedIndexes.add(Integer.MAX_VALUE));
+        visitedIndexes.clear();
+        assertFalse(visitedIndexes.contains(Integer.MAX_VALUE));
+    }
+
+    /**
+     * A long walk on a large DEM must not leave large buffers in the walker
+     */
+    @Test
+    public void testRetainedBuffers() {
+        int columns = 4001;
+        int rows = 3;
+        List<Coordinate> vertices = new ArrayList<>(columns * rows);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                vertices.add(new Coordinate(column, row, (column * 7 + row * 3) % 11));
+            }
+        }
+        // Two triangles per cell split along the (column, row) - (column + 1, row + 1) diagonal
+        List<Triangle> triangles = new ArrayList<>();
+        List<Triangle> neighbors = new ArrayList<>();
+        int cellColumns = columns - 1;
+        for (int row = 0; row < rows - 1; row++) {
+            for (int column = 0; column < cellColumns; column++) {
+                int v00 = row * columns + column;
+                int cell = row * cellColumns + column;
+                triangles.add(new Triangle(v00, v00 + 1, v00 + columns + 1));
+                neighbors.add(new Triangle(column < cellColumns - 1 ? 2 * (cell + 1) + 1 : -1, 2 * cell + 1,
+                        row > 0 ? 2 * (cell - cellColumns) + 1 : -1));
+                triangles.add(new Triangle(v00, v00 + columns + 1, v00 + columns));
+                neighbors.add(new Triangle(row < rows - 2 ? 2 * (cell + cellColumns) : -1,
+                        column > 0 ? 2 * (cell - 1) : -1, 2 * cell));
+            }
+        }
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setTopographicMesh(vertices, triangles, neighbors);
+        profileBuilder.finishFeeding();
+        TopographicProfileWalker walker = new TopographicProfileWalker();
+        walker.walk(profileBuilder, new Coordinate(0.5, 0.7, 20), new Coordinate(3999.5, 1.3, 20), false);
+        assertTrue(walker.getPointCount() > TopographicProfileWalker.MAXIMUM_RETAINED_POINT_CAPACITY);
+        assertTrue(walker.getVisitedCapacity() > VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        // The next walk releases the large buffers and gives the same points as a new walker
+        Coordinate p1 = new Coordinate(10.5, 0.2, 20);
+        Coordinate p2 = new Coordinate(30.5, 1.9, 20);
+        walker.walk(profileBuilder, p1, p2, false);
+        assertTrue(walker.getPointCapacity() <= TopographicProfileWalker.MAXIMUM_RETAINED_POINT_CAPACITY);
+        assertTrue(walker.getVisitedCapacity() <= VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        List<Coordinate> points = new ArrayList<>();
+        walker.copyPoints(points);
+        TopographicProfileWalker newWalker = new TopographicProfileWalker();
+        newWalker.walk(profileBuilder, p1, p2, false);
+        List<Coordinate> expectedPoints = new ArrayList<>();
+        newWalker.copyPoints(expectedPoints);
+        assertEquals(expectedPoints.size(), points.size());
+        for (int i = 0; i < expectedPoints.size(); i++) {
+            assertEquals(0, expectedPoints.get(i).compareTo(points.get(i)));
+            assertEquals(expectedPoints.get(i).z, points.get(i).z, 0);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WallGridIndexTest {
+
+    /**
+     * A query crossing many walls must not leave large buffers in the candidates
+     */
+    @Test
+    public void testRetainedCandidates() {
+        List<Wall> walls = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            walls.add(new Wall(new Coordinate(i, 0), new Coordinate(i, 1), i, ProfileBuilder.IntersectionType.WALL));
+        }
+        WallGridIndex wallGridIndex = new WallGridIndex(walls);
+        WallGridIndex.WallCandidates candidates = new WallGridIndex.WallCandidates();
+        wallGridIndex.collectWalls(-1, 0.5, 10001, 0.5, candidates);
+        assertEquals(walls.size(), candidates.size());
+        assertTrue(candidates.capacity() > WallGridIndex.WallCandidates.MAXIMUM_RETAINED_CAPACITY);
+        assertTrue(candidates.visitedCapacity() > VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        // The next query releases the large buffers and finds the same walls as new candidates
+        wallGridIndex.collectWalls(10.2, 0.5, 20.8, 0.5, candidates);
+        assertTrue(candidates.capacity() <= WallGridIndex.WallCandidates.MAXIMUM_RETAINED_CAPACITY);
+        assertTrue(candidates.visitedCapacity() <= VisitedIndexes.MAXIMUM_RETAINED_CAPACITY);
+        WallGridIndex.WallCandidates newCandidates = new WallGridIndex.WallCandidates();
+        wallGridIndex.collectWalls(10.2, 0.5, 20.8, 0.5, newCandidates);
+        assertEquals(newCandidates.size(), candidates.size());
+        for (int i = 0; i < newCandidates.size(); i++) {
+            assertEquals(newCandidates.get(i), candidates.get(i));
+        }
+        for (int wall = 11; wall <= 20; wall++) {
+            boolean found = false;
+            for (int i = 0; i < candidates.size(); i++) {
+                found |= candidates.get(i) == wall;
+            }
+            assertTrue(found);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StageProfilerTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, 1L << 39}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long lowerBound = LatencyHistogram.bucketLowerBound(index);
+            assertTrue(lowerBound <= value);
+            assertTrue(value < lowerBound + LatencyHistogram.bucketWidth(index));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.add(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(1000, histogram.getMin());
+        // relative error of a bucket is lower than 1/8
+        assertEquals(500000, histogram.getPercentile(50), 500000 / 8.0);
+        assertEquals(990000, histogram.getPercentile(99), 990000 / 8.0);
+        assertEquals(1000000, histogram.getPercentile(100));
+        LatencyHistogram other = new LatencyHistogram();
+        other.add(5000000);
+        histogram.merge(other);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(5000000, histogram.getMax());
+    }
+
+    @Test
+    public void testThreadsMerge() throws InterruptedException {
+        StageProfiler stageProfiler = new StageProfiler("cell");
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int value = 0; value < 1000; value++) {
+                    stageProfiler.record(StageProfiler.Stage.GET_PROFILE, value);
+                }
+                stageProfiler.record(StageProfiler.Stage.ATTENUATION, 10);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram[] histograms = StageProfiler.createHistograms();
+        stageProfiler.drainTo(histograms);
+        assertEquals(4000, histograms[StageProfiler.Stage.GET_PROFILE.ordinal()].getCount());
+        assertEquals(4, histograms[StageProfiler.Stage.ATTENUATION.ordinal()].getCount());
+        assertEquals(0, histograms[StageProfiler.Stage.SCENE_LOAD.ordinal()].getCount());
+        // the durations have been moved
+        LatencyHistogram[] empty = StageProfiler.createHistograms();
+        stageProfiler.drainTo(empty);
+        assertEquals(0, empty[StageProfiler.Stage.GET_PROFILE.ordinal()].getCount());
+    }
+
+    @Test
+    public void testMetric() {
+        StageMetric stageMetric = new StageMetric(null);
+        StageProfiler cell = new StageProfiler("0_1");
+        cell.record(StageProfiler.Stage.SCENE_LOAD, 2000000);
+        cell.record(StageProfiler.Stage.GET_PROFILE, 3000);
+        stageMetric.getProcessProfiler().record(StageProfiler.Stage.DB_WRITE, 50000);
+        stageMetric.endCell(cell);
+        String[] columns = stageMetric.getColumnNames();
+        String[] values = stageMetric.getCurrentValues();
+        assertEquals(columns.length, values.length);
+        assertEquals(2 + 5 * StageProfiler.Stage.values().length, columns.length);
+        assertEquals("stage_cells", columns[0]);
+        assertEquals("1", values[0]);
+        assertEquals("0_1", values[1]);
+        assertEquals("scene_load_count", columns[2]);
+        assertEquals("1", values[2]);
+        assertEquals("scene_load_max_microseconds", columns[6]);
+        assertEquals("2000", values[6]);
+        // next line is empty
+        values = stageMetric.getCurrentValues();
+        assertEquals("0", values[0]);
+        assertEquals("0", values[2]);
+        Map<String, StageMetric.StageStatistics[]> cells = stageMetric.getCellStatistics();
+        assertEquals(1, cells.size());
+        assertEquals(1, cells.get("0_1")[StageProfiler.Stage.GET_PROFILE.ordinal()].count);
+        assertEquals(0, cells.get("0_1")[StageProfiler.Stage.DB_WRITE.ordinal()].count);
+        StageMetric.StageStatistics[] total = stageMetric.getTotalStatistics();
+        assertEquals(1, total[StageProfiler.Stage.DB_WRITE.ordinal()].count);
+        assertEquals(50000, total[StageProfiler.Stage.DB_WRITE.ordinal()].max);
+    }
+
+    /**
+     * The profiler thread must wake up on a write request and on stop, without waiting for the write interval
+     */
+    @Test
+    public void testProfilerThreadWakeUp() throws Exception {
+        File outputFile = File.createTempFile("profile", ".csv");
+        try {
+            ProfilerThread profilerThread = new ProfilerThread(outputFile);
+            profilerThread.setWriteInterval(3600);
+            profilerThread.setFlushInterval(0);
+            Thread thread = new Thread(profilerThread);
+            thread.start();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8).size() < 2 &&
+                    System.currentTimeMillis() < deadline) {
+                // The first line of values is written when the thread starts
+                Thread.sleep(10);
+            }
+            profilerThread.requestWrite();
+            while (Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8).size() < 3 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8).size());
+            profilerThread.stop();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        } finally {
+            assertTrue(outputFile.delete());
+        }
+    }
+}
@@ -28,6 +28,8 @@ public class AttenuationVisitor implements CutPlaneVisitor {
     public List<ReceiverNoiseLevel> receiverAttenuationLevels = new ArrayList<>();
     public List<CnossosPath> pathParameters = new ArrayList<CnossosPath>();
     public boolean keepRays = false;
+    /** Attenuation engine of this thread */
+    private final AttenuationCnossos attenuationCnossos = new AttenuationCnossos();
 
     public AttenuationVisitor(AttenuationComputeOutput multiThreadParent) {
         this.multiThreadParent = multiThreadParent;
@@ -53,9 +55,11 @@ public class AttenuationVisitor implements CutPlaneVisitor {
     }
 
     private void processPath(String period, AttenuationParameters AttenuationParameters, CnossosPath path) {
-        double[] aGlobalMeteo = AttenuationCnossos.computeCnossosAttenuation(AttenuationParameters, path,
+        double[] aGlobalMeteo = attenuationCnossos.computeAttenuation(AttenuationParameters, path,
                 multiThreadParent.scene, multiThreadParent.exportAttenuationMatrix);
         if (aGlobalMeteo != null && aGlobalMeteo.length > 0) {
+            // the engine array is reused for the next path
+            aGlobalMeteo = aGlobalMeteo.clone();
             multiThreadParent.cnossosPathCount.addAndGet(1);
             if(keepRays) {
                 pathParameters.add(path);
@@ -20,7 +20,6 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static java.lang.Math.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.*;
@@ -32,19 +31,31 @@ import static org.noise_planet.noisemodelling.propagation.cnossos.PointPath.POIN
  * Return the dB value corresponding to the parameters
  * Following Directive 2015/996/EN
  * https://circabc.europa.eu/sd/a/9566c5b9-8607-4118-8427-906dab7632e2/Directive_2015_996_EN.pdf
+ * The static methods are stateless. An instance of this class keeps per-band work arrays that are reused from one
+ * path to the next one, so an instance must be owned by a single thread (one instance per computation thread).
  * @author Pierre Aumond
  */
 
 public class AttenuationCnossos {
-    private static double[] freq_lambda;
-    private static double[] aGlobal;
-
-    public static double[] getaGlobal() {
-        return aGlobal;
-    }
-
     private static final Logger LOGGER = LoggerFactory.getLogger(AttenuationCnossos.class);
 
+    // Per-band work arrays, reallocated only when the number of frequency bands change
+    private int frequencyCount = -1;
+    private double[] aDiv;
+    private double[] aAtm;
+    private double[] aRef;
+    private double[] aGround;
+    private double[] aDif;
+    private double[] aBoundary;
+    private double[] aRetroDiff;
+    private double[] deltaBodyScreen;
+    private double[] aGlobalMeteoHom;
+    private double[] aGlobalMeteoFav;
+    private double[] aGlobal;
+    // Directivity frequencies, computed once per frequency list
+    private List<Integer> directivityFrequencyList;
+    private double[] directivityFrequencies = new double[0];
+
     /**
      * Eq 2.5.21: calculate the value of DeltaDif
      * @param srpath
@@ -56,16 +67,19 @@ public class AttenuationCnossos {
         double cprime;
 
         for (int idfreq = 0; idfreq < data.getFrequencies().size(); idfreq++) {
+            // wave length
+            double lambda = data.getFrequencies().get(idfreq) > 0 ?
+                    data.getCelerity() / data.getFrequencies().get(idfreq) : 1;
             double Ch = 1; // Eq 2.5.21
             if (srpath.eLength > 0.3) {
-                double gammaPart = pow((5 * freq_lambda[idfreq]) / srpath.eLength, 2);
+                double gammaPart = pow((5 * lambda) / srpath.eLength, 2);
                 cprime = (1. + gammaPart) / (1./3. + gammaPart); // Eq. 2.5.23
             } else {
                 cprime = 1.;
             }
 
             //(7.11) NMP2008 P.32
-            double testForm = 40 / freq_lambda[idfreq]* cprime * srpath.delta;
+            double testForm = 40 / lambda* cprime * srpath.delta;
 
             double deltaDif = 0.;
             if (testForm >= -2.) {
@@ -200,9 +214,21 @@ public class AttenuationCnossos {
      * @return list double with the values of ARef
      */
     private static double[] getARef(CnossosPath pathParameters, AttenuationParameters data) {
-        double[] aRef = new double[data.getFrequencies().size()];
+        return getARef(pathParameters, data, new double[data.getFrequencies().size()]);
+    }
+
+    /**
+     * Compute ARef
+     * @param pathParameters
+     * @param data
+     * @param aRef (output) values of ARef
+     * @return aRef
+     */
+    private static double[] getARef(CnossosPath pathParameters, AttenuationParameters data, double[] aRef) {
         Arrays.fill(aRef, 0.0);
-        for (PointPath pointPath : pathParameters.getPointList()) {
+        List<PointPath> pointList = pathParameters.getPointList();
+        for (int idPoint = 0; idPoint < pointList.size(); idPoint++) {
+            PointPath pointPath = pointList.get(idPoint);
             if(pointPath.type.equals(REFL)) {
                 for (int idf = 0; idf < data.getFrequencies().size(); idf++) {
                     List<Double> alpha = pointPath.alphaWall;
@@ -362,22 +388,20 @@ public class AttenuationCnossos {
     }
 
     /**
-     * Initialize the instance of AttenuationCnossos
-     * @param data
+     * Count the points of the given type in the path
+     * @param pathParameters
+     * @param type
+     * @return number of points
      */
-    public static void init(AttenuationParameters data) {
-        // init
-        aGlobal = new double[data.getFrequencies().size()];
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.getFrequencies().size()];
-        for (int idf = 0; idf < data.getFrequencies().size(); idf++) {
-            if (data.getFrequencies().get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.getFrequencies().get(idf);
-            } else {
-                freq_lambda[idf] = 1;
+    private static int countPoints(CnossosPath pathParameters, PointPath.POINT_TYPE type) {
+        int count = 0;
+        List<PointPath> pointList = pathParameters.getPointList();
+        for (int idPoint = 0; idPoint < pointList.size(); idPoint++) {
+            if (pointList.get(idPoint).type.equals(type)) {
+                count++;
             }
         }
+        return count;
     }
 
     /**
@@ -387,9 +411,17 @@ public class AttenuationCnossos {
      * @return list double with the values of ADiv
      */
     public static double[] aDiv(CnossosPath pathParameters, AttenuationParameters data) {
-        double[] aDiv = new double[data.getFrequencies().size()];
-        long difVPointCount = pathParameters.getPointList().stream().
-                filter(pointPath -> pointPath.type.equals(DIFV)).count();
+        return aDiv(pathParameters, new double[data.getFrequencies().size()]);
+    }
+
+    /**
+     * Compute ADiv the attenuation
+     * @param pathParameters
+     * @param aDiv (output) values of ADiv
+     * @return aDiv
+     */
+    private static double[] aDiv(CnossosPath pathParameters, double[] aDiv) {
+        int difVPointCount = countPoints(pathParameters, DIFV);
         Arrays.fill(aDiv, getADiv(difVPointCount == 0 ? pathParameters.getSRSegment().d : pathParameters.getSRSegment().dc));
         return aDiv;
     }
@@ -401,8 +433,17 @@ public class AttenuationCnossos {
      * @return list double with the values of AAtm
      */
     public static double[] aAtm(double[] alphaAtmosphericKm, double distance) {
-        // init
-        double[] aAtm = new double[alphaAtmosphericKm.length];
+        return aAtm(alphaAtmosphericKm, distance, new double[alphaAtmosphericKm.length]);
+    }
+
+    /**
+     * Compute AAtm
+     * @param alphaAtmosphericKm Absorption per km
+     * @param distance Distance (m)
+     * @param aAtm (output) values of AAtm
+     * @return aAtm
+     */
+    private static double[] aAtm(double[] alphaAtmosphericKm, double distance, double[] aAtm) {
         // init atmosphere
         for (int idfreq = 0; idfreq < aAtm.length; idfreq++) {
             aAtm[idfreq] = getAAtm(distance, alphaAtmosphericKm[idfreq]);
@@ -429,20 +470,10 @@ public class AttenuationCnossos {
      */
     public static double[] evaluate(CnossosPath pathParameters, AttenuationParameters data) {
         // init
-        aGlobal = new double[data.getFrequencies().size()];
+        double[] aGlobal = new double[data.getFrequencies().size()];
         double[] aBoundary;
         double[] aRef;
 
-        // Init wave length for each frequency
-        freq_lambda = new double[data.getFrequencies().size()];
-        for (int idf = 0; idf < data.getFrequencies().size(); idf++) {
-            if (data.getFrequencies().get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.getFrequencies().get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
-
         // init atmosphere
         double[] alpha_atmo = data.getAlpha_atmo();
 
@@ -502,22 +533,37 @@ public class AttenuationCnossos {
      * @return
      */
     public static double[] aBoundary(CnossosPath path, AttenuationParameters data) {
-        double[] aGround = new double[data.getFrequencies().size()];
-        double[] aDif = new double[data.getFrequencies().size()];
-        List<PointPath> diffPts = path.getPointList().stream().
-                filter(pointPath -> pointPath.type.equals(DIFH_RCRIT) || pointPath.type.equals(DIFH)
-                        || pointPath.type.equals(DIFV)).collect(Collectors.toList());
+        int frequencyCount = data.getFrequencies().size();
+        return aBoundary(path, data, new double[frequencyCount], new double[frequencyCount],
+                new double[frequencyCount]);
+    }
+
+    /**
+     * Compute ABoundary
+     * @param path
+     * @param data
+     * @param aGround work array
+     * @param aDif work array
+     * @param aBoundary (output) values of ABoundary
+     * @return aBoundary
+     */
+    private static double[] aBoundary(CnossosPath path, AttenuationParameters data, double[] aGround, double[] aDif,
+                                      double[] aBoundary) {
+        List<PointPath> pointList = path.getPointList();
         path.aBoundaryH.init(data.getFrequencies().size());
         path.aBoundaryF.init(data.getFrequencies().size());
         // Without diff
         for(int i=0; i<data.getFrequencies().size(); i++) {
-            int finalI = i;
-            boolean isValidRCriterion = isValidRcrit(path, data.getFrequencies().get(finalI), path.isFavorable());
-            PointPath first = diffPts.stream()
-                    .filter(pp -> pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
-                            (pp.type.equals(DIFH_RCRIT) && isValidRCriterion ))
-                    .findFirst()
-                    .orElse(null);
+            boolean isValidRCriterion = isValidRcrit(path, data.getFrequencies().get(i), path.isFavorable());
+            PointPath first = null;
+            for (int idPoint = 0; idPoint < pointList.size(); idPoint++) {
+                PointPath pp = pointList.get(idPoint);
+                if (pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
+                        (pp.type.equals(DIFH_RCRIT) && isValidRCriterion)) {
+                    first = pp;
+                    break;
+                }
+            }
             aGround[i] = path.isFavorable() ?
                     aGroundF(path, path.getSRSegment(), data, i) :
                     aGroundH(path, path.getSRSegment(), data, i);
@@ -540,12 +586,11 @@ public class AttenuationCnossos {
         }
         if(path.keepAbsorption) {
             if (path.isFavorable()) {
-                path.aDifF = aDif;
+                path.aDifF = aDif.clone();
             } else {
-                path.aDifH = aDif;
+                path.aDifH = aDif.clone();
             }
         }
-        double[] aBoundary = new double[data.getFrequencies().size()];
         for(int i=0; i<data.getFrequencies().size(); i++) {
             aBoundary[i] = aGround[i] + aDif[i];
         }
@@ -561,7 +606,18 @@ public class AttenuationCnossos {
      * @return list double with the values of deltaRetrodif
      */
     public static double[] deltaRetrodif(CnossosPath reflect, AttenuationParameters data) {
-        double[] retroDiff = new double[data.getFrequencies().size()];
+        return deltaRetrodif(reflect, data, new double[data.getFrequencies().size()]);
+    }
+
+    /**
+     * Compute deltaRetrodif
+     * Figure 2.5.36
+     * @param reflect
+     * @param data
+     * @param retroDiff (output) values of deltaRetrodif
+     * @return retroDiff
+     */
+    private static double[] deltaRetrodif(CnossosPath reflect, AttenuationParameters data, double[] retroDiff) {
         Arrays.fill(retroDiff, 0.);
         final Coordinate originalS = reflect.getSRSegment().s;
         final Coordinate originalR = reflect.getSRSegment().r;
@@ -584,11 +640,12 @@ public class AttenuationCnossos {
                     }
                 }
                 //Get the point on the top of the obstacle
-                Coordinate p = new Coordinate(pointPath.coordinate.x, pointPath.obstacleZ);
+                double px = pointPath.coordinate.x;
+                double py = pointPath.obstacleZ;
                 double ch = 1.;
                 if (reflect.isFavorable()) {
-                    double SP = s.distance(p);
-                    double PR = p.distance(r);
+                    double SP = hypot(s.x - px, s.y - py);
+                    double PR = hypot(px - r.x, py - r.y);
                     double gamma = 2 * max(1000, 8 * SR);
                     double e = reflect.e;
                     double SpO = gamma * asin(SP / gamma);
@@ -614,7 +671,7 @@ public class AttenuationCnossos {
                     }
                 } else {
                     //2.5.36 altered with ISO/TR 17534-4:2020-11 Chapter  5.15
-                    double deltaPrime = s.distance(r) - s.distance(p) - p.distance(r);
+                    double deltaPrime = s.distance(r) - hypot(s.x - px, s.y - py) - hypot(px - r.x, py - r.y);
                     for (int i = 0; i < data.getFrequencies().size(); i++) {
                         double lambda = 340.0 / data.getFrequencies().get(i);
                         double testForm = 40.0 / lambda * deltaPrime;
@@ -641,8 +698,8 @@ public class AttenuationCnossos {
 
         double ch = 1.;
         double lambda = 340.0 / data.getFrequencies().get(i);
-        long difHCount = proPathParameters.getPointList().stream().filter(pointPath -> pointPath.type.equals(DIFH)).count();
-        long difVCount = proPathParameters.getPointList().stream().filter(pointPath -> pointPath.type.equals(DIFV)).count();
+        int difHCount = countPoints(proPathParameters, DIFH);
+        int difVCount = countPoints(proPathParameters, DIFV);
         double cSecond = (type.equals(PointPath.POINT_TYPE.DIFH) && difHCount <= 1) || (type.equals(DIFV) && difVCount <= 1) || proPathParameters.e <= 0.3 ? 1. :
                 (1+pow(5*lambda/ proPathParameters.e, 2))/(1./3+pow(5*lambda/ proPathParameters.e, 2));
 
@@ -722,36 +779,24 @@ public class AttenuationCnossos {
     }
 
     /**
-     * Calculate the value of CfK
-     * @param proPathParameters
-     * @param path
-     * @param data
-     * @param idFreq
-     * @return a double list of the value of CfK
+     * Eq. 2.5.17 compute w
+     * @param fm Frequency (Hz)
+     * @param gw Ground factor
+     * @return w
      */
-    private static double[] computeCfKValues(CnossosPath proPathParameters, SegmentPath path, AttenuationParameters data, int idFreq) {
-        return computeCfKValues(proPathParameters, path, data, idFreq, false);
+    private static double computeW(int fm, double gw) {
+        return 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
+                (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
     }
 
     /**
-     * Calculate the value of Cfk with checking if the absorption coefficient is
-     * @param proPathParameters
-     * @param path
-     * @param data
-     * @param idFreq
-     * @param forceGPath
-     * @return
+     * Eq. 2.5.16 compute Cf
+     * @param dp Projected distance
+     * @param w see {@link #computeW(int, double)}
+     * @return Cf
      */
-    private static double[] computeCfKValues(CnossosPath proPathParameters, SegmentPath path, AttenuationParameters data, int idFreq, boolean forceGPath) {
-        int fm = data.getFrequencies().get(idFreq);
-        double c = data.getCelerity();
-        double dp = path.dp;
-        double k = 2*PI*fm/c;
-        double gw = forceGPath ? path.gPath : proPathParameters.isFavorable() ? path.gPath : path.gPathPrime;
-        double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
-                (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
-        double cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
-        return new double[]{cf, k, w};
+    private static double computeCf(double dp, double w) {
+        return dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
     }
 
 
@@ -777,10 +822,10 @@ public class AttenuationCnossos {
      * @return homogeneous ground Attenuation in db
      */
     public static double aGroundH(CnossosPath proPathParameters, SegmentPath path, AttenuationParameters data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPathParameters, path, data, idFreq, forceGPath);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        int fm = data.getFrequencies().get(idFreq);
+        double k = 2*PI*fm/data.getCelerity();
+        double w = computeW(fm, forceGPath ? path.gPath : proPathParameters.isFavorable() ? path.gPath : path.gPathPrime);
+        double cf = computeCf(path.dp, w);
         if(proPathParameters.keepAbsorption && path == proPathParameters.getSRSegment()) {
             proPathParameters.groundAttenuation.wH[idFreq] = w;
             proPathParameters.groundAttenuation.cfH[idFreq] = cf;
@@ -814,10 +859,11 @@ public class AttenuationCnossos {
      * @return favorable ground Attenuation in db
      */
     public static double aGroundF(CnossosPath proPathParameters, SegmentPath path, AttenuationParameters data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPathParameters, path, data, idFreq);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        // forceGPath is not used for the ground factor w
+        int fm = data.getFrequencies().get(idFreq);
+        double k = 2*PI*fm/data.getCelerity();
+        double w = computeW(fm, proPathParameters.isFavorable() ? path.gPath : path.gPathPrime);
+        double cf = computeCf(path.dp, w);
         if(proPathParameters.keepAbsorption && path == proPathParameters.getSRSegment()) {
             proPathParameters.groundAttenuation.wF[idFreq] = w;
             proPathParameters.groundAttenuation.cfF[idFreq] = cf;
@@ -841,6 +887,8 @@ public class AttenuationCnossos {
 
     /**
      * Compute the Attenuation for each frequency with a given sourceId, sourceLi and sourceId
+     * This method allocates a new engine on each call, computation threads should keep their own instance of
+     * AttenuationCnossos and call {@link #computeAttenuation(AttenuationParameters, CnossosPath, SceneWithAttenuation, boolean)}
      * @param data
      * @param proPathParameters Cnossos paths
      * @return double list of attenuation
@@ -850,41 +898,183 @@ public class AttenuationCnossos {
         if (data == null) {
             return new double[0];
         }
-        // cache frequencies
-        double[] frequencies = new double[0];
-        if(scene != null) {
-            frequencies =  scene.profileBuilder.frequencyArray.stream().mapToDouble(value -> value).toArray();
+        // the engine is not reused so the returned array is not shared
+        return new AttenuationCnossos().computeAttenuation(data, proPathParameters, scene, exportAttenuationMatrix);
+    }
+
+    /**
+     * Allocate the work arrays if the number of frequency bands changed
+     * @param size Number of frequency bands
+     */
+    private void ensureFrequencyCount(int size) {
+        if (size != frequencyCount) {
+            frequencyCount = size;
+            aDiv = new double[size];
+            aAtm = new double[size];
+            aRef = new double[size];
+            aGround = new double[size];
+            aDif = new double[size];
+            aBoundary = new double[size];
+            aRetroDiff = new double[size];
+            deltaBodyScreen = new double[size];
+            aGlobalMeteoHom = new double[size];
+            aGlobalMeteoFav = new double[size];
+            aGlobal = new double[size];
         }
+    }
+
+    /**
+     * Compute the Attenuation for each frequency with a given sourceId, sourceLi and sourceId
+     * The work arrays of this instance are reused, the returned array is overwritten by the next call of this method.
+     * @param data
+     * @param proPathParameters Cnossos paths
+     * @param scene Used for the source directivity, may be null
+     * @param exportAttenuationMatrix Keep the attenuation terms into proPathParameters
+     * @return double list of attenuation, only valid until the next call
+     */
+    public double[] computeAttenuation(AttenuationParameters data, CnossosPath proPathParameters,
+                                       SceneWithAttenuation scene, boolean exportAttenuationMatrix) {
+        if (data == null) {
+            return new double[0];
+        }
+        ensureFrequencyCount(data.getFrequencies().size());
         // Compute receiver/source attenuation
         if(exportAttenuationMatrix) {
             proPathParameters.keepAbsorption = true;
             proPathParameters.groundAttenuation.init(data.getFrequencies().size());
             proPathParameters.init(data.getFrequencies().size());
         }
-        AttenuationCnossos.init(data);
         //ADiv computation
-        double[] aDiv = AttenuationCnossos.aDiv(proPathParameters, data);
+        aDiv(proPathParameters, aDiv);
         //AAtm computation
-        double[] aAtm = AttenuationCnossos.aAtm(data.getAlpha_atmo(), proPathParameters.getSRSegment().d);
+        aAtm(data.getAlpha_atmo(), proPathParameters.getSRSegment().d, aAtm);
         //Reflexion computation
-        double[] aRef = AttenuationCnossos.evaluateAref(proPathParameters, data);
+        getARef(proPathParameters, data, aRef);
         //For testing purpose
         if(exportAttenuationMatrix) {
             proPathParameters.aRef = aRef.clone();
         }
-        double[] aRetroDiff;
-        //ABoundary computation
-        double[] aBoundary;
-        double[] aGlobalMeteoHom = new double[data.getFrequencies().size()];
-        double[] aGlobalMeteoFav = new double[data.getFrequencies().size()];
-        double[] deltaBodyScreen = new double[data.getFrequencies().size()];
+        Arrays.fill(aGlobalMeteoHom, 0);
+        Arrays.fill(aGlobalMeteoFav, 0);
+        Arrays.fill(deltaBodyScreen, 0);
+        deltaBodyScreen(data, proPathParameters.getPointList(), deltaBodyScreen);
+
+        // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
+        // just swap the inverse boolean parameter
+        // @see ComputeCnossosRays#computeOrientation
+        Vector3D fieldVectorPropagation = Orientation.rotate(proPathParameters.getSourceOrientation(),
+                Orientation.toVector(proPathParameters.raySourceReceiverDirectivity), false);
+        int roseIndex = AttenuationParameters.getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
+        // Homogenous conditions
+        if (data.getWindRose()[roseIndex] != 1) {
+            proPathParameters.setFavorable(false);
 
-        List<PointPath> ptList = proPathParameters.getPointList();
 
+            aBoundary(proPathParameters, data, aGround, aDif, aBoundary);
+            deltaRetrodif(proPathParameters, data, aRetroDiff);
+            for (int idfreq = 0; idfreq < data.getFrequencies().size(); idfreq++) {
+                aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] - aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
+            }
+            //For testing purpose
+            if(exportAttenuationMatrix) {
+                proPathParameters.aRetroDiffH = aRetroDiff.clone();
+                proPathParameters.double_aBoundaryH = aBoundary.clone();
+                proPathParameters.aGlobalH = aGlobalMeteoHom.clone();
+            }
+        }
+        // Favorable conditions
+        if (data.getWindRose()[roseIndex] != 0) {
+            proPathParameters.setFavorable(true);
+            aBoundary(proPathParameters, data, aGround, aDif, aBoundary);
+            deltaRetrodif(proPathParameters, data, aRetroDiff);
+            for (int idfreq = 0; idfreq < data.getFrequencies().size(); idfreq++) {
+                aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] - aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
+            }
+            //For testing purpose
+            if(exportAttenuationMatrix) {
+                proPathParameters.double_aBoundaryF = aBoundary.clone();
+                proPathParameters.aRetroDiffF = aRetroDiff.clone();
+                proPathParameters.aGlobalF = aGlobalMeteoFav.clone();
+            }
+        }
+
+        //For testing purpose
+        if(exportAttenuationMatrix) {
+            proPathParameters.keepAbsorption = true;
+            proPathParameters.aDiv = aDiv.clone();
+            proPathParameters.aAtm = aAtm.clone();
+        }
+
+        // Compute attenuation under the wind conditions using the ray direction
+        double p = data.getWindRose()[roseIndex];
+        for (int i = 0; i < aGlobal.length; i++) {
+            aGlobal[i] = wToDb(p * dBToW(aGlobalMeteoFav[i]) + (1 - p) * dBToW(aGlobalMeteoHom[i]));
+        }
+
+        // Apply attenuation due to sound direction
+        int sourceId = proPathParameters.getCutProfile().getSource().id;
+        double sourceLi = proPathParameters.getCutProfile().getSource().li;
+
+        if(scene != null && !scene.isOmnidirectional(sourceId)) {
+            Orientation directivityToPick = proPathParameters.raySourceReceiverDirectivity;
+            double[] attSource = scene.getSourceAttenuation( sourceId,
+                    getDirectivityFrequencies(scene), Math.toRadians(directivityToPick.yaw),
+                    Math.toRadians(directivityToPick.pitch));
+            if(exportAttenuationMatrix) {
+                proPathParameters.aSource = attSource;
+            }
+            if (attSource.length == aGlobal.length) {
+                for (int i = 0; i < aGlobal.length; i++) {
+                    aGlobal[i] += attSource[i];
+                }
+            } else if (attSource.length != 0) {
+                throw new IllegalArgumentException("Arrays with different size");
+            }
+        }
+
+        // For line source, take account of li coefficient
+        if(sourceLi > 1.0) {
+            for (int i = 0; i < aGlobal.length; i++) {
+                aGlobal[i] = wToDb(dBToW(aGlobal[i]) * sourceLi);
+            }
+        }
+        // Keep global attenuation
+        if(exportAttenuationMatrix) {
+            proPathParameters.aGlobal = aGlobal.clone();
+        }
+        return aGlobal;
+    }
+
+    /**
+     * @param scene
+     * @return Frequencies of the scene as a double array, cached until the scene frequency list change
+     */
+    private double[] getDirectivityFrequencies(SceneWithAttenuation scene) {
+        List<Integer> frequencyList = scene.profileBuilder.frequencyArray;
+        if (frequencyList != directivityFrequencyList || frequencyList.size() != directivityFrequencies.length) {
+            directivityFrequencies = frequencyList.stream().mapToDouble(value -> value).toArray();
+            directivityFrequencyList = frequencyList;
+        }
+        return directivityFrequencies;
+    }
+
+    /**
+     * Compute the attenuation of a train body screened by a barrier (body barrier)
+     * @param data
+     * @param ptList Path points
+     * @param deltaBodyScreen (output) attenuation, left untouched if there is no body barrier
+     */
+    private static void deltaBodyScreen(AttenuationParameters data, List<PointPath> ptList, double[] deltaBodyScreen) {
         // todo get hRail from input data
         double hRail = 0.5;
         Coordinate src = ptList.get(0).coordinate;
-        PointPath pDif = ptList.stream().filter(p -> p.type.equals(PointPath.POINT_TYPE.DIFH)).findFirst().orElse(null);
+        PointPath pDif = null;
+        for (int idPoint = 0; idPoint < ptList.size(); idPoint++) {
+            if (ptList.get(idPoint).type.equals(PointPath.POINT_TYPE.DIFH)) {
+                pDif = ptList.get(idPoint);
+                break;
+            }
+        }
 
         if (pDif != null && !pDif.alphaWall.isEmpty()) {
             if (pDif.bodyBarrier){
@@ -977,87 +1167,11 @@ public class AttenuationCnossos {
                             }
                         }
                     }
-                    deltaBodyScreen = wToDb(deltaL);
+                    System.arraycopy(wToDb(deltaL), 0, deltaBodyScreen, 0, deltaBodyScreen.length);
                 }
             }
 
         }
-
-        // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
-        // just swap the inverse boolean parameter
-        // @see ComputeCnossosRays#computeOrientation
-        Vector3D fieldVectorPropagation = Orientation.rotate(proPathParameters.getSourceOrientation(),
-                Orientation.toVector(proPathParameters.raySourceReceiverDirectivity), false);
-        int roseIndex = AttenuationParameters.getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
-        // Homogenous conditions
-        if (data.getWindRose()[roseIndex] != 1) {
-            proPathParameters.setFavorable(false);
-
-
-            aBoundary = AttenuationCnossos.aBoundary(proPathParameters, data);
-            aRetroDiff = AttenuationCnossos.deltaRetrodif(proPathParameters, data);
-            for (int idfreq = 0; idfreq < data.getFrequencies().size(); idfreq++) {
-                aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] - aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
-            }
-            //For testing purpose
-            if(exportAttenuationMatrix) {
-                proPathParameters.aRetroDiffH = aRetroDiff.clone();
-                proPathParameters.double_aBoundaryH = aBoundary.clone();
-                proPathParameters.aGlobalH = aGlobalMeteoHom.clone();
-            }
-        }
-        // Favorable conditions
-        if (data.getWindRose()[roseIndex] != 0) {
-            proPathParameters.setFavorable(true);
-            aBoundary = AttenuationCnossos.aBoundary(proPathParameters, data);
-            aRetroDiff = AttenuationCnossos.deltaRetrodif(proPathParameters, data);
-            for (int idfreq = 0; idfreq < data.getFrequencies().size(); idfreq++) {
-                aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] - aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
-            }
-            //For testing purpose
-            if(exportAttenuationMatrix) {
-                proPathParameters.double_aBoundaryF = aBoundary.clone();
-                proPathParameters.aRetroDiffF = aRetroDiff.clone();
-                proPathParameters.aGlobalF = aGlobalMeteoFav.clone();
-            }
-        }
-
-        //For testing purpose
-        if(exportAttenuationMatrix) {
-            proPathParameters.keepAbsorption = true;
-            proPathParameters.aDiv = aDiv.clone();
-            proPathParameters.aAtm = aAtm.clone();
-        }
-
-        // Compute attenuation under the wind conditions using the ray direction
-        double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, data.getWindRose()[roseIndex]);
-
-        // Apply attenuation due to sound direction
-        int sourceId = proPathParameters.getCutProfile().getSource().id;
-        double sourceLi = proPathParameters.getCutProfile().getSource().li;
-
-        if(scene != null && !scene.isOmnidirectional(sourceId)) {
-            Orientation directivityToPick = proPathParameters.raySourceReceiverDirectivity;
-            double[] attSource = scene.getSourceAttenuation( sourceId,
-                    frequencies, Math.toRadians(directivityToPick.yaw),
-                    Math.toRadians(directivityToPick.pitch));
-            if(exportAttenuationMatrix) {
-                proPathParameters.aSource = attSource;
-            }
-            aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
-        }
-
-        // For line source, take account of li coefficient
-        if(sourceLi > 1.0) {
-            for (int i = 0; i < aGlobalMeteoRay.length; i++) {
-                aGlobalMeteoRay[i] = wToDb(dBToW(aGlobalMeteoRay[i]) * sourceLi);
-            }
-        }
-        // Keep global attenuation
-        if(exportAttenuationMatrix) {
-            proPathParameters.aGlobal = aGlobalMeteoRay.clone();
-        }
-        return aGlobalMeteoRay;
     }
 
 }
@@ -20,6 +20,9 @@ import geoserver.GeoServer
 import geoserver.catalog.Store
 import groovy.sql.Sql
 import org.geotools.jdbc.JDBCDataStore
+import org.h2gis.api.EmptyProgressVisitor
+import org.h2gis.utilities.JDBCUtilities
+import org.noise_planet.noisemodelling.jdbc.DynamicIndicatorsMaker
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -47,6 +50,16 @@ inputs = [
                 description: 'Name of the output table default to tableName+_DYN_IND',
                 min        : 0, max: 1,
                 type       : String.class,
+        ],
+        groupByReceiver: [
+                title      : 'Group by receiver',
+                name       : 'Group by receiver',
+                description: 'If true the levels are grouped by IDRECEIVER instead of THE_GEOM, without sorting the ' +
+                        'table. The output table contains IDRECEIVER, THE_GEOM, L10, L50, L90, the energetic average ' +
+                        'named as the column and the maximum named as the column with a _MAX suffix. The levels are ' +
+                        'not rounded. (BOOLEAN) </br> Default value : false',
+                min        : 0, max: 1,
+                type       : Boolean.class
         ]
 ]
 
@@ -102,11 +115,27 @@ def exec(Connection connection, Map input) {
         outputTableName = input["outputTableName"] as String
     }
 
-    sql.execute("DROP TABLE " + outputTableName + " IF EXISTS;")
-    sql.execute("CREATE TABLE " + outputTableName + " AS SELECT THE_GEOM, " +
-            "ROUND(MEDIAN(" + columnName + "), 1) L50, " +
-            "ROUND(percentile_cont(0.9) WITHIN GROUP (ORDER BY " + columnName + "), 1) L10," +
-            "ROUND(percentile_cont(0.1) WITHIN GROUP (ORDER BY " + columnName + "), 1) L90 FROM " + table + " GROUP BY THE_GEOM;")
+    boolean groupByReceiver = false
+    if (input['groupByReceiver']) {
+        groupByReceiver = input['groupByReceiver'] as Boolean
+    }
+
+    if (groupByReceiver) {
+        if (!JDBCUtilities.getColumnNames(connection, table).any { it.equalsIgnoreCase("IDRECEIVER") }) {
+            throw new IllegalArgumentException("The table " + table + " must contain the IDRECEIVER column")
+        }
+        // The time series of each receiver is folded into a histogram, the table does not need to be sorted
+        DynamicIndicatorsMaker dynamicIndicatorsMaker = new DynamicIndicatorsMaker(outputTableName)
+        dynamicIndicatorsMaker.setLeqField(columnName)
+        dynamicIndicatorsMaker.setMaximumField(columnName + "_MAX")
+        dynamicIndicatorsMaker.run(connection, table, columnName, new EmptyProgressVisitor())
+    } else {
+        sql.execute("DROP TABLE " + outputTableName + " IF EXISTS;")
+        sql.execute("CREATE TABLE " + outputTableName + " AS SELECT THE_GEOM, " +
+                "ROUND(MEDIAN(" + columnName + "), 1) L50, " +
+                "ROUND(percentile_cont(0.9) WITHIN GROUP (ORDER BY " + columnName + "), 1) L10," +
+                "ROUND(percentile_cont(0.1) WITHIN GROUP (ORDER BY " + columnName + "), 1) L90 FROM " + table + " GROUP BY THE_GEOM;")
+    }
 
     resultString = "L10,L50 and L90 have been computed in the table: " + outputTableName + "."
 
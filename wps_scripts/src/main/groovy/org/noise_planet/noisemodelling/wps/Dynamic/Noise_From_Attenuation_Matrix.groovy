@@ -19,11 +19,13 @@ package org.noise_planet.noisemodelling.wps.Dynamic
 import geoserver.GeoServer
 import geoserver.catalog.Store
 import org.geotools.jdbc.JDBCDataStore
+import org.h2gis.api.EmptyProgressVisitor
 import org.h2gis.utilities.JDBCUtilities
 import org.h2gis.utilities.TableLocation
 import org.h2gis.utilities.dbtypes.DBTypes
 import org.h2gis.utilities.dbtypes.DBUtils
 import org.h2gis.utilities.wrapper.ConnectionWrapper
+import org.noise_planet.noisemodelling.jdbc.DynamicNoiseMapMaker
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -125,31 +127,12 @@ def exec(Connection connection, input) {
     String outputTable = input['outputTable'].toString().toUpperCase()
     String attenuationTable = input['attenuationTable'].toString().toUpperCase()
     String lwTable = input['lwTable'].toString().toUpperCase()
-    String timeString = "PERIOD"
-    String prefix = "HZ"
-
-    // Groovy Dollar slashy string that contain the queries
-
-    def query2 = $/CREATE TABLE $outputTable AS SELECT lg.IDRECEIVER,
-            mr.$timeString AS $timeString,
-            lg.the_geom,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}63 + lg.${prefix}63) / 10))) AS ${prefix}63,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}125 + lg.${prefix}125) / 10))) AS ${prefix}125,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}250 + lg.${prefix}250) / 10))) AS ${prefix}250,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}500 + lg.${prefix}500) / 10))) AS ${prefix}500,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}1000 + lg.${prefix}1000) / 10))) AS ${prefix}1000,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}2000 + lg.${prefix}2000) / 10))) AS ${prefix}2000,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}4000 + lg.${prefix}4000) / 10))) AS ${prefix}4000,
-            10 * LOG10( SUM(POWER(10,(mr.${prefix}8000 + lg.${prefix}8000) / 10))) AS ${prefix}8000
-        FROM $attenuationTable  lg , $lwTable mr WHERE lg.IDSOURCE = mr.$lwTable_sourceId 
-        GROUP BY lg.IDRECEIVER, mr.$timeString;
-        
-        ALTER TABLE  $outputTable ADD COLUMN LAEQ float as 10*log10((power(10,(${prefix}63-26.2)/10)+power(10,(${prefix}125-16.1)/10)+power(10,(${prefix}250-8.6)/10)+power(10,(${prefix}500-3.2)/10)+power(10,(${prefix}1000)/10)+power(10,(${prefix}2000+1.2)/10)+power(10,(${prefix}4000+1)/10)+power(10,(${prefix}8000-1.1)/10)));
-        ALTER TABLE $outputTable ADD COLUMN LEQ float as 10*log10((power(10,(${prefix}63)/10)+power(10,(${prefix}125)/10)+power(10,(${prefix}250)/10)+power(10,(${prefix}500)/10)+power(10,(${prefix}1000)/10)+power(10,(${prefix}2000)/10)+power(10,(${prefix}4000)/10)+power(10,(${prefix}8000)/10)));
-        CREATE UNIQUE INDEX ON $outputTable (IDRECEIVER, $timeString);
-    /$
-
-    sql.execute(query2.toString())
+
+    // The attenuation is loaded once in a sparse matrix then the levels of each period are computed in parallel
+    DynamicNoiseMapMaker dynamicNoiseMapMaker = new DynamicNoiseMapMaker(attenuationTable, lwTable, outputTable)
+    dynamicNoiseMapMaker.setSourceIdField(lwTable_sourceId)
+    dynamicNoiseMapMaker.setFrequencyFieldPrepend("HZ")
+    dynamicNoiseMapMaker.run(connection, new EmptyProgressVisitor())
 
     logger.info('End : Noise_From_Attenuation_Matrix_MatSim')
     resultString = "Process done. Table of receivers LT_GEOM created !"
@@ -277,6 +277,27 @@ inputs = [
                 description: 'Frequency field name prepend. Ex. for 1000 Hz frequency the default column name is HZ1000.' +
                         '&#128736; Default value: <b>HZ</b>',
                 min        : 0, max: 1, type: String.class
+        ],
+        confCellFarmTable            : [
+                name       : 'Cell farm table',
+                title      : 'Cell farm table',
+                description: 'Share the computation between several processes using this queue table of the cells. ' +
+                        'All the processes must use the same database (PostGIS, or H2 opened by the runner with the ' +
+                        '-a option) and the same parameters. </br> </br>' +
+                        'The role of this process is set with confCellFarmRole. </br> </br>' +
+                        '&#128736; Default value: <b>empty (computed by this process only)</b>',
+                min        : 0, max: 1, type: String.class
+        ],
+        confCellFarmRole            : [
+                name       : 'Cell farm role',
+                title      : 'Cell farm role',
+                description: 'Role of this process when confCellFarmTable is set: <ul>' +
+                        '<li><b>coordinator</b> : create the queue of the cells, before starting the workers</li>' +
+                        '<li><b>worker</b> : compute the cells of the queue, the workers can be started on several ' +
+                        'hosts</li>' +
+                        '<li><b>merge</b> : when the workers are done, gather their results into the output table</li>' +
+                        '</ul> &#128736; Default value: <b>worker</b>',
+                min        : 0, max: 1, type: String.class
         ]
 ]
 
@@ -510,7 +531,21 @@ def exec(Connection connection, Map input) {
         pointNoiseMap.setSourcesEmissionTableName(tableSourceEmission)
     }
 
-    sql.execute("drop table if exists " + TableLocation.parse(pointNoiseMap.noiseMapDatabaseParameters.receiversLevelTable))
+    String cellFarmTable = ""
+    if (input['confCellFarmTable']) {
+        cellFarmTable = TableLocation.capsIdentifier(input['confCellFarmTable'] as String, dbType)
+    }
+    String cellFarmRole = "worker"
+    if (input['confCellFarmRole']) {
+        cellFarmRole = (input['confCellFarmRole'] as String).toLowerCase(Locale.ROOT)
+        if (!["coordinator", "worker", "merge"].contains(cellFarmRole)) {
+            throw new IllegalArgumentException("Unknown cell farm role " + cellFarmRole)
+        }
+    }
+
+    if (cellFarmTable.isEmpty()) {
+        sql.execute("drop table if exists " + TableLocation.parse(pointNoiseMap.noiseMapDatabaseParameters.receiversLevelTable))
+    }
 
     if (input['confRaysName'] && !((input['confRaysName'] as String).isEmpty())) {
         parameters.setRaysTable(input['confRaysName'] as String)
@@ -585,7 +620,23 @@ def exec(Connection connection, Map input) {
 
     logger.info("Start calculation... ")
 
-    pointNoiseMap.run(connection, progressLogger)
+    if (cellFarmTable.isEmpty()) {
+        pointNoiseMap.run(connection, progressLogger)
+    } else {
+        CellFarm cellFarm = new CellFarm(pointNoiseMap, cellFarmTable)
+        if (cellFarmRole == "coordinator") {
+            int cellCount = cellFarm.createQueue(connection)
+            return "The queue $cellFarmTable of $cellCount cells have been created, the workers can be started."
+        } else if (cellFarmRole == "worker") {
+            // The leases of the cells are renewed in the background with another connection
+            int cellCount = openGeoserverDataStoreConnection("h2gisdb").withCloseable {
+                Connection leaseConnection -> cellFarm.runWorker(connection, leaseConnection, progressLogger)
+            }
+            return "The worker ${cellFarm.workerId} has computed $cellCount cells."
+        } else {
+            cellFarm.merge(connection)
+        }
+    }
 
     long elapsed = System.currentTimeMillis() - startCompute;
     long hours = TimeUnit.MILLISECONDS.toHours(elapsed)
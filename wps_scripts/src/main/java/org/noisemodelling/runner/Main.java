@@ -57,11 +57,21 @@ public class Main {
 
 
     public static DataSource createDataSource(String user, String password, String dbDirectory, String dbName, boolean debug) throws SQLException {
+        return createDataSource(user, password, dbDirectory, dbName, debug, false);
+    }
+
+    /**
+     * @param autoServer If true, other processes can open the database at the same time (ex: cell farm workers)
+     */
+    public static DataSource createDataSource(String user, String password, String dbDirectory, String dbName, boolean debug, boolean autoServer) throws SQLException {
         // Create H2 memory DataSource
         org.h2.Driver driver = org.h2.Driver.load();
         OsgiDataSourceFactory dataSourceFactory = new OsgiDataSourceFactory(driver);
         Properties properties = new Properties();
         String databasePath = "jdbc:h2:" + new File(dbDirectory, dbName).getAbsolutePath();
+        if(autoServer) {
+            databasePath += ";AUTO_SERVER=TRUE";
+        }
         properties.setProperty(DataSourceFactory.JDBC_URL, databasePath);
         properties.setProperty(DataSourceFactory.JDBC_USER, user);
         properties.setProperty(DataSourceFactory.JDBC_PASSWORD, password);
@@ -153,6 +163,9 @@ public class Main {
         options.addOption(printVersionOption);
         Option shutdownOption = new Option("c", "shutdown" ,false,"Do not shutdown compact the database at the end of the execution");
         options.addOption(shutdownOption);
+        Option autoServerOption = new Option("a", "auto-server" ,false,"Allow several runners to open the database " +
+                "at the same time, the database is not compacted at the end of the execution");
+        options.addOption(autoServerOption);
         Logger logger = LoggerFactory.getLogger("org.noise_planet");
         try {
             // Read parameters
@@ -177,14 +190,17 @@ public class Main {
             scriptPath = commandLine.getOptionValue(scriptPathOption.getOpt());
             printVersion = commandLine.hasOption(printVersionOption.getOpt());
             databaseName = commandLine.getOptionValue(databaseNameOption.getOpt(), "h2gisdb");
-            boolean shutdown = !commandLine.hasOption(shutdownOption.getOpt());
+            boolean autoServer = commandLine.hasOption(autoServerOption.getOpt());
+            // Other runners may still use the database
+            boolean shutdown = !commandLine.hasOption(shutdownOption.getOpt()) && !autoServer;
 
             if(printVersion) {
                 printBuildIdentifiers(logger);
             }
 
             // Open database
-            DataSource ds = createDataSource("", "", new File(workingDir).getAbsolutePath(), databaseName, false);
+            DataSource ds = createDataSource("", "", new File(workingDir).getAbsolutePath(), databaseName, false,
+                    autoServer);
 
             RootProgressVisitor progressVisitor = new RootProgressVisitor(1, true,
                     SECONDS_BETWEEN_PROGRESSION_PRINT);
@@ -108,6 +108,17 @@ class TestDynamic extends JdbcTestCase {
 
         columnNames = JDBCUtilities.getColumnNames(connection, "INDICATORS")
         assertTrue(columnNames.containsAll(Arrays.asList("L90", "L50", "L10")))
+
+        // Same indicators grouped by receiver, with the average and the maximum named after the column
+        new DynamicIndicators().exec(connection,
+                ["tableName"   : "LT_GEOM",
+                "columnName"   : "LAEQ",
+                "outputTableName" : "RECEIVER_INDICATORS",
+                "groupByReceiver" : true
+                ])
+
+        columnNames = JDBCUtilities.getColumnNames(connection, "RECEIVER_INDICATORS")
+        assertTrue(columnNames.containsAll(Arrays.asList("IDRECEIVER", "L90", "L50", "L10", "LAEQ", "LAEQ_MAX")))
     }
 
 